@@ -0,0 +1,96 @@
+package dk.apaq.rest.patch.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import dk.apaq.rest.patch.jackson.CaptureLimits;
+import dk.apaq.rest.patch.jackson.CaptureMode;
+import dk.apaq.rest.patch.jackson.DirtyPathHolder;
+import dk.apaq.rest.patch.jackson.JacksonTreeNodeMapper;
+import dk.apaq.rest.patch.jackson.JsonParserPropertyReferenceConverter;
+import dk.apaq.rest.patch.jackson.TreeNodeHolder;
+import dk.apaq.rest.patch.jackson.TreeNodePropertyReferenceConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a patch body encoded as JSON, CBOR or Smile through {@link JacksonTreeNodeMapper} in both
+ * capture modes, and resolving only its dirty paths with {@link JsonParserPropertyReferenceConverter} compared to
+ * reading it into a tree first.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinaryFormatBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    /**
+     * The number of map entries and array elements in the body, next to the fixed flat and child fields.
+     */
+    @Param({"10", "500"})
+    public int size;
+
+    private final TreeNodePropertyReferenceConverter treeConverter = new TreeNodePropertyReferenceConverter();
+    private final JsonParserPropertyReferenceConverter parserConverter = new JsonParserPropertyReferenceConverter();
+    private ObjectMapper plainMapper;
+    private JacksonTreeNodeMapper treeMapper;
+    private JacksonTreeNodeMapper pathsMapper;
+    private byte[] body;
+
+    @Setup
+    public void setup() throws IOException {
+        JsonFactory factory = switch (format) {
+            case "cbor" -> new CBORFactory();
+            case "smile" -> new SmileFactory();
+            default -> new JsonFactory();
+        };
+        plainMapper = new ObjectMapper(factory);
+        treeMapper = new JacksonTreeNodeMapper(factory, CaptureMode.TREE, CaptureLimits.none());
+        pathsMapper = new JacksonTreeNodeMapper(factory, CaptureMode.PATHS, CaptureLimits.none());
+        body = plainMapper.writeValueAsBytes(new ObjectMapper().readTree(Fixtures.entityJson(size)));
+    }
+
+    @Benchmark
+    public void mapperTree(Blackhole blackhole) throws IOException {
+        blackhole.consume(treeMapper.readValue(body, BenchEntity.class));
+        blackhole.consume(treeConverter.translate(TreeNodeHolder.get()));
+    }
+
+    @Benchmark
+    public void mapperPaths(Blackhole blackhole) throws IOException {
+        blackhole.consume(pathsMapper.readValue(body, BenchEntity.class));
+        blackhole.consume(DirtyPathHolder.get());
+    }
+
+    @Benchmark
+    public Collection<String> treePaths() throws IOException {
+        return treeConverter.translate(plainMapper.readTree(body));
+    }
+
+    @Benchmark
+    public Collection<String> parserPaths() throws IOException {
+        try (var parser = plainMapper.createParser(body)) {
+            return parserConverter.translate(parser);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package dk.apaq.rest.patch.benchmarks;
+
+import dk.apaq.rest.patch.EntityMerger;
+import dk.apaq.rest.patch.property.PropertyAccessor;
+import dk.apaq.rest.patch.property.PropertyAccessorCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one {@link EntityMerger} and one {@link PropertyAccessorCache} shared by all benchmark threads, as they
+ * are shared by request threads in an application. Each thread merges into its own entities, so only the caches
+ * are contended. Run it with {@code -t 1}, {@code -t 2} and so on up to the number of cores to see how throughput
+ * scales.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentMergeBenchmark {
+
+    private static final int DIRTY_FIELD_COUNT = 10;
+
+    @Param({"flat", "nested", "mapped"})
+    public String shape;
+
+    private final EntityMerger<BenchEntity> merger = new EntityMerger<>();
+    private final PropertyAccessorCache cache = PropertyAccessorCache.getDefault();
+    private List<String> dirtyFields;
+
+    @Setup
+    public void setup() {
+        dirtyFields = new ArrayList<>(DIRTY_FIELD_COUNT);
+        for (int i = 0; i < DIRTY_FIELD_COUNT; i++) {
+            dirtyFields.add(switch (shape) {
+                case "flat" -> "field" + i;
+                case "nested" -> "child.field" + i;
+                case "mapped" -> "meta(key" + i + ")";
+                default -> throw new IllegalArgumentException(shape);
+            });
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Entities {
+
+        private BenchEntity original;
+        private BenchEntity patch;
+        private int next;
+
+        @Setup
+        public void setup() {
+            original = Fixtures.entity(DIRTY_FIELD_COUNT, "original");
+            patch = Fixtures.entity(DIRTY_FIELD_COUNT, "patch");
+        }
+    }
+
+    @Benchmark
+    public BenchEntity mergeEntities(Entities entities) {
+        return merger.mergeEntities(entities.original, entities.patch, dirtyFields);
+    }
+
+    @Benchmark
+    public PropertyAccessor cacheLookup(Entities entities) {
+        var field = dirtyFields.get(entities.next++ % DIRTY_FIELD_COUNT);
+        return cache.get(BenchEntity.class, field);
+    }
+}
@@ -0,0 +1,69 @@
+package dk.apaq.rest.patch.benchmarks;
+
+import dk.apaq.rest.patch.EntityMerger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link EntityMerger#mergeEntities(Object, Object, Iterable)} and
+ * {@link EntityMerger#mergeCopy(Object, Object, Iterable)} for flat, nested, mapped and indexed properties with a
+ * growing number of dirty fields.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityMergerBenchmark {
+
+    @Param({"flat", "nested", "mapped", "indexed"})
+    public String shape;
+
+    @Param({"1", "10", "100", "500"})
+    public int dirtyFieldCount;
+
+    private final EntityMerger<BenchEntity> merger = new EntityMerger<>();
+    private BenchEntity original;
+    private BenchEntity patch;
+    private List<String> dirtyFields;
+
+    @Setup
+    public void setup() {
+        original = Fixtures.entity(dirtyFieldCount, "original");
+        patch = Fixtures.entity(dirtyFieldCount, "patch");
+        dirtyFields = new ArrayList<>(dirtyFieldCount);
+        for (int i = 0; i < dirtyFieldCount; i++) {
+            dirtyFields.add(switch (shape) {
+                case "flat" -> "field" + (i % 10);
+                case "nested" -> "child.field" + (i % 10);
+                case "mapped" -> "meta(key" + i + ")";
+                case "indexed" -> "values[" + i + "]";
+                default -> throw new IllegalArgumentException(shape);
+            });
+        }
+    }
+
+    @Benchmark
+    public BenchEntity mergeEntities() {
+        return merger.mergeEntities(original, patch, dirtyFields);
+    }
+
+    @Benchmark
+    public BenchEntity mergeCopy() {
+        return merger.mergeCopy(original, patch, dirtyFields);
+    }
+}
@@ -0,0 +1,101 @@
+package dk.apaq.rest.patch.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds the entities, JSON documents and form inputs shared by the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Creates an entity with all flat fields, a child, and {@code size} map entries and array elements.
+     */
+    static BenchEntity entity(int size, String prefix) {
+        var entity = flat(prefix);
+        entity.setChild(flat(prefix + "-child"));
+        var values = new String[size];
+        for (int i = 0; i < size; i++) {
+            entity.getMeta().put("key" + i, prefix + i);
+            values[i] = prefix + i;
+        }
+        entity.setValues(values);
+        return entity;
+    }
+
+    private static BenchEntity flat(String prefix) {
+        var entity = new BenchEntity();
+        entity.setField0(prefix + "0");
+        entity.setField1(prefix + "1");
+        entity.setField2(prefix + "2");
+        entity.setField3(prefix + "3");
+        entity.setField4(prefix + "4");
+        entity.setField5(prefix + "5");
+        entity.setField6(prefix + "6");
+        entity.setField7(prefix + "7");
+        entity.setField8(prefix + "8");
+        entity.setField9(prefix + "9");
+        entity.setNumber(prefix.length());
+        return entity;
+    }
+
+    /**
+     * Creates a JSON object with {@code width} fields per level, nested {@code depth} levels deep.
+     */
+    static String json(int depth, int width) {
+        var builder = new StringBuilder();
+        appendObject(builder, depth, width);
+        return builder.toString();
+    }
+
+    private static void appendObject(StringBuilder builder, int depth, int width) {
+        builder.append('{');
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("\"field").append(i).append("\":");
+            if (depth > 1) {
+                appendObject(builder, depth - 1, width);
+            } else {
+                builder.append("\"value").append(i).append('"');
+            }
+        }
+        builder.append('}');
+    }
+
+    /**
+     * Creates a JSON patch for {@link BenchEntity} touching all flat fields, the child, the map and the array.
+     */
+    static String entityJson(int size) {
+        var builder = new StringBuilder("{");
+        for (int i = 0; i < 10; i++) {
+            builder.append("\"field").append(i).append("\":\"value").append(i).append("\",");
+        }
+        builder.append("\"number\":42,\"child\":{\"field0\":\"child\",\"number\":7},\"meta\":{");
+        for (int i = 0; i < size; i++) {
+            builder.append(i > 0 ? "," : "").append("\"key").append(i).append("\":\"value").append(i).append('"');
+        }
+        builder.append("},\"values\":[");
+        for (int i = 0; i < size; i++) {
+            builder.append(i > 0 ? "," : "").append("\"value").append(i).append('"');
+        }
+        return builder.append("]}").toString();
+    }
+
+    /**
+     * Creates form input with {@code size} keys, half of which use the bracket syntax for mapped properties.
+     */
+    static Map<String, String[]> form(int size) {
+        var form = new LinkedHashMap<String, String[]>();
+        for (int i = 0; i < size; i++) {
+            var key = i % 2 == 0 ? "field" + i : "meta[key" + i + "]";
+            form.put(key, new String[]{"value" + i});
+        }
+        return form;
+    }
+}
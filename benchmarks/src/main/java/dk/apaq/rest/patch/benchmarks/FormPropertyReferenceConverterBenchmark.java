@@ -0,0 +1,49 @@
+package dk.apaq.rest.patch.benchmarks;
+
+import dk.apaq.rest.patch.form.FormPropertyReferenceConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the translation of form inputs into dirty paths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormPropertyReferenceConverterBenchmark {
+
+    /**
+     * The number of form keys, half of which use the bracket syntax for mapped properties.
+     */
+    @Param({"10", "50"})
+    public int keyCount;
+
+    private final FormPropertyReferenceConverter converter = new FormPropertyReferenceConverter();
+    private Map<String, String[]> form;
+
+    @Setup
+    public void setup() {
+        form = Fixtures.form(keyCount);
+    }
+
+    @Benchmark
+    public Collection<String> translate() {
+        return converter.translate(form);
+    }
+}
@@ -0,0 +1,132 @@
+package dk.apaq.rest.patch.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import dk.apaq.rest.patch.jackson.CaptureMode;
+import dk.apaq.rest.patch.jackson.DirtyPathHolder;
+import dk.apaq.rest.patch.jackson.JacksonPatchApplier;
+import dk.apaq.rest.patch.jackson.JacksonTreeNodeMapper;
+import dk.apaq.rest.patch.jackson.NonBlockingPatchReader;
+import dk.apaq.rest.patch.jackson.PatchBody;
+import dk.apaq.rest.patch.jackson.TreeNodeExtractorModule;
+import dk.apaq.rest.patch.jackson.TreeNodeHolder;
+import dk.apaq.rest.patch.jackson.TreeNodePropertyReferenceConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a JSON patch body end to end, i.e. deserializing the patch and resolving its dirty paths,
+ * through {@link JacksonTreeNodeMapper} and {@link TreeNodeExtractorModule} in all capture modes, through
+ * {@link JacksonPatchApplier}, and through {@link NonBlockingPatchReader} fed in 1 KB buffers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadPathBenchmark {
+
+    // The size of the buffers the body is fed in by nonBlocking, as received from a socket.
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * The number of map entries and array elements in the body, next to the fixed flat and child fields.
+     */
+    @Param({"10", "500"})
+    public int size;
+
+    private final TreeNodePropertyReferenceConverter converter = new TreeNodePropertyReferenceConverter();
+    private final JacksonPatchApplier<BenchEntity> applier = new JacksonPatchApplier<>(new ObjectMapper());
+    private JacksonTreeNodeMapper treeMapper;
+    private JacksonTreeNodeMapper pathsMapper;
+    private JacksonTreeNodeMapper compactMapper;
+    private ObjectReader treeModuleReader;
+    private ObjectReader pathsModuleReader;
+    private ObjectReader compactModuleReader;
+    private NonBlockingPatchReader<BenchEntity> nonBlockingReader;
+    private BenchEntity target;
+    private String json;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        json = Fixtures.entityJson(size);
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+        target = Fixtures.entity(size, "original");
+        treeMapper = new JacksonTreeNodeMapper();
+        pathsMapper = new JacksonTreeNodeMapper(CaptureMode.PATHS);
+        compactMapper = new JacksonTreeNodeMapper(CaptureMode.COMPACT);
+        treeModuleReader = new ObjectMapper().registerModule(new TreeNodeExtractorModule()).readerFor(BenchEntity.class);
+        pathsModuleReader = new ObjectMapper().registerModule(new TreeNodeExtractorModule(CaptureMode.PATHS))
+                .readerFor(BenchEntity.class);
+        compactModuleReader = new ObjectMapper().registerModule(new TreeNodeExtractorModule(CaptureMode.COMPACT))
+                .readerFor(BenchEntity.class);
+        nonBlockingReader = new NonBlockingPatchReader<>(new ObjectMapper(), BenchEntity.class);
+    }
+
+    @Benchmark
+    public void mapperTree(Blackhole blackhole) throws IOException {
+        blackhole.consume(treeMapper.readValue(json, BenchEntity.class));
+        blackhole.consume(converter.translate(TreeNodeHolder.get()));
+    }
+
+    @Benchmark
+    public void mapperPaths(Blackhole blackhole) throws IOException {
+        blackhole.consume(pathsMapper.readValue(json, BenchEntity.class));
+        blackhole.consume(DirtyPathHolder.get());
+    }
+
+    @Benchmark
+    public void mapperCompact(Blackhole blackhole) throws IOException {
+        blackhole.consume(compactMapper.readValue(json, BenchEntity.class));
+        blackhole.consume(converter.translate(TreeNodeHolder.get()));
+    }
+
+    @Benchmark
+    public void moduleTree(Blackhole blackhole) throws IOException {
+        blackhole.consume(treeModuleReader.readValue(json));
+        blackhole.consume(converter.translate(TreeNodeHolder.get()));
+    }
+
+    @Benchmark
+    public void modulePaths(Blackhole blackhole) throws IOException {
+        blackhole.consume(pathsModuleReader.readValue(json));
+        blackhole.consume(DirtyPathHolder.get());
+    }
+
+    @Benchmark
+    public void moduleCompact(Blackhole blackhole) throws IOException {
+        blackhole.consume(compactModuleReader.readValue(json));
+        blackhole.consume(converter.translate(TreeNodeHolder.get()));
+    }
+
+    @Benchmark
+    public PatchBody<BenchEntity> nonBlocking() throws Exception {
+        var feed = nonBlockingReader.start();
+        for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE) {
+            feed.feed(bytes, offset, Math.min(CHUNK_SIZE, bytes.length - offset));
+        }
+        return feed.end().get();
+    }
+
+    @Benchmark
+    public List<String> applier() throws IOException {
+        return applier.apply(target, json);
+    }
+}
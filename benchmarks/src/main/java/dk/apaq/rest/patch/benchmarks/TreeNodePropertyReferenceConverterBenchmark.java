@@ -0,0 +1,58 @@
+package dk.apaq.rest.patch.benchmarks;
+
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.apaq.rest.patch.jackson.TreeNodePropertyReferenceConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the translation of captured JSON trees into dirty paths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeNodePropertyReferenceConverterBenchmark {
+
+    /**
+     * The shape of the JSON tree: {@code shallow} has 100 fields on one level, {@code deep} has 4 fields per level
+     * nested 6 levels (4,096 leaves), and {@code wide} has 40 fields per level nested 2 levels (1,600 leaves).
+     */
+    @Param({"shallow", "deep", "wide"})
+    public String treeShape;
+
+    private final TreeNodePropertyReferenceConverter converter = new TreeNodePropertyReferenceConverter();
+    private TreeNode tree;
+
+    @Setup
+    public void setup() throws IOException {
+        var json = switch (treeShape) {
+            case "shallow" -> Fixtures.json(1, 100);
+            case "deep" -> Fixtures.json(6, 4);
+            case "wide" -> Fixtures.json(2, 40);
+            default -> throw new IllegalArgumentException(treeShape);
+        };
+        tree = new ObjectMapper().readTree(json);
+    }
+
+    @Benchmark
+    public Collection<String> translate() {
+        return converter.translate(tree);
+    }
+}
@@ -0,0 +1,153 @@
+package dk.apaq.rest.patch.micrometer;
+
+import dk.apaq.rest.patch.jackson.CaptureMode;
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.lang.Validate;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the measurements of the library in a Micrometer {@link MeterRegistry}:
+ * <ul>
+ *     <li>{@code restpatch.merge} and {@code restpatch.merge.fields}: merge timings and dirty field counts, tagged
+ *     with the entity class.</li>
+ *     <li>{@code restpatch.merge.errors}: fields that could not be merged, tagged with the entity class and field.</li>
+ *     <li>{@code restpatch.capture} and {@code restpatch.capture.size}: capture timings and tree or path counts,
+ *     tagged with the capture mode.</li>
+ *     <li>{@code restpatch.convert} and {@code restpatch.convert.paths}: conversion timings and path counts, tagged
+ *     with the converter class.</li>
+ *     <li>{@code restpatch.cache.lookups}: cache lookups, tagged with the cache and {@code hit} or {@code miss}.</li>
+ * </ul>
+ *
+ * Field names come from clients, so only the first {@link #DEFAULT_MAX_FIELD_TAGS} distinct failing fields are
+ * tagged by name and the rest are counted as {@code other}. When found through {@link java.util.ServiceLoader},
+ * the global registry {@link Metrics#globalRegistry} is used.
+ */
+public class MicrometerPatchInstrumentation implements PatchInstrumentation {
+
+    /**
+     * The number of distinct failing fields tagged by name by default.
+     */
+    public static final int DEFAULT_MAX_FIELD_TAGS = 100;
+
+    // The tag value used for failing fields beyond the limit.
+    private static final String OTHER_FIELD = "other";
+
+    private final MeterRegistry registry;
+    private final int maxFieldTags;
+
+    // Meters are looked up once per tag combination rather than on every measurement.
+    private final Map<Class<?>, Timer> mergeTimers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, DistributionSummary> mergeFields = new ConcurrentHashMap<>();
+    private final Map<CaptureMode, Timer> captureTimers = new ConcurrentHashMap<>();
+    private final Map<CaptureMode, DistributionSummary> captureSizes = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Timer> convertTimers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, DistributionSummary> convertPaths = new ConcurrentHashMap<>();
+    private final Map<String, Counter> cacheHits = new ConcurrentHashMap<>();
+    private final Map<String, Counter> cacheMisses = new ConcurrentHashMap<>();
+    private final Set<String> taggedFields = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Default constructor that records into {@link Metrics#globalRegistry}.
+     */
+    public MicrometerPatchInstrumentation() {
+        this(Metrics.globalRegistry);
+    }
+
+    /**
+     * Constructor that accepts the registry to record into.
+     *
+     * @param registry The registry to record into (must not be null).
+     */
+    public MicrometerPatchInstrumentation(MeterRegistry registry) {
+        this(registry, DEFAULT_MAX_FIELD_TAGS);
+    }
+
+    /**
+     * Constructor that accepts the registry to record into and the number of failing fields to tag by name.
+     *
+     * @param registry     The registry to record into (must not be null).
+     * @param maxFieldTags The number of distinct failing fields to tag by name (must not be negative).
+     */
+    public MicrometerPatchInstrumentation(MeterRegistry registry, int maxFieldTags) {
+        Validate.notNull(registry, "registry must be specified.");
+        Validate.isTrue(maxFieldTags >= 0, "maxFieldTags must not be negative.");
+        this.registry = registry;
+        this.maxFieldTags = maxFieldTags;
+    }
+
+    @Override
+    public void mergeCompleted(Class<?> entityType, int dirtyFieldCount, long nanos) {
+        mergeTimers.computeIfAbsent(entityType, type -> Timer.builder("restpatch.merge")
+                .description("Time spent merging entities")
+                .tag("entity", type.getName())
+                .register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+        mergeFields.computeIfAbsent(entityType, type -> DistributionSummary.builder("restpatch.merge.fields")
+                .description("Dirty fields per merge")
+                .tag("entity", type.getName())
+                .register(registry)).record(dirtyFieldCount);
+    }
+
+    @Override
+    public void mergeFailed(Class<?> entityType, String path, Throwable error) {
+        Counter.builder("restpatch.merge.errors")
+                .description("Fields that could not be merged")
+                .tag("entity", entityType.getName())
+                .tag("field", fieldTag(path))
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void captureCompleted(CaptureMode mode, int size, long nanos) {
+        captureTimers.computeIfAbsent(mode, m -> Timer.builder("restpatch.capture")
+                .description("Time spent capturing dirty fields while deserializing")
+                .tag("mode", m.name())
+                .register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+        captureSizes.computeIfAbsent(mode, m -> DistributionSummary.builder("restpatch.capture.size")
+                .description("Nodes in the captured tree, or captured paths")
+                .tag("mode", m.name())
+                .register(registry)).record(size);
+    }
+
+    @Override
+    public void converted(Class<?> converterType, int pathCount, long nanos) {
+        convertTimers.computeIfAbsent(converterType, type -> Timer.builder("restpatch.convert")
+                .description("Time spent converting input into dirty paths")
+                .tag("converter", type.getName())
+                .register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+        convertPaths.computeIfAbsent(converterType, type -> DistributionSummary.builder("restpatch.convert.paths")
+                .description("Dirty paths per conversion")
+                .tag("converter", type.getName())
+                .register(registry)).record(pathCount);
+    }
+
+    @Override
+    public void cacheAccessed(String cache, boolean hit) {
+        (hit ? cacheHits : cacheMisses).computeIfAbsent(cache, c -> Counter.builder("restpatch.cache.lookups")
+                .description("Cache lookups")
+                .tag("cache", c)
+                .tag("result", hit ? "hit" : "miss")
+                .register(registry)).increment();
+    }
+
+    private String fieldTag(String path) {
+        if (taggedFields.contains(path)) {
+            return path;
+        }
+        // The limit may be exceeded slightly under contention, which is harmless.
+        if (taggedFields.size() < maxFieldTags) {
+            taggedFields.add(path);
+            return path;
+        }
+        return OTHER_FIELD;
+    }
+}
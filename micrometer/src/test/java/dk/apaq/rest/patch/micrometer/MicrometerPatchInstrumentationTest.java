@@ -0,0 +1,77 @@
+package dk.apaq.rest.patch.micrometer;
+
+import dk.apaq.rest.patch.EntityMerger;
+import dk.apaq.rest.patch.jackson.CaptureMode;
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.ServiceLoader;
+
+public class MicrometerPatchInstrumentationTest {
+
+    private SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @After
+    public void tearDown() {
+        PatchInstrumentation.install(null);
+    }
+
+    @Test
+    public void testIsFoundThroughServiceLoader() {
+        var loaded = ServiceLoader.load(PatchInstrumentation.class).findFirst();
+        assertTrue(loaded.isPresent());
+        assertTrue(loaded.get() instanceof MicrometerPatchInstrumentation);
+    }
+
+    @Test
+    public void testMergeIsRecorded() {
+        PatchInstrumentation.install(new MicrometerPatchInstrumentation(registry));
+        var merger = new EntityMerger<Pet>();
+        var patch = new Pet();
+        patch.setName("Bessie");
+        merger.mergeEntities(new Pet(), patch, Collections.singletonList("name"));
+
+        var timer = registry.get("restpatch.merge").tag("entity", Pet.class.getName()).timer();
+        assertEquals(1, timer.count());
+        assertEquals(1.0, registry.get("restpatch.merge.fields").summary().totalAmount(), 0.0);
+        assertTrue(registry.get("restpatch.cache.lookups").tag("cache", "property-accessors").counters().size() > 0);
+    }
+
+    @Test
+    public void testFieldTagsAreLimited() {
+        var instrumentation = new MicrometerPatchInstrumentation(registry, 1);
+        instrumentation.mergeFailed(Pet.class, "first", new NoSuchMethodException());
+        instrumentation.mergeFailed(Pet.class, "second", new NoSuchMethodException());
+        instrumentation.mergeFailed(Pet.class, "first", new NoSuchMethodException());
+
+        assertEquals(2.0, registry.get("restpatch.merge.errors").tag("field", "first").counter().count(), 0.0);
+        assertEquals(1.0, registry.get("restpatch.merge.errors").tag("field", "other").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testCaptureAndConversionAreRecorded() {
+        var instrumentation = new MicrometerPatchInstrumentation(registry);
+        instrumentation.captureCompleted(CaptureMode.PATHS, 3, 1000);
+        instrumentation.converted(String.class, 2, 1000);
+
+        assertEquals(3.0, registry.get("restpatch.capture.size").tag("mode", "PATHS").summary().totalAmount(), 0.0);
+        assertEquals(1, registry.get("restpatch.convert").tag("converter", String.class.getName()).timer().count());
+    }
+
+    public static class Pet {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
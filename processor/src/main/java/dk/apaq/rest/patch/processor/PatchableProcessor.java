@@ -0,0 +1,188 @@
+package dk.apaq.rest.patch.processor;
+
+import dk.apaq.rest.patch.GeneratedMerger;
+import dk.apaq.rest.patch.Patchable;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a {@link GeneratedMerger} for every class annotated with {@link Patchable}. The generated merger
+ * switches over the names of the read-write properties of the class and copies each with a direct getter and
+ * setter call. Names given in {@link Patchable#ignore()} must be properties of the class, or the compilation
+ * fails.
+ */
+@SupportedAnnotationTypes("dk.apaq.rest.patch.Patchable")
+public class PatchableProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Patchable.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@Patchable can only be applied to classes.");
+                continue;
+            }
+
+            var type = (TypeElement) element;
+            if (type.getModifiers().contains(Modifier.PRIVATE)
+                    || type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+                error(type, "@Patchable classes must be accessible from their package and must not be inner classes.");
+                continue;
+            }
+
+            var properties = new LinkedHashMap<String, Property>();
+            var known = new LinkedHashSet<String>();
+            findProperties(type, properties, known);
+
+            var ignored = new LinkedHashSet<String>();
+            for (var name : type.getAnnotation(Patchable.class).ignore()) {
+                if (!known.contains(name)) {
+                    error(type, "Unknown property '" + name + "' in @Patchable(ignore) of " + type.getQualifiedName() + ".");
+                }
+                ignored.add(name);
+            }
+
+            try {
+                write(type, properties, ignored);
+            } catch (IOException ex) {
+                error(type, "Could not write the generated merger: " + ex.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the read-write properties of the type, and the names of all properties with a getter or setter.
+     */
+    private void findProperties(TypeElement type, Map<String, Property> properties, Set<String> known) {
+        var types = processingEnv.getTypeUtils();
+        var declared = (DeclaredType) type.asType();
+        var getters = new LinkedHashMap<String, ExecutableElement>();
+        var setters = new LinkedHashMap<String, ExecutableElement>();
+
+        for (var method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            var modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                    || ((TypeElement) method.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object")) {
+                continue;
+            }
+
+            var name = method.getSimpleName().toString();
+            var signature = (ExecutableType) types.asMemberOf(declared, method);
+            var returnType = signature.getReturnType();
+            var parameters = signature.getParameterTypes();
+            if (parameters.isEmpty() && name.startsWith("get") && name.length() > 3 && returnType.getKind() != TypeKind.VOID) {
+                getters.put(propertyName(name.substring(3)), method);
+            } else if (parameters.isEmpty() && name.startsWith("is") && name.length() > 2 && returnType.getKind() == TypeKind.BOOLEAN) {
+                getters.put(propertyName(name.substring(2)), method);
+            } else if (parameters.size() == 1 && name.startsWith("set") && name.length() > 3) {
+                setters.put(propertyName(name.substring(3)), method);
+            }
+        }
+
+        known.addAll(getters.keySet());
+        known.addAll(setters.keySet());
+        for (var getter : getters.entrySet()) {
+            var setter = setters.get(getter.getKey());
+            if (setter == null) {
+                continue;
+            }
+            TypeMirror getterType = ((ExecutableType) types.asMemberOf(declared, getter.getValue())).getReturnType();
+            TypeMirror setterType = ((ExecutableType) types.asMemberOf(declared, setter)).getParameterTypes().get(0);
+            if (types.isSameType(getterType, setterType)) {
+                properties.put(getter.getKey(), new Property(getter.getValue().getSimpleName().toString(),
+                        setter.getSimpleName().toString()));
+            }
+        }
+    }
+
+    private void write(TypeElement type, Map<String, Property> properties, Set<String> ignored) throws IOException {
+        var elements = processingEnv.getElementUtils();
+        var packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        var binaryName = elements.getBinaryName(type).toString();
+        var simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                + GeneratedMerger.CLASS_SUFFIX;
+        var typeName = type.getQualifiedName().toString();
+        var generic = !type.getTypeParameters().isEmpty();
+
+        var file = processingEnv.getFiler().createSourceFile(
+                (packageName.isEmpty() ? "" : packageName + ".") + simpleName, type);
+        try (var out = new PrintWriter(file.openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+            if (generic) {
+                out.println("@SuppressWarnings({\"rawtypes\", \"unchecked\"})");
+            }
+            out.println("public final class " + simpleName + " implements " + GeneratedMerger.class.getName()
+                    + "<" + typeName + "> {");
+            out.println();
+            out.println("    @Override");
+            out.println("    public boolean merge(" + typeName + " existingEntity, " + typeName + " newEntity, String path) {");
+            out.println("        switch (path) {");
+            for (var name : ignored) {
+                out.println("            case \"" + name + "\":");
+                out.println("                // Ignored by @Patchable.");
+                out.println("                return true;");
+            }
+            for (var property : properties.entrySet()) {
+                if (ignored.contains(property.getKey())) {
+                    continue;
+                }
+                out.println("            case \"" + property.getKey() + "\":");
+                out.println("                existingEntity." + property.getValue().setter() + "(newEntity."
+                        + property.getValue().getter() + "());");
+                out.println("                return true;");
+            }
+            out.println("            default:");
+            out.println("                return false;");
+            out.println("        }");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    /**
+     * Derives a property name from the part of an accessor name after its prefix, following the JavaBeans rules.
+     */
+    private static String propertyName(String name) {
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(0)) && Character.isUpperCase(name.charAt(1))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private record Property(String getter, String setter) {
+    }
+}
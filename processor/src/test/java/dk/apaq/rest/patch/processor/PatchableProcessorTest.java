@@ -0,0 +1,104 @@
+package dk.apaq.rest.patch.processor;
+
+import dk.apaq.rest.patch.EntityMerger;
+import dk.apaq.rest.patch.GeneratedMerger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+public class PatchableProcessorTest {
+
+    private static final String PET = "package test;\n"
+            + "@dk.apaq.rest.patch.Patchable(ignore = \"id\")\n"
+            + "public class Pet {\n"
+            + "    private String id;\n"
+            + "    private String name;\n"
+            + "    private boolean vaccinated;\n"
+            + "    private int age;\n"
+            + "    public String getId() { return id; }\n"
+            + "    public void setId(String id) { this.id = id; }\n"
+            + "    public String getName() { return name; }\n"
+            + "    public void setName(String name) { this.name = name; }\n"
+            + "    public boolean isVaccinated() { return vaccinated; }\n"
+            + "    public void setVaccinated(boolean vaccinated) { this.vaccinated = vaccinated; }\n"
+            + "    public int getAge() { return age; }\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void testGeneratesMerger() throws Exception {
+        var output = folder.newFolder();
+        var diagnostics = compile(output, source("test.Pet", PET));
+        assertTrue(diagnostics.getDiagnostics().toString(), diagnostics.getDiagnostics().stream()
+                .noneMatch(d -> d.getKind() == Diagnostic.Kind.ERROR));
+
+        try (var loader = new URLClassLoader(new java.net.URL[]{output.toURI().toURL()}, getClass().getClassLoader())) {
+            var petClass = loader.loadClass("test.Pet");
+            var merger = (GeneratedMerger) loader.loadClass("test.Pet" + GeneratedMerger.CLASS_SUFFIX)
+                    .getDeclaredConstructor().newInstance();
+
+            var existing = petClass.getDeclaredConstructor().newInstance();
+            var patch = petClass.getDeclaredConstructor().newInstance();
+            petClass.getMethod("setId", String.class).invoke(patch, "2");
+            petClass.getMethod("setName", String.class).invoke(patch, "Bessie");
+            petClass.getMethod("setVaccinated", boolean.class).invoke(patch, true);
+
+            assertTrue(merger.merge(existing, patch, "name"));
+            assertTrue(merger.merge(existing, patch, "vaccinated"));
+            assertTrue(merger.merge(existing, patch, "id"));
+            assertFalse(merger.merge(existing, patch, "age"));
+            assertFalse(merger.merge(existing, patch, "child.name"));
+            assertEquals("Bessie", petClass.getMethod("getName").invoke(existing));
+            assertEquals(true, petClass.getMethod("isVaccinated").invoke(existing));
+            assertNull(petClass.getMethod("getId").invoke(existing));
+
+            // The merger is discovered by EntityMerger.
+            petClass.getMethod("setName", String.class).invoke(patch, "Bella");
+            new EntityMerger().mergeEntities(existing, patch, Arrays.asList("id", "name"));
+            assertEquals("Bella", petClass.getMethod("getName").invoke(existing));
+            assertNull(petClass.getMethod("getId").invoke(existing));
+        }
+    }
+
+    @Test
+    public void testUnknownIgnoredPropertyFails() throws Exception {
+        var diagnostics = compile(folder.newFolder(), source("test.Pet", PET.replace("ignore = \"id\"", "ignore = \"ident\"")));
+        assertTrue(diagnostics.getDiagnostics().stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.ERROR
+                && d.getMessage(null).contains("Unknown property 'ident'")));
+    }
+
+    private DiagnosticCollector<JavaFileObject> compile(File output, JavaFileObject... sources) {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        var options = List.of("-d", output.getPath(), "-classpath", System.getProperty("java.class.path"));
+        var task = compiler.getTask(null, null, diagnostics, options, null, Arrays.asList(sources));
+        task.setProcessors(List.of(new PatchableProcessor()));
+        task.call();
+        return diagnostics;
+    }
+
+    private static JavaFileObject source(String name, String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + name.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+}
@@ -0,0 +1,112 @@
+package dk.apaq.rest.patch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a batch merge in {@link EntityMerger}, holding one result per item in the order the items
+ * were given.
+ *
+ * @param <T> The type of the merged entities.
+ */
+public final class BatchMergeResult<T> {
+
+    /**
+     * The status of a single item in a batch.
+     */
+    public enum Status {
+        /** The item was merged. */
+        MERGED,
+        /** Merging the item failed; see {@link Item#getError()}. */
+        FAILED,
+        /** The item was not merged because the batch stopped after an earlier failure. */
+        SKIPPED
+    }
+
+    /**
+     * The result of a single item in a batch.
+     *
+     * @param <T> The type of the merged entity.
+     */
+    public static final class Item<T> {
+
+        private final int index;
+        private final T entity;
+        private final Status status;
+        private final RuntimeException error;
+
+        Item(int index, T entity, Status status, RuntimeException error) {
+            this.index = index;
+            this.entity = entity;
+            this.status = status;
+            this.error = error;
+        }
+
+        /**
+         * @return The position of the item in the batch.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return The existing entity of the item. It may be partially merged if the item failed.
+         */
+        public T getEntity() {
+            return entity;
+        }
+
+        /**
+         * @return The status of the item.
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return The error that made the item fail, or {@code null} if it did not fail.
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+    }
+
+    private final List<Item<T>> items;
+
+    BatchMergeResult(List<Item<T>> items) {
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    /**
+     * @return The results of all items, in batch order.
+     */
+    public List<Item<T>> getItems() {
+        return items;
+    }
+
+    /**
+     * @return The results of the items that failed, in batch order.
+     */
+    public List<Item<T>> getFailures() {
+        var failures = new ArrayList<Item<T>>();
+        for (var item : items) {
+            if (item.status == Status.FAILED) {
+                failures.add(item);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return {@code true} if every item was merged.
+     */
+    public boolean isSuccessful() {
+        for (var item : items) {
+            if (item.status != Status.MERGED) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,539 @@
+package dk.apaq.rest.patch;
+
+import dk.apaq.rest.patch.property.DirtyFieldTree;
+import dk.apaq.rest.patch.property.PropertyPath;
+import org.apache.commons.beanutils.NestedNullException;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Merges dirty fields into a copy of an entity instead of into the entity itself, for
+ * {@link EntityMerger#mergeCopy(Object, Object, Iterable)}. Only the objects on the way to a dirty field are copied.
+ * Everything else is shared between the original and the copy, and the original is never modified.
+ *
+ * How an object is copied depends on its class. Records are rebuilt through their canonical constructor, classes
+ * with a {@code toBuilder()} method through their builder, and other beans through their public no-argument
+ * constructor, copying every instance field so that state without a setter is kept, and then calling the setters of
+ * the changed properties. Lists, arrays and maps on the way are copied as well, into an
+ * {@link ArrayList}, an array or a {@link LinkedHashMap} ({@link TreeMap} for sorted maps).
+ */
+final class EntityCopier {
+
+    // Logger for logging errors or information during the copy.
+    private static final Logger LOG = LoggerFactory.getLogger(EntityCopier.class);
+
+    private static final ClassValue<Shape> SHAPES = new ClassValue<>() {
+        @Override
+        protected Shape computeValue(Class<?> type) {
+            return Shape.of(type);
+        }
+    };
+
+    private EntityCopier() {
+    }
+
+    /**
+     * Returns a copy of the existing entity with the dirty fields of the tree taken from the new entity, or the
+     * existing entity itself if no value changes. Fields that do not apply are added to the invalid fields and
+     * left out of the copy.
+     */
+    static Object copy(Object existing, Object incoming, DirtyFieldTree.Node root,
+                       List<InvalidFieldsException.InvalidField> invalid) {
+        return copyNode(existing.getClass(), existing, incoming, root, invalid);
+    }
+
+    private static Object copyNode(Class<?> entityType, Object existing, Object incoming, DirtyFieldTree.Node node,
+                                   List<InvalidFieldsException.InvalidField> invalid) {
+        var shape = SHAPES.get(existing.getClass());
+        var incomingShape = SHAPES.get(incoming.getClass());
+        Map<String, Object> changes = null;
+        // The properties whose new value is a list, array or map copied by this call, which can be changed in place.
+        Set<String> copied = null;
+
+        for (var child : node.getChildren()) {
+            var segment = child.getSegment();
+            var name = segment.name();
+            if (GeneratedMergers.isIgnored(entityType, child.getPath())) {
+                continue;
+            }
+            var problem = incomingShape.readProblem(name);
+            if (problem == null) {
+                problem = shape.readProblem(name);
+            }
+            if (problem != null) {
+                addInvalid(child, problem, invalid);
+                continue;
+            }
+
+            try {
+                var current = changes != null && changes.containsKey(name) ? changes.get(name) : shape.get(existing, name);
+                var incomingValue = incomingShape.get(incoming, name);
+                Object next;
+                if (segment.kind() == PropertyPath.Kind.SIMPLE) {
+                    next = child.isDirty() ? incomingValue : copyValue(entityType, current, incomingValue, existing, incoming, child, invalid);
+                } else {
+                    var inPlace = copied != null && copied.contains(name);
+                    next = copyElement(entityType, current, incomingValue, existing, child, inPlace, invalid);
+                    if (next != current) {
+                        if (copied == null) {
+                            copied = new HashSet<>(4);
+                        }
+                        copied.add(name);
+                    }
+                }
+                if (!isSame(next, current)) {
+                    // Every changed property is written to the copy, including beans on the way to a dirty field.
+                    problem = shape.writeProblem(name);
+                    if (problem != null) {
+                        addInvalid(child, problem, invalid);
+                        continue;
+                    }
+                    if (changes == null) {
+                        changes = new HashMap<>(8);
+                    }
+                    changes.put(name, next);
+                }
+            } catch (IndexOutOfBoundsException ex) {
+                addInvalid(child, "Index " + segment.index() + " of '" + name + "' is out of bounds", invalid);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw failed(child.getPath(), ex);
+            }
+        }
+
+        if (changes == null || !invalid.isEmpty()) {
+            return existing;
+        }
+        try {
+            return shape.copy(existing, changes);
+        } catch (ReflectiveOperationException ex) {
+            throw failed(node.getSegment() == null ? changes.keySet().iterator().next() : node.getPath(), ex);
+        }
+    }
+
+    /**
+     * Copies the value of a property that is not dirty itself but has dirty fields below it.
+     */
+    private static Object copyValue(Class<?> entityType, Object current, Object incoming, Object existingBean,
+                                    Object incomingBean, DirtyFieldTree.Node node,
+                                    List<InvalidFieldsException.InvalidField> invalid) {
+        if (current == null || incoming == null) {
+            throw new NestedNullException("Null property value for '" + node.getSegment().expression()
+                    + "' on bean class '" + (incoming == null ? incomingBean : existingBean).getClass() + "'");
+        }
+        return copyNode(entityType, current, incoming, node, invalid);
+    }
+
+    /**
+     * Returns the list, array or map with the element selected by the node replaced, copying it unless it has been
+     * copied already by the same bean.
+     */
+    private static Object copyElement(Class<?> entityType, Object container, Object incomingContainer,
+                                      Object existingBean, DirtyFieldTree.Node node, boolean inPlace,
+                                      List<InvalidFieldsException.InvalidField> invalid)
+            throws IllegalAccessException, InvocationTargetException {
+        var segment = node.getSegment();
+        if (container == null || incomingContainer == null) {
+            throw new NestedNullException("Null property value for '" + segment.expression() + "' on bean class '"
+                    + existingBean.getClass() + "'");
+        }
+        if (!isContainer(container, segment) || !isContainer(incomingContainer, segment)) {
+            addInvalid(node, "The property '" + segment.name() + "' is not a "
+                    + (segment.kind() == PropertyPath.Kind.MAPPED ? "map" : "list or array"), invalid);
+            return container;
+        }
+
+        int index = indexOf(container, segment);
+        var element = index < 0 && segment.kind() != PropertyPath.Kind.MAPPED ? null : element(container, segment, index);
+        var incomingElement = element(incomingContainer, segment, indexOf(incomingContainer, segment));
+        Object next;
+        if (node.isDirty()) {
+            next = incomingElement;
+        } else if (element == null && segment.kind() == PropertyPath.Kind.KEYED && incomingElement != null) {
+            // An element missing from the existing collection is added as a whole.
+            next = incomingElement;
+        } else {
+            next = copyValue(entityType, element, incomingElement, container, incomingContainer, node, invalid);
+        }
+        if (isSame(next, element) && (next == null || index >= 0 || segment.kind() == PropertyPath.Kind.MAPPED)) {
+            return container;
+        }
+        return withElement(inPlace ? container : copyContainer(container), segment, index, next);
+    }
+
+    /**
+     * Tells whether a new value can be left out of the copy. Beans are only the same if they are identical, as their
+     * equals method may only compare identities.
+     */
+    private static boolean isSame(Object value, Object current) {
+        if (value == current) {
+            return true;
+        }
+        return value != null && (value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum) && value.equals(current);
+    }
+
+    private static boolean isContainer(Object value, PropertyPath.Segment segment) {
+        return switch (segment.kind()) {
+            case MAPPED -> value instanceof Map;
+            case INDEXED -> value instanceof List || value.getClass().isArray();
+            default -> value instanceof List;
+        };
+    }
+
+    /**
+     * Returns the position of the element selected by the segment, or -1 for a keyed element that is missing.
+     */
+    private static int indexOf(Object container, PropertyPath.Segment segment)
+            throws IllegalAccessException, InvocationTargetException {
+        if (segment.kind() == PropertyPath.Kind.INDEXED) {
+            return segment.index();
+        }
+        if (segment.kind() == PropertyPath.Kind.KEYED) {
+            var list = (List<?>) container;
+            for (int i = 0; i < list.size(); i++) {
+                var element = list.get(i);
+                if (element != null) {
+                    var key = SHAPES.get(element.getClass()).get(element, segment.keyProperty());
+                    if (key != null && segment.key().equals(key.toString())) {
+                        return i;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static Object element(Object container, PropertyPath.Segment segment, int index) {
+        if (container instanceof Map<?, ?> map) {
+            return map.get(segment.key());
+        }
+        if (index < 0) {
+            return null;
+        }
+        if (container instanceof List<?> list) {
+            return list.get(index);
+        }
+        return Array.get(container, index);
+    }
+
+    private static Object copyContainer(Object container) {
+        if (container instanceof SortedMap<?, ?> map) {
+            return new TreeMap<>(map);
+        }
+        if (container instanceof Map<?, ?> map) {
+            return new LinkedHashMap<>(map);
+        }
+        if (container instanceof List<?> list) {
+            return new ArrayList<>(list);
+        }
+        var length = Array.getLength(container);
+        var copy = Array.newInstance(container.getClass().getComponentType(), length);
+        System.arraycopy(container, 0, copy, 0, length);
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object withElement(Object container, PropertyPath.Segment segment, int index, Object value) {
+        if (container instanceof Map<?, ?> map) {
+            ((Map<String, Object>) map).put(segment.key(), value);
+        } else if (container instanceof List<?> list) {
+            if (index < 0) {
+                ((List<Object>) list).add(value);
+            } else {
+                ((List<Object>) list).set(index, value);
+            }
+        } else {
+            Array.set(container, index, value);
+        }
+        return container;
+    }
+
+    /**
+     * Adds the dirty fields at and below the node to the invalid fields.
+     */
+    private static void addInvalid(DirtyFieldTree.Node node, String reason,
+                                   List<InvalidFieldsException.InvalidField> invalid) {
+        if (node.isDirty()) {
+            invalid.add(new InvalidFieldsException.InvalidField(node.getPath(), reason));
+        }
+        for (var child : node.getChildren()) {
+            addInvalid(child, reason, invalid);
+        }
+    }
+
+    private static IllegalArgumentException failed(String path, ReflectiveOperationException ex) {
+        LOG.debug("Error occurred while copying entities.", ex);
+        return new IllegalArgumentException("The parameter '" + path + "' does not apply to this resource.");
+    }
+
+    /**
+     * How the properties of a class are read and how its instances are copied.
+     */
+    private abstract static class Shape {
+
+        final Class<?> type;
+
+        // The read method of each property.
+        final Map<String, Method> readers;
+
+        Shape(Class<?> type, Map<String, Method> readers) {
+            this.type = type;
+            this.readers = readers;
+        }
+
+        static Shape of(Class<?> type) {
+            var readers = new HashMap<String, Method>();
+            for (var descriptor : PropertyUtils.getPropertyDescriptors(type)) {
+                if (descriptor.getReadMethod() != null && !"class".equals(descriptor.getName())) {
+                    readers.put(descriptor.getName(), descriptor.getReadMethod());
+                }
+            }
+            if (type.isRecord()) {
+                return new RecordShape(type, readers);
+            }
+            var builder = BuilderShape.of(type, readers);
+            if (builder != null) {
+                return builder;
+            }
+            try {
+                var constructor = type.getConstructor();
+                if (!Modifier.isAbstract(type.getModifiers())) {
+                    return new BeanShape(type, readers, constructor);
+                }
+            } catch (NoSuchMethodException ex) {
+                // Handled below.
+            } catch (RuntimeException ex) {
+                // The fields cannot be accessed, e.g. in a module that is not open, so a copy would lose state.
+                LOG.debug("Cannot copy the fields of {}.", type.getName(), ex);
+            }
+            return new Shape(type, readers) {
+                @Override
+                String writeProblem(String name) {
+                    return "Instances of " + type + " cannot be copied";
+                }
+
+                @Override
+                Object copy(Object bean, Map<String, Object> changes) {
+                    throw new IllegalStateException("Instances of " + type + " cannot be copied; changes to them"
+                            + " are reported as invalid fields by writeProblem before any copy is made.");
+                }
+            };
+        }
+
+        /**
+         * @return Why the property cannot be read, or {@code null} if it can.
+         */
+        String readProblem(String name) {
+            return readers.containsKey(name) ? null : "Unknown property '" + name + "' on " + type;
+        }
+
+        /**
+         * @return Why the property cannot be changed in a copy, or {@code null} if it can.
+         */
+        abstract String writeProblem(String name);
+
+        Object get(Object bean, String name) throws IllegalAccessException, InvocationTargetException {
+            return readers.get(name).invoke(bean);
+        }
+
+        /**
+         * @return A copy of the bean with the given property values.
+         */
+        abstract Object copy(Object bean, Map<String, Object> changes) throws ReflectiveOperationException;
+    }
+
+    /**
+     * Copies records through their canonical constructor.
+     */
+    private static final class RecordShape extends Shape {
+
+        private final String[] names;
+        private final Constructor<?> constructor;
+
+        RecordShape(Class<?> type, Map<String, Method> readers) {
+            super(type, readers);
+            var components = type.getRecordComponents();
+            names = new String[components.length];
+            var types = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                names[i] = components[i].getName();
+                types[i] = components[i].getType();
+                readers.put(names[i], components[i].getAccessor());
+            }
+            try {
+                constructor = type.getDeclaredConstructor(types);
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalStateException("The record " + type + " has no canonical constructor", ex);
+            }
+        }
+
+        @Override
+        String writeProblem(String name) {
+            for (var component : names) {
+                if (component.equals(name)) {
+                    return null;
+                }
+            }
+            return "The property '" + name + "' is not a component of " + type;
+        }
+
+        @Override
+        Object copy(Object bean, Map<String, Object> changes) throws ReflectiveOperationException {
+            var arguments = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                arguments[i] = changes.containsKey(names[i]) ? changes.get(names[i]) : get(bean, names[i]);
+            }
+            return constructor.newInstance(arguments);
+        }
+    }
+
+    /**
+     * Copies immutable classes through the builder returned by their {@code toBuilder()} method. A property is
+     * set on the builder through a one-argument method named after it, e.g. {@code name(..)}, {@code withName(..)}
+     * or {@code setName(..)}.
+     */
+    private static final class BuilderShape extends Shape {
+
+        private final Method toBuilder;
+        private final Method build;
+        private final Map<String, Method> setters;
+
+        private BuilderShape(Class<?> type, Map<String, Method> readers, Method toBuilder, Method build,
+                             Map<String, Method> setters) {
+            super(type, readers);
+            this.toBuilder = toBuilder;
+            this.build = build;
+            this.setters = setters;
+        }
+
+        static BuilderShape of(Class<?> type, Map<String, Method> readers) {
+            Method toBuilder;
+            Method build;
+            try {
+                toBuilder = type.getMethod("toBuilder");
+                build = toBuilder.getReturnType().getMethod("build");
+            } catch (NoSuchMethodException ex) {
+                return null;
+            }
+            if (Modifier.isStatic(toBuilder.getModifiers()) || !type.isAssignableFrom(build.getReturnType())) {
+                return null;
+            }
+            var setters = new HashMap<String, Method>();
+            for (var method : toBuilder.getReturnType().getMethods()) {
+                if (method.getParameterCount() != 1 || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                var name = propertyName(method.getName());
+                setters.putIfAbsent(name, method);
+                if (!readers.containsKey(name)) {
+                    // Immutable classes often read their properties through methods named after them, e.g. name().
+                    try {
+                        var reader = type.getMethod(name);
+                        if (reader.getReturnType() != void.class && !Modifier.isStatic(reader.getModifiers())) {
+                            readers.put(name, reader);
+                        }
+                    } catch (NoSuchMethodException ex) {
+                        // The property cannot be read, which is reported when it is merged.
+                    }
+                }
+            }
+            return new BuilderShape(type, readers, toBuilder, build, setters);
+        }
+
+        private static String propertyName(String methodName) {
+            for (var prefix : new String[] {"with", "set"}) {
+                if (methodName.length() > prefix.length() && methodName.startsWith(prefix)
+                        && Character.isUpperCase(methodName.charAt(prefix.length()))) {
+                    return Character.toLowerCase(methodName.charAt(prefix.length()))
+                            + methodName.substring(prefix.length() + 1);
+                }
+            }
+            return methodName;
+        }
+
+        @Override
+        String writeProblem(String name) {
+            return setters.containsKey(name) ? null : "The property '" + name + "' cannot be set on the builder of " + type;
+        }
+
+        @Override
+        Object copy(Object bean, Map<String, Object> changes) throws ReflectiveOperationException {
+            var builder = toBuilder.invoke(bean);
+            for (var change : changes.entrySet()) {
+                var result = setters.get(change.getKey()).invoke(builder, change.getValue());
+                if (result != null && toBuilder.getReturnType().isInstance(result)) {
+                    // Some builders return a new builder from every call rather than themselves.
+                    builder = result;
+                }
+            }
+            return build.invoke(builder);
+        }
+    }
+
+    /**
+     * Copies beans through their public no-argument constructor, copying every instance field and then writing the
+     * changed properties through their setters.
+     */
+    private static final class BeanShape extends Shape {
+
+        private final Constructor<?> constructor;
+
+        // The instance fields of the class and its superclasses.
+        private final List<Field> fields = new ArrayList<>();
+
+        // The write method of each property that can also be read.
+        private final Map<String, Method> writers = new LinkedHashMap<>();
+
+        BeanShape(Class<?> type, Map<String, Method> readers, Constructor<?> constructor) {
+            super(type, readers);
+            this.constructor = constructor;
+            for (var descriptor : PropertyUtils.getPropertyDescriptors(type)) {
+                if (descriptor.getWriteMethod() != null && readers.containsKey(descriptor.getName())) {
+                    writers.put(descriptor.getName(), descriptor.getWriteMethod());
+                }
+            }
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (var field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+        }
+
+        @Override
+        String writeProblem(String name) {
+            return writers.containsKey(name) ? null : "The property '" + name + "' of " + type + " is read-only";
+        }
+
+        @Override
+        Object copy(Object bean, Map<String, Object> changes) throws ReflectiveOperationException {
+            var copy = constructor.newInstance();
+            for (var field : fields) {
+                field.set(copy, field.get(bean));
+            }
+            for (var change : changes.entrySet()) {
+                writers.get(change.getKey()).invoke(copy, change.getValue());
+            }
+            return copy;
+        }
+    }
+}
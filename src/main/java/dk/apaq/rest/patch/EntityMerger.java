@@ -1,18 +1,53 @@
 package dk.apaq.rest.patch;
 
-import org.apache.commons.beanutils.PropertyUtils;
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import dk.apaq.rest.patch.property.DirtyFieldTree;
+import dk.apaq.rest.patch.property.DirtyFields;
+import dk.apaq.rest.patch.property.PropertyAccessor;
+import dk.apaq.rest.patch.property.PropertyAccessorCache;
+import dk.apaq.rest.patch.property.PropertyPath;
+import org.apache.commons.beanutils.NestedNullException;
 import org.apache.commons.lang.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
 /**
  * A utility class for merging two entities of the same type. This class allows you to specify
  * which fields should be updated (dirty fields) while preserving others. Fields can also be
- * ignored during the merge process.
+ * ignored during the merge process, either by name or through a precompiled {@link FieldFilter}.
+ *
+ * Property paths are compiled once per entity class into cached accessors (see {@link PropertyAccessorCache}),
+ * so repeated merges of the same fields do not go through reflective property lookups. The accessors can be
+ * compiled ahead of the first merge through {@link #getPlanRegistry()}. For entity classes
+ * annotated with {@link Patchable} and processed by {@code rest-patch-processor}, simple properties are copied by
+ * the {@link GeneratedMerger} instead, which calls the getters and setters directly.
+ *
+ * The {@code mergeChanges} methods only write properties whose new value differs from the existing one and
+ * report what changed in a {@link MergeResult}, so callers can skip persistence when a patch changes nothing.
+ *
+ * Elements of collections can be patched in place through keyed paths such as {@code lines[id=42].quantity},
+ * which merge into the existing element with that key. When merging a {@link DirtyFieldTree}, an element that
+ * does not exist yet is added to the collection as a whole.
+ *
+ * Dirty fields are checked against the entity class before anything is merged. Fields that do not apply are
+ * reported together in an {@link InvalidFieldsException} and only logged at debug level, as they are usually
+ * caused by clients rather than by the server.
+ *
+ * Instances are thread-safe and meant to be shared, e.g. one per entity type for all request threads. A merger
+ * holds no state of its own once constructed, and its caches of compiled accessors and generated mergers are
+ * looked up without locking, so concurrent merges of already seen fields do not contend with each other.
  *
  * @param <T> The type of the entities to be merged.
  */
@@ -21,15 +56,21 @@ public class EntityMerger<T> {
     // Logger for logging errors or information during the merge process.
     private static final Logger LOG = LoggerFactory.getLogger(EntityMerger.class);
 
-    // A list of fields that should be ignored by default during the merge process.
-    private final List<String> defaultIgnoredFields;
+    // Per-request ignored lists longer than this are copied into a hash set before merging.
+    private static final int IGNORED_FIELDS_HASH_THRESHOLD = 8;
+
+    // The filter deciding which fields may be merged by default, compiled once at construction.
+    private final FieldFilter fieldFilter;
+
+    // The cache of compiled property accessors used for reading and writing fields.
+    private final PropertyAccessorCache accessors = PropertyAccessorCache.getDefault();
 
     /**
      * Default constructor that initializes with no ignored fields.
      * By default, no fields are ignored during the merge process unless explicitly specified.
      */
     public EntityMerger() {
-        this.defaultIgnoredFields = Collections.emptyList();
+        this.fieldFilter = FieldFilter.none();
     }
 
     /**
@@ -39,10 +80,18 @@ public class EntityMerger<T> {
      *                             If null, an empty list will be used.
      */
     public EntityMerger(List<String> defaultIgnoredFields) {
-        if (defaultIgnoredFields == null) {
-            defaultIgnoredFields = Collections.emptyList();
-        }
-        this.defaultIgnoredFields = defaultIgnoredFields;
+        this.fieldFilter = FieldFilter.deny(defaultIgnoredFields);
+    }
+
+    /**
+     * Constructor that accepts a precompiled filter deciding which fields may be merged. This allows wildcard
+     * rules such as {@code audit.*} and allow-lists in addition to plain ignored field names.
+     *
+     * @param fieldFilter The filter applied to every merge (must not be null).
+     */
+    public EntityMerger(FieldFilter fieldFilter) {
+        Validate.notNull(fieldFilter, "fieldFilter must be specified.");
+        this.fieldFilter = fieldFilter;
     }
 
     /**
@@ -80,19 +129,668 @@ public class EntityMerger<T> {
         Validate.notNull(dirtyFields, "dirtyFields must be specified.");
         Validate.notNull(ignoredFields, "ignoredFields must be specified.");
 
-        // Iterate over the dirtyFields and apply changes from newEntity to existingEntity.
-        dirtyFields.iterator().forEachRemaining(item -> {
-            if (!defaultIgnoredFields.contains(item) && !ignoredFields.contains(item)) {
-                try {
-                    // Copy the property from newEntity to existingEntity using reflection.
-                    PropertyUtils.setProperty(existingEntity, item, PropertyUtils.getProperty(newEntity, item));
-                } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException | IndexOutOfBoundsException ex) {
-                    LOG.error("Error occurred while merging entities.", ex);
-                    // Throw a specific error if a field cannot be merged.
-                    throw new IllegalArgumentException("The parameter '" + item + "' does not apply to this resource.");
+        // Long ignore lists are hashed once so each dirty field is checked in constant time.
+        Collection<String> ignored = ignoredFields.size() > IGNORED_FIELDS_HASH_THRESHOLD
+                ? new HashSet<>(ignoredFields) : ignoredFields;
+        return merge(existingEntity, newEntity, dirtyFields, item -> !ignored.contains(item), null, null);
+    }
+
+    /**
+     * Merges the specified fields from the new entity into the existing entity, while considering both the
+     * default field filter and an additional filter for this merge only.
+     *
+     * @param existingEntity The entity to be updated (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The list of field names that should be updated (must not be null).
+     * @param fieldFilter    A filter that fields must pass in addition to the default filter (must not be null).
+     * @return The updated existing entity with changes applied.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    public T mergeEntities(T existingEntity, T newEntity, Iterable<String> dirtyFields, FieldFilter fieldFilter) {
+        Validate.notNull(existingEntity, "existingEntity must be specified.");
+        Validate.notNull(newEntity, "newEntity must be specified.");
+        Validate.notNull(dirtyFields, "dirtyFields must be specified.");
+        Validate.notNull(fieldFilter, "fieldFilter must be specified.");
+        return merge(existingEntity, newEntity, dirtyFields, fieldFilter::isAllowed, null, null);
+    }
+
+    /**
+     * Merges the fields held by the given tree from the new entity into the existing entity. Each shared prefix in
+     * the tree is resolved once on both entities, rather than once per dirty field.
+     *
+     * @param existingEntity The entity to be updated (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The tree of fields that should be updated (must not be null).
+     * @return The updated existing entity with changes applied.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    public T mergeEntities(T existingEntity, T newEntity, DirtyFieldTree dirtyFields) {
+        return this.mergeEntities(existingEntity, newEntity, dirtyFields, FieldFilter.none());
+    }
+
+    /**
+     * Merges the fields held by the given tree from the new entity into the existing entity, while considering
+     * both the default field filter and an additional filter for this merge only.
+     *
+     * @param existingEntity The entity to be updated (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The tree of fields that should be updated (must not be null).
+     * @param fieldFilter    A filter that fields must pass in addition to the default filter (must not be null).
+     * @return The updated existing entity with changes applied.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    public T mergeEntities(T existingEntity, T newEntity, DirtyFieldTree dirtyFields, FieldFilter fieldFilter) {
+        Validate.notNull(existingEntity, "existingEntity must be specified.");
+        Validate.notNull(newEntity, "newEntity must be specified.");
+        Validate.notNull(dirtyFields, "dirtyFields must be specified.");
+        Validate.notNull(fieldFilter, "fieldFilter must be specified.");
+        mergeTree(existingEntity, newEntity, dirtyFields, fieldFilter, true, null, null);
+        return existingEntity;
+    }
+
+    /**
+     * Merges the fields of the given view from the new entity into the existing entity. If the default filter of
+     * this merger is an allow-list, only the allowed fields are looked up in the view.
+     *
+     * @param existingEntity The entity to be updated (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The view of the fields that should be updated (must not be null).
+     * @return The updated existing entity with changes applied.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    public T mergeEntities(T existingEntity, T newEntity, DirtyFields dirtyFields) {
+        return this.mergeEntities(existingEntity, newEntity, dirtyFields, FieldFilter.none());
+    }
+
+    /**
+     * Merges the fields of the given view from the new entity into the existing entity, while considering both the
+     * default field filter and an additional filter for this merge only. If either filter is an allow-list, only
+     * the fields it allows are looked up in the view, so the merge costs in proportion to the allow-list rather than
+     * to the request. Otherwise every field of the view is merged as with {@link #mergeEntities(Object, Object,
+     * Iterable, FieldFilter)}.
+     *
+     * @param existingEntity The entity to be updated (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The view of the fields that should be updated (must not be null).
+     * @param fieldFilter    A filter that fields must pass in addition to the default filter (must not be null).
+     * @return The updated existing entity with changes applied.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    public T mergeEntities(T existingEntity, T newEntity, DirtyFields dirtyFields, FieldFilter fieldFilter) {
+        Validate.notNull(existingEntity, "existingEntity must be specified.");
+        Validate.notNull(newEntity, "newEntity must be specified.");
+        Validate.notNull(dirtyFields, "dirtyFields must be specified.");
+        Validate.notNull(fieldFilter, "fieldFilter must be specified.");
+        if (dirtyFields instanceof DirtyFieldTree tree) {
+            return mergeEntities(existingEntity, newEntity, tree, fieldFilter);
+        }
+
+        // Look up the allowed fields rather than walking every field of the view.
+        Iterable<String> fields = dirtyFields;
+        if (fieldFilter.isAllowList()) {
+            fields = fieldFilter.select(dirtyFields);
+        } else if (this.fieldFilter.isAllowList()) {
+            fields = this.fieldFilter.select(dirtyFields);
+        }
+        return merge(existingEntity, newEntity, fields, fieldFilter::isAllowed, null, null);
+    }
+
+    /**
+     * Merges the specified fields from the new entity into a copy of the existing entity, which is left untouched.
+     * Only the objects on the way to a dirty field are copied; every other object is shared between the existing
+     * entity and the result, so readers holding the existing entity never see a partial merge and the graph does not
+     * have to be cloned up front. Default ignored fields are considered.
+     *
+     * Records are copied through their canonical constructor, classes with a {@code toBuilder()} method through
+     * their builder and other beans through their public no-argument constructor and a copy of their fields.
+     * Generated mergers are not used.
+     *
+     * @param existingEntity The entity to merge into a copy of (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The fields that should be updated, e.g. a {@link DirtyFieldTree} (must not be null).
+     * @return A copy of the existing entity with the changes applied, or the existing entity itself if the patch
+     * changes nothing.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    public T mergeCopy(T existingEntity, T newEntity, Iterable<String> dirtyFields) {
+        return this.mergeCopy(existingEntity, newEntity, dirtyFields, FieldFilter.none());
+    }
+
+    /**
+     * Merges the specified fields from the new entity into a copy of the existing entity, while considering both
+     * the default field filter and an additional filter for this merge only. See
+     * {@link #mergeCopy(Object, Object, Iterable)}.
+     *
+     * @param existingEntity The entity to merge into a copy of (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The fields that should be updated, e.g. a {@link DirtyFieldTree} (must not be null).
+     * @param fieldFilter    A filter that fields must pass in addition to the default filter (must not be null).
+     * @return A copy of the existing entity with the changes applied, or the existing entity itself if the patch
+     * changes nothing.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    @SuppressWarnings("unchecked")
+    public T mergeCopy(T existingEntity, T newEntity, Iterable<String> dirtyFields, FieldFilter fieldFilter) {
+        Validate.notNull(existingEntity, "existingEntity must be specified.");
+        Validate.notNull(newEntity, "newEntity must be specified.");
+        Validate.notNull(dirtyFields, "dirtyFields must be specified.");
+        Validate.notNull(fieldFilter, "fieldFilter must be specified.");
+        var instrumentation = PatchInstrumentation.get();
+        long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+
+        // The copy is made along a tree of the allowed fields, so each shared prefix is copied once.
+        var invalid = new ArrayList<InvalidFieldsException.InvalidField>();
+        var plan = DirtyFieldTree.builder();
+        int count = 0;
+        for (var item : dirtyFields) {
+            count++;
+            if (!this.fieldFilter.isAllowed(item) || !fieldFilter.isAllowed(item)) {
+                continue;
+            }
+            try {
+                plan.add(item);
+            } catch (IllegalArgumentException ex) {
+                // The path is malformed.
+                invalid.add(new InvalidFieldsException.InvalidField(item, ex.getMessage()));
+            }
+        }
+        var result = EntityCopier.copy(existingEntity, newEntity, plan.build().getRoot(), invalid);
+        if (!invalid.isEmpty()) {
+            throw rejected(existingEntity.getClass(), invalid, instrumentation);
+        }
+        if (instrumentation.isEnabled()) {
+            instrumentation.mergeCompleted(existingEntity.getClass(), count, System.nanoTime() - start);
+        }
+        return (T) result;
+    }
+
+    /**
+     * Merges the specified fields from the new entity into the existing entity, skipping fields whose new value
+     * equals the existing one according to {@link ValueEquality#DEFAULT}.
+     *
+     * @param existingEntity The entity to be updated (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The list of field names that should be updated (must not be null).
+     * @return The result listing the fields that were changed.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    public MergeResult<T> mergeChanges(T existingEntity, T newEntity, Iterable<String> dirtyFields) {
+        return this.mergeChanges(existingEntity, newEntity, dirtyFields, ValueEquality.DEFAULT);
+    }
+
+    /**
+     * Merges the specified fields from the new entity into the existing entity, skipping fields whose new value
+     * equals the existing one according to the given equality.
+     *
+     * @param existingEntity The entity to be updated (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The list of field names that should be updated (must not be null).
+     * @param equality       Decides whether a new value equals the existing one (must not be null).
+     * @return The result listing the fields that were changed.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    public MergeResult<T> mergeChanges(T existingEntity, T newEntity, Iterable<String> dirtyFields,
+                                       ValueEquality equality) {
+        Validate.notNull(existingEntity, "existingEntity must be specified.");
+        Validate.notNull(newEntity, "newEntity must be specified.");
+        Validate.notNull(dirtyFields, "dirtyFields must be specified.");
+        Validate.notNull(equality, "equality must be specified.");
+        var changes = new ArrayList<MergeResult.Change>();
+        merge(existingEntity, newEntity, dirtyFields, item -> true, equality, changes);
+        return new MergeResult<>(existingEntity, changes);
+    }
+
+    /**
+     * Merges the fields held by the given tree from the new entity into the existing entity, skipping fields whose
+     * new value equals the existing one according to the given equality. A dirty field is compared as a whole,
+     * including any dirty fields below it.
+     *
+     * @param existingEntity The entity to be updated (must not be null).
+     * @param newEntity      The entity containing updated values (must not be null).
+     * @param dirtyFields    The tree of fields that should be updated (must not be null).
+     * @param equality       Decides whether a new value equals the existing one (must not be null).
+     * @return The result listing the fields that were changed.
+     * @throws IllegalArgumentException If any specified field cannot be updated or a null entity is provided.
+     */
+    public MergeResult<T> mergeChanges(T existingEntity, T newEntity, DirtyFieldTree dirtyFields,
+                                       ValueEquality equality) {
+        Validate.notNull(existingEntity, "existingEntity must be specified.");
+        Validate.notNull(newEntity, "newEntity must be specified.");
+        Validate.notNull(dirtyFields, "dirtyFields must be specified.");
+        Validate.notNull(equality, "equality must be specified.");
+        var changes = new ArrayList<MergeResult.Change>();
+        mergeTree(existingEntity, newEntity, dirtyFields, FieldFilter.none(), true, equality, changes);
+        return new MergeResult<>(existingEntity, changes);
+    }
+
+    /**
+     * Merges the given fields for every pair in the batch, sequentially, collecting failures per item.
+     *
+     * @param pairs       The pairs of existing and new entities to merge (must not be null).
+     * @param dirtyFields The list of field names that should be updated for every pair (must not be null).
+     * @return The result of each item, in batch order.
+     * @throws IllegalArgumentException If a dirty field is malformed.
+     */
+    public BatchMergeResult<T> mergeAll(List<MergePair<T>> pairs, Iterable<String> dirtyFields) {
+        return this.mergeAll(pairs, dirtyFields, MergeFailurePolicy.COLLECT, null);
+    }
+
+    /**
+     * Merges the given fields for every pair in the batch. The fields are filtered and compiled into a plan once
+     * for the whole batch. A failing item does not throw; it is reported in the result according to the failure
+     * policy.
+     *
+     * @param pairs         The pairs of existing and new entities to merge (must not be null).
+     * @param dirtyFields   The list of field names that should be updated for every pair (must not be null).
+     * @param failurePolicy Whether to stop after the first failure or merge every item (must not be null).
+     * @param executor      The executor to fan the batch out on, or {@code null} to merge in the calling thread.
+     * @return The result of each item, in batch order.
+     * @throws IllegalArgumentException If a dirty field is malformed.
+     */
+    public BatchMergeResult<T> mergeAll(List<MergePair<T>> pairs, Iterable<String> dirtyFields,
+                                        MergeFailurePolicy failurePolicy, Executor executor) {
+        Validate.notNull(pairs, "pairs must be specified.");
+        Validate.notNull(dirtyFields, "dirtyFields must be specified.");
+        Validate.notNull(failurePolicy, "failurePolicy must be specified.");
+
+        var plan = plan(dirtyFields);
+        return runBatch(pairs.size(), index -> {
+            var pair = pairs.get(index);
+            Validate.notNull(pair, "pair must be specified.");
+            return mergePlan(pair.existingEntity(), pair.newEntity(), plan);
+        }, index -> pairs.get(index) == null ? null : pairs.get(index).existingEntity(), failurePolicy, executor);
+    }
+
+    /**
+     * Merges the given fields from one new entity into every existing entity in the batch. The fields are filtered
+     * and compiled into a plan once for the whole batch. A failing item does not throw; it is reported in the
+     * result according to the failure policy.
+     *
+     * @param existingEntities The entities to be updated (must not be null).
+     * @param newEntity        The entity containing updated values (must not be null).
+     * @param dirtyFields      The list of field names that should be updated (must not be null).
+     * @param failurePolicy    Whether to stop after the first failure or merge every item (must not be null).
+     * @param executor         The executor to fan the batch out on, or {@code null} to merge in the calling thread.
+     * @return The result of each item, in batch order.
+     * @throws IllegalArgumentException If a dirty field is malformed.
+     */
+    public BatchMergeResult<T> mergeIntoAll(List<T> existingEntities, T newEntity, Iterable<String> dirtyFields,
+                                            MergeFailurePolicy failurePolicy, Executor executor) {
+        Validate.notNull(existingEntities, "existingEntities must be specified.");
+        Validate.notNull(newEntity, "newEntity must be specified.");
+        Validate.notNull(dirtyFields, "dirtyFields must be specified.");
+        Validate.notNull(failurePolicy, "failurePolicy must be specified.");
+
+        var plan = plan(dirtyFields);
+        return runBatch(existingEntities.size(), index -> mergePlan(existingEntities.get(index), newEntity, plan),
+                existingEntities::get, failurePolicy, executor);
+    }
+
+    /**
+     * Checks the dirty fields against the entity class without merging anything. Fields left out by the default
+     * filter are not checked. The check does not throw for invalid fields; every invalid field is returned, so a
+     * request can be rejected with all its problems at once.
+     *
+     * The merge methods run the same check before merging and throw an {@link InvalidFieldsException} listing
+     * every invalid field.
+     *
+     * @param entityType  The class of the entities to be merged (must not be null).
+     * @param dirtyFields The list of field names that should be updated (must not be null).
+     * @return The invalid fields in the order given, or an empty list if every field applies.
+     */
+    public List<InvalidFieldsException.InvalidField> validate(Class<? extends T> entityType, Iterable<String> dirtyFields) {
+        Validate.notNull(entityType, "entityType must be specified.");
+        Validate.notNull(dirtyFields, "dirtyFields must be specified.");
+        var invalid = new ArrayList<InvalidFieldsException.InvalidField>();
+        for (var item : dirtyFields) {
+            if (fieldFilter.isAllowed(item)) {
+                resolve(entityType, entityType, item, invalid);
+            }
+        }
+        return invalid;
+    }
+
+    /**
+     * Returns the registry of the merge plans used by this merger. Warming it up at startup moves the
+     * introspection of the entity classes out of the first merges. The registry is shared by all mergers.
+     *
+     * @return The plan registry.
+     */
+    public MergePlanRegistry getPlanRegistry() {
+        return MergePlanRegistry.getDefault();
+    }
+
+    /**
+     * @return The filter applied to every merge by this merger.
+     */
+    public FieldFilter getFieldFilter() {
+        return fieldFilter;
+    }
+
+    private T merge(T existingEntity, T newEntity, Iterable<String> dirtyFields, Predicate<String> allowed,
+                    ValueEquality equality, List<MergeResult.Change> changes) {
+        var instrumentation = PatchInstrumentation.get();
+        long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        int count = 0;
+
+        // Change detection needs the old values, which the generated mergers do not expose.
+        GeneratedMerger<T> generated = equality == null ? generatedMerger(existingEntity, newEntity) : null;
+
+        // Resolve and check every field before anything is merged, so a bad request leaves the entity untouched.
+        var copies = new ArrayList<FieldCopy>();
+        var invalid = new ArrayList<InvalidFieldsException.InvalidField>();
+        for (var item : dirtyFields) {
+            count++;
+            if (!fieldFilter.isAllowed(item) || !allowed.test(item) || GeneratedMergers.isIgnored(existingEntity.getClass(), item)) {
+                continue;
+            }
+            var copy = resolve(existingEntity.getClass(), newEntity.getClass(), item, invalid);
+            if (copy != null) {
+                copies.add(copy);
+            }
+        }
+        if (!invalid.isEmpty()) {
+            throw rejected(existingEntity.getClass(), invalid, instrumentation);
+        }
+
+        // Apply the changes from newEntity to existingEntity.
+        for (var copy : copies) {
+            if (generated != null && mergeGenerated(generated, existingEntity, newEntity, copy.path(), copy.path(),
+                    existingEntity.getClass(), instrumentation)) {
+                continue;
+            }
+            try {
+                copy(copy.reader(), copy.writer(), existingEntity, newEntity, copy.path(), equality, changes);
+            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException | IndexOutOfBoundsException ex) {
+                LOG.debug("Error occurred while merging entities.", ex);
+                instrumentation.mergeFailed(existingEntity.getClass(), copy.path(), ex);
+                // Throw a specific error if a field cannot be merged.
+                throw new IllegalArgumentException("The parameter '" + copy.path() + "' does not apply to this resource.");
+            }
+        }
+
+        if (instrumentation.isEnabled()) {
+            instrumentation.mergeCompleted(existingEntity.getClass(), count, System.nanoTime() - start);
+        }
+        return existingEntity;
+    }
+
+    private void mergeTree(Object existingEntity, Object newEntity, DirtyFieldTree dirtyFields, FieldFilter requestFilter,
+                           boolean filter, ValueEquality equality, List<MergeResult.Change> changes) {
+        var instrumentation = PatchInstrumentation.get();
+        long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        var merge = new TreeMerge(existingEntity.getClass(), requestFilter, filter, equality, changes, instrumentation);
+
+        // Check every field that would be copied before anything is merged.
+        var invalid = new ArrayList<InvalidFieldsException.InvalidField>();
+        validateNode(existingEntity.getClass(), newEntity.getClass(), dirtyFields.getRoot(), merge, invalid);
+        if (!invalid.isEmpty()) {
+            throw rejected(existingEntity.getClass(), invalid, instrumentation);
+        }
+        mergeNode(existingEntity, newEntity, dirtyFields.getRoot(), merge);
+        if (instrumentation.isEnabled()) {
+            instrumentation.mergeCompleted(existingEntity.getClass(), dirtyFields.size(), System.nanoTime() - start);
+        }
+    }
+
+    private void mergeNode(Object existing, Object incoming, DirtyFieldTree.Node node, TreeMerge merge) {
+        GeneratedMerger<Object> generated = null;
+        for (var child : node.getChildren()) {
+            var copy = child.isDirty() && (!merge.filter() || isAllowed(child, merge.requestFilter()));
+            if (!copy && child.isLeaf() || GeneratedMergers.isIgnored(merge.entityType(), child.getPath())) {
+                continue;
+            }
+
+            var expression = child.getSegment().expression();
+            if (copy && merge.equality() == null && child.getSegment().kind() == PropertyPath.Kind.SIMPLE) {
+                if (generated == null) {
+                    generated = generatedMerger(existing, incoming);
+                }
+                if (generated != null && mergeGenerated(generated, existing, incoming, expression, child.getPath(),
+                        merge.entityType(), merge.instrumentation())) {
+                    continue;
+                }
+            }
+            try {
+                var reader = accessors.get(incoming.getClass(), expression);
+                var writer = existing.getClass() == incoming.getClass() ? reader : accessors.get(existing.getClass(), expression);
+                if (copy) {
+                    // Copying the whole value also covers any dirty fields below it.
+                    copy(reader, writer, existing, incoming, merge.equality() == null ? null : child.getPath(),
+                            merge.equality(), merge.changes());
+                    continue;
+                }
+
+                var nextIncoming = reader.get(incoming);
+                var nextExisting = writer.get(existing);
+                if (nextExisting == null && nextIncoming != null && child.getSegment().kind() == PropertyPath.Kind.KEYED
+                        && firstAllowedPath(child, merge) != null && isAllowedBelow(child, merge)) {
+                    // An element missing from the existing collection is added as a whole.
+                    copy(reader, writer, existing, incoming, merge.equality() == null ? null : child.getPath(),
+                            merge.equality(), merge.changes());
+                    continue;
+                }
+                if (nextIncoming == null || nextExisting == null) {
+                    if (firstAllowedPath(child, merge) != null) {
+                        throw new NestedNullException("Null property value for '" + expression + "' on bean class '"
+                                + (nextIncoming == null ? incoming : existing).getClass() + "'");
+                    }
+                    continue;
                 }
+                mergeNode(nextExisting, nextIncoming, child, merge);
+            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException | IndexOutOfBoundsException ex) {
+                var path = copy ? child.getPath() : firstAllowedPath(child, merge);
+                if (path == null) {
+                    // Nothing below this prefix would have been merged.
+                    continue;
+                }
+                LOG.debug("Error occurred while merging entities.", ex);
+                merge.instrumentation().mergeFailed(merge.entityType(), path, ex);
+                throw new IllegalArgumentException("The parameter '" + path + "' does not apply to this resource.");
+            }
+        }
+    }
+
+    /**
+     * Collects the fields below the node that would be copied but do not apply to the entity classes.
+     */
+    private void validateNode(Class<?> existingType, Class<?> newType, DirtyFieldTree.Node node, TreeMerge merge,
+                              List<InvalidFieldsException.InvalidField> invalid) {
+        for (var child : node.getChildren()) {
+            if (GeneratedMergers.isIgnored(existingType, child.getPath())) {
+                continue;
+            }
+            if (child.isDirty() && (!merge.filter() || isAllowed(child, merge.requestFilter()))) {
+                resolve(existingType, newType, child.getPath(), invalid);
+            } else {
+                validateNode(existingType, newType, child, merge, invalid);
             }
-        });
+        }
+    }
+
+    /**
+     * Resolves the accessors for a dirty field, or adds the field to the invalid fields if it does not apply to
+     * the entity classes.
+     */
+    private FieldCopy resolve(Class<?> existingType, Class<?> newType, String path,
+                              List<InvalidFieldsException.InvalidField> invalid) {
+        try {
+            var reader = accessors.get(newType, path);
+            var writer = existingType == newType ? reader : accessors.get(existingType, path);
+            var problem = reader.validate();
+            if (problem == null && writer != reader) {
+                problem = writer.validate();
+            }
+            if (problem == null) {
+                return new FieldCopy(path, reader, writer);
+            }
+            invalid.add(new InvalidFieldsException.InvalidField(path, problem));
+        } catch (IllegalArgumentException ex) {
+            // The path is malformed.
+            invalid.add(new InvalidFieldsException.InvalidField(path, ex.getMessage()));
+        }
+        return null;
+    }
+
+    private static InvalidFieldsException rejected(Class<?> entityType, List<InvalidFieldsException.InvalidField> invalid,
+                                                   PatchInstrumentation instrumentation) {
+        var ex = new InvalidFieldsException(invalid);
+        LOG.debug("Rejected merge into {}: {}", entityType.getName(), invalid);
+        if (instrumentation.isEnabled()) {
+            for (var field : invalid) {
+                instrumentation.mergeFailed(entityType, field.path(), ex);
+            }
+        }
+        return ex;
+    }
+
+    /**
+     * Returns the generated merger for the entities, provided they are of the same class.
+     */
+    private static <E> GeneratedMerger<E> generatedMerger(Object existing, Object incoming) {
+        var type = existing.getClass();
+        return type == incoming.getClass() ? GeneratedMergers.get(type) : null;
+    }
+
+    /**
+     * Copies a property with a generated merger, failing like a reflective copy if the merger throws.
+     */
+    private static <E> boolean mergeGenerated(GeneratedMerger<E> generated, E existing, E incoming, String expression,
+                                              String path, Class<?> entityType, PatchInstrumentation instrumentation) {
+        try {
+            return generated.merge(existing, incoming, expression);
+        } catch (RuntimeException ex) {
+            LOG.debug("Error occurred while merging entities.", ex);
+            instrumentation.mergeFailed(entityType, path, ex);
+            throw new IllegalArgumentException("The parameter '" + path + "' does not apply to this resource.");
+        }
+    }
+
+    /**
+     * Copies a property value. With an equality, the value is only written, and the change recorded, if it differs
+     * from the existing value.
+     */
+    private static void copy(PropertyAccessor reader, PropertyAccessor writer, Object existing, Object incoming,
+                             String path, ValueEquality equality, List<MergeResult.Change> changes)
+            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        var value = reader.get(incoming);
+        if (equality != null) {
+            var oldValue = writer.get(existing);
+            if (equality.isEqual(oldValue, value)) {
+                return;
+            }
+            changes.add(new MergeResult.Change(path, oldValue, value));
+        }
+        writer.set(existing, value);
+    }
+
+    private boolean isAllowed(DirtyFieldTree.Node node, FieldFilter requestFilter) {
+        if (fieldFilter.allowsAll() && requestFilter.allowsAll()) {
+            return true;
+        }
+        var path = node.getPath();
+        return fieldFilter.isAllowed(path) && requestFilter.isAllowed(path);
+    }
+
+    /**
+     * Tests whether every dirty field below the node passes the filters.
+     */
+    private boolean isAllowedBelow(DirtyFieldTree.Node node, TreeMerge merge) {
+        if (!merge.filter() || fieldFilter.allowsAll() && merge.requestFilter().allowsAll()) {
+            return true;
+        }
+        for (var child : node.getChildren()) {
+            if (child.isDirty() && !isAllowed(child, merge.requestFilter()) || !isAllowedBelow(child, merge)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String firstAllowedPath(DirtyFieldTree.Node node, TreeMerge merge) {
+        for (var child : node.getChildren()) {
+            if (child.isDirty() && (!merge.filter() || isAllowed(child, merge.requestFilter()))) {
+                return child.getPath();
+            }
+            var path = firstAllowedPath(child, merge);
+            if (path != null) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Filters the dirty fields through the default filter and compiles the remaining ones into a tree.
+     */
+    private DirtyFieldTree plan(Iterable<String> dirtyFields) {
+        var builder = DirtyFieldTree.builder();
+        for (var field : dirtyFields) {
+            if (fieldFilter.isAllowed(field)) {
+                builder.add(field);
+            }
+        }
+        return builder.build();
+    }
+
+    private T mergePlan(T existingEntity, T newEntity, DirtyFieldTree plan) {
+        Validate.notNull(existingEntity, "existingEntity must be specified.");
+        Validate.notNull(newEntity, "newEntity must be specified.");
+        // The plan is already filtered, so the filters are not consulted again for every item.
+        mergeTree(existingEntity, newEntity, plan, FieldFilter.none(), false, null, null);
         return existingEntity;
     }
+
+    private BatchMergeResult<T> runBatch(int size, IntFunction<T> merge, IntFunction<T> entity,
+                                         MergeFailurePolicy failurePolicy, Executor executor) {
+        // Every slot is written by exactly one task, and the join below publishes the writes.
+        List<BatchMergeResult.Item<T>> items = new ArrayList<>(Collections.nCopies(size, null));
+        var failed = new AtomicBoolean();
+        IntFunction<BatchMergeResult.Item<T>> mergeItem = index -> {
+            if (failurePolicy == MergeFailurePolicy.FAIL_FAST && failed.get()) {
+                return new BatchMergeResult.Item<>(index, entity.apply(index), BatchMergeResult.Status.SKIPPED, null);
+            }
+            try {
+                return new BatchMergeResult.Item<>(index, merge.apply(index), BatchMergeResult.Status.MERGED, null);
+            } catch (RuntimeException ex) {
+                failed.set(true);
+                return new BatchMergeResult.Item<>(index, entity.apply(index), BatchMergeResult.Status.FAILED, ex);
+            }
+        };
+
+        if (executor == null || size < 2) {
+            for (int i = 0; i < size; i++) {
+                items.set(i, mergeItem.apply(i));
+            }
+        } else {
+            // Split the batch into a few chunks per core so small items do not drown in task overhead.
+            int chunks = Math.min(size, Runtime.getRuntime().availableProcessors() * 4);
+            int chunkSize = (size + chunks - 1) / chunks;
+            var futures = new ArrayList<CompletableFuture<Void>>();
+            for (int start = 0; start < size; start += chunkSize) {
+                int from = start;
+                int to = Math.min(size, start + chunkSize);
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int i = from; i < to; i++) {
+                        items.set(i, mergeItem.apply(i));
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        }
+        return new BatchMergeResult<>(items);
+    }
+
+    /**
+     * A dirty field with the accessors to read it from the new entity and write it to the existing one.
+     */
+    private record FieldCopy(String path, PropertyAccessor reader, PropertyAccessor writer) {
+    }
+
+    /**
+     * The settings of a single tree merge, shared by every node it visits.
+     */
+    private record TreeMerge(Class<?> entityType, FieldFilter requestFilter, boolean filter, ValueEquality equality,
+                             List<MergeResult.Change> changes, PatchInstrumentation instrumentation) {
+    }
 }
@@ -0,0 +1,213 @@
+package dk.apaq.rest.patch;
+
+import dk.apaq.rest.patch.property.DirtyFields;
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, precompiled filter deciding which property paths may be merged. A filter is either a deny-list,
+ * which rejects the paths it matches, or an allow-list, which rejects every path it does not match.
+ *
+ * Patterns are either exact paths, such as {@code address.city}, or contain a single {@code *} wildcard matching
+ * any sequence of characters, such as {@code audit.*} or {@code meta(*)}. Exact paths are looked up in a hash
+ * set and wildcard rules are indexed by their leading property name, so testing a path does not depend on the
+ * number of patterns.
+ */
+public final class FieldFilter {
+
+    private static final FieldFilter NONE = new FieldFilter(false, Collections.emptySet(), Collections.emptyMap(),
+            Collections.emptyList());
+
+    private final boolean allowList;
+    private final Set<String> exact;
+    private final Map<String, List<Wildcard>> indexedWildcards;
+    private final List<Wildcard> wildcards;
+
+    private FieldFilter(boolean allowList, Set<String> exact, Map<String, List<Wildcard>> indexedWildcards,
+                        List<Wildcard> wildcards) {
+        this.allowList = allowList;
+        this.exact = exact;
+        this.indexedWildcards = indexedWildcards;
+        this.wildcards = wildcards;
+    }
+
+    /**
+     * @return A filter that allows every path.
+     */
+    public static FieldFilter none() {
+        return NONE;
+    }
+
+    /**
+     * Creates a filter that rejects every path matching one of the given patterns.
+     *
+     * @param patterns The patterns to reject. If null or empty, every path is allowed.
+     * @return The compiled filter.
+     * @throws IllegalArgumentException If a pattern contains more than one wildcard.
+     */
+    public static FieldFilter deny(Collection<String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return NONE;
+        }
+        return compile(false, patterns);
+    }
+
+    /**
+     * Creates a filter that only allows paths matching one of the given patterns.
+     *
+     * @param patterns The patterns to allow (must not be null).
+     * @return The compiled filter.
+     * @throws IllegalArgumentException If a pattern contains more than one wildcard.
+     */
+    public static FieldFilter allow(Collection<String> patterns) {
+        Validate.notNull(patterns, "patterns must be specified.");
+        return compile(true, patterns);
+    }
+
+    private static FieldFilter compile(boolean allowList, Collection<String> patterns) {
+        var exact = new HashSet<String>();
+        var indexed = new HashMap<String, List<Wildcard>>();
+        var unindexed = new ArrayList<Wildcard>();
+        for (var pattern : patterns) {
+            Validate.notNull(pattern, "patterns must not contain null.");
+            int star = pattern.indexOf('*');
+            if (star < 0) {
+                exact.add(pattern);
+                continue;
+            }
+            if (pattern.indexOf('*', star + 1) >= 0) {
+                throw new IllegalArgumentException("Only a single wildcard is supported in '" + pattern + "'.");
+            }
+
+            var wildcard = new Wildcard(pattern.substring(0, star), pattern.substring(star + 1));
+            int end = leadingNameEnd(wildcard.prefix);
+            if (end < wildcard.prefix.length()) {
+                indexed.computeIfAbsent(wildcard.prefix.substring(0, end), k -> new ArrayList<>()).add(wildcard);
+            } else {
+                unindexed.add(wildcard);
+            }
+        }
+        return new FieldFilter(allowList, Set.copyOf(exact), Map.copyOf(indexed), List.copyOf(unindexed));
+    }
+
+    /**
+     * Tests whether the given path may be merged.
+     *
+     * @param path The property path to test.
+     * @return {@code true} if the path passes the filter.
+     */
+    public boolean isAllowed(String path) {
+        return matches(path) == allowList;
+    }
+
+    /**
+     * @return {@code true} if this filter allows every path, so callers may skip testing paths altogether.
+     */
+    public boolean allowsAll() {
+        return !allowList && exact.isEmpty() && indexedWildcards.isEmpty() && wildcards.isEmpty();
+    }
+
+    /**
+     * @return {@code true} if this filter only allows the paths it matches.
+     */
+    public boolean isAllowList() {
+        return allowList;
+    }
+
+    /**
+     * Collects the dirty fields matched by the patterns of this filter, asking the dirty fields for each exact path
+     * and only walking the part of them below the fixed prefix of each wildcard.
+     */
+    Collection<String> select(DirtyFields dirtyFields) {
+        var selected = new LinkedHashSet<String>();
+        for (var path : exact) {
+            if (dirtyFields.contains(path)) {
+                selected.add(path);
+            }
+        }
+        for (var candidates : indexedWildcards.values()) {
+            select(dirtyFields, candidates, selected);
+        }
+        select(dirtyFields, wildcards, selected);
+        return selected;
+    }
+
+    private static void select(DirtyFields dirtyFields, List<Wildcard> candidates, Collection<String> selected) {
+        for (var wildcard : candidates) {
+            dirtyFields.forEach(wildcard.anchor(), path -> {
+                if (wildcard.matches(path)) {
+                    selected.add(path);
+                }
+            });
+        }
+    }
+
+    private boolean matches(String path) {
+        if (exact.contains(path)) {
+            return true;
+        }
+        if (!indexedWildcards.isEmpty()) {
+            int end = leadingNameEnd(path);
+            if (end < path.length()) {
+                var candidates = indexedWildcards.get(path.substring(0, end));
+                if (candidates != null && matchesAny(candidates, path)) {
+                    return true;
+                }
+            }
+        }
+        return matchesAny(wildcards, path);
+    }
+
+    private static boolean matchesAny(List<Wildcard> candidates, String path) {
+        for (var wildcard : candidates) {
+            if (wildcard.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the end of the leading property name, i.e. the position of the first path delimiter, or the length
+     * of the string if it has none.
+     */
+    private static int leadingNameEnd(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '.' || c == '(' || c == '[') {
+                return i;
+            }
+        }
+        return path.length();
+    }
+
+    private record Wildcard(String prefix, String suffix) {
+
+        boolean matches(String path) {
+            return path.length() >= prefix.length() + suffix.length()
+                    && path.startsWith(prefix) && path.endsWith(suffix);
+        }
+
+        /**
+         * Returns the longest whole path that every match starts with, e.g. {@code audit} for {@code audit.*}.
+         */
+        String anchor() {
+            for (int i = prefix.length() - 1; i >= 0; i--) {
+                char c = prefix.charAt(i);
+                if (c == '.' || c == '(' || c == '[') {
+                    return prefix.substring(0, i);
+                }
+            }
+            return "";
+        }
+    }
+}
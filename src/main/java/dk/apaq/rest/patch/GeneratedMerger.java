@@ -0,0 +1,28 @@
+package dk.apaq.rest.patch;
+
+/**
+ * A merger generated at compile time for a type annotated with {@link Patchable}. It copies simple properties
+ * with direct getter and setter calls, so {@link EntityMerger} can skip reflection for them. The generated class
+ * is named after the type with the suffix {@link #CLASS_SUFFIX} and lives in the same package.
+ *
+ * @param <T> The type of the entities to be merged.
+ */
+public interface GeneratedMerger<T> {
+
+    /**
+     * The suffix appended to the binary name of the annotated type to form the name of the generated merger.
+     */
+    String CLASS_SUFFIX = "_PatchMerger";
+
+    /**
+     * Copies a property from the new entity into the existing entity.
+     *
+     * @param existingEntity The entity to be updated.
+     * @param newEntity      The entity containing updated values.
+     * @param path           The property path.
+     * @return {@code true} if the path was handled, either by copying the property or because it is ignored by
+     *         {@link Patchable#ignore()}, or {@code false} if the path is not a simple property known to the
+     *         merger and must be merged by other means.
+     */
+    boolean merge(T existingEntity, T newEntity, String path);
+}
@@ -0,0 +1,152 @@
+package dk.apaq.rest.patch;
+
+import dk.apaq.rest.patch.property.PropertyPath;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Discovers the {@link GeneratedMerger} of each entity class. The lookup is done once per class; classes that
+ * are not annotated with {@link Patchable} are rejected without trying to load anything.
+ *
+ * The properties listed in {@link Patchable#ignore()} are also read here, once per class, so that
+ * {@link EntityMerger} skips them on every merge path, whether a generated merger is used or not. Every merge path
+ * applies the same rule: the ignore list of the entity class applies to its properties, and below that the ignore
+ * lists of the declared property types apply, whatever the class of the value held by a property.
+ */
+final class GeneratedMergers {
+
+    // Logger for logging errors or information during the lookup.
+    private static final Logger LOG = LoggerFactory.getLogger(GeneratedMergers.class);
+
+    private static final ClassValue<GeneratedMerger<?>> MERGERS = new ClassValue<>() {
+        @Override
+        protected GeneratedMerger<?> computeValue(Class<?> type) {
+            if (!type.isAnnotationPresent(Patchable.class)) {
+                return null;
+            }
+            try {
+                var mergerClass = Class.forName(type.getName() + GeneratedMerger.CLASS_SUFFIX, true, type.getClassLoader());
+                return (GeneratedMerger<?>) mergerClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException ex) {
+                LOG.warn("No generated merger found for {}; is the annotation processor configured?", type.getName());
+                return null;
+            }
+        }
+    };
+
+    private static final ClassValue<Set<String>> IGNORED = new ClassValue<>() {
+        @Override
+        protected Set<String> computeValue(Class<?> type) {
+            var patchable = type.getAnnotation(Patchable.class);
+            return patchable == null ? Set.of() : Set.of(patchable.ignore());
+        }
+    };
+
+    // Whether any bean type reachable through the properties of a class has ignored properties.
+    private static final ClassValue<Boolean> REACHES_IGNORED = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            var seen = new HashSet<Class<?>>();
+            var queue = new ArrayDeque<Class<?>>();
+            queue.add(type);
+            while (!queue.isEmpty()) {
+                var next = queue.poll();
+                if (!seen.add(next)) {
+                    continue;
+                }
+                if (!IGNORED.get(next).isEmpty()) {
+                    return true;
+                }
+                for (var descriptor : PropertyUtils.getPropertyDescriptors(next)) {
+                    var read = descriptor.getReadMethod();
+                    var nested = read == null ? null : MergePlanRegistry.beanType(read.getGenericReturnType());
+                    if (nested != null) {
+                        queue.add(nested);
+                    }
+                }
+            }
+            return false;
+        }
+    };
+
+    // The maximum number of paths whose decision is cached per class, as paths with keys or indexes are unbounded.
+    private static final int MAX_CACHED_PATHS = 1024;
+
+    // The decisions of isIgnored per class and path.
+    private static final ClassValue<Map<String, Boolean>> IGNORED_PATHS = new ClassValue<>() {
+        @Override
+        protected Map<String, Boolean> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private GeneratedMergers() {
+    }
+
+    /**
+     * Tests whether the path passes through an ignored property at any level, following the declared property
+     * types from the given class. Malformed paths are not ignored, so they are reported as invalid. The decision is
+     * cached per class and path.
+     *
+     * @param type The entity class.
+     * @param path The property path, e.g. {@code child.id}.
+     * @return {@code true} if the path must not be merged.
+     */
+    static boolean isIgnored(Class<?> type, String path) {
+        if (!REACHES_IGNORED.get(type)) {
+            return false;
+        }
+        var decisions = IGNORED_PATHS.get(type);
+        var decision = decisions.get(path);
+        if (decision == null) {
+            decision = resolveIgnored(type, path);
+            if (decisions.size() < MAX_CACHED_PATHS) {
+                decisions.put(path, decision);
+            }
+        }
+        return decision;
+    }
+
+    private static boolean resolveIgnored(Class<?> type, String path) {
+        PropertyPath parsed;
+        try {
+            parsed = PropertyPath.parse(path);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+        var current = type;
+        for (var segment : parsed.getSegments()) {
+            if (IGNORED.get(current).contains(segment.name())) {
+                return true;
+            }
+            Class<?> next = null;
+            for (var descriptor : PropertyUtils.getPropertyDescriptors(current)) {
+                if (descriptor.getName().equals(segment.name()) && descriptor.getReadMethod() != null) {
+                    next = MergePlanRegistry.beanType(descriptor.getReadMethod().getGenericReturnType());
+                    break;
+                }
+            }
+            if (next == null) {
+                return false;
+            }
+            current = next;
+        }
+        return false;
+    }
+
+    /**
+     * @param type The entity class.
+     * @return The generated merger of the class, or {@code null} if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> GeneratedMerger<T> get(Class<?> type) {
+        return (GeneratedMerger<T>) MERGERS.get(type);
+    }
+}
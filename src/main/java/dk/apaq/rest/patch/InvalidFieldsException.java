@@ -0,0 +1,69 @@
+package dk.apaq.rest.patch;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thrown by {@link EntityMerger} when dirty fields do not apply to the entity. All invalid fields of the merge are
+ * reported at once, and nothing has been merged when it is thrown.
+ *
+ * These are client errors, so the exception does not capture a stack trace.
+ */
+public class InvalidFieldsException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A dirty field that does not apply to the entity.
+     *
+     * @param path   The dirty field, e.g. {@code child.text}.
+     * @param reason Why the field does not apply, e.g. that the property is unknown.
+     */
+    public record InvalidField(String path, String reason) implements Serializable {
+    }
+
+    private final List<InvalidField> invalidFields;
+
+    /**
+     * @param invalidFields The invalid fields (must not be empty).
+     */
+    public InvalidFieldsException(List<InvalidField> invalidFields) {
+        super(message(invalidFields));
+        this.invalidFields = List.copyOf(invalidFields);
+    }
+
+    /**
+     * @return The invalid fields, in the order they were given.
+     */
+    public List<InvalidField> getInvalidFields() {
+        return invalidFields;
+    }
+
+    /**
+     * @return The paths of the invalid fields, in the order they were given.
+     */
+    public List<String> getInvalidPaths() {
+        var paths = new ArrayList<String>(invalidFields.size());
+        for (var field : invalidFields) {
+            paths.add(field.path());
+        }
+        return paths;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    private static String message(List<InvalidField> invalidFields) {
+        if (invalidFields.size() == 1) {
+            return "The parameter '" + invalidFields.get(0).path() + "' does not apply to this resource.";
+        }
+        var message = new StringBuilder("The parameters ");
+        for (int i = 0; i < invalidFields.size(); i++) {
+            message.append(i == 0 ? "'" : ", '").append(invalidFields.get(i).path()).append('\'');
+        }
+        return message.append(" do not apply to this resource.").toString();
+    }
+}
@@ -0,0 +1,18 @@
+package dk.apaq.rest.patch;
+
+/**
+ * Determines how a batch merge in {@link EntityMerger} proceeds when merging one of its items fails.
+ */
+public enum MergeFailurePolicy {
+
+    /**
+     * Stops merging further items after the first failure. Items that were not merged are reported as
+     * {@link BatchMergeResult.Status#SKIPPED}. Items merged before the failure stay merged.
+     */
+    FAIL_FAST,
+
+    /**
+     * Merges every item and reports each failure alongside the successful items.
+     */
+    COLLECT
+}
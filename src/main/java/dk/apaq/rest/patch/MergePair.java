@@ -0,0 +1,12 @@
+package dk.apaq.rest.patch;
+
+/**
+ * An existing entity and the entity holding the values to merge into it, as used by the batch methods of
+ * {@link EntityMerger}.
+ *
+ * @param existingEntity The entity to be updated.
+ * @param newEntity      The entity containing updated values.
+ * @param <T>            The type of the entities.
+ */
+public record MergePair<T>(T existingEntity, T newEntity) {
+}
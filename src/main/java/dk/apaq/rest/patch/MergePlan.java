@@ -0,0 +1,59 @@
+package dk.apaq.rest.patch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The patchable paths of an entity class, as prepared by a {@link MergePlanRegistry}. A plan lists the properties
+ * of the class that can be both read and written, the bean types reached through them, and whether the class has
+ * a {@link GeneratedMerger}.
+ */
+public final class MergePlan {
+
+    private final Class<?> entityType;
+    private final List<String> paths;
+    private final Map<String, Class<?>> nestedTypes;
+    private final boolean generated;
+
+    MergePlan(Class<?> entityType, List<String> paths, Map<String, Class<?>> nestedTypes, boolean generated) {
+        this.entityType = entityType;
+        this.paths = Collections.unmodifiableList(paths);
+        this.nestedTypes = Collections.unmodifiableMap(nestedTypes);
+        this.generated = generated;
+    }
+
+    /**
+     * @return The entity class this plan describes.
+     */
+    public Class<?> getEntityType() {
+        return entityType;
+    }
+
+    /**
+     * @return The readable and writable properties of the class, in name order.
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    /**
+     * @return The bean types reached through the properties of the class, by property name. For collections and
+     * arrays this is the element type.
+     */
+    public Map<String, Class<?>> getNestedTypes() {
+        return nestedTypes;
+    }
+
+    /**
+     * @return {@code true} if simple properties of the class are merged by a {@link GeneratedMerger}.
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    @Override
+    public String toString() {
+        return "MergePlan[" + entityType.getName() + ", paths=" + paths + "]";
+    }
+}
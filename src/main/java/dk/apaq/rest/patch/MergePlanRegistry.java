@@ -0,0 +1,364 @@
+package dk.apaq.rest.patch;
+
+import dk.apaq.rest.patch.property.PropertyAccessorCache;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.PropertyDescriptor;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Prepares and keeps a {@link MergePlan} per entity class. Preparing a plan introspects the class, compiles the
+ * accessors of its properties into the {@link PropertyAccessorCache} and looks up its {@link GeneratedMerger}, so
+ * the first merge of the class does not pay for any of it. Paths through nested beans, e.g. {@code address.city},
+ * are compiled with every segment resolved, following bean-typed properties until a type repeats. Paths through
+ * lists, arrays and maps need an index or key, so they are left to the first merge or to {@link #read(Reader)}.
+ *
+ * Plans are prepared on first use. To move that work to startup, warm the registry up with the entity classes or
+ * their packages, or with a file written by {@link #write(Writer)} on an earlier run. Warming up a class also
+ * warms up the bean types reached through its properties.
+ */
+public final class MergePlanRegistry {
+
+    // Logger for logging errors or information during warm-up.
+    private static final Logger LOG = LoggerFactory.getLogger(MergePlanRegistry.class);
+
+    private static final MergePlanRegistry DEFAULT = new MergePlanRegistry(PropertyAccessorCache.getDefault());
+
+    // The cache the accessors of the planned properties are compiled into.
+    private final PropertyAccessorCache accessors;
+
+    private final Map<Class<?>, MergePlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry compiling accessors into the given cache.
+     *
+     * @param accessors The cache to compile accessors into (must not be null).
+     */
+    public MergePlanRegistry(PropertyAccessorCache accessors) {
+        Validate.notNull(accessors, "accessors must be specified.");
+        this.accessors = accessors;
+    }
+
+    /**
+     * @return The registry used by {@link EntityMerger}, which compiles into {@link PropertyAccessorCache#getDefault()}.
+     */
+    public static MergePlanRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the plan of the given class, preparing it on first use.
+     *
+     * @param entityType The entity class (must not be null).
+     * @return The plan of the class.
+     */
+    public MergePlan getPlan(Class<?> entityType) {
+        Validate.notNull(entityType, "entityType must be specified.");
+        var plan = plans.get(entityType);
+        if (plan == null) {
+            plan = prepare(entityType);
+            var existing = plans.putIfAbsent(entityType, plan);
+            if (existing != null) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @return The plans prepared so far, in no particular order.
+     */
+    public Collection<MergePlan> getPlans() {
+        return plans.values();
+    }
+
+    /**
+     * Prepares the plans of the given classes and of the bean types reached through them.
+     *
+     * @param entityTypes The entity classes (must not be null).
+     * @return The plans prepared or found, starting with the given classes.
+     */
+    public List<MergePlan> warmUp(Class<?>... entityTypes) {
+        Validate.notNull(entityTypes, "entityTypes must be specified.");
+        return warmUp(Arrays.asList(entityTypes));
+    }
+
+    /**
+     * Prepares the plans of the given classes and of the bean types reached through them.
+     *
+     * @param entityTypes The entity classes (must not be null).
+     * @return The plans prepared or found, starting with the given classes.
+     */
+    public List<MergePlan> warmUp(Collection<Class<?>> entityTypes) {
+        Validate.notNull(entityTypes, "entityTypes must be specified.");
+        var result = new ArrayList<MergePlan>();
+        var seen = new HashSet<Class<?>>();
+        var queue = new ArrayDeque<Class<?>>(entityTypes);
+        while (!queue.isEmpty()) {
+            var type = queue.poll();
+            if (!seen.add(type)) {
+                continue;
+            }
+            var plan = getPlan(type);
+            result.add(plan);
+            queue.addAll(plan.getNestedTypes().values());
+        }
+        return result;
+    }
+
+    /**
+     * Prepares the plans of all concrete classes in the given package and its subpackages, as found through the
+     * context class loader.
+     *
+     * @param packageName The package to scan, e.g. {@code com.example.model} (must not be null).
+     * @return The plans prepared or found.
+     * @throws IOException If the package cannot be scanned.
+     */
+    public List<MergePlan> warmUpPackage(String packageName) throws IOException {
+        return warmUpPackage(packageName, type -> true);
+    }
+
+    /**
+     * Prepares the plans of the concrete classes in the given package and its subpackages that are accepted by the
+     * filter, e.g. {@code type -> type.isAnnotationPresent(Patchable.class)}.
+     *
+     * @param packageName The package to scan, e.g. {@code com.example.model} (must not be null).
+     * @param filter      Selects the classes to prepare plans for (must not be null).
+     * @return The plans prepared or found.
+     * @throws IOException If the package cannot be scanned.
+     */
+    public List<MergePlan> warmUpPackage(String packageName, Predicate<Class<?>> filter) throws IOException {
+        Validate.notNull(packageName, "packageName must be specified.");
+        Validate.notNull(filter, "filter must be specified.");
+        var loader = classLoader();
+        var types = new ArrayList<Class<?>>();
+        for (var className : findClassNames(loader, packageName)) {
+            var type = load(loader, className);
+            if (type != null && isConcrete(type) && filter.test(type)) {
+                types.add(type);
+            }
+        }
+        return warmUp(types);
+    }
+
+    /**
+     * Writes the prepared plans, one class per line, so that they can be warmed up with {@link #read(Reader)} on
+     * a later start.
+     *
+     * @param writer The writer to write to (must not be null).
+     * @throws IOException If writing fails.
+     */
+    public void write(Writer writer) throws IOException {
+        Validate.notNull(writer, "writer must be specified.");
+        var sorted = new ArrayList<>(plans.values());
+        sorted.sort(Comparator.comparing(plan -> plan.getEntityType().getName()));
+        writer.write("# rest-patch merge plans\n");
+        for (var plan : sorted) {
+            writer.write(plan.getEntityType().getName());
+            writer.write('=');
+            writer.write(String.join(",", plan.getPaths()));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Warms up the plans written by {@link #write(Writer)}. Classes that cannot be loaded are skipped. Listed paths
+     * may also be nested, e.g. {@code child.text}, in which case their accessors are compiled as well.
+     *
+     * @param reader The reader to read from (must not be null).
+     * @return The plans prepared or found.
+     * @throws IOException If reading fails.
+     */
+    public List<MergePlan> read(Reader reader) throws IOException {
+        Validate.notNull(reader, "reader must be specified.");
+        var loader = classLoader();
+        var result = new ArrayList<MergePlan>();
+        var lines = new BufferedReader(reader);
+        for (var line = lines.readLine(); line != null; line = lines.readLine()) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf('=');
+            var type = load(loader, separator < 0 ? line : line.substring(0, separator));
+            if (type == null) {
+                continue;
+            }
+            result.addAll(warmUp(type));
+            if (separator >= 0 && separator < line.length() - 1) {
+                for (var path : line.substring(separator + 1).split(",")) {
+                    try {
+                        accessors.get(type, path).validate();
+                    } catch (IllegalArgumentException ex) {
+                        LOG.debug("Skipping the malformed path '{}' of {}.", path, type.getName());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private MergePlan prepare(Class<?> entityType) {
+        var paths = new ArrayList<String>();
+        var nestedTypes = new LinkedHashMap<String, Class<?>>();
+        var descriptors = PropertyUtils.getPropertyDescriptors(entityType);
+        Arrays.sort(descriptors, Comparator.comparing(PropertyDescriptor::getName));
+        for (var descriptor : descriptors) {
+            var read = descriptor.getReadMethod();
+            if (read == null || descriptor.getWriteMethod() == null) {
+                continue;
+            }
+            var name = descriptor.getName();
+            paths.add(name);
+            accessors.get(entityType, name).validate();
+            var nestedType = beanType(read.getGenericReturnType());
+            if (nestedType != null) {
+                nestedTypes.put(name, nestedType);
+                if (nestedType == read.getReturnType() && nestedType != entityType) {
+                    var visiting = new HashSet<Class<?>>(List.of(entityType, nestedType));
+                    compileNested(entityType, name, nestedType, visiting);
+                }
+            }
+        }
+        return new MergePlan(entityType, paths, nestedTypes, GeneratedMergers.get(entityType) != null);
+    }
+
+    /**
+     * Compiles the accessors of the properties of a nested bean, as paths from the entity class. Validating an
+     * accessor resolves every segment of its path, so the first merge finds them all compiled.
+     */
+    private void compileNested(Class<?> entityType, String prefix, Class<?> type, Set<Class<?>> visiting) {
+        for (var descriptor : PropertyUtils.getPropertyDescriptors(type)) {
+            var read = descriptor.getReadMethod();
+            if (read == null || read.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            var path = prefix + "." + descriptor.getName();
+            if (descriptor.getWriteMethod() != null) {
+                accessors.get(entityType, path).validate();
+            }
+            var nestedType = beanType(read.getGenericReturnType());
+            if (nestedType != null && nestedType == read.getReturnType() && visiting.add(nestedType)) {
+                compileNested(entityType, path, nestedType, visiting);
+                visiting.remove(nestedType);
+            }
+        }
+    }
+
+    /**
+     * Returns the bean type held by a property of the given type, looking into arrays, collections and map values.
+     */
+    static Class<?> beanType(Type type) {
+        if (type instanceof Class<?> raw) {
+            return raw.isArray() ? beanType(raw.getComponentType()) : isBean(raw) ? raw : null;
+        }
+        if (type instanceof ParameterizedType parameterized && parameterized.getRawType() instanceof Class<?> raw) {
+            var arguments = parameterized.getActualTypeArguments();
+            if (Collection.class.isAssignableFrom(raw) && arguments.length == 1) {
+                return beanType(arguments[0]);
+            }
+            if (Map.class.isAssignableFrom(raw) && arguments.length == 2) {
+                return beanType(arguments[1]);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isBean(Class<?> type) {
+        var name = type.getName();
+        return isConcrete(type) && !name.startsWith("java.") && !name.startsWith("javax.") && !name.startsWith("jdk.");
+    }
+
+    private static boolean isConcrete(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && !type.isEnum() && !type.isInterface()
+                && !Modifier.isAbstract(type.getModifiers());
+    }
+
+    private static ClassLoader classLoader() {
+        var loader = Thread.currentThread().getContextClassLoader();
+        return loader != null ? loader : MergePlanRegistry.class.getClassLoader();
+    }
+
+    private static Class<?> load(ClassLoader loader, String className) {
+        try {
+            return Class.forName(className, false, loader);
+        } catch (ClassNotFoundException | LinkageError ex) {
+            LOG.debug("Skipping the class {}, which cannot be loaded.", className);
+            return null;
+        }
+    }
+
+    /**
+     * Lists the classes in the package and its subpackages, from directories and jar files on the class path.
+     * Anonymous and local classes are left out.
+     */
+    private static List<String> findClassNames(ClassLoader loader, String packageName) throws IOException {
+        var directory = packageName.replace('.', '/');
+        var classNames = new ArrayList<String>();
+        for (var resources = loader.getResources(directory); resources.hasMoreElements(); ) {
+            var url = resources.nextElement();
+            if ("file".equals(url.getProtocol())) {
+                Path root;
+                try {
+                    root = Path.of(url.toURI());
+                } catch (URISyntaxException ex) {
+                    throw new IOException("Cannot scan " + url, ex);
+                }
+                try (var files = Files.walk(root)) {
+                    files.map(file -> root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"))
+                            .forEach(file -> addClassName(classNames, directory + "/" + file));
+                }
+            } else if ("jar".equals(url.getProtocol())) {
+                var connection = (JarURLConnection) url.openConnection();
+                connection.setUseCaches(false);
+                try (var jar = connection.getJarFile()) {
+                    for (var entries = jar.entries(); entries.hasMoreElements(); ) {
+                        var entry = entries.nextElement().getName();
+                        if (entry.startsWith(directory + "/")) {
+                            addClassName(classNames, entry);
+                        }
+                    }
+                }
+            }
+        }
+        return classNames;
+    }
+
+    private static void addClassName(List<String> classNames, String file) {
+        if (!file.endsWith(".class") || file.endsWith("module-info.class") || file.endsWith("package-info.class")) {
+            return;
+        }
+        var className = file.substring(0, file.length() - ".class".length()).replace('/', '.');
+        int nested = className.lastIndexOf('$');
+        if (nested >= 0 && nested < className.length() - 1 && Character.isDigit(className.charAt(nested + 1))) {
+            return;
+        }
+        classNames.add(className);
+    }
+}
@@ -0,0 +1,65 @@
+package dk.apaq.rest.patch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a change-detecting merge in {@link EntityMerger}, listing the properties whose values actually
+ * changed. Callers can skip persisting the entity and publishing events when {@link #hasChanges()} is
+ * {@code false}.
+ *
+ * @param <T> The type of the merged entity.
+ */
+public final class MergeResult<T> {
+
+    /**
+     * A property that was changed by the merge.
+     *
+     * @param path     The property path, e.g. {@code child.text}.
+     * @param oldValue The value of the property before the merge.
+     * @param newValue The value written to the property.
+     */
+    public record Change(String path, Object oldValue, Object newValue) {
+    }
+
+    private final T entity;
+    private final List<Change> changes;
+
+    MergeResult(T entity, List<Change> changes) {
+        this.entity = entity;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * @return The existing entity with the changes applied.
+     */
+    public T getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return {@code true} if at least one property was changed.
+     */
+    public boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * @return The changed properties, in the order they were merged.
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return The paths of the changed properties, in the order they were merged.
+     */
+    public List<String> getChangedPaths() {
+        var paths = new ArrayList<String>(changes.size());
+        for (var change : changes) {
+            paths.add(change.path());
+        }
+        return paths;
+    }
+}
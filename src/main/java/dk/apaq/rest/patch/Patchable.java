@@ -0,0 +1,28 @@
+package dk.apaq.rest.patch;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity type for which the {@code rest-patch-processor} annotation processor generates a
+ * {@link GeneratedMerger}. {@link EntityMerger} discovers the generated merger at runtime and uses it to copy
+ * simple properties with direct getter and setter calls instead of reflection.
+ *
+ * The annotation is not inherited, as a generated merger only knows the properties of the annotated type.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Patchable {
+
+    /**
+     * Properties that are never merged into this type. The processor fails the compilation if a name is not a
+     * property of the type.
+     *
+     * @return The names of the ignored properties.
+     */
+    String[] ignore() default {};
+}
@@ -1,5 +1,8 @@
 package dk.apaq.rest.patch;
 
+import dk.apaq.rest.patch.property.DirtyFieldTree;
+import dk.apaq.rest.patch.property.DirtyFields;
+
 import java.util.Collection;
 
 /**
@@ -20,4 +23,28 @@ public interface PropertyReferenceConverter<T> {
      * @return A collection of strings representing the property references of the input object.
      */
     Collection<String> translate(T input);
+
+    /**
+     * Translates the given input object into a {@link DirtyFieldTree} of property references, which shares common
+     * prefixes between references. By default the result of {@link #translate(Object)} is converted; implementations
+     * may override this to build the tree directly.
+     *
+     * @param input The input object to be translated.
+     * @return A tree holding the property references of the input object.
+     */
+    default DirtyFieldTree translateToTree(T input) {
+        return DirtyFieldTree.of(translate(input));
+    }
+
+    /**
+     * Returns a {@link DirtyFields} view of the property references of the given input, for callers that only query
+     * some of them. By default the input is translated into a {@link DirtyFieldTree} up front; implementations may
+     * override this to answer queries lazily from the input.
+     *
+     * @param input The input object to be viewed.
+     * @return A view of the property references of the input object.
+     */
+    default DirtyFields translateToView(T input) {
+        return translateToTree(input);
+    }
 }
@@ -0,0 +1,58 @@
+package dk.apaq.rest.patch;
+
+import org.apache.commons.lang.Validate;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiPredicate;
+
+/**
+ * Decides whether a new value equals the existing value of a property, in which case a change-detecting merge
+ * in {@link EntityMerger} leaves the property untouched.
+ */
+@FunctionalInterface
+public interface ValueEquality {
+
+    /**
+     * Compares values with {@link Objects#equals(Object, Object)}, except that {@link BigDecimal}s are compared
+     * by value regardless of their scale and arrays are compared by their elements.
+     */
+    ValueEquality DEFAULT = (existingValue, newValue) -> {
+        if (existingValue instanceof BigDecimal a && newValue instanceof BigDecimal b) {
+            return a.compareTo(b) == 0;
+        }
+        if (existingValue != null && newValue != null && existingValue.getClass().isArray()
+                && existingValue.getClass() == newValue.getClass()) {
+            return Arrays.deepEquals(new Object[]{existingValue}, new Object[]{newValue});
+        }
+        return Objects.equals(existingValue, newValue);
+    };
+
+    /**
+     * @param existingValue The current value of the property on the existing entity.
+     * @param newValue      The value of the property on the new entity.
+     * @return {@code true} if the values are equal and the property does not need to be written.
+     */
+    boolean isEqual(Object existingValue, Object newValue);
+
+    /**
+     * Returns an equality that compares values of the given type with the given predicate, and all other values
+     * with this equality.
+     *
+     * @param type      The type the predicate applies to; both values must be instances of it (must not be null).
+     * @param predicate The predicate deciding whether two values of the type are equal (must not be null).
+     * @param <V>       The type the predicate applies to.
+     * @return The combined equality.
+     */
+    default <V> ValueEquality withType(Class<V> type, BiPredicate<? super V, ? super V> predicate) {
+        Validate.notNull(type, "type must be specified.");
+        Validate.notNull(predicate, "predicate must be specified.");
+        return (existingValue, newValue) -> {
+            if (type.isInstance(existingValue) && type.isInstance(newValue)) {
+                return predicate.test(type.cast(existingValue), type.cast(newValue));
+            }
+            return isEqual(existingValue, newValue);
+        };
+    }
+}
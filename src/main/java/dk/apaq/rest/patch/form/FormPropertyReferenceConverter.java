@@ -1,45 +1,186 @@
 package dk.apaq.rest.patch.form;
 
 import dk.apaq.rest.patch.PropertyReferenceConverter;
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import org.apache.commons.lang.Validate;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 /**
  * A converter class that transforms a form input map (typically from HTML forms) into a collection of property references.
  * It processes keys from the form input and adjusts them based on specific patterns, such as converting array-like
  * references (e.g., 'meta[color]') to a more standardized format (e.g., 'meta(color)').
+ *
+ * Keys are translated by a single-pass scanner, and keys using the bracket syntax are kept in a bounded cache of
+ * translations since the same form keys are sent again and again. Keys without brackets are returned as they are.
+ * The cache evicts the least recently used translation when it is full and is guarded by a lock, so a converter can
+ * be shared by all request threads.
  */
 public class FormPropertyReferenceConverter implements PropertyReferenceConverter<Map<String, String[]>> {
 
     /**
-     * A pattern to match form keys that reference map-like arrays, e.g., 'meta[color]'.
-     * This pattern captures keys that use square brackets to reference fields in nested maps or arrays.
+     * The number of translated keys kept by the default constructor.
      */
-    private static final Pattern FORM_MAP_REFERENCE_PATTERN = Pattern.compile("((\\[)([a-zA-Z]{1}[a-zA-Z0-9\\_]*)(\\]))");
+    public static final int DEFAULT_MAX_CACHE_ENTRIES = 1024;
+
+    // The name the key cache is reported under to the instrumentation.
+    private static final String CACHE_NAME = "form-keys";
+
+    // Translations of bracketed keys in access order, or null if caching is disabled. Guarded by itself.
+    private final Map<String, String> translations;
 
     /**
-     * Translates the given form input map into a list of property reference field names.
-     * This method takes all keys from the input map directly as fields, except when they match the pattern
-     * for array/map references (e.g., 'meta[color]'), which will be transformed by replacing square brackets with parentheses.
+     * Default constructor that caches up to {@link #DEFAULT_MAX_CACHE_ENTRIES} translated keys.
+     */
+    public FormPropertyReferenceConverter() {
+        this(DEFAULT_MAX_CACHE_ENTRIES);
+    }
+
+    /**
+     * Constructor that accepts the number of translated keys to cache. When the cache is full the least recently
+     * used translation is evicted.
      *
-     * <p><strong>Example:</strong><br>
-     * 'meta[color]' becomes 'meta(color)'.
-     * </p>
+     * @param maxCacheEntries The maximum number of translations to keep, or 0 to disable caching.
+     */
+    public FormPropertyReferenceConverter(int maxCacheEntries) {
+        Validate.isTrue(maxCacheEntries >= 0, "maxCacheEntries must not be negative.");
+        this.translations = maxCacheEntries == 0 ? null : new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxCacheEntries;
+            }
+        };
+    }
+
+    /**
+     * Translates the given form input map into a list of property reference field names.
+     * This method takes all keys from the input map directly as fields, except when they use the bracket syntax,
+     * which is translated into property path syntax:
+     * <ul>
+     *     <li>The first bracketed name after a property references a map entry: 'meta[color]' becomes 'meta(color)'.</li>
+     *     <li>Further bracketed names reference nested properties: 'meta[color][name]' becomes 'meta(color).name'.</li>
+     *     <li>Bracketed numbers are indexes and are kept: 'items[0][name]' becomes 'items[0].name'.</li>
+     * </ul>
+     * Brackets holding anything else are kept as they are. A closing bracket must be followed by an opening
+     * bracket, a dot or the end of the key.
      *
      * @param input The input map containing form fields as keys and their values as string arrays.
      * @return A collection of field names with adjusted formatting for map-like references.
+     * @throws IllegalArgumentException If a key has text directly after a closing bracket.
      */
     @Override
     public Collection<String> translate(Map<String, String[]> input) {
-        List<String> refs = new ArrayList<>();
+        var instrumentation = PatchInstrumentation.get();
+        long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        List<String> refs = new ArrayList<>(input.size());
         for (String key : input.keySet()) {
-            // Replace keys matching the form map reference pattern and collect them into refs.
-            refs.add(FORM_MAP_REFERENCE_PATTERN.matcher(key).replaceAll("($3)"));
+            refs.add(translateKey(key));
+        }
+        if (instrumentation.isEnabled()) {
+            instrumentation.converted(getClass(), refs.size(), System.nanoTime() - start);
         }
         return refs;
     }
+
+    /**
+     * Translates a single form key into a property reference.
+     *
+     * @param key The form key, e.g. 'meta[color]'.
+     * @return The property reference, e.g. 'meta(color)'.
+     * @throws IllegalArgumentException If the key has text directly after a closing bracket.
+     * @see #translate(Map)
+     */
+    public String translateKey(String key) {
+        int bracket = key.indexOf('[');
+        if (bracket < 0) {
+            return key;
+        }
+        if (translations == null) {
+            return scan(key, bracket);
+        }
+
+        String ref;
+        synchronized (translations) {
+            ref = translations.get(key);
+        }
+        var instrumentation = PatchInstrumentation.get();
+        if (instrumentation.isEnabled()) {
+            instrumentation.cacheAccessed(CACHE_NAME, ref != null);
+        }
+        if (ref == null) {
+            // Scanned outside the lock; a key translated by two threads at once is cached once.
+            var scanned = scan(key, bracket);
+            synchronized (translations) {
+                ref = translations.putIfAbsent(key, scanned);
+            }
+            if (ref == null) {
+                ref = scanned;
+            }
+        }
+        return ref;
+    }
+
+    /**
+     * Rewrites the bracket groups of the key, starting at the first bracket.
+     */
+    private static String scan(String key, int bracket) {
+        var ref = new StringBuilder(key.length());
+        ref.append(key, 0, bracket);
+
+        // Whether the current property has been followed by a bracket group yet
+        boolean afterBracket = false;
+        int i = bracket;
+        while (i < key.length()) {
+            char c = key.charAt(i);
+            int close = c == '[' ? key.indexOf(']', i + 1) : -1;
+            if (close < 0) {
+                if (c == '.') {
+                    afterBracket = false;
+                }
+                ref.append(c);
+                i++;
+                continue;
+            }
+
+            if (isName(key, i + 1, close)) {
+                if (afterBracket) {
+                    ref.append('.').append(key, i + 1, close);
+                } else {
+                    ref.append('(').append(key, i + 1, close).append(')');
+                }
+            } else {
+                ref.append(key, i, close + 1);
+            }
+            afterBracket = true;
+            i = close + 1;
+            if (i < key.length() && key.charAt(i) != '[' && key.charAt(i) != '.') {
+                throw new IllegalArgumentException("The parameter '" + key + "' does not apply to this resource.");
+            }
+        }
+        return ref.toString();
+    }
+
+    /**
+     * Tests whether the given range is a name, i.e. a letter followed by letters, digits or underscores.
+     */
+    private static boolean isName(String key, int start, int end) {
+        if (start == end || !isLetter(key.charAt(start))) {
+            return false;
+        }
+        for (int i = start + 1; i < end; i++) {
+            char c = key.charAt(i);
+            if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
 }
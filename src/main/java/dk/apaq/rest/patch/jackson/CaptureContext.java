@@ -0,0 +1,153 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.util.List;
+
+/**
+ * Receives what {@link TreeNodeExtractorModule} and {@link JacksonTreeNodeMapper} capture from the root JSON
+ * object, i.e. the tree in {@link CaptureMode#TREE} and the dirty paths in {@link CaptureMode#PATHS}.
+ *
+ * A context is either bound explicitly to an {@link ObjectReader} with {@link #bind(ObjectReader)}, in which case
+ * it works regardless of which thread deserializes and which reads the result, or opened as a scope on the
+ * current thread with {@link #open()}:
+ *
+ * <pre>
+ * try (CaptureContext capture = CaptureContext.open()) {
+ *     Pet patch = mapper.readValue(body, Pet.class);
+ *     merger.mergeEntities(original, patch, converter.translate(capture.getTreeNode()));
+ * }
+ * </pre>
+ *
+ * Closing the context releases what was captured and unbinds it from the thread, so nothing outlives the request.
+ * A {@link CompactTree} is returned to its pool when the context is closed or the next capture replaces it.
+ * When no context is bound, captures fall back to the thread-local {@link TreeNodeHolder} and
+ * {@link DirtyPathHolder}.
+ */
+public final class CaptureContext implements AutoCloseable {
+
+    /**
+     * The attribute key under which a context is bound to an {@link ObjectReader} or {@link DeserializationContext}.
+     */
+    public static final Object ATTRIBUTE = CaptureContext.class;
+
+    // The innermost context opened as a scope on each thread.
+    private static final ThreadLocal<CaptureContext> CURRENT = new ThreadLocal<>();
+
+    private final CaptureContext parent;
+    private final boolean scoped;
+    private volatile TreeNode treeNode;
+    private volatile List<String> paths;
+
+    /**
+     * Creates a context that is not bound to any thread. Bind it to a reader with {@link #bind(ObjectReader)}.
+     */
+    public CaptureContext() {
+        this(null, false);
+    }
+
+    private CaptureContext(CaptureContext parent, boolean scoped) {
+        this.parent = parent;
+        this.scoped = scoped;
+    }
+
+    /**
+     * Opens a context as a scope on the current thread. Captures made on this thread while the scope is open go
+     * to the returned context, and {@link TreeNodeHolder#get()} and {@link DirtyPathHolder#get()} read from it.
+     * Scopes may be nested; closing a scope restores the enclosing one.
+     *
+     * @return The opened context, to be closed when the request is done.
+     */
+    public static CaptureContext open() {
+        var context = new CaptureContext(CURRENT.get(), true);
+        CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * @return The innermost context opened on the current thread, or {@code null} if there is none.
+     */
+    public static CaptureContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the context bound to the given deserialization, falling back to the current thread's scope.
+     *
+     * @param ctxt The deserialization context, or {@code null} if none is available.
+     * @return The context, or {@code null} if there is none.
+     */
+    public static CaptureContext from(DeserializationContext ctxt) {
+        if (ctxt != null && ctxt.getAttribute(ATTRIBUTE) instanceof CaptureContext context) {
+            return context;
+        }
+        return current();
+    }
+
+    /**
+     * Binds this context to the given reader, so every value read through the returned reader is captured here.
+     *
+     * @param reader The reader to bind to.
+     * @return A reader with this context bound.
+     */
+    public ObjectReader bind(ObjectReader reader) {
+        return reader.withAttribute(ATTRIBUTE, this);
+    }
+
+    /**
+     * @return The tree captured in {@link CaptureMode#TREE}, or {@code null} if none was captured.
+     */
+    public TreeNode getTreeNode() {
+        return treeNode;
+    }
+
+    /**
+     * @return The dirty paths captured in {@link CaptureMode#PATHS}, or {@code null} if none were captured.
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    /**
+     * Releases what was captured and, if this context was opened as a scope, restores the enclosing scope.
+     */
+    @Override
+    public void close() {
+        release(treeNode, null);
+        treeNode = null;
+        paths = null;
+        if (scoped && CURRENT.get() == this) {
+            if (parent == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(parent);
+            }
+        }
+    }
+
+    /**
+     * Stores a capture in the context bound to the deserialization, or the legacy holders if none is bound.
+     */
+    static void capture(DeserializationContext ctxt, TreeNode treeNode, List<String> paths) {
+        var context = from(ctxt);
+        if (context != null) {
+            release(context.treeNode, treeNode);
+            context.treeNode = treeNode;
+            context.paths = paths;
+        } else {
+            TreeNodeHolder.set(treeNode);
+            DirtyPathHolder.set(paths);
+        }
+    }
+
+    /**
+     * Returns a replaced {@link CompactTree} to its pool.
+     */
+    static void release(TreeNode previous, TreeNode next) {
+        if (previous != next && previous instanceof CompactTree compactTree) {
+            compactTree.release();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.exc.StreamConstraintsException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import java.io.IOException;
+
+/**
+ * Thrown while capturing a patch document that exceeds one of its {@link CaptureLimits}.
+ */
+public class CaptureLimitExceededException extends StreamConstraintsException {
+
+    private static final long serialVersionUID = 1L;
+
+    // The limit that was exceeded.
+    private final CaptureLimits.Limit limit;
+
+    /**
+     * @param limit    The limit that was exceeded.
+     * @param message  The description of the limit.
+     * @param location The location in the document where the limit was exceeded, if known.
+     */
+    public CaptureLimitExceededException(CaptureLimits.Limit limit, String message, JsonLocation location) {
+        super(message, location);
+        this.limit = limit;
+    }
+
+    /**
+     * @return The limit that was exceeded.
+     */
+    public CaptureLimits.Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the limit exception a deserializer has wrapped with the path of the property being read, or the
+     * given exception if it does not wrap one.
+     */
+    static IOException unwrap(JsonMappingException ex) {
+        for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof CaptureLimitExceededException limitExceeded) {
+                return limitExceeded;
+            }
+        }
+        return ex;
+    }
+}
@@ -0,0 +1,101 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+
+import java.io.IOException;
+
+/**
+ * A {@link JsonParser} wrapper enforcing the parsing limits of {@link CaptureLimits} as the tokens are read, so a
+ * document exceeding them is rejected before it has been buffered.
+ */
+final class CaptureLimitingParser extends JsonParserDelegate {
+
+    private final CaptureLimits limits;
+    private int nodes;
+
+    private CaptureLimitingParser(JsonParser delegate, CaptureLimits limits) {
+        super(delegate);
+        this.limits = limits;
+        // A parser handed over by a deserializer has already read the start of the root object.
+        this.nodes = delegate.currentToken() == null ? 0 : 1;
+    }
+
+    /**
+     * Wraps the parser if the limits apply while parsing.
+     *
+     * @param parser The parser to read tokens from.
+     * @param limits The limits to enforce.
+     * @return The wrapped parser, or the given parser if there is nothing to enforce.
+     */
+    static JsonParser wrap(JsonParser parser, CaptureLimits limits) {
+        return limits.limitsParsing() ? new CaptureLimitingParser(parser, limits) : parser;
+    }
+
+    @Override
+    public JsonToken nextToken() throws IOException {
+        var token = delegate.nextToken();
+        if (token != null) {
+            check(token);
+        }
+        return token;
+    }
+
+    @Override
+    public JsonToken nextValue() throws IOException {
+        var token = nextToken();
+        if (token == JsonToken.FIELD_NAME) {
+            token = nextToken();
+        }
+        return token;
+    }
+
+    @Override
+    public JsonParser skipChildren() throws IOException {
+        var token = currentToken();
+        if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+            return this;
+        }
+
+        // Skip through this parser rather than the delegate so the skipped values are still counted.
+        int open = 1;
+        while (open > 0) {
+            token = nextToken();
+            if (token == null) {
+                break;
+            }
+            if (token.isStructStart()) {
+                open++;
+            } else if (token.isStructEnd()) {
+                open--;
+            }
+        }
+        return this;
+    }
+
+    private void check(JsonToken token) throws CaptureLimitExceededException {
+        if (token.isStructStart() || token.isScalarValue()) {
+            if (++nodes > limits.getMaxNodes()) {
+                throw exceeded(CaptureLimits.Limit.NODES, "The patch document exceeds the maximum of "
+                        + limits.getMaxNodes() + " values.");
+            }
+            if (token.isStructStart() && delegate.getParsingContext().getNestingDepth() > limits.getMaxDepth()) {
+                throw exceeded(CaptureLimits.Limit.DEPTH, "The patch document exceeds the maximum nesting depth of "
+                        + limits.getMaxDepth() + ".");
+            }
+        }
+        if (limits.getMaxDocumentLength() != Long.MAX_VALUE) {
+            var location = delegate.currentLocation();
+            long offset = location.getByteOffset() >= 0 ? location.getByteOffset() : location.getCharOffset();
+            if (offset > limits.getMaxDocumentLength()) {
+                throw exceeded(CaptureLimits.Limit.DOCUMENT_LENGTH, "The patch document exceeds the maximum length of "
+                        + limits.getMaxDocumentLength() + ".");
+            }
+        }
+    }
+
+    private CaptureLimitExceededException exceeded(CaptureLimits.Limit limit, String message) {
+        return new CaptureLimitExceededException(limit, message, delegate.currentLocation());
+    }
+}
@@ -0,0 +1,158 @@
+package dk.apaq.rest.patch.jackson;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Immutable limits on what may be captured from a single patch document. Capturing fails with a
+ * {@link CaptureLimitExceededException} as soon as a limit is exceeded while parsing, before the rest of the
+ * document is buffered.
+ * <ul>
+ *     <li>The document length is counted in bytes, or in characters when parsing from text.</li>
+ *     <li>Nodes are all values in the document, including objects and arrays.</li>
+ *     <li>The depth counts nested objects and arrays, with the root object at depth 1.</li>
+ *     <li>Paths are the dirty paths emitted for the document.</li>
+ * </ul>
+ *
+ * A single string or number is read as a whole before it can be counted, so its length is bounded by the
+ * {@link com.fasterxml.jackson.core.StreamReadConstraints} of the mapper rather than by these limits.
+ */
+public final class CaptureLimits {
+
+    /**
+     * The limits that can be exceeded.
+     */
+    public enum Limit {
+        DOCUMENT_LENGTH, NODES, DEPTH, PATHS
+    }
+
+    private static final CaptureLimits NONE = new CaptureLimits(Long.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final long maxDocumentLength;
+    private final int maxNodes;
+    private final int maxDepth;
+    private final int maxPaths;
+
+    private CaptureLimits(long maxDocumentLength, int maxNodes, int maxDepth, int maxPaths) {
+        this.maxDocumentLength = maxDocumentLength;
+        this.maxNodes = maxNodes;
+        this.maxDepth = maxDepth;
+        this.maxPaths = maxPaths;
+    }
+
+    /**
+     * @return Limits that allow everything.
+     */
+    public static CaptureLimits none() {
+        return NONE;
+    }
+
+    /**
+     * @return A builder of limits. Limits that are not set allow everything.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The maximum length of the document in bytes or characters.
+     */
+    public long getMaxDocumentLength() {
+        return maxDocumentLength;
+    }
+
+    /**
+     * @return The maximum number of nodes in the document.
+     */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * @return The maximum nesting depth of the document.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return The maximum number of dirty paths emitted for the document.
+     */
+    public int getMaxPaths() {
+        return maxPaths;
+    }
+
+    /**
+     * @return {@code true} if any limit applies while parsing, i.e. any limit other than the number of paths.
+     */
+    boolean limitsParsing() {
+        return maxDocumentLength != Long.MAX_VALUE || maxNodes != Integer.MAX_VALUE || maxDepth != Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureLimits[maxDocumentLength=" + maxDocumentLength + ", maxNodes=" + maxNodes
+                + ", maxDepth=" + maxDepth + ", maxPaths=" + maxPaths + "]";
+    }
+
+    /**
+     * Builds {@link CaptureLimits}.
+     */
+    public static final class Builder {
+
+        private long maxDocumentLength = Long.MAX_VALUE;
+        private int maxNodes = Integer.MAX_VALUE;
+        private int maxDepth = Integer.MAX_VALUE;
+        private int maxPaths = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxDocumentLength The maximum length of the document in bytes or characters (must be positive).
+         * @return This builder.
+         */
+        public Builder maxDocumentLength(long maxDocumentLength) {
+            Validate.isTrue(maxDocumentLength > 0, "maxDocumentLength must be positive.");
+            this.maxDocumentLength = maxDocumentLength;
+            return this;
+        }
+
+        /**
+         * @param maxNodes The maximum number of nodes in the document (must be positive).
+         * @return This builder.
+         */
+        public Builder maxNodes(int maxNodes) {
+            Validate.isTrue(maxNodes > 0, "maxNodes must be positive.");
+            this.maxNodes = maxNodes;
+            return this;
+        }
+
+        /**
+         * @param maxDepth The maximum nesting depth of the document (must be positive).
+         * @return This builder.
+         */
+        public Builder maxDepth(int maxDepth) {
+            Validate.isTrue(maxDepth > 0, "maxDepth must be positive.");
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * @param maxPaths The maximum number of dirty paths emitted for the document (must be positive).
+         * @return This builder.
+         */
+        public Builder maxPaths(int maxPaths) {
+            Validate.isTrue(maxPaths > 0, "maxPaths must be positive.");
+            this.maxPaths = maxPaths;
+            return this;
+        }
+
+        /**
+         * @return The built limits.
+         */
+        public CaptureLimits build() {
+            return new CaptureLimits(maxDocumentLength, maxNodes, maxDepth, maxPaths);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package dk.apaq.rest.patch.jackson;
+
+/**
+ * Determines what {@link JacksonTreeNodeMapper} and {@link TreeNodeExtractorModule} capture from the root JSON
+ * object while deserializing.
+ */
+public enum CaptureMode {
+
+    /**
+     * Buffers the root object into a tree, stores it in {@link TreeNodeHolder} and deserializes from the tree.
+     * The dirty paths can be resolved with {@link TreeNodePropertyReferenceConverter}.
+     */
+    TREE,
+
+    /**
+     * Records the property paths present in the root object while it is deserialized in a single pass, and
+     * stores them in {@link DirtyPathHolder}. No tree is built, so {@link TreeNodeHolder} is cleared.
+     */
+    PATHS,
+
+    /**
+     * Buffers the root object into flat token arrays taken from a per-thread pool, stores it as a
+     * {@link CompactTree} in {@link TreeNodeHolder} and deserializes from the buffer. The dirty paths can be resolved
+     * with {@link TreeNodePropertyReferenceConverter} or {@link CompactTree#getPaths()} without a node graph ever
+     * being built; one is only built if the tree is navigated.
+     */
+    COMPACT
+}
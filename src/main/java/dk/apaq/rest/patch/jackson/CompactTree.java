@@ -0,0 +1,360 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ContainerNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * A captured JSON value held as flat token arrays in a pooled buffer, as captured in {@link CaptureMode#COMPACT}.
+ * Deserializing from it with {@link #traverse()} and resolving its dirty paths with {@link #getPaths()} or
+ * {@link TreeNodePropertyReferenceConverter} read the arrays directly, so the common case of capturing a patch,
+ * resolving its dirty fields and discarding it never builds a node graph.
+ *
+ * It is still a {@link TreeNode}. Navigating it, e.g. with {@link #get(String)}, builds the equivalent
+ * {@link JsonNode} tree on first use, which is also available from {@link #toTree()}.
+ *
+ * The buffer is returned to a per-thread pool when the tree is released, which happens when the
+ * {@link CaptureContext} holding it is closed or the capture is replaced by the next one. After that the tree can
+ * only be used if it was built before; otherwise an {@link IllegalStateException} is thrown. Call {@link #toTree()}
+ * to keep the content of a capture beyond its request.
+ */
+public final class CompactTree implements TreeNode {
+
+    private final CompactTreeBuffer buffer;
+    private final int generation;
+    private volatile JsonNode tree;
+
+    private CompactTree(CompactTreeBuffer buffer) {
+        this.buffer = buffer;
+        this.generation = buffer.generation();
+    }
+
+    /**
+     * Captures the value the parser is positioned at, or the next one if it has not been started.
+     */
+    static CompactTree read(JsonParser parser) throws IOException {
+        var buffer = CompactTreeBuffer.acquire();
+        try {
+            buffer.read(parser);
+        } catch (IOException | RuntimeException ex) {
+            buffer.release();
+            throw ex;
+        }
+        return new CompactTree(buffer);
+    }
+
+    /**
+     * Returns the property paths present in the root object, in the order they were encountered. As with
+     * {@link DirtyPathCapturingParser}, nested objects contribute the paths of their values (e.g. {@code child.text})
+     * and arrays are treated as single values.
+     *
+     * @return The paths of the root object, or an empty list if the value is not an object.
+     * @throws IllegalStateException If the tree has been released.
+     */
+    public List<String> getPaths() {
+        if (tree != null && isReleased()) {
+            return new ArrayList<>(new TreeNodePropertyReferenceConverter().translate(tree));
+        }
+        var paths = new LinkedHashSet<String>();
+        walk(paths::add, depth -> { });
+        return new ArrayList<>(paths);
+    }
+
+    /**
+     * Returns the captured value as a {@link JsonNode} tree, building it on first use. The tree stays usable after
+     * this capture has been released.
+     *
+     * @return The tree of the captured value.
+     * @throws IllegalStateException If the tree has been released before it was built.
+     */
+    public JsonNode toTree() {
+        var result = tree;
+        if (result == null) {
+            synchronized (this) {
+                result = tree;
+                if (result == null) {
+                    result = build();
+                    tree = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return {@code true} if the buffer of this tree has been returned to the pool.
+     */
+    public boolean isReleased() {
+        return buffer.generation() != generation;
+    }
+
+    /**
+     * Returns the buffer of this tree to the pool. A tree built with {@link #toTree()} remains usable.
+     */
+    public void release() {
+        if (!isReleased()) {
+            buffer.release();
+        }
+    }
+
+    /**
+     * @return The number of objects, arrays and values in the captured value.
+     */
+    int nodeCount() {
+        return tree != null && isReleased() ? TreeNodeExtractorDeserializer.sizeOf(tree) : buffer().nodes();
+    }
+
+    /**
+     * Walks the root object, handing each path to the consumer and the depth of each nested object to the depth
+     * consumer as it is entered. The root object has depth 1.
+     */
+    void walk(Consumer<? super String> consumer, IntConsumer depths) {
+        var buffer = buffer();
+        if (buffer.size() == 0 || buffer.token(0) != JsonToken.START_OBJECT) {
+            return;
+        }
+        var path = new StringBuilder(64);
+        var lengths = new int[8];
+        int depth = 1;
+        int end = buffer.end(0);
+        int index = 1;
+        while (index < end) {
+            var token = buffer.token(index);
+            if (token == JsonToken.END_OBJECT) {
+                depth--;
+                index++;
+                continue;
+            }
+
+            // Truncate the buffer back to the parent's path before appending the next field.
+            path.setLength(lengths[depth - 1]);
+            if (depth > 1) {
+                path.append('.');
+            }
+            path.append((String) buffer.value(index));
+
+            var value = buffer.token(index + 1);
+            if (value == JsonToken.START_OBJECT) {
+                depths.accept(depth + 1);
+                if (depth == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, depth * 2);
+                }
+                lengths[depth++] = path.length();
+                index += 2;
+            } else if (value == JsonToken.START_ARRAY) {
+                // Array elements are treated as values.
+                consumer.accept(path.toString());
+                index = buffer.end(index + 1) + 1;
+            } else {
+                consumer.accept(path.toString());
+                index += 2;
+            }
+        }
+    }
+
+    @Override
+    public JsonToken asToken() {
+        if (tree != null) {
+            return tree.asToken();
+        }
+        var buffer = buffer();
+        return buffer.size() == 0 ? null : buffer.token(0);
+    }
+
+    @Override
+    public JsonParser.NumberType numberType() {
+        return isValueNode() ? toTree().numberType() : null;
+    }
+
+    @Override
+    public int size() {
+        return toTree().size();
+    }
+
+    @Override
+    public boolean isValueNode() {
+        var token = asToken();
+        return token != null && token.isScalarValue();
+    }
+
+    @Override
+    public boolean isContainerNode() {
+        var token = asToken();
+        return token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY;
+    }
+
+    @Override
+    public boolean isMissingNode() {
+        return asToken() == null;
+    }
+
+    @Override
+    public boolean isArray() {
+        return asToken() == JsonToken.START_ARRAY;
+    }
+
+    @Override
+    public boolean isObject() {
+        return asToken() == JsonToken.START_OBJECT;
+    }
+
+    @Override
+    public TreeNode get(String fieldName) {
+        return toTree().get(fieldName);
+    }
+
+    @Override
+    public TreeNode get(int index) {
+        return toTree().get(index);
+    }
+
+    @Override
+    public TreeNode path(String fieldName) {
+        return toTree().path(fieldName);
+    }
+
+    @Override
+    public TreeNode path(int index) {
+        return toTree().path(index);
+    }
+
+    @Override
+    public Iterator<String> fieldNames() {
+        return toTree().fieldNames();
+    }
+
+    @Override
+    public TreeNode at(JsonPointer ptr) {
+        return toTree().at(ptr);
+    }
+
+    @Override
+    public TreeNode at(String jsonPointerExpression) {
+        return toTree().at(jsonPointerExpression);
+    }
+
+    /**
+     * Returns a parser over the captured value. Until the tree has been built, the parser replays the captured
+     * tokens directly, and the buffer is kept from being reused until the parser is closed.
+     *
+     * @return A parser positioned before the captured value.
+     * @throws IllegalStateException If the tree has been released before it was built.
+     */
+    @Override
+    public JsonParser traverse() {
+        return traverse(null);
+    }
+
+    /**
+     * Returns a parser over the captured value, using the given codec.
+     *
+     * @param codec The codec of the parser.
+     * @return A parser positioned before the captured value.
+     * @throws IllegalStateException If the tree has been released before it was built.
+     */
+    @Override
+    public JsonParser traverse(ObjectCodec codec) {
+        if (tree != null && isReleased()) {
+            return tree.traverse(codec);
+        }
+        return new CompactTreeParser(buffer(), codec);
+    }
+
+    @Override
+    public String toString() {
+        return tree != null || !isReleased() ? toTree().toString() : "CompactTree[released]";
+    }
+
+    private CompactTreeBuffer buffer() {
+        if (isReleased()) {
+            throw new IllegalStateException("The captured tree has been released.");
+        }
+        return buffer;
+    }
+
+    private JsonNode build() {
+        var buffer = buffer();
+        var factory = JsonNodeFactory.instance;
+        if (buffer.size() == 0) {
+            return factory.missingNode();
+        }
+        var stack = new ArrayList<ContainerNode<?>>();
+        JsonNode root = null;
+        String name = null;
+        for (int index = 0; index < buffer.size(); index++) {
+            var token = buffer.token(index);
+            JsonNode node;
+            switch (token) {
+                case FIELD_NAME -> {
+                    name = (String) buffer.value(index);
+                    continue;
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    stack.remove(stack.size() - 1);
+                    continue;
+                }
+                case START_OBJECT -> node = factory.objectNode();
+                case START_ARRAY -> node = factory.arrayNode();
+                case VALUE_STRING -> node = factory.textNode((String) buffer.value(index));
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> node = numberNode(factory, token, buffer.value(index));
+                case VALUE_TRUE -> node = factory.booleanNode(true);
+                case VALUE_FALSE -> node = factory.booleanNode(false);
+                case VALUE_EMBEDDED_OBJECT -> node = buffer.value(index) instanceof byte[] bytes
+                        ? factory.binaryNode(bytes) : factory.pojoNode(buffer.value(index));
+                default -> node = factory.nullNode();
+            }
+            if (stack.isEmpty()) {
+                root = node;
+            } else if (stack.get(stack.size() - 1) instanceof ObjectNode object) {
+                object.set(name, node);
+            } else {
+                ((ArrayNode) stack.get(stack.size() - 1)).add(node);
+            }
+            if (node instanceof ContainerNode<?> container) {
+                stack.add(container);
+            }
+        }
+        return root;
+    }
+
+    private static JsonNode numberNode(JsonNodeFactory factory, JsonToken token, Object value) {
+        if (value instanceof String text) {
+            return token == JsonToken.VALUE_NUMBER_INT ? factory.numberNode(new BigInteger(text))
+                    : factory.numberNode(Double.parseDouble(text));
+        }
+        if (value instanceof Integer integer) {
+            return factory.numberNode(integer);
+        }
+        if (value instanceof Long number) {
+            return factory.numberNode(number);
+        }
+        if (value instanceof BigInteger big) {
+            return factory.numberNode(big);
+        }
+        if (value instanceof Float number) {
+            return factory.numberNode(number);
+        }
+        if (value instanceof BigDecimal decimal) {
+            return factory.numberNode(decimal);
+        }
+        return factory.numberNode(((Number) value).doubleValue());
+    }
+}
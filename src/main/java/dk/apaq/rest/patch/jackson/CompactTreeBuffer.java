@@ -0,0 +1,182 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The flat storage behind a {@link CompactTree}: one entry per token of the captured value, with the token, its
+ * field name or scalar value, and for objects and arrays the index of the entry closing them.
+ *
+ * Buffers are pooled per thread. A buffer is taken from the pool when a value is captured and returned when its
+ * tree is released, once no parser is reading from it anymore. Each release bumps the generation of the buffer, so
+ * trees holding an older generation can tell that their content is gone.
+ */
+final class CompactTreeBuffer {
+
+    // Buffers grown beyond this many entries are not pooled, so a single large document does not pin its arrays.
+    static final int MAX_POOLED_ENTRIES = 16 * 1024;
+
+    // The buffer that is free for reuse on each thread.
+    private static final ThreadLocal<CompactTreeBuffer> POOL = new ThreadLocal<>();
+
+    private static final JsonToken[] TOKENS = JsonToken.values();
+
+    // The token of each entry, as its ordinal.
+    private byte[] tokens = new byte[64];
+
+    // The field name or scalar value of each entry.
+    private Object[] values = new Object[64];
+
+    // For entries starting an object or array, the index of the entry ending it.
+    private int[] ends = new int[64];
+
+    // The indexes of the objects and arrays open while reading.
+    private int[] open = new int[16];
+
+    private int size;
+    private int nodes;
+    private volatile int generation;
+    private int pins;
+    private boolean released;
+
+    private CompactTreeBuffer() {
+    }
+
+    /**
+     * Takes the free buffer of the current thread from the pool, or creates one if there is none.
+     */
+    static CompactTreeBuffer acquire() {
+        var buffer = POOL.get();
+        if (buffer == null) {
+            buffer = new CompactTreeBuffer();
+        } else {
+            POOL.remove();
+        }
+        buffer.released = false;
+        return buffer;
+    }
+
+    /**
+     * Reads the value the parser is positioned at, or the next one if it has not been started. A parser positioned
+     * within an object, as handed over to a deserializer, is read up to the end of that object.
+     */
+    void read(JsonParser parser) throws IOException {
+        var token = parser.currentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+        int depth = 0;
+        if (token == JsonToken.FIELD_NAME || token == JsonToken.END_OBJECT) {
+            // The start of the object has already been consumed.
+            open(depth++, add(JsonToken.START_OBJECT, null));
+            nodes++;
+        }
+        while (token != null) {
+            switch (token) {
+                case START_OBJECT, START_ARRAY -> open(depth++, add(token, null));
+                case END_OBJECT, END_ARRAY -> ends[open[--depth]] = add(token, null);
+                case FIELD_NAME -> add(token, parser.currentName());
+                case VALUE_STRING -> add(token, parser.getText());
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> add(token, parser.getNumberValueDeferred());
+                case VALUE_EMBEDDED_OBJECT -> add(token, parser.getEmbeddedObject());
+                default -> add(token, null);
+            }
+            if (token.isStructStart() || token.isScalarValue()) {
+                nodes++;
+            }
+            if (depth == 0) {
+                break;
+            }
+            token = parser.nextToken();
+        }
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of objects, arrays and scalar values, as counted for a tree.
+     */
+    int nodes() {
+        return nodes;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    JsonToken token(int index) {
+        return TOKENS[tokens[index]];
+    }
+
+    Object value(int index) {
+        return values[index];
+    }
+
+    int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Marks the buffer as being read by a parser, so it is not reused until the parser is closed.
+     */
+    synchronized void pin() {
+        pins++;
+    }
+
+    synchronized void unpin() {
+        if (--pins == 0 && released) {
+            recycle();
+        }
+    }
+
+    /**
+     * Invalidates the trees over this buffer and returns it to the pool of the current thread, once no parser is
+     * reading from it.
+     */
+    synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        generation++;
+        if (pins == 0) {
+            recycle();
+        }
+    }
+
+    private void recycle() {
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        nodes = 0;
+        if (tokens.length <= MAX_POOLED_ENTRIES && POOL.get() == null) {
+            POOL.set(this);
+        }
+    }
+
+    private int add(JsonToken token, Object value) {
+        if (size == tokens.length) {
+            int capacity = size * 2;
+            tokens = Arrays.copyOf(tokens, capacity);
+            values = Arrays.copyOf(values, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        tokens[size] = (byte) token.ordinal();
+        values[size] = value;
+        return size++;
+    }
+
+    private void open(int depth, int index) {
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+        }
+        open[depth] = index;
+    }
+}
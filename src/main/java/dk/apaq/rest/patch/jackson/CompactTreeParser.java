@@ -0,0 +1,339 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.core.base.ParserMinimalBase;
+import com.fasterxml.jackson.core.json.JsonReadContext;
+import com.fasterxml.jackson.databind.cfg.PackageVersion;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * A {@link JsonParser} replaying the tokens of a {@link CompactTreeBuffer}, so a captured value can be deserialized
+ * without building a tree. The buffer is pinned while the parser is open.
+ */
+final class CompactTreeParser extends ParserMinimalBase {
+
+    private final CompactTreeBuffer buffer;
+    private final int end;
+    private ObjectCodec codec;
+    private JsonReadContext context = JsonReadContext.createRootContext(null);
+    private int index = -1;
+    private boolean closed;
+
+    CompactTreeParser(CompactTreeBuffer buffer, ObjectCodec codec) {
+        this.buffer = buffer;
+        this.end = buffer.size();
+        this.codec = codec;
+        buffer.pin();
+    }
+
+    @Override
+    public JsonToken nextToken() throws IOException {
+        if (closed || index + 1 >= end) {
+            index = end;
+            return _currToken = null;
+        }
+        var token = buffer.token(++index);
+        if (token == JsonToken.FIELD_NAME || (!token.isStructEnd() && !context.inObject())) {
+            context.expectComma();
+        }
+        switch (token) {
+            case START_OBJECT -> context = context.createChildObjectContext(-1, -1);
+            case START_ARRAY -> context = context.createChildArrayContext(-1, -1);
+            case END_OBJECT, END_ARRAY -> context = context.clearAndGetParent();
+            case FIELD_NAME -> context.setCurrentName((String) buffer.value(index));
+            default -> {
+            }
+        }
+        return _currToken = token;
+    }
+
+    @Override
+    public JsonParser skipChildren() {
+        if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+            // Jump straight to the end of the object or array.
+            index = buffer.end(index);
+            _currToken = buffer.token(index);
+            context = context.clearAndGetParent();
+        }
+        return this;
+    }
+
+    @Override
+    protected void _handleEOF() {
+    }
+
+    @Override
+    @Deprecated
+    public String getCurrentName() {
+        return currentName();
+    }
+
+    @Override
+    public String currentName() {
+        JsonStreamContext ctxt = context;
+        if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+            ctxt = ctxt.getParent();
+        }
+        return ctxt == null ? null : ctxt.getCurrentName();
+    }
+
+    @Override
+    public void overrideCurrentName(String name) {
+        JsonStreamContext ctxt = context;
+        if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+            ctxt = ctxt.getParent();
+        }
+        if (ctxt instanceof JsonReadContext readContext) {
+            try {
+                readContext.setCurrentName(name);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            index = end;
+            _currToken = null;
+            buffer.unpin();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public JsonStreamContext getParsingContext() {
+        return context;
+    }
+
+    @Override
+    public ObjectCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public void setCodec(ObjectCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public Version version() {
+        return PackageVersion.VERSION;
+    }
+
+    @Override
+    public JsonLocation currentTokenLocation() {
+        return JsonLocation.NA;
+    }
+
+    @Override
+    public JsonLocation currentLocation() {
+        return JsonLocation.NA;
+    }
+
+    @Override
+    @Deprecated
+    public JsonLocation getTokenLocation() {
+        return currentTokenLocation();
+    }
+
+    @Override
+    @Deprecated
+    public JsonLocation getCurrentLocation() {
+        return currentLocation();
+    }
+
+    @Override
+    public String getText() {
+        if (_currToken == null) {
+            return null;
+        }
+        return switch (_currToken) {
+            case FIELD_NAME -> (String) buffer.value(index);
+            case VALUE_STRING -> (String) buffer.value(index);
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT, VALUE_EMBEDDED_OBJECT -> String.valueOf(buffer.value(index));
+            default -> _currToken.asString();
+        };
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        var text = getText();
+        return text == null ? null : text.toCharArray();
+    }
+
+    @Override
+    public boolean hasTextCharacters() {
+        return false;
+    }
+
+    @Override
+    public int getTextLength() {
+        var text = getText();
+        return text == null ? 0 : text.length();
+    }
+
+    @Override
+    public int getTextOffset() {
+        return 0;
+    }
+
+    @Override
+    public byte[] getBinaryValue(Base64Variant variant) throws IOException {
+        if (_currToken == JsonToken.VALUE_EMBEDDED_OBJECT && buffer.value(index) instanceof byte[] bytes) {
+            return bytes;
+        }
+        if (_currToken == JsonToken.VALUE_STRING) {
+            try {
+                return variant.decode(getText());
+            } catch (IllegalArgumentException ex) {
+                throw _constructError("Cannot decode the value as base64: " + ex.getMessage());
+            }
+        }
+        throw _constructError("Current token (" + _currToken + ") not binary");
+    }
+
+    @Override
+    public Object getEmbeddedObject() {
+        return _currToken == JsonToken.VALUE_EMBEDDED_OBJECT ? buffer.value(index) : null;
+    }
+
+    @Override
+    public Number getNumberValue() throws IOException {
+        var value = numberValue();
+        if (value instanceof String text) {
+            return _currToken == JsonToken.VALUE_NUMBER_INT ? new BigInteger(text) : Double.valueOf(text);
+        }
+        return (Number) value;
+    }
+
+    @Override
+    public Object getNumberValueDeferred() throws IOException {
+        return numberValue();
+    }
+
+    @Override
+    public NumberType getNumberType() throws IOException {
+        var value = numberValue();
+        if (value instanceof String) {
+            return _currToken == JsonToken.VALUE_NUMBER_INT ? NumberType.BIG_INTEGER : NumberType.DOUBLE;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return NumberType.INT;
+        }
+        if (value instanceof Long) {
+            return NumberType.LONG;
+        }
+        if (value instanceof BigInteger) {
+            return NumberType.BIG_INTEGER;
+        }
+        if (value instanceof Float) {
+            return NumberType.FLOAT;
+        }
+        if (value instanceof BigDecimal) {
+            return NumberType.BIG_DECIMAL;
+        }
+        return NumberType.DOUBLE;
+    }
+
+    @Override
+    public int getIntValue() throws IOException {
+        var value = getNumberValue();
+        if (value instanceof Integer integer) {
+            return integer;
+        }
+        if (value instanceof BigInteger big ? big.bitLength() >= 32
+                : isIntegral(value) && (value.longValue() < Integer.MIN_VALUE || value.longValue() > Integer.MAX_VALUE)) {
+            reportOverflowInt();
+        }
+        return value.intValue();
+    }
+
+    @Override
+    public long getLongValue() throws IOException {
+        var value = getNumberValue();
+        if (value instanceof BigInteger big && big.bitLength() >= 64) {
+            reportOverflowLong();
+        }
+        return value.longValue();
+    }
+
+    @Override
+    public BigInteger getBigIntegerValue() throws IOException {
+        var value = getNumberValue();
+        if (value instanceof BigInteger big) {
+            return big;
+        }
+        if (isIntegral(value)) {
+            return BigInteger.valueOf(value.longValue());
+        }
+        return getDecimalValue().toBigInteger();
+    }
+
+    @Override
+    public float getFloatValue() throws IOException {
+        var value = numberValue();
+        return value instanceof String text ? Float.parseFloat(text) : ((Number) value).floatValue();
+    }
+
+    @Override
+    public double getDoubleValue() throws IOException {
+        var value = numberValue();
+        if (value instanceof String text) {
+            return Double.parseDouble(text);
+        }
+        // A float is widened through its text, so 0.1f reads as 0.1 rather than 0.10000000149011612.
+        return value instanceof Float number ? Double.parseDouble(number.toString()) : ((Number) value).doubleValue();
+    }
+
+    @Override
+    public BigDecimal getDecimalValue() throws IOException {
+        var value = numberValue();
+        if (value instanceof String text) {
+            return new BigDecimal(text);
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal;
+        }
+        if (value instanceof BigInteger big) {
+            return new BigDecimal(big);
+        }
+        if (isIntegral((Number) value)) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof Float number) {
+            return new BigDecimal(number.toString());
+        }
+        return BigDecimal.valueOf(((Number) value).doubleValue());
+    }
+
+    /**
+     * Returns the number of the current token as captured, which is either a {@link Number} or its text.
+     */
+    private Object numberValue() throws IOException {
+        if (_currToken != JsonToken.VALUE_NUMBER_INT && _currToken != JsonToken.VALUE_NUMBER_FLOAT) {
+            throw _constructError("Current token (" + _currToken + ") not numeric, can not use numeric value accessors");
+        }
+        return buffer.value(index);
+    }
+
+    private static boolean isIntegral(Number value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+                || value instanceof BigInteger;
+    }
+}
@@ -0,0 +1,172 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link JsonParser} wrapper that records the property paths present in the root JSON object while the tokens
+ * flow through to the actual deserializer. This gives the same paths as
+ * {@link TreeNodePropertyReferenceConverter#translate(com.fasterxml.jackson.core.TreeNode)} without buffering
+ * the input into a tree and parsing it a second time.
+ *
+ * As with the tree converter, nested objects contribute the paths of their values (e.g. {@code child.text}),
+ * and arrays are treated as single values.
+ *
+ * When created with {@link CaptureLimits}, the document is checked against them as it is read, and the number of
+ * recorded paths is bounded by {@link CaptureLimits#getMaxPaths()}.
+ */
+public class DirtyPathCapturingParser extends JsonParserDelegate {
+
+    private final Set<String> paths = new LinkedHashSet<>();
+    private final int maxPaths;
+    private int rootDepth = -1;
+    private int ignoredDepth;
+    private boolean finished;
+
+    /**
+     * Wraps the given parser. The parser may either be fresh or positioned at the start (or the first field) of
+     * the root object, as is the case when called from within a deserializer.
+     *
+     * @param delegate The parser to read tokens from.
+     */
+    public DirtyPathCapturingParser(JsonParser delegate) {
+        this(delegate, CaptureLimits.none());
+    }
+
+    /**
+     * Wraps the given parser, enforcing the given limits while reading. The parser may either be fresh or
+     * positioned at the start (or the first field) of the root object.
+     *
+     * @param delegate The parser to read tokens from.
+     * @param limits   The limits to enforce (must not be null).
+     */
+    public DirtyPathCapturingParser(JsonParser delegate, CaptureLimits limits) {
+        super(CaptureLimitingParser.wrap(delegate, limits));
+        this.maxPaths = limits.getMaxPaths();
+        var context = delegate.getParsingContext();
+        if (context != null && context.inObject()) {
+            rootDepth = context.getNestingDepth();
+        }
+    }
+
+    /**
+     * @return The paths recorded so far, in the order they were encountered.
+     */
+    public List<String> getPaths() {
+        return new ArrayList<>(paths);
+    }
+
+    /**
+     * @return {@code true} once the end of the root object has been read.
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public JsonToken nextToken() throws IOException {
+        var token = delegate.nextToken();
+        record(token);
+        return token;
+    }
+
+    @Override
+    public JsonToken nextValue() throws IOException {
+        var token = nextToken();
+        if (token == JsonToken.FIELD_NAME) {
+            token = nextToken();
+        }
+        return token;
+    }
+
+    @Override
+    public JsonParser skipChildren() throws IOException {
+        var token = currentToken();
+        if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+            return this;
+        }
+
+        // Skip through this parser rather than the delegate so the skipped values are still recorded.
+        int open = 1;
+        while (open > 0) {
+            token = nextToken();
+            if (token == null) {
+                break;
+            }
+            if (token.isStructStart()) {
+                open++;
+            } else if (token.isStructEnd()) {
+                open--;
+            }
+        }
+        return this;
+    }
+
+    private void record(JsonToken token) throws CaptureLimitExceededException {
+        if (token == null || finished) {
+            return;
+        }
+
+        if (ignoredDepth > 0) {
+            if (token.isStructStart()) {
+                ignoredDepth++;
+            } else if (token.isStructEnd()) {
+                ignoredDepth--;
+            }
+            return;
+        }
+
+        var context = delegate.getParsingContext();
+        if (rootDepth < 0) {
+            // Only properties of a root object are tracked.
+            if (token == JsonToken.START_OBJECT) {
+                rootDepth = context.getNestingDepth();
+            } else if (token.isStructStart()) {
+                ignoredDepth = 1;
+            }
+            return;
+        }
+
+        if (token == JsonToken.START_ARRAY) {
+            // Array elements are treated as values; single elements are not supported.
+            add(pathOf(context.getParent()));
+            ignoredDepth = 1;
+        } else if (token.isScalarValue()) {
+            add(pathOf(context));
+        } else if (token == JsonToken.END_OBJECT && context.getNestingDepth() < rootDepth) {
+            finished = true;
+        }
+    }
+
+    private void add(String path) throws CaptureLimitExceededException {
+        if (paths.add(path) && paths.size() > maxPaths) {
+            throw new CaptureLimitExceededException(CaptureLimits.Limit.PATHS,
+                    "The patch document exceeds the maximum of " + maxPaths + " fields.", delegate.currentLocation());
+        }
+    }
+
+    private String pathOf(JsonStreamContext context) {
+        if (context.getNestingDepth() == rootDepth) {
+            return context.getCurrentName();
+        }
+        var builder = new StringBuilder();
+        appendPath(context, builder);
+        return builder.toString();
+    }
+
+    private void appendPath(JsonStreamContext context, StringBuilder builder) {
+        if (context.getNestingDepth() > rootDepth) {
+            appendPath(context.getParent(), builder);
+            builder.append('.');
+        }
+        builder.append(context.getCurrentName());
+    }
+}
@@ -0,0 +1,52 @@
+package dk.apaq.rest.patch.jackson;
+
+import java.util.List;
+
+/**
+ * A utility class that holds the property paths captured in {@link CaptureMode#PATHS} in a thread-local context.
+ * It is the streaming counterpart of {@link TreeNodeHolder}.
+ *
+ * As with {@link TreeNodeHolder}, the thread-local is only used when no {@link CaptureContext} is bound, and
+ * {@link #get()} reads from the context open on the current thread, if any.
+ */
+public class DirtyPathHolder {
+
+    // ThreadLocal variable to store the captured paths of the current thread.
+    private static final ThreadLocal<List<String>> PATHS = new ThreadLocal<>();
+
+    /**
+     * Private constructor to prevent instantiation. This is a utility class and should not be instantiated.
+     *
+     * @throws IllegalAccessError if the constructor is called.
+     */
+    private DirtyPathHolder() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Retrieves the property paths captured for the current thread. If a {@link CaptureContext} is open on the
+     * current thread, its paths are returned.
+     *
+     * @return The captured paths, or {@code null} if none are set.
+     */
+    public static List<String> get() {
+        var context = CaptureContext.current();
+        return context != null ? context.getPaths() : PATHS.get();
+    }
+
+    /**
+     * Stores the provided property paths in the current thread's context.
+     *
+     * @param paths The paths to store.
+     */
+    public static void set(List<String> paths) {
+        PATHS.set(paths);
+    }
+
+    /**
+     * Removes the stored paths from the current thread's context.
+     */
+    public static void clear() {
+        PATHS.remove();
+    }
+}
@@ -0,0 +1,262 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+import dk.apaq.rest.patch.EntityMerger;
+import dk.apaq.rest.patch.FieldFilter;
+import dk.apaq.rest.patch.property.PropertyAccessor;
+import dk.apaq.rest.patch.property.PropertyAccessorCache;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a JSON body directly onto an existing entity, touching only the properties present in the body. This
+ * gives the same result as deserializing a patch instance, translating its dirty fields and merging them with
+ * {@link EntityMerger}, but without the intermediate patch object, tree or reflective copy.
+ *
+ * Nested JSON objects are applied onto the existing nested beans and maps, so {@code {"child": {"text": "a"}}}
+ * applies the path {@code child.text}. If the existing nested value is {@code null}, the nested object is
+ * deserialized and set as a whole. Arrays are treated as single values, as with
+ * {@link TreeNodePropertyReferenceConverter}.
+ *
+ * Properties are matched by their JSON name and read with the deserializer the mapper uses for them, so renamed
+ * properties and per-property annotations such as {@code @JsonDeserialize} behave as in normal deserialization.
+ * Applied paths, the field filter and ignored fields use the names of the bean properties, e.g. {@code fullName}
+ * for a property renamed to {@code full_name}.
+ *
+ * Every property is checked and every value deserialized before anything is written, so a body that fails on a
+ * late field leaves the entity untouched. The writes themselves run after the body has been read; a setter that
+ * throws at that point can still leave the properties written before it applied.
+ *
+ * @param <T> The type of the entities to be patched.
+ */
+public class JacksonPatchApplier<T> {
+
+    // Logger for logging errors or information during the patch process.
+    private static final Logger LOG = LoggerFactory.getLogger(JacksonPatchApplier.class);
+
+    private final ObjectMapper mapper;
+    private final FieldFilter fieldFilter;
+    private final PropertyAccessorCache accessors = PropertyAccessorCache.getDefault();
+
+    // The deserializable properties per bean class, resolved once through Jackson's introspection.
+    private final JsonBeanProperties properties;
+
+    /**
+     * Constructor that uses the given mapper for reading values and ignores no fields by default.
+     *
+     * @param mapper The mapper used to create parsers and deserialize property values.
+     */
+    public JacksonPatchApplier(ObjectMapper mapper) {
+        this(mapper, FieldFilter.none());
+    }
+
+    /**
+     * Constructor that accepts a list of fields to be ignored by default, as with {@link EntityMerger}.
+     *
+     * @param mapper               The mapper used to create parsers and deserialize property values.
+     * @param defaultIgnoredFields A list of field names that should be ignored by default.
+     *                             If null, an empty list will be used.
+     */
+    public JacksonPatchApplier(ObjectMapper mapper, List<String> defaultIgnoredFields) {
+        this(mapper, FieldFilter.deny(defaultIgnoredFields));
+    }
+
+    /**
+     * Constructor that accepts a precompiled filter deciding which fields may be applied, as with
+     * {@link EntityMerger#EntityMerger(FieldFilter)}.
+     *
+     * @param mapper      The mapper used to create parsers and deserialize property values.
+     * @param fieldFilter The filter applied to every patch (must not be null).
+     */
+    public JacksonPatchApplier(ObjectMapper mapper, FieldFilter fieldFilter) {
+        Validate.notNull(mapper, "mapper must be specified.");
+        Validate.notNull(fieldFilter, "fieldFilter must be specified.");
+        this.mapper = mapper;
+        this.fieldFilter = fieldFilter;
+        this.properties = new JsonBeanProperties(mapper);
+    }
+
+    /**
+     * Applies the given JSON onto the entity.
+     *
+     * @param entity The entity to be updated (must not be null).
+     * @param json   The JSON object to apply.
+     * @return The paths that were applied, in the same format as {@link TreeNodePropertyReferenceConverter} but with
+     * the names of the bean properties.
+     * @throws IOException              If the JSON cannot be parsed or a value cannot be deserialized.
+     * @throws IllegalArgumentException If any present field cannot be updated.
+     */
+    public List<String> apply(T entity, String json) throws IOException {
+        try (var parser = mapper.createParser(json)) {
+            return apply(entity, parser, Collections.emptyList());
+        }
+    }
+
+    /**
+     * Applies the JSON read from the given stream onto the entity.
+     *
+     * @param entity The entity to be updated (must not be null).
+     * @param json   The stream to read the JSON object from.
+     * @return The paths that were applied.
+     * @throws IOException              If the JSON cannot be parsed or a value cannot be deserialized.
+     * @throws IllegalArgumentException If any present field cannot be updated.
+     */
+    public List<String> apply(T entity, InputStream json) throws IOException {
+        try (var parser = mapper.createParser(json)) {
+            return apply(entity, parser, Collections.emptyList());
+        }
+    }
+
+    /**
+     * Applies the JSON object read from the given parser onto the entity, ignoring the given fields in addition
+     * to the default field filter. The parser may be fresh or positioned at the start of the object, and is
+     * left positioned at its end.
+     *
+     * @param entity        The entity to be updated (must not be null).
+     * @param parser        The parser to read the JSON object from (must not be null).
+     * @param ignoredFields A list of field names to be ignored (must not be null).
+     * @return The paths that were applied.
+     * @throws IOException              If the JSON cannot be parsed or a value cannot be deserialized.
+     * @throws IllegalArgumentException If any present field cannot be updated or the input is not an object.
+     */
+    public List<String> apply(T entity, JsonParser parser, List<String> ignoredFields) throws IOException {
+        Validate.notNull(entity, "entity must be specified.");
+        Validate.notNull(parser, "parser must be specified.");
+        Validate.notNull(ignoredFields, "ignoredFields must be specified.");
+
+        var token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("The patch must be a JSON object.");
+        }
+
+        var ignored = ignoredFields.isEmpty() ? Set.<String>of() : new HashSet<>(ignoredFields);
+        var writes = new ArrayList<Write>();
+        applyObject(entity, "", parser, ignored, writes);
+
+        var applied = new ArrayList<String>(writes.size());
+        for (var write : writes) {
+            try {
+                write.apply();
+            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException | IndexOutOfBoundsException ex) {
+                LOG.debug("The parameter '{}' could not be applied.", write.path(), ex);
+                throw new IllegalArgumentException("The parameter '" + write.path() + "' does not apply to this resource.");
+            }
+            applied.add(write.path());
+        }
+        return applied;
+    }
+
+    private void applyObject(Object target, String prefix, JsonParser parser, Set<String> ignoredFields,
+                             List<Write> writes) throws IOException {
+        for (var token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            var name = parser.currentName();
+            token = parser.nextToken();
+
+            if (target instanceof Map<?, ?> map) {
+                applyEntry(map, name, prefix + name, token, parser, ignoredFields, writes);
+            } else {
+                applyProperty(target, name, prefix, token, parser, ignoredFields, writes);
+            }
+        }
+    }
+
+    private void applyProperty(Object target, String name, String prefix, JsonToken token, JsonParser parser,
+                               Set<String> ignoredFields, List<Write> writes) throws IOException {
+        var property = properties.find(mapper.constructType(target.getClass()), name);
+        if (property == null) {
+            throw new IllegalArgumentException("The parameter '" + prefix + name + "' does not apply to this resource.");
+        }
+
+        // Paths use the name of the bean property, which differs from the JSON name of a renamed property.
+        var path = prefix + property.getName();
+        var accessor = accessors.get(target.getClass(), property.getName());
+        try {
+            if (token == JsonToken.START_OBJECT && isNestable(property.getType())) {
+                var existing = accessor.get(target);
+                if (existing != null) {
+                    applyObject(existing, path + ".", parser, ignoredFields, writes);
+                    return;
+                }
+            }
+
+            if (isIgnored(path, ignoredFields) || property.skips(token)) {
+                parser.skipChildren();
+                return;
+            }
+            var problem = accessor.validate();
+            if (problem != null) {
+                LOG.debug("The parameter '{}' cannot be written: {}", path, problem);
+                throw new IllegalArgumentException("The parameter '" + path + "' does not apply to this resource.");
+            }
+            writes.add(new Write(path, target, accessor, null, null, property.read(parser)));
+        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException | IndexOutOfBoundsException ex) {
+            LOG.debug("The parameter '{}' could not be applied.", path, ex);
+            throw new IllegalArgumentException("The parameter '" + path + "' does not apply to this resource.");
+        }
+    }
+
+    private void applyEntry(Map<?, ?> map, String key, String path, JsonToken token, JsonParser parser,
+                            Set<String> ignoredFields, List<Write> writes) throws IOException {
+        var existing = map.get(key);
+        if (token == JsonToken.START_OBJECT && existing != null && isNestable(mapper.constructType(existing.getClass()))) {
+            applyObject(existing, path + ".", parser, ignoredFields, writes);
+            return;
+        }
+
+        if (isIgnored(path, ignoredFields)) {
+            parser.skipChildren();
+            return;
+        }
+        // Values of maps are read as their natural JSON representation, as no declared type is at hand.
+        writes.add(new Write(path, null, null, map, key, parser.readValueAs(Object.class)));
+    }
+
+    private boolean isIgnored(String path, Set<String> ignoredFields) {
+        return !fieldFilter.isAllowed(path) || ignoredFields.contains(path);
+    }
+
+    /**
+     * Tests whether a JSON object for a value of the given type is applied onto the existing value rather than
+     * replacing it, i.e. whether the type is a map or a bean.
+     */
+    static boolean isNestable(JavaType type) {
+        if (type.isMapLikeType()) {
+            return true;
+        }
+        var raw = type.getRawClass();
+        return !type.isContainerType() && !type.isEnumType() && !raw.isPrimitive() && raw != Object.class
+                && !TreeNode.class.isAssignableFrom(raw) && !ClassUtil.isJDKClass(raw);
+    }
+
+    /**
+     * A value read from the body, written onto either a property of a bean or an entry of a map once the whole
+     * body has been read.
+     */
+    private record Write(String path, Object target, PropertyAccessor accessor, Map<?, ?> map, String key, Object value) {
+
+        @SuppressWarnings("unchecked")
+        void apply() throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            if (map != null) {
+                ((Map<Object, Object>) map).put(key, value);
+            } else {
+                accessor.set(target, value);
+            }
+        }
+    }
+}
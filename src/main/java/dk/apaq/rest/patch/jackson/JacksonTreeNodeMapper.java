@@ -1,20 +1,83 @@
 package dk.apaq.rest.patch.jackson;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import org.apache.commons.lang.Validate;
 
 import java.io.IOException;
 
 /**
  * Custom Jackson {@link ObjectMapper} that captures each parsed JSON tree node and places it into {@link TreeNodeHolder}.
  * This class is useful when you need to intercept and hold the tree representation of JSON objects during deserialization.
+ * If a {@link CaptureContext} is open on the current thread, the tree is placed there instead.
+ *
+ * When created with {@link CaptureMode#PATHS} it instead records the dirty property paths in a single pass and
+ * places them into {@link DirtyPathHolder}. With {@link CaptureMode#COMPACT} it captures a pooled {@link CompactTree},
+ * which only builds a tree of nodes when navigated.
+ *
+ * The input is checked against the {@link CaptureLimits} while it is read, so an oversized document is rejected
+ * with a {@link CaptureLimitExceededException} before it has been buffered.
+ *
+ * Any Jackson format can be captured by passing its factory, as the capture works on the tokens of the parser.
  */
 public class JacksonTreeNodeMapper extends ObjectMapper {
 
+    // What to capture from the root object while reading.
+    private final CaptureMode captureMode;
+
+    // The limits the input is checked against while it is captured.
+    private final CaptureLimits limits;
+
+    /**
+     * Default constructor that captures the JSON tree node ({@link CaptureMode#TREE}).
+     */
+    public JacksonTreeNodeMapper() {
+        this(CaptureMode.TREE);
+    }
+
+    /**
+     * Constructor that accepts what should be captured while reading.
+     *
+     * @param captureMode The capture mode to use.
+     */
+    public JacksonTreeNodeMapper(CaptureMode captureMode) {
+        this(captureMode, CaptureLimits.none());
+    }
+
+    /**
+     * Constructor that accepts what should be captured while reading and the limits of a captured document.
+     *
+     * @param captureMode The capture mode to use.
+     * @param limits      The limits of a captured document (must not be null).
+     */
+    public JacksonTreeNodeMapper(CaptureMode captureMode, CaptureLimits limits) {
+        this(null, captureMode, limits);
+    }
+
+    /**
+     * Constructor that accepts the factory to read with, what should be captured while reading and the limits of a
+     * captured document. Passing the factory of a binary format, e.g. {@code new CBORFactory()}, captures bodies of
+     * that format the same way as JSON.
+     *
+     * @param factory     The factory to create parsers with, or {@code null} for JSON.
+     * @param captureMode The capture mode to use.
+     * @param limits      The limits of a captured document (must not be null).
+     */
+    public JacksonTreeNodeMapper(JsonFactory factory, CaptureMode captureMode, CaptureLimits limits) {
+        super(factory);
+        Validate.notNull(limits, "limits must be specified.");
+        this.captureMode = captureMode;
+        this.limits = limits;
+    }
+
     /**
      * Reads the JSON data, stores the resulting tree node in {@link TreeNodeHolder}, and then proceeds to map the data
-     * to the target Java type.
+     * to the target Java type. In {@link CaptureMode#PATHS} the data is mapped directly while the dirty paths are
+     * recorded into {@link DirtyPathHolder}.
      *
      * @param jp        The {@link JsonParser} used for reading JSON input.
      * @param valueType The target Java type to which the JSON data is to be deserialized.
@@ -23,11 +86,43 @@ public class JacksonTreeNodeMapper extends ObjectMapper {
      */
     @Override
     protected Object _readMapAndClose(JsonParser jp, JavaType valueType) throws IOException {
+        var instrumentation = PatchInstrumentation.get();
+        long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        if (captureMode == CaptureMode.PATHS) {
+            // Record the paths while the tokens flow through to the deserializer
+            var capturing = new DirtyPathCapturingParser(jp, limits);
+            Object result;
+            try {
+                result = super._readMapAndClose(capturing, valueType);
+            } catch (JsonMappingException ex) {
+                throw CaptureLimitExceededException.unwrap(ex);
+            }
+            var paths = capturing.getPaths();
+            CaptureContext.capture(null, null, paths);
+            if (instrumentation.isEnabled()) {
+                instrumentation.captureCompleted(captureMode, paths.size(), System.nanoTime() - start);
+            }
+            return result;
+        }
+
+        if (captureMode == CaptureMode.COMPACT) {
+            // Buffer the input into pooled token arrays and map the data from them
+            var compactTree = CompactTree.read(CaptureLimitingParser.wrap(jp, limits));
+            CaptureContext.capture(null, compactTree, null);
+            if (instrumentation.isEnabled()) {
+                instrumentation.captureCompleted(captureMode, compactTree.nodeCount(), System.nanoTime() - start);
+            }
+            return super._readMapAndClose(compactTree.traverse(this), valueType);
+        }
+
         // Read the entire JSON input into a tree structure
-        var node = jp.readValueAsTree();
+        var node = CaptureLimitingParser.wrap(jp, limits).readValueAsTree();
 
-        // Store the tree node in TreeNodeHolder for later retrieval or processing
-        TreeNodeHolder.set(node);
+        // Store the tree node in the current CaptureContext, or TreeNodeHolder, for later retrieval or processing
+        CaptureContext.capture(null, node, null);
+        if (instrumentation.isEnabled() && node != null) {
+            instrumentation.captureCompleted(captureMode, TreeNodeExtractorDeserializer.sizeOf(node), System.nanoTime() - start);
+        }
 
         // Traverse the tree node and deserialize it to the target valueType
         return super._readMapAndClose(node.traverse(), valueType);
@@ -0,0 +1,141 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBase;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.impl.NullsConstantProvider;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The deserializable properties of bean types as a mapper sees them, keyed by their JSON name and resolved once per
+ * type. Each {@link Property} knows the name of the bean property behind its JSON name, which is what the cached
+ * property accessors expect, and reads values with the deserializer the mapper uses for that property, so
+ * annotations such as {@code @JsonProperty}, {@code @JsonDeserialize}, {@code @JsonFormat} or
+ * {@code @JsonSetter(nulls = ...)} apply as they do when the whole bean is deserialized.
+ */
+final class JsonBeanProperties {
+
+    private final ObjectMapper mapper;
+    private final Map<JavaType, Map<String, Property>> properties = new ConcurrentHashMap<>();
+
+    JsonBeanProperties(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param type The bean type.
+     * @param name The JSON name of the property.
+     * @return The property, or {@code null} if the type has no deserializable property with that name.
+     */
+    Property find(JavaType type, String name) {
+        return properties.computeIfAbsent(type, this::resolve).get(name);
+    }
+
+    private Map<String, Property> resolve(JavaType type) {
+        var description = mapper.getDeserializationConfig().introspect(type);
+        BeanDeserializerBase deserializer = null;
+        try {
+            if (context(null).findRootValueDeserializer(type) instanceof BeanDeserializerBase bean) {
+                deserializer = bean;
+            }
+        } catch (JsonMappingException ex) {
+            // The type cannot be deserialized as a whole; its properties are still read by their declared types.
+        }
+
+        var result = new HashMap<String, Property>();
+        for (var definition : description.findProperties()) {
+            if (definition.hasSetter() || definition.hasField() || definition.hasGetter()) {
+                var settable = deserializer == null ? null : deserializer.findProperty(definition.getName());
+                result.put(definition.getName(), new Property(definition.getInternalName(),
+                        definition.getPrimaryType(), settable, mapper.readerFor(definition.getPrimaryType())));
+            }
+        }
+        return result;
+    }
+
+    private DeserializationContext context(JsonParser parser) {
+        var blueprint = (DefaultDeserializationContext) mapper.getDeserializationContext();
+        return blueprint.createInstance(mapper.getDeserializationConfig(), parser, mapper.getInjectableValues());
+    }
+
+    /**
+     * A deserializable property of a bean type.
+     */
+    final class Property {
+
+        private final String name;
+        private final JavaType type;
+        private final SettableBeanProperty deserializer;
+        private final ObjectReader reader;
+
+        private Property(String name, JavaType type, SettableBeanProperty deserializer, ObjectReader reader) {
+            this.name = name;
+            this.type = type;
+            this.deserializer = deserializer;
+            this.reader = reader;
+        }
+
+        /**
+         * @return The name of the bean property, e.g. {@code fullName} for the JSON name {@code full_name}.
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return The declared type of the property.
+         */
+        JavaType getType() {
+            return type;
+        }
+
+        /**
+         * Reads the value at the current token of the parser.
+         */
+        Object read(JsonParser parser) throws IOException {
+            Object value;
+            if (deserializer != null) {
+                value = deserializer.deserialize(parser, context(parser));
+            } else {
+                value = reader.readValue(parser);
+            }
+            var raw = type.getRawClass();
+            if (value == null && raw.isPrimitive()) {
+                return ClassUtil.defaultValue(raw);
+            }
+            return value;
+        }
+
+        /**
+         * Reads the value from a tree.
+         */
+        Object read(JsonNode value) throws IOException {
+            try (var parser = mapper.treeAsTokens(value)) {
+                parser.nextToken();
+                return read(parser);
+            }
+        }
+
+        /**
+         * @return {@code true} if the token is a JSON {@code null} that leaves the property as it is, as with
+         * {@code @JsonSetter(nulls = Nulls.SKIP)}.
+         */
+        boolean skips(JsonToken token) {
+            return token == JsonToken.VALUE_NULL && deserializer != null
+                    && NullsConstantProvider.isSkipper(deserializer.getNullValueProvider());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import dk.apaq.rest.patch.InvalidFieldsException;
+import dk.apaq.rest.patch.property.PropertyAccessorCache;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compiled JSON Merge Patch (RFC 7396) document that applies directly to entities. Patches are created with
+ * {@link JsonPatchCompiler#compileMergePatch(Class, String)} and can be applied to any number of entities.
+ *
+ * Nested objects are merged onto the existing nested beans and maps, and {@code null} removes a value: map
+ * entries are removed and properties are set to {@code null}, or the default value for primitives. If the
+ * existing nested value is {@code null}, the nested object is deserialized and set as a whole. Arrays are
+ * replaced as a whole, as the RFC prescribes.
+ *
+ * Members are applied in order directly to the entity. If a member fails, the members before it have already been
+ * applied, so apply the patch to a copy or within a transaction if the entity must be left untouched on failure.
+ *
+ * @param <T> The type of the entities to be patched.
+ */
+public final class JsonMergePatch<T> {
+
+    /**
+     * The media type of JSON Merge Patch documents.
+     */
+    public static final String MEDIA_TYPE = "application/merge-patch+json";
+
+    // Logger for logging errors or information during the patch process.
+    private static final Logger LOG = LoggerFactory.getLogger(JsonMergePatch.class);
+
+    /**
+     * A compiled member of a patch object. Members holding an object for a bean or map have children, which are
+     * merged onto the existing value. A member that is not allowed by the field filter is only kept for its
+     * children.
+     */
+    record Member(PatchStep step, String path, JsonNode value, ObjectReader reader, List<Member> children,
+                  boolean allowed) {
+    }
+
+    private final PropertyAccessorCache accessors;
+    private final List<Member> members;
+
+    JsonMergePatch(PropertyAccessorCache accessors, List<Member> members) {
+        this.accessors = accessors;
+        this.members = members;
+    }
+
+    /**
+     * Merges the patch onto the entity.
+     *
+     * @param entity The entity to be updated (must not be null).
+     * @return The paths that were applied, e.g. {@code child.text} or {@code meta(color)}.
+     * @throws IllegalArgumentException If a field cannot be updated.
+     */
+    public List<String> apply(T entity) {
+        Validate.notNull(entity, "entity must be specified.");
+        var applied = new ArrayList<String>();
+        apply(entity, members, applied);
+        return applied;
+    }
+
+    private void apply(Object target, List<Member> members, List<String> applied) {
+        for (var member : members) {
+            var step = member.step();
+            try {
+                if (member.children() != null) {
+                    var existing = step.get(target, accessors);
+                    if (existing != null) {
+                        apply(existing, member.children(), applied);
+                        continue;
+                    }
+                }
+                if (!member.allowed() || step.skips(member.value())) {
+                    continue;
+                }
+
+                if (member.value().isNull()) {
+                    if (step.contains(target)) {
+                        step.remove(target, accessors);
+                    }
+                } else {
+                    step.add(target, step.read(member.value(), member.reader()), accessors);
+                }
+                applied.add(member.path());
+            } catch (ReflectiveOperationException | IndexOutOfBoundsException | UnsupportedOperationException
+                     | ClassCastException | IOException ex) {
+                throw rejected(member.path(), ex);
+            }
+        }
+    }
+
+    private static InvalidFieldsException rejected(String path, Exception cause) {
+        var invalid = List.of(new InvalidFieldsException.InvalidField(path, cause.toString()));
+        LOG.debug("Rejected patch: {}", invalid);
+        return new InvalidFieldsException(invalid);
+    }
+}
@@ -0,0 +1,85 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import dk.apaq.rest.patch.PropertyReferenceConverter;
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import org.apache.commons.lang.Validate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+
+/**
+ * A converter that reads the property reference field names directly from a {@link JsonParser}, without
+ * deserializing the document or buffering it into a tree. It works with any Jackson format, so binary bodies such as
+ * CBOR or Smile can be checked before, or instead of, being mapped.
+ *
+ * The parser is read up to the end of the root value it is positioned at, or of the next one if it has not been
+ * started or is at the end of a value, so a stream of values can be read one at a time. The parser is not closed. The paths are the same as those of {@link DirtyPathCapturingParser}: nested objects
+ * contribute the paths of their values, and arrays are treated as single values.
+ *
+ * When created with {@link CaptureLimits}, the document is checked against them as it is read, and conversion stops
+ * with an {@link IllegalArgumentException} as soon as any of them is exceeded.
+ */
+public class JsonParserPropertyReferenceConverter implements PropertyReferenceConverter<JsonParser> {
+
+    // The limits of the converted document.
+    private final CaptureLimits limits;
+
+    /**
+     * Default constructor that converts documents of any size.
+     */
+    public JsonParserPropertyReferenceConverter() {
+        this(CaptureLimits.none());
+    }
+
+    /**
+     * Constructor that accepts the limits of the converted document.
+     *
+     * @param limits The limits of a document (must not be null).
+     */
+    public JsonParserPropertyReferenceConverter(CaptureLimits limits) {
+        Validate.notNull(limits, "limits must be specified.");
+        this.limits = limits;
+    }
+
+    /**
+     * Reads the root value from the given parser and converts it into a collection of string property references.
+     *
+     * @param input The parser to read from.
+     * @return A collection of field names representing paths in the root object, in document order.
+     * @throws IllegalArgumentException If the document exceeds the limits of this converter.
+     * @throws UncheckedIOException     If the document cannot be read.
+     */
+    @Override
+    public Collection<String> translate(JsonParser input) {
+        var instrumentation = PatchInstrumentation.get();
+        long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        var capturing = new DirtyPathCapturingParser(input, limits);
+        try {
+            var token = capturing.currentToken();
+            if (token == null || token.isStructEnd()) {
+                // Not started, or at the end of the previous root value.
+                token = capturing.nextToken();
+            }
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                capturing.skipChildren();
+            } else if (token == JsonToken.FIELD_NAME) {
+                // Positioned within the root object, so read up to its end.
+                while (!capturing.isFinished() && capturing.nextToken() != null) {
+                    // The paths are recorded as the tokens are read
+                }
+            }
+        } catch (CaptureLimitExceededException ex) {
+            throw new IllegalArgumentException(ex.getOriginalMessage(), ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        var paths = capturing.getPaths();
+        if (instrumentation.isEnabled()) {
+            instrumentation.converted(getClass(), paths.size(), System.nanoTime() - start);
+        }
+        return paths;
+    }
+}
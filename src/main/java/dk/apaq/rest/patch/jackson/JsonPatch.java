@@ -0,0 +1,196 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+import dk.apaq.rest.patch.InvalidFieldsException;
+import dk.apaq.rest.patch.ValueEquality;
+import dk.apaq.rest.patch.property.PropertyAccessorCache;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A compiled JSON Patch (RFC 6902) document that applies its operations directly to entities. Patches are
+ * created with {@link JsonPatchCompiler#compile(Class, String)} and can be applied to any number of entities.
+ *
+ * All six operations are supported. As beans cannot lose properties, removing a property sets it to
+ * {@code null}, or the default value for primitives; map entries and list elements are removed. Elements cannot
+ * be added to or removed from arrays.
+ *
+ * Operations are applied in order directly to the entity. If an operation fails, including a failed
+ * {@code test}, the operations before it have already been applied, so apply the patch to a copy or within a
+ * transaction if the entity must be left untouched on failure.
+ *
+ * @param <T> The type of the entities to be patched.
+ */
+public final class JsonPatch<T> {
+
+    /**
+     * The media type of JSON Patch documents.
+     */
+    public static final String MEDIA_TYPE = "application/json-patch+json";
+
+    // Logger for logging errors or information during the patch process.
+    private static final Logger LOG = LoggerFactory.getLogger(JsonPatch.class);
+
+    enum Op {
+        ADD, REMOVE, REPLACE, MOVE, COPY, TEST;
+
+        static Op of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("The operation '" + name + "' is not supported.");
+            }
+        }
+    }
+
+    /**
+     * A compiled operation. The reader reads values of the type at the path.
+     */
+    record Operation(Op op, String path, List<PatchStep> steps, String fromPath, List<PatchStep> from,
+                     JsonNode value, ObjectReader reader) {
+    }
+
+    private final ObjectMapper mapper;
+    private final PropertyAccessorCache accessors;
+    private final List<Operation> operations;
+
+    JsonPatch(ObjectMapper mapper, PropertyAccessorCache accessors, List<Operation> operations) {
+        this.mapper = mapper;
+        this.accessors = accessors;
+        this.operations = List.copyOf(operations);
+    }
+
+    /**
+     * Applies the operations to the entity, in order.
+     *
+     * @param entity The entity to be updated (must not be null).
+     * @return The updated entity.
+     * @throws IllegalArgumentException If an operation does not apply to the entity or a {@code test} fails.
+     */
+    public T apply(T entity) {
+        Validate.notNull(entity, "entity must be specified.");
+        for (var operation : operations) {
+            apply(entity, operation);
+        }
+        return entity;
+    }
+
+    /**
+     * @return The number of operations in the patch, excluding operations left out by the field filter.
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    private void apply(Object entity, Operation operation) {
+        var path = operation.path();
+        try {
+            var last = operation.steps().get(operation.steps().size() - 1);
+            switch (operation.op()) {
+                case ADD -> last.add(parent(entity, operation.steps(), path), read(operation), accessors);
+                case REPLACE -> last.replace(existingParent(entity, operation.steps(), path), read(operation), accessors);
+                case REMOVE -> last.remove(existingParent(entity, operation.steps(), path), accessors);
+                case MOVE -> {
+                    var from = operation.from();
+                    if (operation.fromPath().equals(path)) {
+                        // A value moved onto itself stays in place, but it must exist.
+                        existingParent(entity, from, path);
+                        break;
+                    }
+                    var value = from.get(from.size() - 1).remove(existingParent(entity, from, operation.fromPath()), accessors);
+                    last.add(parent(entity, operation.steps(), path), convert(value, last), accessors);
+                }
+                case COPY -> {
+                    var from = operation.from();
+                    var value = from.get(from.size() - 1).get(existingParent(entity, from, operation.fromPath()), accessors);
+                    last.add(parent(entity, operation.steps(), path), copy(value, operation.reader()), accessors);
+                }
+                case TEST -> {
+                    var actual = last.get(existingParent(entity, operation.steps(), path), accessors);
+                    if (!matches(actual, operation)) {
+                        throw new IllegalArgumentException("The value of '" + path + "' does not match the test.");
+                    }
+                }
+            }
+        } catch (ReflectiveOperationException | IndexOutOfBoundsException | UnsupportedOperationException
+                 | ClassCastException | IOException ex) {
+            throw rejected(path, ex);
+        }
+    }
+
+    /**
+     * Returns the object holding the value at the end of the steps.
+     */
+    private Object parent(Object entity, List<PatchStep> steps, String path) throws ReflectiveOperationException {
+        var current = entity;
+        for (int i = 0; i < steps.size() - 1; i++) {
+            var step = steps.get(i);
+            if (!step.contains(current) || (current = step.get(current, accessors)) == null) {
+                throw new IllegalArgumentException("The parameter '" + path + "' does not apply to this resource.");
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns the object holding the value at the end of the steps, which must exist.
+     */
+    private Object existingParent(Object entity, List<PatchStep> steps, String path) throws ReflectiveOperationException {
+        var parent = parent(entity, steps, path);
+        if (!steps.get(steps.size() - 1).contains(parent)) {
+            throw new IllegalArgumentException("The parameter '" + path + "' does not apply to this resource.");
+        }
+        return parent;
+    }
+
+    private Object read(Operation operation) throws IOException {
+        var steps = operation.steps();
+        return steps.get(steps.size() - 1).read(operation.value(), operation.reader());
+    }
+
+    /**
+     * Converts a moved value to the type at the target path, if it is not already of that type.
+     */
+    private Object convert(Object value, PatchStep target) {
+        var raw = target.getType().getRawClass();
+        if (raw.isPrimitive()) {
+            raw = ClassUtil.wrapperType(raw);
+        }
+        if (value == null || raw.isInstance(value)) {
+            return value;
+        }
+        return mapper.convertValue(value, target.getType());
+    }
+
+    /**
+     * Deep copies a value into the type at the target path, so the copy does not share state with the original.
+     */
+    private Object copy(Object value, ObjectReader reader) throws IOException {
+        if (value == null) {
+            return null;
+        }
+        return reader.readValue(mapper.<JsonNode>valueToTree(value));
+    }
+
+    private boolean matches(Object actual, Operation operation) throws IOException {
+        if (ValueEquality.DEFAULT.isEqual(actual, read(operation))) {
+            return true;
+        }
+        // Values without a value-based equals, such as beans, are compared by their JSON representation.
+        return mapper.valueToTree(actual).equals(operation.value());
+    }
+
+    private static InvalidFieldsException rejected(String path, Exception cause) {
+        var invalid = List.of(new InvalidFieldsException.InvalidField(path, cause.toString()));
+        LOG.debug("Rejected patch: {}", invalid);
+        return new InvalidFieldsException(invalid);
+    }
+}
@@ -0,0 +1,270 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import dk.apaq.rest.patch.FieldFilter;
+import dk.apaq.rest.patch.property.PropertyAccessorCache;
+import org.apache.commons.lang.Validate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles JSON Patch (RFC 6902, {@code application/json-patch+json}) and JSON Merge Patch (RFC 7396,
+ * {@code application/merge-patch+json}) documents against an entity type. The compiled {@link JsonPatch} and
+ * {@link JsonMergePatch} apply directly to entities through the same cached property accessors as
+ * {@link dk.apaq.rest.patch.EntityMerger}, so the entity is never serialized to a tree and back, and a compiled
+ * patch can be applied to any number of entities.
+ *
+ * Paths are resolved against the declared types of the entity when compiling, so a patch referencing unknown
+ * properties fails before it touches any entity. Paths rejected by the field filter are left out of the compiled
+ * patch, as with {@link JacksonPatchApplier}.
+ */
+public class JsonPatchCompiler {
+
+    private final ObjectMapper mapper;
+    private final FieldFilter fieldFilter;
+    private final PropertyAccessorCache accessors = PropertyAccessorCache.getDefault();
+
+    // The deserializable properties per bean type, resolved once through Jackson's introspection.
+    private final JsonBeanProperties properties;
+
+    // Readers for the value types of compiled paths.
+    private final Map<JavaType, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor that uses the given mapper for reading values and ignores no fields.
+     *
+     * @param mapper The mapper used to parse patches and deserialize values.
+     */
+    public JsonPatchCompiler(ObjectMapper mapper) {
+        this(mapper, FieldFilter.none());
+    }
+
+    /**
+     * Constructor that accepts a precompiled filter deciding which fields may be patched.
+     *
+     * @param mapper      The mapper used to parse patches and deserialize values.
+     * @param fieldFilter The filter applied to every compiled patch (must not be null).
+     */
+    public JsonPatchCompiler(ObjectMapper mapper, FieldFilter fieldFilter) {
+        Validate.notNull(mapper, "mapper must be specified.");
+        Validate.notNull(fieldFilter, "fieldFilter must be specified.");
+        this.mapper = mapper;
+        this.fieldFilter = fieldFilter;
+        this.properties = new JsonBeanProperties(mapper);
+    }
+
+    /**
+     * Compiles a JSON Patch document.
+     *
+     * @param type The type of the entities the patch is applied to (must not be null).
+     * @param json The JSON array of operations.
+     * @param <T>  The type of the entities the patch is applied to.
+     * @return The compiled patch.
+     * @throws IOException              If the JSON cannot be parsed.
+     * @throws IllegalArgumentException If an operation is malformed or a path does not apply to the type.
+     */
+    public <T> JsonPatch<T> compile(Class<T> type, String json) throws IOException {
+        return compile(type, mapper.readTree(json));
+    }
+
+    /**
+     * Compiles a JSON Patch document.
+     *
+     * @param type  The type of the entities the patch is applied to (must not be null).
+     * @param patch The JSON array of operations (must not be null).
+     * @param <T>   The type of the entities the patch is applied to.
+     * @return The compiled patch.
+     * @throws IllegalArgumentException If an operation is malformed or a path does not apply to the type.
+     */
+    public <T> JsonPatch<T> compile(Class<T> type, JsonNode patch) {
+        Validate.notNull(type, "type must be specified.");
+        Validate.notNull(patch, "patch must be specified.");
+        if (!patch.isArray()) {
+            throw new IllegalArgumentException("The patch must be a JSON array.");
+        }
+
+        var root = mapper.constructType(type);
+        var operations = new ArrayList<JsonPatch.Operation>(patch.size());
+        for (int i = 0; i < patch.size(); i++) {
+            var node = patch.get(i);
+            var op = JsonPatch.Op.of(text(node, "op", i));
+            var path = compilePath(root, text(node, "path", i));
+
+            CompiledPath from = null;
+            if (op == JsonPatch.Op.MOVE || op == JsonPatch.Op.COPY) {
+                var fromPointer = text(node, "from", i);
+                // Moving a value onto itself leaves it in place, but it cannot be moved into one of its children.
+                if (op == JsonPatch.Op.MOVE && !path.pointer.equals(fromPointer)
+                        && (path.pointer + "/").startsWith(fromPointer + "/")) {
+                    throw new IllegalArgumentException("The operation at index " + i + " moves a value into itself.");
+                }
+                from = compilePath(root, fromPointer);
+            }
+
+            JsonNode value = null;
+            if (op == JsonPatch.Op.ADD || op == JsonPatch.Op.REPLACE || op == JsonPatch.Op.TEST) {
+                value = node.get("value");
+                if (value == null) {
+                    throw new IllegalArgumentException("The operation at index " + i + " has no 'value'.");
+                }
+            }
+
+            // Ignored fields are left out, tests included, so a client cannot probe the values of ignored fields.
+            if (!fieldFilter.isAllowed(path.path) || (op == JsonPatch.Op.MOVE && !fieldFilter.isAllowed(from.path))) {
+                continue;
+            }
+            operations.add(new JsonPatch.Operation(op, path.path, path.steps, from == null ? null : from.path,
+                    from == null ? null : from.steps, value, readerFor(path.last().getType())));
+        }
+        return new JsonPatch<>(mapper, accessors, operations);
+    }
+
+    /**
+     * Compiles a JSON Merge Patch document.
+     *
+     * @param type The type of the entities the patch is applied to (must not be null).
+     * @param json The JSON object to merge.
+     * @param <T>  The type of the entities the patch is applied to.
+     * @return The compiled patch.
+     * @throws IOException              If the JSON cannot be parsed.
+     * @throws IllegalArgumentException If the patch is not an object or a field does not apply to the type.
+     */
+    public <T> JsonMergePatch<T> compileMergePatch(Class<T> type, String json) throws IOException {
+        return compileMergePatch(type, mapper.readTree(json));
+    }
+
+    /**
+     * Compiles a JSON Merge Patch document.
+     *
+     * @param type  The type of the entities the patch is applied to (must not be null).
+     * @param patch The JSON object to merge (must not be null).
+     * @param <T>   The type of the entities the patch is applied to.
+     * @return The compiled patch.
+     * @throws IllegalArgumentException If the patch is not an object or a field does not apply to the type.
+     */
+    public <T> JsonMergePatch<T> compileMergePatch(Class<T> type, JsonNode patch) {
+        Validate.notNull(type, "type must be specified.");
+        Validate.notNull(patch, "patch must be specified.");
+        if (!patch.isObject()) {
+            throw new IllegalArgumentException("The patch must be a JSON object.");
+        }
+        return new JsonMergePatch<>(accessors, compileMembers(mapper.constructType(type), patch, ""));
+    }
+
+    private List<JsonMergePatch.Member> compileMembers(JavaType type, JsonNode object, String parentPath) {
+        var members = new ArrayList<JsonMergePatch.Member>(object.size());
+        var fields = object.fields();
+        while (fields.hasNext()) {
+            var field = fields.next();
+            var step = step(type, field.getKey(), -1, parentPath.isEmpty() ? field.getKey() : parentPath + "." + field.getKey());
+            var path = append(parentPath, step);
+            var value = field.getValue();
+
+            List<JsonMergePatch.Member> children = null;
+            if (value.isObject() && JacksonPatchApplier.isNestable(step.getType())) {
+                children = compileMembers(step.getType(), value, path);
+            }
+
+            var allowed = fieldFilter.isAllowed(path);
+            if (!allowed && children == null) {
+                continue;
+            }
+            members.add(new JsonMergePatch.Member(step, path, value, readerFor(step.getType()), children, allowed));
+        }
+        return Collections.unmodifiableList(members);
+    }
+
+    private CompiledPath compilePath(JavaType root, String pointer) {
+        JsonPointer compiled;
+        try {
+            compiled = JsonPointer.compile(pointer);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("The path '" + pointer + "' is not a valid JSON Pointer.");
+        }
+        if (compiled.matches()) {
+            throw new IllegalArgumentException("The whole resource cannot be patched.");
+        }
+
+        var steps = new ArrayList<PatchStep>();
+        var path = "";
+        var type = root;
+        for (var p = compiled; !p.matches(); p = p.tail()) {
+            var step = step(type, p.getMatchingProperty(), p.getMatchingIndex(), pointer);
+            if (step.getKind() == PatchStep.Kind.APPEND && !p.tail().matches()) {
+                throw new IllegalArgumentException("The parameter '" + pointer + "' does not apply to this resource.");
+            }
+            path = append(path, step);
+            steps.add(step);
+            type = step.getType();
+        }
+        return new CompiledPath(pointer, path, List.copyOf(steps));
+    }
+
+    /**
+     * Resolves a step below a value of the given declared type.
+     */
+    private PatchStep step(JavaType type, String name, int index, String path) {
+        if (type.isMapLikeType()) {
+            return new PatchStep(PatchStep.Kind.KEY, name, -1, type.getContentType());
+        }
+        if (type.isCollectionLikeType() || type.isArrayType()) {
+            if ("-".equals(name)) {
+                return new PatchStep(PatchStep.Kind.APPEND, name, -1, type.getContentType());
+            }
+            if (index < 0) {
+                throw new IllegalArgumentException("The parameter '" + path + "' does not apply to this resource.");
+            }
+            return new PatchStep(PatchStep.Kind.INDEX, name, index, type.getContentType());
+        }
+        if (type.getRawClass() == Object.class) {
+            return new PatchStep(PatchStep.Kind.ANY, name, index, type);
+        }
+
+        var property = JacksonPatchApplier.isNestable(type) ? properties.find(type, name) : null;
+        if (property == null) {
+            throw new IllegalArgumentException("The parameter '" + path + "' does not apply to this resource.");
+        }
+        return new PatchStep(property);
+    }
+
+    /**
+     * Appends a step to a property path in the format used by {@link FieldFilter}, e.g. {@code child.text},
+     * {@code meta(color)} or {@code list[0]}. Appending to the end of a list refers to the list itself.
+     */
+    private static String append(String path, PatchStep step) {
+        return switch (step.getKind()) {
+            case KEY -> path + "(" + step.getName() + ")";
+            case INDEX -> path + "[" + step.getName() + "]";
+            case APPEND -> path;
+            default -> path.isEmpty() ? step.getName() : path + "." + step.getName();
+        };
+    }
+
+    private ObjectReader readerFor(JavaType type) {
+        return readers.computeIfAbsent(type, mapper::readerFor);
+    }
+
+    private static String text(JsonNode operation, String field, int index) {
+        var value = operation.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("The operation at index " + index + " has no '" + field + "'.");
+        }
+        return value.textValue();
+    }
+
+    private record CompiledPath(String pointer, String path, List<PatchStep> steps) {
+
+        PatchStep last() {
+            return steps.get(steps.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import org.apache.commons.lang.Validate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads patch bodies without blocking, for servers that receive a body as a series of buffers on an event loop
+ * thread. Each body is read through a {@link Feed} that parses every buffer as it arrives, with Jackson's
+ * non-blocking parser, and records the dirty paths of the root object along the way. When the body ends, the value
+ * is mapped from the buffered tokens and handed over together with the paths through a {@link CompletableFuture}.
+ *
+ * Nothing is kept in thread-local state, so the buffers of a body may be fed from different threads as long as they
+ * are fed one at a time and in order. The reader itself is thread-safe and meant to be shared.
+ *
+ * Only formats whose factory can parse without blocking are supported, i.e. JSON and Smile. The body is checked
+ * against the {@link CaptureLimits} while it is fed, so an oversized body is rejected before it has been buffered.
+ *
+ * Only the parsing is incremental: the tokens of the body are buffered in a {@link TokenBuffer} as they are parsed,
+ * and the value is only deserialized from them in {@link Feed#end()}, since Jackson's deserializers cannot suspend
+ * while waiting for more input. A feed therefore holds the whole body as tokens until it ends. The buffer is bounded
+ * by the limits, which are checked for each token before it is buffered: the document length bounds the bytes behind
+ * the tokens, and the maximum number of nodes bounds the tokens themselves to a field name, a value and a closing
+ * token per node. Bodies from untrusted clients should be read with both limits set.
+ *
+ * @param <T> The type the body is mapped to.
+ */
+public final class NonBlockingPatchReader<T> {
+
+    // The reader mapping the buffered tokens to the value.
+    private final ObjectReader reader;
+
+    // The limits the body is checked against while it is fed.
+    private final CaptureLimits limits;
+
+    /**
+     * Creates a reader mapping bodies to the given type, without any limits.
+     *
+     * @param mapper    The mapper whose factory and configuration are used (must not be null).
+     * @param valueType The type bodies are mapped to (must not be null).
+     */
+    public NonBlockingPatchReader(ObjectMapper mapper, Class<T> valueType) {
+        this(mapper, valueType, CaptureLimits.none());
+    }
+
+    /**
+     * Creates a reader mapping bodies to the given type and checking them against the given limits.
+     *
+     * @param mapper    The mapper whose factory and configuration are used (must not be null).
+     * @param valueType The type bodies are mapped to (must not be null).
+     * @param limits    The limits of a body (must not be null).
+     */
+    public NonBlockingPatchReader(ObjectMapper mapper, Class<T> valueType, CaptureLimits limits) {
+        this(mapper, mapper == null ? null : mapper.constructType(valueType), limits);
+    }
+
+    /**
+     * Creates a reader mapping bodies to the given type and checking them against the given limits.
+     *
+     * @param mapper    The mapper whose factory and configuration are used (must not be null).
+     * @param valueType The type bodies are mapped to (must not be null).
+     * @param limits    The limits of a body (must not be null).
+     */
+    public NonBlockingPatchReader(ObjectMapper mapper, JavaType valueType, CaptureLimits limits) {
+        Validate.notNull(mapper, "mapper must be specified.");
+        Validate.notNull(valueType, "valueType must be specified.");
+        Validate.notNull(limits, "limits must be specified.");
+        Validate.isTrue(mapper.getFactory().canParseAsync(), "The format of the mapper cannot be parsed without blocking.");
+        this.reader = mapper.readerFor(valueType);
+        this.limits = limits;
+    }
+
+    /**
+     * Starts reading a body.
+     *
+     * @return The feed to hand the buffers of the body to.
+     * @throws IOException If the parser cannot be created.
+     */
+    public Feed<T> start() throws IOException {
+        var factory = reader.getFactory();
+        JsonParser parser;
+        try {
+            parser = factory.createNonBlockingByteBufferParser();
+        } catch (UnsupportedOperationException ex) {
+            // Formats that only accept arrays, e.g. Smile.
+            parser = factory.createNonBlockingByteArrayParser();
+        }
+        return new Feed<>(reader, parser, limits);
+    }
+
+    /**
+     * The feed of a single body. Buffers are parsed as soon as they are fed, and the result completes once
+     * {@link #end()} has been called, or exceptionally as soon as the body is found to be malformed or to exceed the
+     * limits. Buffers fed after that are ignored.
+     *
+     * A feed must not be used by several threads at the same time.
+     *
+     * @param <T> The type the body is mapped to.
+     */
+    public static final class Feed<T> {
+
+        private final ObjectReader reader;
+        private final CaptureLimits limits;
+        private final JsonParser parser;
+        private final DirtyPathCapturingParser capturing;
+        private final TokenBuffer tokens;
+        private final CompletableFuture<PatchBody<T>> result = new CompletableFuture<>();
+
+        // The nesting depth of the root value while it is read.
+        private int depth;
+        private boolean rootRead;
+        private long length;
+        private long nanos;
+
+        private Feed(ObjectReader reader, JsonParser parser, CaptureLimits limits) {
+            this.reader = reader;
+            this.limits = limits;
+            this.parser = parser;
+            this.capturing = new DirtyPathCapturingParser(parser, limits);
+            this.tokens = new TokenBuffer(parser, null);
+        }
+
+        /**
+         * Parses the remaining bytes of the buffer. The buffer is read completely before this method returns, leaving
+         * it without remaining bytes, so it can be reused afterwards.
+         *
+         * @param buffer The next part of the body (must not be null).
+         * @return {@code false} if the body has failed or has already been ended, in which case feeding can stop.
+         */
+        public boolean feed(ByteBuffer buffer) {
+            Validate.notNull(buffer, "buffer must be specified.");
+            if (result.isDone()) {
+                return false;
+            }
+            if (!buffer.hasRemaining()) {
+                return true;
+            }
+            var start = System.nanoTime();
+            try {
+                countLength(buffer.remaining());
+                var feeder = parser.getNonBlockingInputFeeder();
+                if (feeder instanceof ByteBufferFeeder byteBufferFeeder) {
+                    byteBufferFeeder.feedInput(buffer);
+                } else if (buffer.hasArray()) {
+                    int offset = buffer.arrayOffset() + buffer.position();
+                    ((ByteArrayFeeder) feeder).feedInput(buffer.array(), offset, offset + buffer.remaining());
+                } else {
+                    var bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    ((ByteArrayFeeder) feeder).feedInput(bytes, 0, bytes.length);
+                }
+                drain();
+                buffer.position(buffer.limit());
+            } catch (IOException | RuntimeException ex) {
+                fail(ex);
+            }
+            nanos += System.nanoTime() - start;
+            return !result.isCompletedExceptionally();
+        }
+
+        /**
+         * Parses the given bytes. The bytes are read completely before this method returns, so the array can be
+         * reused afterwards.
+         *
+         * @param bytes  The array holding the next part of the body (must not be null).
+         * @param offset The offset of the first byte.
+         * @param length The number of bytes.
+         * @return {@code false} if the body has failed or has already been ended, in which case feeding can stop.
+         */
+        public boolean feed(byte[] bytes, int offset, int length) {
+            Validate.notNull(bytes, "bytes must be specified.");
+            return feed(ByteBuffer.wrap(bytes, offset, length));
+        }
+
+        /**
+         * Ends the body and maps it, completing the result.
+         *
+         * @return The result.
+         */
+        public CompletableFuture<PatchBody<T>> end() {
+            if (result.isDone()) {
+                return result;
+            }
+            var start = System.nanoTime();
+            try {
+                parser.getNonBlockingInputFeeder().endOfInput();
+                drain();
+                if (!rootRead) {
+                    throw new JsonParseException(parser, "The patch body ended before its value was complete.");
+                }
+                T value = reader.readValue(tokens.asParser(reader));
+                var paths = capturing.getPaths();
+                var instrumentation = PatchInstrumentation.get();
+                if (instrumentation.isEnabled()) {
+                    instrumentation.captureCompleted(CaptureMode.PATHS, paths.size(), nanos + System.nanoTime() - start);
+                }
+                result.complete(new PatchBody<>(value, paths));
+            } catch (IOException | RuntimeException ex) {
+                fail(ex);
+            } finally {
+                closeQuietly();
+            }
+            return result;
+        }
+
+        /**
+         * @return The result, which completes once the body has been ended or has failed.
+         */
+        public CompletableFuture<PatchBody<T>> result() {
+            return result;
+        }
+
+        /**
+         * Reads the tokens that can be parsed from the input fed so far.
+         */
+        private void drain() throws IOException {
+            for (var token = capturing.nextToken(); token != null && token != JsonToken.NOT_AVAILABLE;
+                 token = capturing.nextToken()) {
+                if (rootRead) {
+                    throw new JsonParseException(parser, "Unexpected content after the patch body.");
+                }
+                tokens.copyCurrentEvent(parser);
+                if (token.isStructStart()) {
+                    depth++;
+                } else if (token.isStructEnd()) {
+                    depth--;
+                }
+                rootRead = depth == 0;
+            }
+        }
+
+        private void countLength(int count) throws CaptureLimitExceededException {
+            length += count;
+            if (length > limits.getMaxDocumentLength()) {
+                throw new CaptureLimitExceededException(CaptureLimits.Limit.DOCUMENT_LENGTH,
+                        "The patch document exceeds the maximum length of " + limits.getMaxDocumentLength() + ".",
+                        parser.currentLocation());
+            }
+        }
+
+        private void fail(Exception ex) {
+            closeQuietly();
+            result.completeExceptionally(ex);
+        }
+
+        private void closeQuietly() {
+            try {
+                parser.close();
+            } catch (IOException ex) {
+                // Nothing is left to read.
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dk.apaq.rest.patch.jackson;
+
+import dk.apaq.rest.patch.property.DirtyFieldTree;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A patch body read by {@link NonBlockingPatchReader}: the mapped value together with the dirty property paths of
+ * its root object, as they would be recorded in {@link CaptureMode#PATHS}.
+ *
+ * @param <T> The type of the mapped value.
+ */
+public final class PatchBody<T> {
+
+    private final T value;
+    private final List<String> paths;
+
+    PatchBody(T value, List<String> paths) {
+        this.value = value;
+        this.paths = Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * @return The mapped value, or {@code null} if the body was the JSON {@code null}.
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return The dirty property paths of the root object, in document order.
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    /**
+     * @return The dirty property paths as a tree, e.g. for {@link dk.apaq.rest.patch.EntityMerger}.
+     */
+    public DirtyFieldTree getDirtyFields() {
+        return DirtyFieldTree.of(paths);
+    }
+
+    @Override
+    public String toString() {
+        return "PatchBody" + paths;
+    }
+}
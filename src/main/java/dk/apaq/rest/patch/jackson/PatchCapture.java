@@ -0,0 +1,22 @@
+package dk.apaq.rest.patch.jackson;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a type whose root JSON object should be captured by {@link TreeNodeExtractorModule} when the module is
+ * created with {@link TreeNodeExtractorModule#PATCH_CAPTURE_TYPES}. Other types are deserialized as if the module
+ * was not registered.
+ *
+ * The annotation is inherited by subclasses.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PatchCapture {
+}
@@ -0,0 +1,195 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+import dk.apaq.rest.patch.property.PropertyAccessorCache;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single step of a compiled JSON Pointer, i.e. a bean property, a map key or a list index, together with the
+ * declared type of the value it points to. Steps are resolved against the declared types when a patch is
+ * compiled; steps below values declared as {@code Object} are resolved against the actual value when applied.
+ *
+ * The name of a property step is the name of the bean property, which differs from the JSON name of a property
+ * renamed with {@code @JsonProperty}, and its values are read with the deserializer of the property.
+ */
+final class PatchStep {
+
+    enum Kind {
+        /** A bean property, accessed through the cached property accessors. */
+        PROPERTY,
+        /** An entry in a map. */
+        KEY,
+        /** An element in a list or array. */
+        INDEX,
+        /** The position after the last element of a list, i.e. {@code -}. */
+        APPEND,
+        /** A step below a value declared as {@code Object}, resolved when applied. */
+        ANY
+    }
+
+    private final Kind kind;
+    private final String name;
+    private final int index;
+    private final JavaType type;
+
+    // The property of a compiled property step, or null.
+    private final JsonBeanProperties.Property property;
+
+    PatchStep(Kind kind, String name, int index, JavaType type) {
+        this.kind = kind;
+        this.name = name;
+        this.index = index;
+        this.type = type;
+        this.property = null;
+    }
+
+    PatchStep(JsonBeanProperties.Property property) {
+        this.kind = Kind.PROPERTY;
+        this.name = property.getName();
+        this.index = -1;
+        this.type = property.getType();
+        this.property = property;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return The declared type of the value this step points to.
+     */
+    JavaType getType() {
+        return type;
+    }
+
+    /**
+     * Reads a value for this step, with the deserializer of the property if this is a property step.
+     *
+     * @param value  The value to read.
+     * @param reader The reader for the declared type, used for other steps.
+     */
+    Object read(JsonNode value, ObjectReader reader) throws IOException {
+        if (property != null) {
+            return property.read(value);
+        }
+        var result = reader.readValue(value);
+        var raw = reader.getValueType().getRawClass();
+        if (result == null && raw.isPrimitive()) {
+            return ClassUtil.defaultValue(raw);
+        }
+        return result;
+    }
+
+    /**
+     * @return {@code true} if the value is a JSON {@code null} that the property of this step ignores.
+     */
+    boolean skips(JsonNode value) {
+        return property != null && property.skips(value.asToken());
+    }
+
+    /**
+     * @return {@code true} if the parent holds a value at this step.
+     */
+    boolean contains(Object parent) {
+        return switch (resolve(parent)) {
+            case KEY -> ((Map<?, ?>) parent).containsKey(name);
+            case INDEX -> index >= 0 && index < (parent instanceof List<?> list ? list.size() : Array.getLength(parent));
+            case APPEND -> false;
+            default -> true;
+        };
+    }
+
+    Object get(Object parent, PropertyAccessorCache accessors) throws ReflectiveOperationException {
+        return switch (resolve(parent)) {
+            case KEY -> ((Map<?, ?>) parent).get(name);
+            case INDEX -> parent instanceof List<?> list ? list.get(index) : Array.get(parent, index);
+            case APPEND -> throw new IndexOutOfBoundsException("The end of a list holds no value.");
+            default -> accessors.get(parent.getClass(), name).get(parent);
+        };
+    }
+
+    /**
+     * Adds the value at this step. Properties and map entries are set, while list elements are inserted.
+     */
+    @SuppressWarnings("unchecked")
+    void add(Object parent, Object value, PropertyAccessorCache accessors) throws ReflectiveOperationException {
+        switch (resolve(parent)) {
+            case KEY -> ((Map<Object, Object>) parent).put(name, value);
+            case INDEX -> asList(parent).add(index, value);
+            case APPEND -> asList(parent).add(value);
+            default -> accessors.get(parent.getClass(), name).set(parent, value);
+        }
+    }
+
+    /**
+     * Replaces the value at this step, which must exist.
+     */
+    @SuppressWarnings("unchecked")
+    void replace(Object parent, Object value, PropertyAccessorCache accessors) throws ReflectiveOperationException {
+        switch (resolve(parent)) {
+            case KEY -> ((Map<Object, Object>) parent).put(name, value);
+            case INDEX -> {
+                if (parent instanceof List<?>) {
+                    asList(parent).set(index, value);
+                } else {
+                    Array.set(parent, index, value);
+                }
+            }
+            case APPEND -> throw new IndexOutOfBoundsException("The end of a list holds no value.");
+            default -> accessors.get(parent.getClass(), name).set(parent, value);
+        }
+    }
+
+    /**
+     * Removes the value at this step, which must exist. Properties cannot be removed from a bean, so they are set
+     * to {@code null}, or the default value for primitives.
+     *
+     * @return The removed value.
+     */
+    Object remove(Object parent, PropertyAccessorCache accessors) throws ReflectiveOperationException {
+        return switch (resolve(parent)) {
+            case KEY -> ((Map<?, ?>) parent).remove(name);
+            case INDEX -> asList(parent).remove(index);
+            case APPEND -> throw new IndexOutOfBoundsException("The end of a list holds no value.");
+            default -> {
+                var accessor = accessors.get(parent.getClass(), name);
+                var value = accessor.get(parent);
+                var raw = type.getRawClass();
+                accessor.set(parent, raw.isPrimitive() ? ClassUtil.defaultValue(raw) : null);
+                yield value;
+            }
+        };
+    }
+
+    private Kind resolve(Object parent) {
+        if (kind != Kind.ANY) {
+            return kind;
+        }
+        if (parent instanceof Map<?, ?>) {
+            return Kind.KEY;
+        }
+        if (parent instanceof List<?> || parent.getClass().isArray()) {
+            return "-".equals(name) ? Kind.APPEND : Kind.INDEX;
+        }
+        return Kind.PROPERTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object parent) {
+        if (!(parent instanceof List<?>)) {
+            throw new UnsupportedOperationException("Elements cannot be added to or removed from an array.");
+        }
+        return (List<Object>) parent;
+    }
+}
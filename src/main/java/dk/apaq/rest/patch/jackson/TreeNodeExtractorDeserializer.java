@@ -4,25 +4,69 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.TreeNode;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
 import com.fasterxml.jackson.databind.node.TreeTraversingParser;
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import org.apache.commons.lang.Validate;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 
 /**
- * Custom deserializer that extracts and stores the root JSON tree node in {@link TreeNodeHolder}.
+ * Custom deserializer that extracts and stores the root JSON tree node in {@link TreeNodeHolder}, or in the
+ * {@link CaptureContext} bound to the reader or the current thread.
  * This class extends {@link DelegatingDeserializer}, allowing it to delegate actual deserialization
  * to the default deserializer while also capturing the tree structure for further processing.
+ *
+ * In {@link CaptureMode#PATHS} no tree is built; the dirty paths are recorded into {@link DirtyPathHolder} while
+ * the default deserializer consumes the input. In {@link CaptureMode#COMPACT} the root object is buffered into a
+ * pooled {@link CompactTree} instead of a tree of nodes.
+ *
+ * The root object is checked against the {@link CaptureLimits} while it is read, so an oversized document is
+ * rejected with a {@link CaptureLimitExceededException} before it has been buffered.
  */
 public class TreeNodeExtractorDeserializer extends DelegatingDeserializer {
 
+    // What to capture from the root object while deserializing.
+    private final CaptureMode captureMode;
+
+    // The limits the root object is checked against while it is captured.
+    private final CaptureLimits limits;
+
     /**
      * Constructor that accepts the default deserializer which will handle the actual deserialization.
      *
      * @param defaultDeserializer The default deserializer to delegate deserialization to.
      */
     public TreeNodeExtractorDeserializer(JsonDeserializer<?> defaultDeserializer) {
+        this(defaultDeserializer, CaptureMode.TREE);
+    }
+
+    /**
+     * Constructor that accepts the default deserializer and what should be captured.
+     *
+     * @param defaultDeserializer The default deserializer to delegate deserialization to.
+     * @param captureMode         The capture mode to use.
+     */
+    public TreeNodeExtractorDeserializer(JsonDeserializer<?> defaultDeserializer, CaptureMode captureMode) {
+        this(defaultDeserializer, captureMode, CaptureLimits.none());
+    }
+
+    /**
+     * Constructor that accepts the default deserializer, what should be captured and the limits of what may be
+     * captured.
+     *
+     * @param defaultDeserializer The default deserializer to delegate deserialization to.
+     * @param captureMode         The capture mode to use.
+     * @param limits              The limits of a captured document (must not be null).
+     */
+    public TreeNodeExtractorDeserializer(JsonDeserializer<?> defaultDeserializer, CaptureMode captureMode,
+                                         CaptureLimits limits) {
         super(defaultDeserializer);
+        Validate.notNull(limits, "limits must be specified.");
+        this.captureMode = captureMode;
+        this.limits = limits;
     }
 
     /**
@@ -34,7 +78,7 @@ public class TreeNodeExtractorDeserializer extends DelegatingDeserializer {
      */
     @Override
     protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> newDelegate) {
-        return new TreeNodeExtractorDeserializer(newDelegate);
+        return new TreeNodeExtractorDeserializer(newDelegate, captureMode, limits);
     }
 
     /**
@@ -52,11 +96,56 @@ public class TreeNodeExtractorDeserializer extends DelegatingDeserializer {
         var context = p.getParsingContext();
         var depth = context.getNestingDepth();
 
+        // In paths mode, record the paths while the default deserializer reads the root object
+        if (captureMode == CaptureMode.PATHS) {
+            if (depth == 1 && !(p instanceof DirtyPathCapturingParser)) {
+                var instrumentation = PatchInstrumentation.get();
+                long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+                var capturing = new DirtyPathCapturingParser(p, limits);
+                Object result;
+                try {
+                    result = super.deserialize(capturing, ctxt);
+                } catch (JsonMappingException ex) {
+                    throw CaptureLimitExceededException.unwrap(ex);
+                }
+                var paths = capturing.getPaths();
+                CaptureContext.capture(ctxt, null, paths);
+                if (instrumentation.isEnabled()) {
+                    instrumentation.captureCompleted(captureMode, paths.size(), System.nanoTime() - start);
+                }
+                return result;
+            }
+            return super.deserialize(p, ctxt);
+        }
+
+        // In compact mode, buffer the root object into pooled token arrays and deserialize from them
+        if (captureMode == CaptureMode.COMPACT) {
+            if (depth == 1 && !(p instanceof CompactTreeParser)) {
+                var instrumentation = PatchInstrumentation.get();
+                long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+                var compactTree = CompactTree.read(CaptureLimitingParser.wrap(p, limits));
+                CaptureContext.capture(ctxt, compactTree, null);
+                if (instrumentation.isEnabled()) {
+                    instrumentation.captureCompleted(captureMode, compactTree.nodeCount(), System.nanoTime() - start);
+                }
+                try (var treeParser = compactTree.traverse(ctxt.getParser().getCodec())) {
+                    treeParser.nextToken();
+                    return super.deserialize(treeParser, ctxt);
+                }
+            }
+            return super.deserialize(p, ctxt);
+        }
+
         // Check if we are at the root level of the JSON structure
         if (depth == 1 && !(p instanceof TreeTraversingParser)) {
             // Extract the root JSON tree node
-            TreeNode treeNode = p.readValueAsTree();
-            TreeNodeHolder.set(treeNode);  // Store the extracted node in TreeNodeHolder
+            var instrumentation = PatchInstrumentation.get();
+            long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+            TreeNode treeNode = CaptureLimitingParser.wrap(p, limits).readValueAsTree();
+            CaptureContext.capture(ctxt, treeNode, null);  // Store the extracted node in the bound CaptureContext or TreeNodeHolder
+            if (instrumentation.isEnabled()) {
+                instrumentation.captureCompleted(captureMode, sizeOf(treeNode), System.nanoTime() - start);
+            }
 
             // Re-parse the tree node using a new parser
             JsonParser treeParser = treeNode.traverse(ctxt.getParser().getCodec());
@@ -71,4 +160,27 @@ public class TreeNodeExtractorDeserializer extends DelegatingDeserializer {
             return super.deserialize(p, ctxt);
         }
     }
+
+    /**
+     * Counts the nodes of the given tree, including the root.
+     */
+    static int sizeOf(TreeNode root) {
+        int size = 0;
+        var stack = new ArrayDeque<TreeNode>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            var node = stack.pop();
+            size++;
+            if (node.isObject()) {
+                for (var names = node.fieldNames(); names.hasNext(); ) {
+                    stack.push(node.get(names.next()));
+                }
+            } else if (node.isArray()) {
+                for (int i = 0; i < node.size(); i++) {
+                    stack.push(node.get(i));
+                }
+            }
+        }
+        return size;
+    }
 }
@@ -5,6 +5,9 @@ import com.fasterxml.jackson.databind.DeserializationConfig;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.commons.lang.Validate;
+
+import java.util.function.Predicate;
 
 /**
  * A custom Jackson module that registers the {@link TreeNodeExtractorDeserializer} to capture and store
@@ -12,13 +15,79 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
  *
  * This module automatically wraps the default deserializer with the {@link TreeNodeExtractorDeserializer}
  * for all bean types, allowing interception of JSON tree nodes during the deserialization process.
+ *
+ * When created with {@link CaptureMode#PATHS} the dirty paths are recorded into {@link DirtyPathHolder} in a
+ * single pass instead of buffering a tree.
+ *
+ * A type predicate, such as {@link #PATCH_CAPTURE_TYPES}, limits the wrapping to designated patch types. All
+ * other types keep their default deserializer, so a mapper shared with endpoints that do not patch pays nothing
+ * for the module.
+ *
+ * {@link CaptureLimits} bound the size, depth and number of dirty paths of a captured document.
  */
 public class TreeNodeExtractorModule extends SimpleModule {
 
+    /**
+     * A type predicate selecting only the types annotated with {@link PatchCapture}.
+     */
+    public static final Predicate<Class<?>> PATCH_CAPTURE_TYPES = type -> type.isAnnotationPresent(PatchCapture.class);
+
+    // What to capture from the root object while deserializing.
+    private final CaptureMode captureMode;
+
+    // The bean types whose deserializers are wrapped.
+    private final Predicate<Class<?>> types;
+
+    // The limits of a captured document.
+    private final CaptureLimits limits;
+
+    /**
+     * Default constructor that captures the JSON tree node ({@link CaptureMode#TREE}) for all bean types.
+     */
+    public TreeNodeExtractorModule() {
+        this(CaptureMode.TREE);
+    }
+
+    /**
+     * Constructor that accepts what should be captured while deserializing. All bean types are captured.
+     *
+     * @param captureMode The capture mode to use.
+     */
+    public TreeNodeExtractorModule(CaptureMode captureMode) {
+        this(captureMode, type -> true);
+    }
+
+    /**
+     * Constructor that accepts what should be captured while deserializing, and for which types.
+     *
+     * @param captureMode The capture mode to use.
+     * @param types       Selects the bean types to capture, e.g. {@link #PATCH_CAPTURE_TYPES} (must not be null).
+     */
+    public TreeNodeExtractorModule(CaptureMode captureMode, Predicate<Class<?>> types) {
+        this(captureMode, types, CaptureLimits.none());
+    }
+
+    /**
+     * Constructor that accepts what should be captured while deserializing, for which types, and the limits of a
+     * captured document.
+     *
+     * @param captureMode The capture mode to use.
+     * @param types       Selects the bean types to capture, e.g. {@link #PATCH_CAPTURE_TYPES} (must not be null).
+     * @param limits      The limits of a captured document (must not be null).
+     */
+    public TreeNodeExtractorModule(CaptureMode captureMode, Predicate<Class<?>> types, CaptureLimits limits) {
+        Validate.notNull(types, "types must be specified.");
+        Validate.notNull(limits, "limits must be specified.");
+        this.captureMode = captureMode;
+        this.types = types;
+        this.limits = limits;
+    }
+
     /**
      * Configures this module by adding a custom {@link BeanDeserializerModifier} to the Jackson context.
      * The modifier replaces the default deserializer with the {@link TreeNodeExtractorDeserializer}, which
      * intercepts the deserialization process and stores the root JSON tree node in {@link TreeNodeHolder}.
+     * Only the bean types accepted by the type predicate are wrapped.
      *
      * @param context The setup context for the module, allowing registration of custom deserializers.
      */
@@ -30,8 +99,12 @@ public class TreeNodeExtractorModule extends SimpleModule {
             public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config,
                                                           BeanDescription beanDesc,
                                                           JsonDeserializer<?> deserializer) {
+                if (!types.test(beanDesc.getBeanClass())) {
+                    return deserializer;
+                }
+
                 // Wrap the default deserializer with TreeNodeExtractorDeserializer to capture JSON tree nodes
-                return new TreeNodeExtractorDeserializer(deserializer);
+                return new TreeNodeExtractorDeserializer(deserializer, captureMode, limits);
             }
         });
     }
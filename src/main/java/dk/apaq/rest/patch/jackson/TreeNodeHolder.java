@@ -8,6 +8,11 @@ import com.fasterxml.jackson.core.TreeNode;
  *
  * This class is typically used in conjunction with the {@link TreeNodeExtractorDeserializer} and
  * {@link TreeNodeExtractorModule} to capture and hold the root JSON tree node for later use.
+ *
+ * The thread-local is only used when no {@link CaptureContext} is bound. Prefer opening a {@link CaptureContext}
+ * per request, which releases the tree when closed; with this holder the last tree stays referenced by the thread
+ * until it is replaced or {@link #clear()} is called. While a context is open on the current thread,
+ * {@link #get()} reads from it.
  */
 public class TreeNodeHolder {
 
@@ -24,20 +29,33 @@ public class TreeNodeHolder {
     }
 
     /**
-     * Retrieves the currently stored {@link TreeNode} for the current thread.
+     * Retrieves the currently stored {@link TreeNode} for the current thread. If a {@link CaptureContext} is open on
+     * the current thread, its tree is returned.
      *
      * @return The {@link TreeNode} stored in the current thread's context, or {@code null} if none is set.
      */
     public static TreeNode get() {
-        return TREE_NODE.get();
+        var context = CaptureContext.current();
+        return context != null ? context.getTreeNode() : TREE_NODE.get();
     }
 
     /**
-     * Stores the provided {@link TreeNode} in the current thread's context.
+     * Stores the provided {@link TreeNode} in the current thread's context. A {@link CompactTree} stored before is
+     * released.
      *
      * @param treenode The {@link TreeNode} to store.
      */
     public static void set(TreeNode treenode) {
+        CaptureContext.release(TREE_NODE.get(), treenode);
         TREE_NODE.set(treenode);
     }
+
+    /**
+     * Removes the stored {@link TreeNode} from the current thread's context, releasing it. A {@link CompactTree} is
+     * returned to its pool.
+     */
+    public static void clear() {
+        CaptureContext.release(TREE_NODE.get(), null);
+        TREE_NODE.remove();
+    }
 }
@@ -1,101 +1,491 @@
 package dk.apaq.rest.patch.jackson;
 
 import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.databind.JsonNode;
 import dk.apaq.rest.patch.PropertyReferenceConverter;
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import dk.apaq.rest.patch.property.DirtyFieldTree;
+import dk.apaq.rest.patch.property.DirtyFields;
+import dk.apaq.rest.patch.property.PropertyPath;
+import org.apache.commons.lang.Validate;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * A converter class that transforms a Jackson {@link TreeNode} into a collection of property reference field names.
  * This class is useful for extracting field names from a parsed JSON tree, where the fields represent
  * paths in the object hierarchy.
+ *
+ * The tree is walked iteratively with an explicit stack, so deeply nested documents cannot overflow the call
+ * stack, and all paths are built in a single reusable buffer so only the final path strings are allocated.
+ *
+ * When created with {@link CaptureLimits}, the nesting depth of the tree and the number of paths are bounded by
+ * {@link CaptureLimits#getMaxDepth()} and {@link CaptureLimits#getMaxPaths()}, and conversion stops with an
+ * {@link IllegalArgumentException} as soon as either is exceeded.
+ *
+ * By default arrays are treated as single values. When created with an element key, arrays of objects instead
+ * contribute the paths of their elements' values, so the elements can be merged in place: an element holding the
+ * key property is addressed by its key, e.g. {@code lines[id=42].quantity}, and any other element by its index,
+ * e.g. {@code lines[0].quantity}. Arrays holding anything but objects are still treated as single values.
+ *
+ * A {@link CompactTree} is converted from its captured tokens without building its node graph, unless element
+ * paths are enabled.
  */
 public class TreeNodePropertyReferenceConverter implements PropertyReferenceConverter<TreeNode> {
 
+    // The limits of the converted tree.
+    private final CaptureLimits limits;
+
+    // The property identifying the elements of arrays of objects, or null if arrays are single values.
+    private final String elementKey;
+
+    /**
+     * Default constructor that converts trees of any size.
+     */
+    public TreeNodePropertyReferenceConverter() {
+        this(CaptureLimits.none());
+    }
+
+    /**
+     * Constructor that accepts the limits of the converted tree.
+     *
+     * @param limits The limits of the depth and number of paths of a tree (must not be null).
+     */
+    public TreeNodePropertyReferenceConverter(CaptureLimits limits) {
+        this(limits, null);
+    }
+
+    /**
+     * Constructor that accepts the limits of the converted tree and the property identifying array elements.
+     *
+     * @param limits     The limits of the depth and number of paths of a tree (must not be null).
+     * @param elementKey The property identifying the elements of arrays of objects, e.g. {@code id}, or
+     *                   {@code null} to treat arrays as single values.
+     */
+    public TreeNodePropertyReferenceConverter(CaptureLimits limits, String elementKey) {
+        Validate.notNull(limits, "limits must be specified.");
+        this.limits = limits;
+        this.elementKey = elementKey;
+    }
+
     /**
      * Converts the given {@link TreeNode} into a collection of string property references.
      * If the input is an object, it traverses the object structure to collect field names.
      *
      * @param input The input {@link TreeNode} to be converted.
      * @return A collection of field names representing paths in the JSON object tree.
+     * @throws IllegalArgumentException If the tree exceeds the limits of this converter.
      */
     @Override
     public Collection<String> translate(TreeNode input) {
+        var instrumentation = PatchInstrumentation.get();
+        long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
         var refs = new ArrayList<String>();
-        if (input.isObject()) {
-            traverseObject(input, refs, new ArrayList<>());
+        translate(input, refs::add);
+        if (instrumentation.isEnabled()) {
+            instrumentation.converted(getClass(), refs.size(), System.nanoTime() - start);
         }
         return refs;
     }
 
     /**
-     * Traverses a JSON array node, extracting field paths for each element.
+     * Converts the given {@link TreeNode} into string property references, handing each of them to the given
+     * consumer instead of collecting them. This allows the paths to be written directly into a caller-supplied
+     * collection.
      *
-     * @param treeNode The current {@link TreeNode} representing the array.
-     * @param fields   The list to collect the field names.
-     * @param path     The current traversal path in the JSON hierarchy.
+     * @param input    The input {@link TreeNode} to be converted.
+     * @param consumer The consumer receiving each field name, in document order.
+     * @throws IllegalArgumentException If the tree exceeds the limits of this converter.
      */
-    private void traverseArray(TreeNode treeNode, List<String> fields, List<String> path) {
-        for (int i = 0; i < treeNode.size(); i++) {
-            path.add("[" + i + "]");
-            TreeNode child = treeNode.get(i);
-            traverse(child, fields, path);
-            path.remove(path.size() - 1);
+    public void translate(TreeNode input, Consumer<? super String> consumer) {
+        if (!input.isObject()) {
+            return;
+        }
+        if (elementKey == null && input instanceof CompactTree compactTree && !compactTree.isReleased()) {
+            // Read the paths straight from the captured tokens rather than building the tree.
+            var count = new int[1];
+            compactTree.walk(path -> {
+                checkPaths(++count[0]);
+                consumer.accept(path);
+            }, this::checkDepth);
+            return;
         }
+        walk(input, "", 1, consumer);
     }
 
     /**
-     * Traverses a JSON object node, extracting field paths for each field.
-     *
-     * @param treeNode The current {@link TreeNode} representing the object.
-     * @param fields   The list to collect the field names.
-     * @param path     The current traversal path in the JSON hierarchy.
+     * Walks an object or element array at the given path and depth, handing the paths below it to the consumer.
      */
-    private void traverseObject(TreeNode treeNode, List<String> fields, List<String> path) {
-        treeNode.fieldNames().forEachRemaining(item -> {
-            path.add("." + item);
-            TreeNode child = treeNode.get(item);
-            traverse(child, fields, path);
-            path.remove(path.size() - 1);
-        });
+    private void walk(TreeNode start, String prefix, int depth, Consumer<? super String> consumer) {
+        var path = new StringBuilder(64).append(prefix);
+        var stack = new ArrayDeque<Frame>();
+        stack.push(new Frame(start, path.length()));
+        int count = 0;
+
+        while (!stack.isEmpty()) {
+            var frame = stack.peek();
+            if (frame.fieldNames == null) {
+                // An array of objects; each element is traversed as an object below the array's path.
+                if (frame.index == frame.node.size()) {
+                    stack.pop();
+                    continue;
+                }
+                path.setLength(frame.pathLength);
+                appendElement(path, frame.node.get(frame.index), frame.index);
+                checkDepth(depth + stack.size());
+                stack.push(new Frame(frame.node.get(frame.index++), path.length()));
+                continue;
+            }
+            if (!frame.fieldNames.hasNext()) {
+                stack.pop();
+                continue;
+            }
+
+            // Truncate the buffer back to the parent's path before appending the next field.
+            var name = frame.fieldNames.next();
+            path.setLength(frame.pathLength);
+            if (frame.pathLength > 0) {
+                path.append('.');
+            }
+            path.append(name);
+
+            var child = frame.node.get(name);
+            if (child.isObject() || isElementArray(child)) {
+                checkDepth(depth + stack.size());
+                stack.push(new Frame(child, path.length()));
+            } else if (child.isArray() || child.isValueNode()) {
+                // Array elements are treated as values unless element paths are enabled.
+                checkPaths(++count);
+                consumer.accept(path.toString());
+            }
+        }
     }
 
     /**
-     * Traverses a {@link TreeNode} of any type (object, array, or value).
-     * Directs traversal to the appropriate method based on the node type.
+     * Converts the given {@link TreeNode} directly into a {@link DirtyFieldTree}, without building path strings.
+     * The tree holds the same paths as {@link #translate(TreeNode)}.
      *
-     * @param child  The current child {@link TreeNode}.
-     * @param fields The list to collect the field names.
-     * @param path   The current traversal path in the JSON hierarchy.
+     * @param input The input {@link TreeNode} to be converted.
+     * @return A tree of the field names in the JSON object tree.
+     * @throws IllegalArgumentException If the tree exceeds the limits of this converter.
      */
-    private void traverse(TreeNode child, List<String> fields, List<String> path) {
-        if (child.isObject()) {
-            traverseObject(child, fields, path);
+    @Override
+    public DirtyFieldTree translateToTree(TreeNode input) {
+        if (elementKey == null && input instanceof CompactTree compactTree && !compactTree.isReleased()) {
+            return DirtyFieldTree.of(translate(compactTree));
+        }
+        var instrumentation = PatchInstrumentation.get();
+        long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+        var builder = DirtyFieldTree.builder();
+        if (!input.isObject()) {
+            return builder.build();
         }
 
-        if (child.isArray()) {
-            // Array elements are treated as values; single elements are not supported.
-            traverseValue(path, fields);
+        var stack = new ArrayDeque<TreeFrame>();
+        stack.push(new TreeFrame(input, null, builder.root()));
+        int count = 0;
+        var element = new StringBuilder();
+
+        while (!stack.isEmpty()) {
+            var frame = stack.peek();
+            if (frame.fieldNames == null) {
+                if (frame.index == frame.node.size()) {
+                    stack.pop();
+                    continue;
+                }
+                var child = frame.node.get(frame.index);
+                element.setLength(0);
+                appendElement(element.append(frame.name), child, frame.index++);
+                if (child.size() > 0) {
+                    checkDepth(stack.size() + 1);
+                    stack.push(new TreeFrame(child, null, builder.descend(frame.dirtyNode, element.toString())));
+                }
+                continue;
+            }
+            if (!frame.fieldNames.hasNext()) {
+                stack.pop();
+                continue;
+            }
+
+            var name = frame.fieldNames.next();
+            var child = frame.node.get(name);
+            if (child.isObject()) {
+                // Empty objects contribute no paths, so only descend into the tree when there is something below.
+                if (child.size() > 0) {
+                    checkDepth(stack.size() + 1);
+                    stack.push(new TreeFrame(child, null, builder.descend(frame.dirtyNode, name)));
+                }
+            } else if (isElementArray(child)) {
+                // The elements are added below the object holding the array, as the name is part of their segment.
+                checkDepth(stack.size() + 1);
+                stack.push(new TreeFrame(child, name, frame.dirtyNode));
+            } else if (child.isArray() || child.isValueNode()) {
+                checkPaths(++count);
+                builder.markDirty(builder.descend(frame.dirtyNode, name));
+            }
         }
 
-        if (child.isValueNode()) {
-            traverseValue(path, fields);
+        var tree = builder.build();
+        if (instrumentation.isEnabled()) {
+            instrumentation.converted(getClass(), tree.size(), System.nanoTime() - start);
         }
+        return tree;
     }
 
     /**
-     * Extracts the current path and adds it to the fields list, handling both object and array value nodes.
+     * Returns a lazy view of the field names of the given {@link TreeNode}. Membership and prefix queries follow
+     * the queried path down the tree, and iteration below a prefix only walks that part of the tree, so nothing is
+     * computed for the parts of the tree that are not asked for. The limits of this converter apply to each walk.
+     *
+     * A {@link CompactTree} is instead translated into a {@link DirtyFieldTree} from its captured tokens, unless
+     * element paths are enabled, as navigating it would build its node graph.
      *
-     * @param path   The current traversal path.
-     * @param fields The list to collect the field names.
+     * @param input The input {@link TreeNode} to be viewed.
+     * @return A view of the field names in the JSON object tree.
+     */
+    @Override
+    public DirtyFields translateToView(TreeNode input) {
+        if (elementKey == null && input instanceof CompactTree compactTree && !compactTree.isReleased()) {
+            return translateToTree(compactTree);
+        }
+        return new TreeView(input);
+    }
+
+    /**
+     * Tests whether the node holds a value rather than fields or elements with paths of their own.
+     */
+    private boolean isValue(TreeNode node) {
+        return node.isValueNode() || node.isArray() && !isElementArray(node);
+    }
+
+    /**
+     * Tests whether the node is a non-empty array of objects whose elements get paths of their own.
+     */
+    private boolean isElementArray(TreeNode node) {
+        if (elementKey == null || !node.isArray() || node.size() == 0) {
+            return false;
+        }
+        for (int i = 0; i < node.size(); i++) {
+            if (!node.get(i).isObject()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the selector of an array element, either by its key or by its index.
      */
-    private void traverseValue(List<String> path, List<String> fields) {
-        var strPath = String.join("", path);
-        if (strPath.startsWith(".")) {
-            strPath = strPath.substring(1);
+    private void appendElement(StringBuilder path, TreeNode element, int index) {
+        if (element.get(elementKey) instanceof JsonNode key && key.isValueNode() && !key.isNull()) {
+            var value = key.asText();
+            if (!value.isEmpty() && value.indexOf(']') < 0 && value.indexOf('[') < 0) {
+                path.append('[').append(elementKey).append('=').append(value).append(']');
+                return;
+            }
+        }
+        path.append('[').append(index).append(']');
+    }
+
+    private void checkDepth(int depth) {
+        if (depth > limits.getMaxDepth()) {
+            throw new IllegalArgumentException("The patch document exceeds the maximum nesting depth of "
+                    + limits.getMaxDepth() + ".");
+        }
+    }
+
+    private void checkPaths(int count) {
+        if (count > limits.getMaxPaths()) {
+            throw new IllegalArgumentException("The patch document exceeds the maximum of " + limits.getMaxPaths()
+                    + " fields.");
+        }
+    }
+
+    /**
+     * A {@link DirtyFields} view answering queries from the tree as they are made.
+     */
+    private final class TreeView implements DirtyFields {
+
+        private final TreeNode root;
+
+        private TreeView(TreeNode root) {
+            this.root = root;
+        }
+
+        @Override
+        public boolean contains(String path) {
+            var found = path.isEmpty() ? null : find(path);
+            return found != null && isValue(found.node());
+        }
+
+        @Override
+        public boolean containsPrefix(String prefix) {
+            var found = find(prefix);
+            if (found == null) {
+                return false;
+            }
+            // Look for any value below the node; empty objects contribute no paths.
+            var stack = new ArrayDeque<TreeNode>();
+            stack.push(found.node());
+            while (!stack.isEmpty()) {
+                var node = stack.pop();
+                if (isValue(node)) {
+                    return true;
+                }
+                if (node.isObject()) {
+                    for (var names = node.fieldNames(); names.hasNext(); ) {
+                        stack.push(node.get(names.next()));
+                    }
+                } else {
+                    for (int i = 0; i < node.size(); i++) {
+                        stack.push(node.get(i));
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEach(String prefix, Consumer<? super String> action) {
+            var found = find(prefix);
+            if (found == null) {
+                return;
+            }
+            if (isValue(found.node())) {
+                action.accept(prefix);
+            } else {
+                walk(found.node(), prefix, found.depth(), action);
+            }
+        }
+
+        /**
+         * Follows the path from the root, returning the node it ends in, or {@code null} if the tree has no such
+         * node or the path is malformed. The empty path ends in the root.
+         */
+        private Found find(String path) {
+            if (!root.isObject()) {
+                return null;
+            }
+            if (path.isEmpty()) {
+                return new Found(root, 1);
+            }
+            var segments = segments(path);
+            if (segments == null) {
+                return null;
+            }
+            var node = root;
+            int depth = 1;
+            for (var segment : segments) {
+                if (!node.isObject()) {
+                    return null;
+                }
+                var child = node.get(segment.name());
+                if (child == null) {
+                    return null;
+                }
+                switch (segment.kind()) {
+                    case SIMPLE -> node = child;
+                    case KEYED, INDEXED -> {
+                        node = isElementArray(child) ? element(child, segment) : null;
+                        depth++;
+                    }
+                    default -> node = null;
+                }
+                if (node == null) {
+                    return null;
+                }
+                depth++;
+            }
+            return new Found(node, depth);
+        }
+
+        /**
+         * Splits the path into its segments, or returns {@code null} if it is malformed.
+         */
+        private List<PropertyPath.Segment> segments(String path) {
+            if (path.indexOf('[') < 0 && path.indexOf('(') < 0) {
+                // Plain paths are split on their dots without parsing.
+                var segments = new ArrayList<PropertyPath.Segment>();
+                int start = 0;
+                for (int dot = path.indexOf('.'); ; dot = path.indexOf('.', start)) {
+                    var name = dot < 0 ? path.substring(start) : path.substring(start, dot);
+                    segments.add(new PropertyPath.Segment(name, PropertyPath.Kind.SIMPLE, -1, null, name));
+                    if (dot < 0) {
+                        return segments;
+                    }
+                    start = dot + 1;
+                }
+            }
+            try {
+                return PropertyPath.parse(path).getSegments();
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
+
+        /**
+         * Returns the element of the array addressed by the selector of the segment, as the converter names it.
+         */
+        private TreeNode element(TreeNode array, PropertyPath.Segment segment) {
+            var selector = segment.expression().substring(segment.name().length());
+            var candidate = new StringBuilder();
+            for (int i = 0; i < array.size(); i++) {
+                candidate.setLength(0);
+                appendElement(candidate, array.get(i), i);
+                if (selector.contentEquals(candidate)) {
+                    return array.get(i);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A node found by following a path, with the depth the converter would walk it at.
+     */
+    private record Found(TreeNode node, int depth) {
+    }
+
+    /**
+     * An object or element array being traversed, with the length of its path in the buffer. Objects have their
+     * remaining field names; arrays have the index of their next element.
+     */
+    private static final class Frame {
+
+        private final TreeNode node;
+        private final Iterator<String> fieldNames;
+        private final int pathLength;
+        private int index;
+
+        Frame(TreeNode node, int pathLength) {
+            this.node = node;
+            this.fieldNames = node.isObject() ? node.fieldNames() : null;
+            this.pathLength = pathLength;
+        }
+    }
+
+    /**
+     * An object or element array being traversed into a {@link DirtyFieldTree}, with the tree node its fields or
+     * elements are added to. Arrays also have the name of the property holding them.
+     */
+    private static final class TreeFrame {
+
+        private final TreeNode node;
+        private final Iterator<String> fieldNames;
+        private final String name;
+        private final DirtyFieldTree.Node dirtyNode;
+        private int index;
+
+        TreeFrame(TreeNode node, String name, DirtyFieldTree.Node dirtyNode) {
+            this.node = node;
+            this.fieldNames = node.isObject() ? node.fieldNames() : null;
+            this.name = name;
+            this.dirtyNode = dirtyNode;
         }
-        fields.add(strPath);
     }
 }
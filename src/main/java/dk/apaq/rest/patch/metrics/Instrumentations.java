@@ -0,0 +1,31 @@
+package dk.apaq.rest.patch.metrics;
+
+import java.util.ServiceLoader;
+
+/**
+ * Holds the active {@link PatchInstrumentation}, looked up through {@link ServiceLoader} on first use.
+ */
+final class Instrumentations {
+
+    private static volatile PatchInstrumentation active;
+
+    private Instrumentations() {
+    }
+
+    static PatchInstrumentation get() {
+        var instrumentation = active;
+        if (instrumentation == null) {
+            synchronized (Instrumentations.class) {
+                if (active == null) {
+                    active = ServiceLoader.load(PatchInstrumentation.class).findFirst().orElse(PatchInstrumentation.NOOP);
+                }
+                instrumentation = active;
+            }
+        }
+        return instrumentation;
+    }
+
+    static void install(PatchInstrumentation instrumentation) {
+        active = instrumentation == null ? PatchInstrumentation.NOOP : instrumentation;
+    }
+}
@@ -0,0 +1,98 @@
+package dk.apaq.rest.patch.metrics;
+
+import dk.apaq.rest.patch.jackson.CaptureMode;
+
+/**
+ * Receives measurements from the hot paths of the library: merges, capture of dirty fields while deserializing,
+ * conversion of input into dirty paths and the caches. All methods do nothing by default, so implementations
+ * only override what they record.
+ *
+ * The active instrumentation is looked up once through {@link java.util.ServiceLoader}, so adding an
+ * implementation such as {@code rest-patch-micrometer} to the classpath enables it. It can also be set with
+ * {@link #install(PatchInstrumentation)}. Without an implementation, {@link #NOOP} is used and no measurements
+ * are taken at all.
+ */
+public interface PatchInstrumentation {
+
+    /**
+     * The instrumentation used when none is installed. It records nothing.
+     */
+    PatchInstrumentation NOOP = new PatchInstrumentation() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * @return The active instrumentation.
+     */
+    static PatchInstrumentation get() {
+        return Instrumentations.get();
+    }
+
+    /**
+     * Replaces the active instrumentation.
+     *
+     * @param instrumentation The instrumentation to use, or {@code null} to disable instrumentation.
+     */
+    static void install(PatchInstrumentation instrumentation) {
+        Instrumentations.install(instrumentation);
+    }
+
+    /**
+     * @return {@code true} if measurements should be taken. Callers skip timing when this is {@code false}.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Called when a merge in {@link dk.apaq.rest.patch.EntityMerger} has completed.
+     *
+     * @param entityType      The class of the existing entity.
+     * @param dirtyFieldCount The number of dirty fields given to the merge.
+     * @param nanos           The duration of the merge.
+     */
+    default void mergeCompleted(Class<?> entityType, int dirtyFieldCount, long nanos) {
+    }
+
+    /**
+     * Called when a field could not be merged, before the merge fails.
+     *
+     * @param entityType The class of the existing entity.
+     * @param path       The path of the field that could not be merged.
+     * @param error      The cause of the failure.
+     */
+    default void mergeFailed(Class<?> entityType, String path, Throwable error) {
+    }
+
+    /**
+     * Called when the dirty fields of a root JSON object have been captured while deserializing.
+     *
+     * @param mode  What was captured.
+     * @param size  The number of nodes in the captured tree, or the number of captured paths.
+     * @param nanos The duration of the capture, including deserialization in {@link CaptureMode#PATHS}.
+     */
+    default void captureCompleted(CaptureMode mode, int size, long nanos) {
+    }
+
+    /**
+     * Called when a {@link dk.apaq.rest.patch.PropertyReferenceConverter} has translated its input.
+     *
+     * @param converterType The class of the converter.
+     * @param pathCount     The number of paths produced.
+     * @param nanos         The duration of the translation.
+     */
+    default void converted(Class<?> converterType, int pathCount, long nanos) {
+    }
+
+    /**
+     * Called on every lookup in one of the caches of the library.
+     *
+     * @param cache The name of the cache, e.g. {@code property-accessors} or {@code form-keys}.
+     * @param hit   {@code true} if the value was found in the cache.
+     */
+    default void cacheAccessed(String cache, boolean hit) {
+    }
+}
@@ -0,0 +1,331 @@
+package dk.apaq.rest.patch.property;
+
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A set of dirty property paths stored as a trie of shared prefixes. Where a flat list repeats {@code child.}
+ * for every property of {@code child}, the tree holds the {@code child} segment once, so consumers such as
+ * {@link dk.apaq.rest.patch.EntityMerger} can resolve each shared prefix once rather than once per leaf.
+ *
+ * Equal segments are interned while the tree is built, so a segment name that occurs under many parents is only
+ * held once. Trees are built with a {@link Builder} and are not modified afterwards.
+ *
+ * As a {@link DirtyFields}, membership and prefix queries follow the tree from the root, so they only visit the
+ * nodes on the queried path.
+ */
+public final class DirtyFieldTree implements DirtyFields {
+
+    private final Node root;
+    private final int size;
+
+    private DirtyFieldTree(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Creates a tree holding the given paths.
+     *
+     * @param paths The dirty paths, e.g. {@code child.text} (must not be null).
+     * @return The tree.
+     * @throws IllegalArgumentException If a path is malformed.
+     */
+    public static DirtyFieldTree of(Iterable<String> paths) {
+        Validate.notNull(paths, "paths must be specified.");
+        var builder = builder();
+        for (var path : paths) {
+            builder.add(path);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return A builder for a new tree.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The root node. It has no segment and is never dirty itself.
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * @return The number of dirty paths in the tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return {@code true} if the tree holds no dirty paths.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Flattens the tree back into path strings, in the order the paths were first added. This is the adapter for
+     * APIs taking a {@code Collection<String>}.
+     *
+     * @return The dirty paths.
+     */
+    @Override
+    public List<String> toPaths() {
+        var paths = new ArrayList<String>(size);
+        collect(root, paths::add);
+        return paths;
+    }
+
+    @Override
+    public boolean contains(String path) {
+        var node = find(path);
+        return node != null && node.isDirty();
+    }
+
+    @Override
+    public boolean containsPrefix(String prefix) {
+        // Nodes only exist on the way to dirty paths.
+        var node = find(prefix);
+        return node != null && (node.isDirty() || !node.isLeaf());
+    }
+
+    @Override
+    public void forEach(String prefix, Consumer<? super String> action) {
+        var node = find(prefix);
+        if (node == null) {
+            return;
+        }
+        if (node.isDirty()) {
+            action.accept(node.getPath());
+        }
+        collect(node, action);
+    }
+
+    /**
+     * Returns the node of the given path, or {@code null} if the tree has no such node or the path is malformed.
+     */
+    private Node find(String path) {
+        if (path.isEmpty()) {
+            return root;
+        }
+        if (Builder.isPlainName(path)) {
+            return root.getChild(path);
+        }
+        List<PropertyPath.Segment> segments;
+        try {
+            segments = PropertyPath.parse(path).getSegments();
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        var node = root;
+        for (int i = 0; i < segments.size() && node != null; i++) {
+            node = node.getChild(segments.get(i).expression());
+        }
+        return node;
+    }
+
+    private static void collect(Node node, Consumer<? super String> paths) {
+        for (var child : node.getChildren()) {
+            if (child.isDirty()) {
+                paths.accept(child.getPath());
+            }
+            collect(child, paths);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toPaths().toString();
+    }
+
+    /**
+     * A node in the tree. Every node but the root holds one path segment; a node is dirty if the path ending in it
+     * was added to the tree. A dirty node may also have dirty descendants.
+     */
+    public static final class Node {
+
+        private final Node parent;
+        private final PropertyPath.Segment segment;
+        private final Map<String, Node> children = new LinkedHashMap<>(4);
+        private boolean dirty;
+        private String path;
+
+        private Node(Node parent, PropertyPath.Segment segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        /**
+         * @return The segment of this node, or {@code null} for the root.
+         */
+        public PropertyPath.Segment getSegment() {
+            return segment;
+        }
+
+        /**
+         * @return The child nodes, in the order they were added.
+         */
+        public Collection<Node> getChildren() {
+            return Collections.unmodifiableCollection(children.values());
+        }
+
+        /**
+         * @param expression The segment expression of the child, e.g. {@code text} or {@code meta(color)}.
+         * @return The child node, or {@code null} if there is none.
+         */
+        public Node getChild(String expression) {
+            return children.get(expression);
+        }
+
+        /**
+         * @return {@code true} if the path ending in this node is dirty.
+         */
+        public boolean isDirty() {
+            return dirty;
+        }
+
+        /**
+         * @return {@code true} if this node has no children.
+         */
+        public boolean isLeaf() {
+            return children.isEmpty();
+        }
+
+        /**
+         * @return The full path of this node, e.g. {@code child.text}. Built on first use and kept.
+         */
+        public String getPath() {
+            if (path == null) {
+                if (segment == null) {
+                    path = "";
+                } else if (parent.segment == null) {
+                    path = segment.expression();
+                } else {
+                    path = parent.getPath() + "." + segment.expression();
+                }
+            }
+            return path;
+        }
+    }
+
+    /**
+     * Builds a {@link DirtyFieldTree}. Paths can be added either as strings or segment by segment through
+     * {@link #descend(Node, String)}, which lets converters fill the tree without building path strings.
+     */
+    public static final class Builder {
+
+        private final Node root = new Node(null, null);
+        private final Map<String, PropertyPath.Segment> segments = new HashMap<>();
+        private int size;
+        private boolean built;
+
+        private Builder() {
+        }
+
+        /**
+         * @return The root node to descend from.
+         */
+        public Node root() {
+            return root;
+        }
+
+        /**
+         * Adds the given path as dirty.
+         *
+         * @param path The path to add, e.g. {@code child.array[2]}.
+         * @return This builder.
+         * @throws IllegalArgumentException If the path is malformed.
+         */
+        public Builder add(String path) {
+            markDirty(descend(root, path));
+            return this;
+        }
+
+        /**
+         * Returns the node reached by following the given expression from the given node, creating missing nodes
+         * on the way. Plain property names are taken as a single segment without parsing.
+         *
+         * @param from       The node to start from.
+         * @param expression One or more segments, e.g. {@code text} or {@code address.city}.
+         * @return The node reached.
+         * @throws IllegalArgumentException If the expression is malformed.
+         */
+        public Node descend(Node from, String expression) {
+            checkNotBuilt();
+            if (isPlainName(expression)) {
+                return childOf(from, expression);
+            }
+            var node = from;
+            for (var segment : PropertyPath.parse(expression).getSegments()) {
+                node = childOf(node, segment.expression());
+            }
+            return node;
+        }
+
+        /**
+         * Marks the given node as dirty.
+         *
+         * @param node A node obtained from this builder.
+         * @return This builder.
+         */
+        public Builder markDirty(Node node) {
+            checkNotBuilt();
+            if (node.segment != null && !node.dirty) {
+                node.dirty = true;
+                size++;
+            }
+            return this;
+        }
+
+        /**
+         * @return The built tree. The builder cannot be used afterwards.
+         */
+        public DirtyFieldTree build() {
+            checkNotBuilt();
+            built = true;
+            return new DirtyFieldTree(root, size);
+        }
+
+        private Node childOf(Node parent, String expression) {
+            var child = parent.children.get(expression);
+            if (child == null) {
+                var segment = segments.computeIfAbsent(expression, e -> PropertyPath.parse(e).getSegments().get(0));
+                child = new Node(parent, segment);
+                parent.children.put(segment.expression(), child);
+            }
+            return child;
+        }
+
+        private void checkNotBuilt() {
+            if (built) {
+                throw new IllegalStateException("The tree has already been built.");
+            }
+        }
+
+        private static boolean isPlainName(String expression) {
+            if (expression.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < expression.length(); i++) {
+                char c = expression.charAt(i);
+                if (c == '.' || c == '[' || c == '(' || c == ']' || c == ')') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
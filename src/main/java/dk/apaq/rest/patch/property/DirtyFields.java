@@ -0,0 +1,57 @@
+package dk.apaq.rest.patch.property;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A read-only view of the dirty property paths of a request that can be queried without listing every path, e.g.
+ * to ask whether {@code status} was sent or to list the paths below {@code address}. Implementations only visit
+ * the parts of the request a query asks for, so a check or an allow-listed merge costs in proportion to what is
+ * asked rather than to the size of the request.
+ *
+ * A path is dirty if it would be listed by {@link dk.apaq.rest.patch.PropertyReferenceConverter#translate(Object)},
+ * e.g. {@code child.text}. Prefixes are whole paths as well, so {@code child} is a prefix of {@code child.text} but
+ * not of {@code children.text}.
+ */
+public interface DirtyFields extends Iterable<String> {
+
+    /**
+     * @param path The path to test, e.g. {@code child.text}.
+     * @return {@code true} if the path is dirty.
+     */
+    boolean contains(String path);
+
+    /**
+     * @param prefix The path to test, e.g. {@code child}, or the empty string for the whole request.
+     * @return {@code true} if the path or any path below it is dirty.
+     */
+    boolean containsPrefix(String prefix);
+
+    /**
+     * Hands the dirty paths at or below the given path to the action, in document order, without visiting the rest
+     * of the request.
+     *
+     * @param prefix The path to start from, e.g. {@code child}, or the empty string for the whole request.
+     * @param action The action receiving each dirty path.
+     */
+    void forEach(String prefix, Consumer<? super String> action);
+
+    /**
+     * @return An iterator over all dirty paths, in document order.
+     */
+    @Override
+    default Iterator<String> iterator() {
+        return toPaths().iterator();
+    }
+
+    /**
+     * @return All dirty paths, in document order.
+     */
+    default List<String> toPaths() {
+        var paths = new ArrayList<String>();
+        forEach("", paths::add);
+        return paths;
+    }
+}
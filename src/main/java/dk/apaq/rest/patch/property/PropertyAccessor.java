@@ -0,0 +1,180 @@
+package dk.apaq.rest.patch.property;
+
+import org.apache.commons.beanutils.NestedNullException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled accessor for a single {@link PropertyPath} on a bean class. Each segment of the path is resolved
+ * to method handles the first time it is seen for a concrete class, so repeated reads and writes do not
+ * re-introspect or re-parse the expression.
+ *
+ * Instances are thread-safe and are normally obtained from a {@link PropertyAccessorCache}.
+ */
+public final class PropertyAccessor {
+
+    private final Class<?> beanClass;
+    private final PropertyPath path;
+    private final Site[] sites;
+
+    // Why the path does not apply to the bean class, an empty string if it does, or null until checked.
+    private volatile String problem;
+
+    /**
+     * Compiles an accessor for the given path on the given bean class.
+     *
+     * @param beanClass The class of the root bean.
+     * @param path      The path to compile.
+     */
+    public PropertyAccessor(Class<?> beanClass, PropertyPath path) {
+        this.beanClass = beanClass;
+        this.path = path;
+        this.sites = new Site[path.size()];
+        for (int i = 0; i < sites.length; i++) {
+            sites[i] = new Site(path.getSegments().get(i));
+        }
+        // The root class is known up front, so the first segment can be resolved eagerly.
+        sites[0].stepFor(beanClass);
+    }
+
+    /**
+     * @return The class of the root bean this accessor was compiled for.
+     */
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    /**
+     * @return The path this accessor reads and writes.
+     */
+    public PropertyPath getPath() {
+        return path;
+    }
+
+    /**
+     * Checks that every segment of the path exists and that the last one can be both read and written, without
+     * invoking any accessor. Segments below the root are checked against the declared property types, as far as
+     * those are concrete classes; paths through interfaces, abstract classes, lists or maps are only checked up to
+     * that point. The segments checked are compiled for their declared types along the way. The outcome is computed
+     * once and kept with the accessor.
+     *
+     * @return The reason the path does not apply to the bean class, or {@code null} if it does.
+     */
+    public String validate() {
+        var result = problem;
+        if (result == null) {
+            result = check();
+            problem = result;
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    private String check() {
+        var segments = path.getSegments();
+        Class<?> type = beanClass;
+        for (int i = 0; i < segments.size(); i++) {
+            // The root is a concrete class, while further types are declared and may be narrowed at runtime.
+            if (i > 0 && (type == null || type == Object.class || Modifier.isAbstract(type.getModifiers()))) {
+                break;
+            }
+            // Resolving through the sites compiles the nested segments for their declared types up front.
+            var step = sites[i].stepFor(i == 0 ? beanClass : type);
+            var reason = step.problem(i == segments.size() - 1);
+            if (reason != null) {
+                return reason;
+            }
+            type = step.valueType();
+        }
+        return "";
+    }
+
+    /**
+     * Reads the value at this path from the given bean.
+     *
+     * @param bean The root bean.
+     * @return The value at the path.
+     * @throws NoSuchMethodException     If a segment of the path is not a readable property.
+     * @throws InvocationTargetException If an accessor throws.
+     * @throws IllegalAccessException    If an accessor cannot be accessed.
+     * @throws NestedNullException       If an intermediate segment is {@code null}.
+     */
+    public Object get(Object bean) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        var current = bean;
+        for (int i = 0; i < sites.length; i++) {
+            current = read(current, i);
+        }
+        return current;
+    }
+
+    /**
+     * Writes the value at this path on the given bean. All segments but the last are read to reach the
+     * bean holding the property.
+     *
+     * @param bean  The root bean.
+     * @param value The value to write.
+     * @throws NoSuchMethodException     If a segment of the path is not a readable or writable property.
+     * @throws InvocationTargetException If an accessor throws.
+     * @throws IllegalAccessException    If an accessor cannot be accessed.
+     * @throws NestedNullException       If an intermediate segment is {@code null}.
+     */
+    public void set(Object bean, Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        var current = bean;
+        int last = sites.length - 1;
+        for (int i = 0; i < last; i++) {
+            current = read(current, i);
+        }
+        sites[last].stepFor(current.getClass()).set(current, value);
+    }
+
+    private Object read(Object current, int i) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        var next = sites[i].stepFor(current.getClass()).get(current);
+        if (next == null && i < sites.length - 1) {
+            throw new NestedNullException("Null property value for '" + sites[i].segment.expression()
+                    + "' on bean class '" + current.getClass() + "'");
+        }
+        return next;
+    }
+
+    /**
+     * An inline cache of the resolved step for one segment. The common case of a single concrete class per
+     * segment is served from a volatile field; other classes seen at the same position are kept aside.
+     */
+    private static final class Site {
+
+        private final PropertyPath.Segment segment;
+        private volatile PropertyStep step;
+        private volatile Map<Class<?>, PropertyStep> others;
+
+        Site(PropertyPath.Segment segment) {
+            this.segment = segment;
+        }
+
+        PropertyStep stepFor(Class<?> type) {
+            var current = step;
+            if (current != null && current.beanClass == type) {
+                return current;
+            }
+            if (current == null) {
+                current = PropertyStep.resolve(type, segment);
+                step = current;
+                return current;
+            }
+
+            var map = others;
+            if (map == null) {
+                synchronized (this) {
+                    if (others == null) {
+                        others = new ConcurrentHashMap<>();
+                    }
+                    map = others;
+                }
+            }
+            // Look up first, as computeIfAbsent may lock the bin even when the step is already there.
+            var other = map.get(type);
+            return other != null ? other : map.computeIfAbsent(type, t -> PropertyStep.resolve(t, segment));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package dk.apaq.rest.patch.property;
+
+import dk.apaq.rest.patch.metrics.PatchInstrumentation;
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of compiled {@link PropertyAccessor}s keyed by bean class and property expression.
+ * When the cache is full the accessor cached first is evicted, so paths sent by clients cannot make it grow
+ * without limit. Accessors whose {@link PropertyAccessor#validate()} fails are kept within a separate, smaller
+ * bound, so unknown or malformed paths sent by clients cannot evict the accessors of real properties.
+ *
+ * The cache is thread-safe and lookups do not lock. The accessors of each bean class are held in an immutable map
+ * attached to the class through a {@link ClassValue}, which is replaced as a whole when an accessor is added or
+ * evicted. Only adding and evicting accessors, which happens once per class and expression, is synchronized.
+ */
+public class PropertyAccessorCache {
+
+    /**
+     * The number of accessors kept by the default cache.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    // The name this cache is reported under to the instrumentation.
+    private static final String CACHE_NAME = "property-accessors";
+
+    // The number of accessors failing validation kept at most, unless the cache itself is smaller.
+    private static final int MAX_REJECTED_ENTRIES = 64;
+
+    private static final PropertyAccessorCache DEFAULT = new PropertyAccessorCache(DEFAULT_MAX_ENTRIES);
+
+    private final int maxEntries;
+    private final int maxRejectedEntries;
+
+    // The accessors cached for each bean class.
+    private final ClassValue<ClassAccessors> classes = new ClassValue<>() {
+        @Override
+        protected ClassAccessors computeValue(Class<?> type) {
+            return new ClassAccessors();
+        }
+    };
+
+    // The cached accessors in the order they were added, for eviction. Guarded by itself.
+    private final ArrayDeque<Entry> order = new ArrayDeque<>();
+
+    // The cached accessors failing validation in the order they were added. Guarded by order.
+    private final ArrayDeque<Entry> rejected = new ArrayDeque<>();
+
+    /**
+     * Creates a cache holding at most the given number of accessors.
+     *
+     * @param maxEntries The maximum number of accessors to keep (must be positive).
+     */
+    public PropertyAccessorCache(int maxEntries) {
+        Validate.isTrue(maxEntries > 0, "maxEntries must be positive.");
+        this.maxEntries = maxEntries;
+        this.maxRejectedEntries = Math.min(maxEntries, MAX_REJECTED_ENTRIES);
+    }
+
+    /**
+     * @return The cache shared by all users that do not supply their own.
+     */
+    public static PropertyAccessorCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the accessor for the given class and expression, compiling it on first use.
+     *
+     * @param beanClass  The class of the root bean.
+     * @param expression The property expression, e.g. {@code address.city}.
+     * @return The compiled accessor.
+     * @throws IllegalArgumentException If the expression is malformed.
+     */
+    public PropertyAccessor get(Class<?> beanClass, String expression) {
+        var owner = classes.get(beanClass);
+        var accessor = owner.accessors.get(expression);
+        var instrumentation = PatchInstrumentation.get();
+        if (instrumentation.isEnabled()) {
+            instrumentation.cacheAccessed(CACHE_NAME, accessor != null);
+        }
+        if (accessor == null) {
+            accessor = new PropertyAccessor(beanClass, PropertyPath.parse(expression));
+            // Validated outside the lock, as it introspects the classes along the path.
+            accessor = add(owner, expression, accessor, accessor.validate() == null);
+        }
+        return accessor;
+    }
+
+    /**
+     * @return The number of accessors currently cached, not counting those failing validation.
+     */
+    public int size() {
+        synchronized (order) {
+            return order.size();
+        }
+    }
+
+    /**
+     * Adds the accessor unless another thread got there first, evicting the oldest accessor of the same kind if
+     * its part of the cache is full.
+     *
+     * @return The accessor now cached for the expression.
+     */
+    private PropertyAccessor add(ClassAccessors owner, String expression, PropertyAccessor accessor, boolean valid) {
+        synchronized (order) {
+            var existing = owner.accessors.get(expression);
+            if (existing != null) {
+                return existing;
+            }
+            owner.put(expression, accessor);
+            var entries = valid ? order : rejected;
+            entries.add(new Entry(owner, expression));
+            if (entries.size() > (valid ? maxEntries : maxRejectedEntries)) {
+                var eldest = entries.poll();
+                eldest.owner().remove(eldest.expression());
+            }
+            return accessor;
+        }
+    }
+
+    /**
+     * The accessors of one bean class. The map is never modified once published, so it can be read without locking.
+     */
+    private static final class ClassAccessors {
+
+        private volatile Map<String, PropertyAccessor> accessors = Map.of();
+
+        void put(String expression, PropertyAccessor accessor) {
+            var next = new HashMap<>(accessors);
+            next.put(expression, accessor);
+            accessors = next;
+        }
+
+        void remove(String expression) {
+            var next = new HashMap<>(accessors);
+            next.remove(expression);
+            accessors = next;
+        }
+    }
+
+    private record Entry(ClassAccessors owner, String expression) {
+    }
+}
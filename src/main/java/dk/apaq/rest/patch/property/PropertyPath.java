@@ -0,0 +1,172 @@
+package dk.apaq.rest.patch.property;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed property expression such as {@code address.city}, {@code array[0]} or {@code meta(color)}.
+ * The syntax is the one used by commons-beanutils: segments are separated by dots, and each segment may
+ * carry either an index in square brackets or a map key in parentheses.
+ *
+ * In addition, an element of a collection can be selected by the value of one of its properties, e.g.
+ * {@code lines[id=42]} selects the element of {@code lines} whose {@code id} is {@code 42}.
+ *
+ * Parsing is done once, after which the path can be used to compile a {@link PropertyAccessor}.
+ */
+public final class PropertyPath {
+
+    /**
+     * The kind of a single segment in a property path.
+     */
+    public enum Kind {
+        /** A plain property, e.g. {@code city}. */
+        SIMPLE,
+        /** An indexed property, e.g. {@code array[0]}. */
+        INDEXED,
+        /** A mapped property, e.g. {@code meta(color)}. */
+        MAPPED,
+        /** An element of a collection selected by a key property, e.g. {@code lines[id=42]}. */
+        KEYED
+    }
+
+    /**
+     * A single segment of a property path.
+     *
+     * @param name       The property name of the segment.
+     * @param kind        Whether the segment is simple, indexed, mapped or keyed.
+     * @param index       The index for indexed segments, otherwise -1.
+     * @param key         The key for mapped segments, the key value for keyed segments, otherwise {@code null}.
+     * @param expression  The raw expression of the segment, e.g. {@code meta(color)}.
+     * @param keyProperty The property holding the key of the elements for keyed segments, otherwise {@code null}.
+     */
+    public record Segment(String name, Kind kind, int index, String key, String expression, String keyProperty) {
+
+        /**
+         * Creates a segment that is not keyed.
+         */
+        public Segment(String name, Kind kind, int index, String key, String expression) {
+            this(name, kind, index, key, expression, null);
+        }
+    }
+
+    private final String expression;
+    private final List<Segment> segments;
+
+    private PropertyPath(String expression, List<Segment> segments) {
+        this.expression = expression;
+        this.segments = segments;
+    }
+
+    /**
+     * Parses the given property expression.
+     *
+     * @param expression The expression to parse, e.g. {@code child.array[2]}.
+     * @return The parsed path.
+     * @throws IllegalArgumentException If the expression is empty or malformed.
+     */
+    public static PropertyPath parse(String expression) {
+        if (expression == null || expression.isEmpty()) {
+            throw new IllegalArgumentException("Property expression must be specified.");
+        }
+
+        var segments = new ArrayList<Segment>();
+        int start = 0;
+        boolean enclosed = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '(' || c == '[') {
+                enclosed = true;
+            } else if (c == ')' || c == ']') {
+                enclosed = false;
+            } else if (c == '.' && !enclosed) {
+                segments.add(parseSegment(expression, expression.substring(start, i)));
+                start = i + 1;
+            }
+        }
+        segments.add(parseSegment(expression, expression.substring(start)));
+        return new PropertyPath(expression, Collections.unmodifiableList(segments));
+    }
+
+    private static Segment parseSegment(String expression, String segment) {
+        int open = indexOfOpening(segment);
+        if (open < 0) {
+            if (segment.isEmpty() || segment.indexOf(']') >= 0 || segment.indexOf(')') >= 0) {
+                throw invalid(expression);
+            }
+            return new Segment(segment, Kind.SIMPLE, -1, null, segment);
+        }
+
+        char opening = segment.charAt(open);
+        char closing = opening == '[' ? ']' : ')';
+        if (open == 0 || segment.charAt(segment.length() - 1) != closing) {
+            throw invalid(expression);
+        }
+
+        var name = segment.substring(0, open);
+        var argument = segment.substring(open + 1, segment.length() - 1);
+        if (opening == '(') {
+            return new Segment(name, Kind.MAPPED, -1, argument, segment);
+        }
+
+        int equals = argument.indexOf('=');
+        if (equals >= 0) {
+            if (equals == 0) {
+                throw invalid(expression);
+            }
+            return new Segment(name, Kind.KEYED, -1, argument.substring(equals + 1), segment, argument.substring(0, equals));
+        }
+
+        try {
+            return new Segment(name, Kind.INDEXED, Integer.parseInt(argument), null, segment);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid index value '" + argument + "'");
+        }
+    }
+
+    private static int indexOfOpening(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '[' || c == '(') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static IllegalArgumentException invalid(String expression) {
+        return new IllegalArgumentException("Invalid property expression '" + expression + "'");
+    }
+
+    /**
+     * @return The segments of this path, in order from the root.
+     */
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return The number of segments in this path.
+     */
+    public int size() {
+        return segments.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PropertyPath other && expression.equals(other.expression);
+    }
+
+    @Override
+    public int hashCode() {
+        return expression.hashCode();
+    }
+
+    /**
+     * @return The original expression of this path.
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,595 @@
+package dk.apaq.rest.patch.property;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.beanutils.MappedPropertyDescriptor;
+import org.apache.commons.beanutils.MethodUtils;
+import org.apache.commons.beanutils.NestedNullException;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.lang.ClassUtils;
+
+import java.beans.IndexedPropertyDescriptor;
+import java.beans.IntrospectionException;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single compiled segment of a {@link PropertyAccessor}, bound to one concrete bean class.
+ *
+ * Introspection happens once in {@link #resolve(Class, PropertyPath.Segment)}, after which reads and writes go
+ * straight through {@link MethodHandle}s. The semantics and error messages mirror those of
+ * {@link PropertyUtils} so that callers cannot tell the two apart.
+ */
+abstract class PropertyStep {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    final Class<?> beanClass;
+    final PropertyPath.Segment segment;
+
+    PropertyStep(Class<?> beanClass, PropertyPath.Segment segment) {
+        this.beanClass = beanClass;
+        this.segment = segment;
+    }
+
+    /**
+     * Reads the value of this segment from the given bean.
+     */
+    abstract Object get(Object bean) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException;
+
+    /**
+     * Writes the value of this segment on the given bean.
+     */
+    abstract void set(Object bean, Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException;
+
+    /**
+     * Checks the segment without invoking any accessor. Steps that cannot tell up front report no problem.
+     *
+     * @param write Whether the segment must be writable as well as readable.
+     * @return The reason the segment cannot be used, or {@code null} if it can.
+     */
+    String problem(boolean write) {
+        return null;
+    }
+
+    /**
+     * @return The declared type of the value read by this segment, or {@code null} if it is not known.
+     */
+    Class<?> valueType() {
+        return null;
+    }
+
+    /**
+     * Resolves the step for the given segment on the given bean class.
+     *
+     * @param beanClass The concrete class of the bean the segment is read from or written to.
+     * @param segment   The segment to resolve.
+     * @return The resolved step. Unknown properties resolve to a step that fails on use.
+     */
+    static PropertyStep resolve(Class<?> beanClass, PropertyPath.Segment segment) {
+        if (Map.class.isAssignableFrom(beanClass) || DynaBean.class.isAssignableFrom(beanClass)) {
+            return new DelegatingStep(beanClass, segment);
+        }
+
+        var descriptor = findDescriptor(beanClass, segment.name());
+        if (descriptor == null) {
+            var on = segment.kind() == PropertyPath.Kind.SIMPLE ? "' on class '" : "' on bean class '";
+            return new MissingStep(beanClass, segment, "Unknown property '" + segment.name() + on + beanClass + "'");
+        }
+
+        try {
+            return switch (segment.kind()) {
+                case SIMPLE -> new SimpleStep(beanClass, segment, descriptor);
+                case INDEXED -> new IndexedStep(beanClass, segment, descriptor);
+                case MAPPED -> new MappedStep(beanClass, segment, descriptor);
+                case KEYED -> new KeyedStep(beanClass, segment, descriptor);
+            };
+        } catch (IllegalAccessException ex) {
+            // The accessor is not reachable through a public lookup; let beanutils deal with it.
+            return new DelegatingStep(beanClass, segment);
+        }
+    }
+
+    private static PropertyDescriptor findDescriptor(Class<?> beanClass, String name) {
+        for (var descriptor : PropertyUtils.getPropertyDescriptors(beanClass)) {
+            if (descriptor.getName().equals(name)) {
+                return descriptor;
+            }
+        }
+        try {
+            return new MappedPropertyDescriptor(name, beanClass);
+        } catch (IntrospectionException ex) {
+            return null;
+        }
+    }
+
+    private static Invoker invoker(Class<?> beanClass, Method method) throws IllegalAccessException {
+        var accessible = method == null ? null : MethodUtils.getAccessibleMethod(beanClass, method);
+        if (accessible == null) {
+            return null;
+        }
+        var handle = LOOKUP.unreflect(accessible);
+        return new Invoker(accessible, handle.asType(MethodType.genericMethodType(handle.type().parameterCount())));
+    }
+
+    /**
+     * A method handle adapted to a generic signature, paired with the method it was created from.
+     */
+    private record Invoker(Method method, MethodHandle handle) {
+
+        Object invoke(Object bean) throws InvocationTargetException {
+            try {
+                return handle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw failed(t);
+            }
+        }
+
+        Object invoke(Object bean, Object arg) throws InvocationTargetException {
+            checkArgument(bean, 0, arg);
+            try {
+                return handle.invokeExact(bean, arg);
+            } catch (Throwable t) {
+                throw failed(t);
+            }
+        }
+
+        Object invoke(Object bean, Object arg0, Object arg1) throws InvocationTargetException {
+            checkArgument(bean, 0, arg0);
+            checkArgument(bean, 1, arg1);
+            try {
+                return handle.invokeExact(bean, arg0, arg1);
+            } catch (Throwable t) {
+                throw failed(t);
+            }
+        }
+
+        /**
+         * Wraps an exception thrown by the method, as reflection does. Errors are rethrown as they are.
+         */
+        private static InvocationTargetException failed(Throwable t) {
+            if (t instanceof Error error) {
+                throw error;
+            }
+            return new InvocationTargetException(t);
+        }
+
+        private void checkArgument(Object bean, int position, Object arg) {
+            var type = method.getParameterTypes()[position];
+            if (arg == null ? type.isPrimitive() : !ClassUtils.primitiveToWrapper(type).isInstance(arg)) {
+                throw new IllegalArgumentException("Cannot invoke " + method.getDeclaringClass().getName() + "."
+                        + method.getName() + " on bean class '" + bean.getClass() + "' - argument type mismatch");
+            }
+        }
+    }
+
+    /**
+     * Rethrows an {@link IndexOutOfBoundsException} raised inside an indexed accessor, as beanutils does.
+     */
+    private static InvocationTargetException unwrapIndex(InvocationTargetException ex) {
+        if (ex.getTargetException() instanceof IndexOutOfBoundsException ioobe) {
+            throw ioobe;
+        }
+        return ex;
+    }
+
+    /**
+     * A plain property with a getter and/or setter.
+     */
+    private static final class SimpleStep extends PropertyStep {
+
+        private final Invoker read;
+        private final Invoker write;
+
+        SimpleStep(Class<?> beanClass, PropertyPath.Segment segment, PropertyDescriptor descriptor) throws IllegalAccessException {
+            super(beanClass, segment);
+            this.read = invoker(beanClass, descriptor.getReadMethod());
+            this.write = invoker(beanClass, descriptor.getWriteMethod());
+        }
+
+        @Override
+        Object get(Object bean) throws InvocationTargetException, NoSuchMethodException {
+            if (read == null) {
+                throw new NoSuchMethodException("Property '" + segment.name() + "' has no getter method in class '" + bean.getClass() + "'");
+            }
+            return read.invoke(bean);
+        }
+
+        @Override
+        void set(Object bean, Object value) throws InvocationTargetException, NoSuchMethodException {
+            if (write == null) {
+                throw new NoSuchMethodException("Property '" + segment.name() + "' has no setter method in class '" + bean.getClass() + "'");
+            }
+            write.invoke(bean, value);
+        }
+
+        @Override
+        String problem(boolean write) {
+            if (read == null) {
+                return "Property '" + segment.name() + "' has no getter method in class '" + beanClass + "'";
+            }
+            if (write && this.write == null) {
+                return "Property '" + segment.name() + "' has no setter method in class '" + beanClass + "'";
+            }
+            return null;
+        }
+
+        @Override
+        Class<?> valueType() {
+            return read == null ? null : read.method().getReturnType();
+        }
+    }
+
+    /**
+     * An indexed property, backed by either indexed accessors or an array/list valued getter.
+     */
+    private static final class IndexedStep extends PropertyStep {
+
+        private final Invoker indexedRead;
+        private final Invoker indexedWrite;
+        private final Invoker read;
+
+        IndexedStep(Class<?> beanClass, PropertyPath.Segment segment, PropertyDescriptor descriptor) throws IllegalAccessException {
+            super(beanClass, segment);
+            if (descriptor instanceof IndexedPropertyDescriptor indexed) {
+                this.indexedRead = invoker(beanClass, indexed.getIndexedReadMethod());
+                this.indexedWrite = invoker(beanClass, indexed.getIndexedWriteMethod());
+            } else {
+                this.indexedRead = null;
+                this.indexedWrite = null;
+            }
+            this.read = invoker(beanClass, descriptor.getReadMethod());
+        }
+
+        @Override
+        Object get(Object bean) throws InvocationTargetException, NoSuchMethodException {
+            int index = segment.index();
+            if (indexedRead != null) {
+                try {
+                    return indexedRead.invoke(bean, index);
+                } catch (InvocationTargetException ex) {
+                    throw unwrapIndex(ex);
+                }
+            }
+
+            var value = readContainer(bean);
+            if (!value.getClass().isArray()) {
+                if (value instanceof List<?> list) {
+                    return list.get(index);
+                }
+                throw notIndexed(bean);
+            }
+            try {
+                return Array.get(value, index);
+            } catch (ArrayIndexOutOfBoundsException ex) {
+                throw new ArrayIndexOutOfBoundsException("Index: " + index + ", Size: " + Array.getLength(value)
+                        + " for property '" + segment.name() + "'");
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void set(Object bean, Object value) throws InvocationTargetException, NoSuchMethodException {
+            int index = segment.index();
+            if (indexedWrite != null) {
+                try {
+                    indexedWrite.invoke(bean, index, value);
+                    return;
+                } catch (InvocationTargetException ex) {
+                    throw unwrapIndex(ex);
+                }
+            }
+
+            var container = readContainer(bean);
+            if (!container.getClass().isArray()) {
+                if (container instanceof List<?> list) {
+                    ((List<Object>) list).set(index, value);
+                    return;
+                }
+                throw notIndexed(bean);
+            }
+            Array.set(container, index, value);
+        }
+
+        @Override
+        String problem(boolean write) {
+            if (read == null && (indexedRead == null || write && indexedWrite == null)) {
+                return "Property '" + segment.name() + "' has no getter method on bean class '" + beanClass + "'";
+            }
+            if (indexedRead == null && !isIndexable(read.method().getReturnType())) {
+                return "Property '" + segment.name() + "' is not indexed on bean class '" + beanClass + "'";
+            }
+            return null;
+        }
+
+        /**
+         * Tests whether a value of the declared type can be an array or a list, e.g. a {@link java.util.Collection}
+         * but not a {@link java.util.Set}.
+         */
+        private static boolean isIndexable(Class<?> type) {
+            return type.isArray() || type.isAssignableFrom(List.class) || List.class.isAssignableFrom(type);
+        }
+
+        @Override
+        Class<?> valueType() {
+            if (indexedRead != null) {
+                return indexedRead.method().getReturnType();
+            }
+            // Lists do not declare their element type at runtime.
+            return read == null ? null : read.method().getReturnType().getComponentType();
+        }
+
+        private Object readContainer(Object bean) throws InvocationTargetException, NoSuchMethodException {
+            if (read == null) {
+                throw new NoSuchMethodException("Property '" + segment.name() + "' has no getter method on bean class '" + bean.getClass() + "'");
+            }
+            return read.invoke(bean);
+        }
+
+        private IllegalArgumentException notIndexed(Object bean) {
+            return new IllegalArgumentException("Property '" + segment.name() + "' is not indexed on bean class '" + bean.getClass() + "'");
+        }
+    }
+
+    /**
+     * A mapped property, backed by either mapped accessors or a {@link Map} valued getter.
+     */
+    private static final class MappedStep extends PropertyStep {
+
+        private final Invoker mappedRead;
+        private final Invoker mappedWrite;
+        private final Invoker read;
+        private final boolean mappedDescriptor;
+
+        MappedStep(Class<?> beanClass, PropertyPath.Segment segment, PropertyDescriptor descriptor) throws IllegalAccessException {
+            super(beanClass, segment);
+            this.mappedDescriptor = descriptor instanceof MappedPropertyDescriptor;
+            if (descriptor instanceof MappedPropertyDescriptor mapped) {
+                this.mappedRead = invoker(beanClass, mapped.getMappedReadMethod());
+                this.mappedWrite = invoker(beanClass, mapped.getMappedWriteMethod());
+                this.read = null;
+            } else {
+                this.mappedRead = null;
+                this.mappedWrite = null;
+                this.read = invoker(beanClass, descriptor.getReadMethod());
+            }
+        }
+
+        @Override
+        Object get(Object bean) throws InvocationTargetException, NoSuchMethodException {
+            if (mappedDescriptor) {
+                if (mappedRead == null) {
+                    throw noMappedGetter(bean);
+                }
+                return mappedRead.invoke(bean, segment.key());
+            }
+            return readMap(bean) instanceof Map<?, ?> map ? map.get(segment.key()) : null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void set(Object bean, Object value) throws InvocationTargetException, NoSuchMethodException {
+            if (mappedDescriptor) {
+                if (mappedWrite == null) {
+                    throw new NoSuchMethodException("Property '" + segment.name() + "' has no mapped setter method on bean class '" + bean.getClass() + "'");
+                }
+                mappedWrite.invoke(bean, segment.key(), value);
+                return;
+            }
+            if (readMap(bean) instanceof Map<?, ?> map) {
+                ((Map<Object, Object>) map).put(segment.key(), value);
+            }
+        }
+
+        @Override
+        String problem(boolean write) {
+            if (mappedDescriptor ? mappedRead == null : read == null) {
+                return "Property '" + segment.name() + "' has no mapped getter method on bean class '" + beanClass + "'";
+            }
+            if (write && mappedDescriptor && mappedWrite == null) {
+                return "Property '" + segment.name() + "' has no mapped setter method on bean class '" + beanClass + "'";
+            }
+            return null;
+        }
+
+        @Override
+        Class<?> valueType() {
+            return mappedRead == null ? null : mappedRead.method().getReturnType();
+        }
+
+        private Object readMap(Object bean) throws InvocationTargetException, NoSuchMethodException {
+            if (read == null) {
+                throw noMappedGetter(bean);
+            }
+            return read.invoke(bean);
+        }
+
+        private NoSuchMethodException noMappedGetter(Object bean) {
+            return new NoSuchMethodException("Property '" + segment.name() + "' has no mapped getter method on bean class '" + bean.getClass() + "'");
+        }
+    }
+
+    /**
+     * An element of a collection or array valued property, selected by the value of a key property of the
+     * elements. Keys are compared by their string form, so {@code lines[id=42]} matches an element whose id is the
+     * number 42. Writing replaces the matching element, or adds the value if there is none; elements cannot be
+     * added to arrays.
+     *
+     * Elements of a {@link java.util.Set} are replaced by removing and adding them, so their hash code must not
+     * depend on properties that are merged into them.
+     */
+    private static final class KeyedStep extends PropertyStep {
+
+        private final Invoker read;
+
+        KeyedStep(Class<?> beanClass, PropertyPath.Segment segment, PropertyDescriptor descriptor) throws IllegalAccessException {
+            super(beanClass, segment);
+            this.read = invoker(beanClass, descriptor.getReadMethod());
+        }
+
+        @Override
+        Object get(Object bean) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            var container = readContainer(bean);
+            if (container instanceof Collection<?> collection) {
+                for (var element : collection) {
+                    if (matches(element)) {
+                        return element;
+                    }
+                }
+                return null;
+            }
+            int index = indexInArray(container);
+            return index < 0 ? null : Array.get(container, index);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void set(Object bean, Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            var container = readContainer(bean);
+            if (container == null) {
+                throw new NestedNullException("Null property value for '" + segment.name() + "' on bean class '" + bean.getClass() + "'");
+            }
+            if (container instanceof List<?> list) {
+                for (var it = ((List<Object>) list).listIterator(); it.hasNext(); ) {
+                    if (matches(it.next())) {
+                        it.set(value);
+                        return;
+                    }
+                }
+                ((List<Object>) list).add(value);
+            } else if (container instanceof Collection<?> collection) {
+                for (var it = collection.iterator(); it.hasNext(); ) {
+                    if (matches(it.next())) {
+                        it.remove();
+                        break;
+                    }
+                }
+                ((Collection<Object>) collection).add(value);
+            } else {
+                int index = indexInArray(container);
+                if (index < 0) {
+                    throw new ArrayIndexOutOfBoundsException("No element with " + segment.keyProperty() + " '"
+                            + segment.key() + "' in property '" + segment.name() + "'");
+                }
+                Array.set(container, index, value);
+            }
+        }
+
+        @Override
+        String problem(boolean write) {
+            if (read == null) {
+                return "Property '" + segment.name() + "' has no getter method on bean class '" + beanClass + "'";
+            }
+            var type = read.method().getReturnType();
+            if (!type.isArray() && !Collection.class.isAssignableFrom(type) && type != Object.class) {
+                return "Property '" + segment.name() + "' is not a collection on bean class '" + beanClass + "'";
+            }
+            return null;
+        }
+
+        @Override
+        Class<?> valueType() {
+            if (read == null) {
+                return null;
+            }
+            var type = read.method().getReturnType();
+            if (type.isArray()) {
+                return type.getComponentType();
+            }
+            if (read.method().getGenericReturnType() instanceof ParameterizedType generic
+                    && generic.getActualTypeArguments().length == 1
+                    && generic.getActualTypeArguments()[0] instanceof Class<?> element) {
+                return element;
+            }
+            return null;
+        }
+
+        private Object readContainer(Object bean) throws InvocationTargetException, NoSuchMethodException {
+            if (read == null) {
+                throw new NoSuchMethodException("Property '" + segment.name() + "' has no getter method on bean class '" + bean.getClass() + "'");
+            }
+            var container = read.invoke(bean);
+            if (container != null && !(container instanceof Collection) && !container.getClass().isArray()) {
+                throw new IllegalArgumentException("Property '" + segment.name() + "' is not a collection on bean class '" + bean.getClass() + "'");
+            }
+            return container;
+        }
+
+        private int indexInArray(Object array) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            if (array == null) {
+                return -1;
+            }
+            for (int i = 0, length = Array.getLength(array); i < length; i++) {
+                if (matches(Array.get(array, i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean matches(Object element) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            if (element == null) {
+                return false;
+            }
+            var key = PropertyAccessorCache.getDefault().get(element.getClass(), segment.keyProperty()).get(element);
+            return key != null && segment.key().equals(key.toString());
+        }
+    }
+
+    /**
+     * A segment that could not be compiled, e.g. because the bean is a {@link Map} or {@link DynaBean}. It is
+     * handed to {@link PropertyUtils} as-is.
+     */
+    private static final class DelegatingStep extends PropertyStep {
+
+        DelegatingStep(Class<?> beanClass, PropertyPath.Segment segment) {
+            super(beanClass, segment);
+        }
+
+        @Override
+        Object get(Object bean) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            return PropertyUtils.getProperty(bean, segment.expression());
+        }
+
+        @Override
+        void set(Object bean, Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            PropertyUtils.setProperty(bean, segment.expression(), value);
+        }
+    }
+
+    /**
+     * A segment referring to a property that does not exist on the bean class.
+     */
+    private static final class MissingStep extends PropertyStep {
+
+        private final String message;
+
+        MissingStep(Class<?> beanClass, PropertyPath.Segment segment, String message) {
+            super(beanClass, segment);
+            this.message = message;
+        }
+
+        @Override
+        Object get(Object bean) throws NoSuchMethodException {
+            throw new NoSuchMethodException(message);
+        }
+
+        @Override
+        String problem(boolean write) {
+            return message;
+        }
+
+        @Override
+        void set(Object bean, Object value) throws NoSuchMethodException {
+            throw new NoSuchMethodException(message);
+        }
+    }
+}
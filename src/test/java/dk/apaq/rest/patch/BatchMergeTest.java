@@ -0,0 +1,86 @@
+package dk.apaq.rest.patch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchMergeTest {
+
+    private EntityMerger<DummyEntity> merger = new EntityMerger<>(Collections.singletonList("number"));
+
+    @Test
+    public void testMergeAll() {
+        List<MergePair<DummyEntity>> pairs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            pairs.add(new MergePair<>(new DummyEntity("old" + i, i, null, null), new DummyEntity("new" + i, 0, null, null)));
+        }
+
+        BatchMergeResult<DummyEntity> result = merger.mergeAll(pairs, Arrays.asList("text", "number"));
+        assertTrue(result.isSuccessful());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("new" + i, result.getItems().get(i).getEntity().getText());
+            assertEquals(i, result.getItems().get(i).getEntity().getNumber());
+        }
+    }
+
+    @Test
+    public void testCollectFailures() {
+        DummyEntity patch = new DummyEntity(null, 0, null, null);
+        patch.setChild(new DummyEntity("sibling", 0, null, null));
+        List<DummyEntity> targets = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            DummyEntity target = new DummyEntity();
+            if (i != 2) {
+                target.setChild(new DummyEntity());
+            }
+            targets.add(target);
+        }
+
+        BatchMergeResult<DummyEntity> result = merger.mergeIntoAll(targets, patch, Collections.singletonList("child.text"),
+                MergeFailurePolicy.COLLECT, null);
+        assertFalse(result.isSuccessful());
+        assertEquals(1, result.getFailures().size());
+        assertEquals(2, result.getFailures().get(0).getIndex());
+        assertEquals("sibling", targets.get(4).getChild().getText());
+    }
+
+    @Test
+    public void testFailFast() {
+        List<DummyEntity> targets = Arrays.asList(new DummyEntity(), null, new DummyEntity());
+
+        BatchMergeResult<DummyEntity> result = merger.mergeIntoAll(targets, new DummyEntity("new", 0, null, null),
+                Collections.singletonList("text"), MergeFailurePolicy.FAIL_FAST, null);
+        assertEquals(BatchMergeResult.Status.MERGED, result.getItems().get(0).getStatus());
+        assertEquals(BatchMergeResult.Status.FAILED, result.getItems().get(1).getStatus());
+        assertEquals(BatchMergeResult.Status.SKIPPED, result.getItems().get(2).getStatus());
+        assertNull(targets.get(2).getText());
+    }
+
+    @Test
+    public void testMergeOnExecutor() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<DummyEntity> targets = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                targets.add(new DummyEntity("old", i, null, null));
+            }
+
+            BatchMergeResult<DummyEntity> result = merger.mergeIntoAll(targets, new DummyEntity("new", 0, null, null),
+                    Collections.singletonList("text"), MergeFailurePolicy.COLLECT, executor);
+            assertTrue(result.isSuccessful());
+            assertEquals(1000, result.getItems().size());
+            for (DummyEntity target : targets) {
+                assertEquals("new", target.getText());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
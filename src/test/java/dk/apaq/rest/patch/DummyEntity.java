@@ -1,7 +1,9 @@
 package dk.apaq.rest.patch;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DummyEntity {
     private String text;
@@ -9,6 +11,7 @@ public class DummyEntity {
     private String[] array;
     private List<String> list = new ArrayList<>();
     private DummyEntity child;
+    private Map<String, String> meta = new HashMap<>();
 
     public DummyEntity() { }
 
@@ -58,4 +61,12 @@ public class DummyEntity {
     public void setChild(DummyEntity child) {
         this.child = child;
     }
+
+    public Map<String, String> getMeta() {
+        return meta;
+    }
+
+    public void setMeta(Map<String, String> meta) {
+        this.meta = meta;
+    }
 }
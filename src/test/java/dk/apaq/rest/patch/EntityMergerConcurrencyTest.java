@@ -0,0 +1,123 @@
+package dk.apaq.rest.patch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many merges at once through a single shared {@link EntityMerger}, including first merges of classes and
+ * paths that have not been compiled yet, and checks every result.
+ */
+public class EntityMergerConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 2000;
+
+    private EntityMerger<DummyEntity> merger = new EntityMerger<>();
+
+    @Test
+    public void testSharedMerger() throws Exception {
+        runConcurrently(thread -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                var existing = new DummyEntity("old", -1, null, null);
+                existing.setChild(new DummyEntity("old child", -1, null, null));
+                var patch = new DummyEntity("text " + thread + "/" + i, i, null, null);
+                patch.setChild(new DummyEntity("child " + thread + "/" + i, i, null, null));
+
+                var merged = merger.mergeEntities(existing, patch, Arrays.asList("text", "number", "child.text"));
+                assertEquals("text " + thread + "/" + i, merged.getText());
+                assertEquals(i, merged.getNumber());
+                assertEquals("child " + thread + "/" + i, merged.getChild().getText());
+                assertEquals(-1, merged.getChild().getNumber());
+            }
+        });
+    }
+
+    @Test
+    public void testSharedMergerWithChangingChildClasses() throws Exception {
+        // Each thread alternates the class of the child, so the same paths are resolved for several classes at once.
+        runConcurrently(thread -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                var existing = new DummyEntity();
+                existing.setChild(childOf(thread + i, "old"));
+                var patch = new DummyEntity();
+                patch.setChild(childOf(thread + i + 1, "new " + i));
+
+                var merged = merger.mergeEntities(existing, patch, Arrays.asList("child.text", "child.number"));
+                assertSame(existing.getChild(), merged.getChild());
+                assertEquals("new " + i, merged.getChild().getText());
+                assertEquals(thread + i + 1, merged.getChild().getNumber());
+            }
+        });
+    }
+
+    @Test
+    public void testSharedMergerWithNewPaths() throws Exception {
+        // Every iteration sends a map key no other merge has used, so accessors are compiled throughout the run.
+        runConcurrently(thread -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                var key = "key-" + thread + "-" + i;
+                var existing = new DummyEntity();
+                var patch = new DummyEntity();
+                patch.getMeta().put(key, "value " + i);
+
+                var merged = merger.mergeEntities(existing, patch, List.of("meta(" + key + ")", "text"));
+                assertEquals("value " + i, merged.getMeta().get(key));
+                assertNull(merged.getText());
+            }
+        });
+    }
+
+    private static DummyEntity childOf(int variant, String text) {
+        var child = variant % 3 == 0 ? new DummyEntity() : variant % 3 == 1 ? new SpecialEntity() : new OtherEntity();
+        child.setText(text);
+        child.setNumber(variant);
+        return child;
+    }
+
+    /**
+     * Runs the task on {@link #THREADS} threads, released together, and rethrows the first failure.
+     */
+    private static void runConcurrently(Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            var start = new CountDownLatch(1);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int index = thread;
+                Callable<Void> callable = () -> {
+                    start.await();
+                    task.run(index);
+                    return null;
+                };
+                futures.add(executor.submit(callable));
+            }
+            start.countDown();
+            for (var future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    public static class SpecialEntity extends DummyEntity {
+    }
+
+    public static class OtherEntity extends DummyEntity {
+    }
+}
@@ -1,9 +1,16 @@
 package dk.apaq.rest.patch;
 
 import static org.junit.Assert.*;
+import dk.apaq.rest.patch.property.DirtyFieldTree;
+import dk.apaq.rest.patch.property.DirtyFields;
+import org.apache.commons.beanutils.NestedNullException;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.function.Consumer;
 
 public class EntityMergerTest {
 
@@ -113,4 +120,227 @@ public class EntityMergerTest {
         merger.mergeEntities(persistence, patch, Collections.singletonList("child.array[2]"));
         assertArrayEquals(new String[]{"A", "B", "A"}, persistence.getChild().getArray());
     }
+
+    @Test
+    public void testMergeMapped() {
+        DummyEntity patch = new DummyEntity(null, 0, null, null);
+        patch.getMeta().put("color", "red");
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+        persistence.getMeta().put("size", "large");
+
+        merger.mergeEntities(persistence, patch, Collections.singletonList("meta(color)"));
+        assertEquals("red", persistence.getMeta().get("color"));
+        assertEquals("large", persistence.getMeta().get("size"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeUnknownField() {
+        merger.mergeEntities(new DummyEntity(), new DummyEntity(), Collections.singletonList("unknown"));
+    }
+
+    @Test
+    public void testMergeReportsAllInvalidFields() {
+        DummyEntity patch = new DummyEntity("ytrewq", 5, null, null);
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+        try {
+            merger.mergeEntities(persistence, patch, Arrays.asList("text", "unknown", "number", "child.unknown", "array[x]"));
+            fail();
+        } catch (InvalidFieldsException ex) {
+            assertEquals(Arrays.asList("unknown", "child.unknown", "array[x]"), ex.getInvalidPaths());
+            assertEquals("The parameters 'unknown', 'child.unknown', 'array[x]' do not apply to this resource.", ex.getMessage());
+            assertEquals(0, ex.getStackTrace().length);
+        }
+        // Nothing is merged when a field is invalid.
+        assertEquals("qwerty", persistence.getText());
+        assertEquals(1, persistence.getNumber());
+    }
+
+    @Test
+    public void testIndexOnSetIsReportedAsInvalidField() {
+        Order patch = new Order();
+        patch.getExtras().add(new Order.Line(1L, "Milk", 1));
+        Order persistence = new Order();
+        try {
+            new EntityMerger<Order>().mergeEntities(persistence, patch, Arrays.asList("extras[0]", "reference"));
+            fail();
+        } catch (InvalidFieldsException ex) {
+            assertEquals(Collections.singletonList("extras[0]"), ex.getInvalidPaths());
+        }
+        assertTrue(persistence.getExtras().isEmpty());
+    }
+
+    @Test
+    public void testValidate() {
+        EntityMerger<DummyEntity> ignoring = new EntityMerger<>(Collections.singletonList("ignored"));
+        assertTrue(ignoring.validate(DummyEntity.class, Arrays.asList("text", "child.text", "ignored")).isEmpty());
+
+        var invalid = ignoring.validate(DummyEntity.class, Arrays.asList("text", "unknown"));
+        assertEquals(1, invalid.size());
+        assertEquals("unknown", invalid.get(0).path());
+        assertTrue(invalid.get(0).reason().contains("Unknown property 'unknown'"));
+    }
+
+    @Test
+    public void testMergeWithIgnoredFields() {
+        EntityMerger<DummyEntity> ignoring = new EntityMerger<>(Collections.singletonList("text"));
+        DummyEntity patch = new DummyEntity("ytrewq", 0, null, null);
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+
+        ignoring.mergeEntities(persistence, patch, Arrays.asList("text", "number"),
+                Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h", "number"));
+        assertEquals("qwerty", persistence.getText());
+        assertEquals(1, persistence.getNumber());
+    }
+
+    @Test
+    public void testMergeWithFieldFilter() {
+        EntityMerger<DummyEntity> filtered = new EntityMerger<>(FieldFilter.allow(Arrays.asList("text", "child.*")));
+        DummyEntity patch = new DummyEntity("ytrewq", 0, null, null);
+        patch.setChild(new DummyEntity("sibling", 0, null, null));
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+        persistence.setChild(new DummyEntity("child", 1, null, null));
+
+        filtered.mergeEntities(persistence, patch, Arrays.asList("text", "number", "child.text", "child.number"),
+                FieldFilter.deny(Collections.singletonList("child.number")));
+        assertEquals("ytrewq", persistence.getText());
+        assertEquals(1, persistence.getNumber());
+        assertEquals("sibling", persistence.getChild().getText());
+        assertEquals(1, persistence.getChild().getNumber());
+    }
+
+    @Test
+    public void testMergeTree() {
+        DummyEntity patch = new DummyEntity("ytrewq", 5, new String[]{"C", "B", "A"}, null);
+        patch.setChild(new DummyEntity("sibling", 0, new String[]{"C", "B", "A"}, null));
+        DummyEntity persistence = new DummyEntity("qwerty", 1, new String[]{"A", "B", "C"}, null);
+        DummyEntity child = new DummyEntity("child", 1, new String[]{"A", "B", "C"}, null);
+        persistence.setChild(child);
+
+        merger.mergeEntities(persistence, patch, DirtyFieldTree.of(Arrays.asList("text", "child.text", "child.array[2]", "array[0]")));
+        assertEquals("ytrewq", persistence.getText());
+        assertEquals(1, persistence.getNumber());
+        assertArrayEquals(new String[]{"C", "B", "C"}, persistence.getArray());
+        assertSame(child, persistence.getChild());
+        assertEquals("sibling", child.getText());
+        assertEquals(1, child.getNumber());
+        assertArrayEquals(new String[]{"A", "B", "A"}, child.getArray());
+    }
+
+    @Test
+    public void testMergeElementsInPlace() {
+        Order patch = new Order();
+        patch.getLines().add(new Order.Line(42L, null, 3));
+        patch.getLines().add(new Order.Line(43L, "Tea", 2));
+        Order persistence = new Order();
+        Order.Line line = new Order.Line(42L, "Coffee", 1);
+        Order.Line other = new Order.Line(41L, "Cake", 1);
+        persistence.getLines().add(other);
+        persistence.getLines().add(line);
+        var lines = persistence.getLines();
+
+        new EntityMerger<Order>().mergeEntities(persistence, patch, DirtyFieldTree.of(Arrays.asList(
+                "lines[id=42].quantity", "lines[id=43].product", "lines[id=43].quantity")));
+        assertSame(lines, persistence.getLines());
+        assertEquals(3, persistence.getLines().size());
+        assertSame(line, persistence.getLines().get(1));
+        assertEquals("Coffee", line.getProduct());
+        assertEquals(3, line.getQuantity());
+        assertEquals(1, other.getQuantity());
+        assertEquals("Tea", persistence.getLines().get(2).getProduct());
+    }
+
+    @Test
+    public void testMergeElementByIndex() {
+        Order patch = new Order();
+        patch.getLines().add(new Order.Line(null, null, 5));
+        Order persistence = new Order();
+        Order.Line line = new Order.Line(42L, "Coffee", 1);
+        persistence.getLines().add(line);
+
+        new EntityMerger<Order>().mergeEntities(persistence, patch, Collections.singletonList("lines[0].quantity"));
+        assertSame(line, persistence.getLines().get(0));
+        assertEquals(5, line.getQuantity());
+    }
+
+    @Test
+    public void testMergeTreeWithFilter() {
+        DummyEntity patch = new DummyEntity("ytrewq", 5, null, null);
+        patch.setChild(new DummyEntity("sibling", 0, null, null));
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+
+        merger.mergeEntities(persistence, patch, DirtyFieldTree.of(Arrays.asList("number", "child.text")),
+                FieldFilter.deny(Collections.singletonList("child.*")));
+        assertEquals(5, persistence.getNumber());
+        assertNull(persistence.getChild());
+    }
+
+    @Test(expected = NestedNullException.class)
+    public void testMergeTreeNullChild() {
+        DummyEntity patch = new DummyEntity(null, 0, null, null);
+        patch.setChild(new DummyEntity("sibling", 0, null, null));
+
+        merger.mergeEntities(new DummyEntity(), patch, DirtyFieldTree.of(Collections.singletonList("child.text")));
+    }
+
+    @Test
+    public void testMergeTreeUnknownField() {
+        try {
+            merger.mergeEntities(new DummyEntity(), new DummyEntity(), DirtyFieldTree.of(Collections.singletonList("unknown.text")));
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertEquals("The parameter 'unknown.text' does not apply to this resource.", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testMergeViewLooksUpAllowedFieldsOnly() {
+        DummyEntity patch = new DummyEntity("ytrewq", 5, null, null);
+        patch.setChild(new DummyEntity("child", 6, null, null));
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+        persistence.setChild(new DummyEntity("old", 2, null, null));
+
+        var dirty = DirtyFieldTree.of(Arrays.asList("text", "number", "child.text", "child.number"));
+        var asked = new ArrayList<String>();
+        var view = new DirtyFields() {
+            @Override
+            public boolean contains(String path) {
+                asked.add(path);
+                return dirty.contains(path);
+            }
+
+            @Override
+            public boolean containsPrefix(String prefix) {
+                return dirty.containsPrefix(prefix);
+            }
+
+            @Override
+            public void forEach(String prefix, Consumer<? super String> action) {
+                asked.add(prefix + ".*");
+                dirty.forEach(prefix, action);
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                throw new AssertionError("An allow-listed merge must not list every field.");
+            }
+        };
+
+        merger.mergeEntities(persistence, patch, view, FieldFilter.allow(Arrays.asList("text", "child.*")));
+        assertEquals("ytrewq", persistence.getText());
+        assertEquals(1, persistence.getNumber());
+        assertEquals("child", persistence.getChild().getText());
+        assertEquals(6, persistence.getChild().getNumber());
+        assertEquals(Arrays.asList("text", "child.*"), asked);
+    }
+
+    @Test
+    public void testMergeViewWithoutAllowList() {
+        DummyEntity patch = new DummyEntity("ytrewq", 5, null, null);
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+        DirtyFields view = DirtyFieldTree.of(Arrays.asList("text", "number"));
+
+        merger.mergeEntities(persistence, patch, view, FieldFilter.deny(Collections.singletonList("number")));
+        assertEquals("ytrewq", persistence.getText());
+        assertEquals(1, persistence.getNumber());
+    }
 }
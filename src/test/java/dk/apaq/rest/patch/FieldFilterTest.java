@@ -0,0 +1,45 @@
+package dk.apaq.rest.patch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FieldFilterTest {
+
+    @Test
+    public void testNoneAllowsEverything() {
+        assertTrue(FieldFilter.none().isAllowed("text"));
+        assertTrue(FieldFilter.deny(null).isAllowed("text"));
+    }
+
+    @Test
+    public void testDenyExactAndWildcards() {
+        FieldFilter filter = FieldFilter.deny(Arrays.asList("id", "audit.*", "meta(*)", "*Secret"));
+        assertFalse(filter.isAllowed("id"));
+        assertFalse(filter.isAllowed("audit.createdBy"));
+        assertFalse(filter.isAllowed("audit.changes[0]"));
+        assertFalse(filter.isAllowed("meta(color)"));
+        assertFalse(filter.isAllowed("apiSecret"));
+        assertTrue(filter.isAllowed("identity"));
+        assertTrue(filter.isAllowed("audit"));
+        assertTrue(filter.isAllowed("auditor.name"));
+        assertTrue(filter.isAllowed("meta"));
+    }
+
+    @Test
+    public void testAllowList() {
+        FieldFilter filter = FieldFilter.allow(Arrays.asList("text", "child.*"));
+        assertTrue(filter.isAllowed("text"));
+        assertTrue(filter.isAllowed("child.number"));
+        assertFalse(filter.isAllowed("number"));
+        assertTrue(filter.isAllowList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMultipleWildcards() {
+        FieldFilter.deny(Collections.singletonList("a.*.*"));
+    }
+}
@@ -0,0 +1,238 @@
+package dk.apaq.rest.patch;
+
+import dk.apaq.rest.patch.property.DirtyFieldTree;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class GeneratedMergerTest {
+
+    private EntityMerger<PatchableEntity> merger = new EntityMerger<>();
+
+    @Before
+    public void setUp() {
+        PatchableEntity_PatchMerger.HANDLED.set(0);
+    }
+
+    @Test
+    public void testDelegatesSimpleProperties() {
+        PatchableEntity existing = new PatchableEntity("1", "old");
+        merger.mergeEntities(existing, new PatchableEntity("2", "new"), Arrays.asList("id", "name"));
+
+        assertEquals("1", existing.getId());
+        assertEquals("new", existing.getName());
+        assertEquals(1, PatchableEntity_PatchMerger.HANDLED.get());
+    }
+
+    @Test
+    public void testFallsBackForNestedPaths() {
+        PatchableEntity existing = new PatchableEntity("1", "old");
+        existing.setChild(new PatchableEntity("c", "child"));
+        PatchableEntity patch = new PatchableEntity(null, null);
+        patch.setChild(new PatchableEntity(null, "sibling"));
+
+        merger.mergeEntities(existing, patch, Collections.singletonList("child.name"));
+        assertEquals("sibling", existing.getChild().getName());
+        assertEquals(0, PatchableEntity_PatchMerger.HANDLED.get());
+
+        // In a tree, the nested property is copied by the generated merger of the child.
+        patch.getChild().setName("other");
+        merger.mergeEntities(existing, patch, DirtyFieldTree.of(Collections.singletonList("child.name")));
+        assertEquals("other", existing.getChild().getName());
+        assertEquals(1, PatchableEntity_PatchMerger.HANDLED.get());
+    }
+
+    @Test
+    public void testTreeDelegatesSimpleProperties() {
+        PatchableEntity existing = new PatchableEntity("1", "old");
+        merger.mergeEntities(existing, new PatchableEntity("2", "new"), DirtyFieldTree.of(Arrays.asList("id", "name")));
+
+        assertEquals("1", existing.getId());
+        assertEquals("new", existing.getName());
+        assertEquals(1, PatchableEntity_PatchMerger.HANDLED.get());
+    }
+
+    @Test
+    public void testChangeDetectionDoesNotDelegate() {
+        PatchableEntity existing = new PatchableEntity("1", "old");
+        MergeResult<PatchableEntity> result = merger.mergeChanges(existing, new PatchableEntity("1", "new"), Arrays.asList("id", "name"));
+
+        assertEquals(Collections.singletonList("name"), result.getChangedPaths());
+        assertEquals(0, PatchableEntity_PatchMerger.HANDLED.get());
+    }
+
+    @Test
+    public void testChangesSkipIgnoredProperties() {
+        PatchableEntity existing = new PatchableEntity("1", "old");
+        MergeResult<PatchableEntity> result = merger.mergeChanges(existing, new PatchableEntity("2", "new"), Arrays.asList("id", "name"));
+
+        assertEquals("1", existing.getId());
+        assertEquals(Collections.singletonList("name"), result.getChangedPaths());
+    }
+
+    @Test
+    public void testCopiesSkipIgnoredProperties() {
+        PatchableEntity existing = new PatchableEntity("1", "old");
+        existing.setChild(new PatchableEntity("c", "child"));
+        PatchableEntity patch = new PatchableEntity("2", "new");
+        patch.setChild(new PatchableEntity("d", "sibling"));
+
+        PatchableEntity result = merger.mergeCopy(existing, patch, Arrays.asList("id", "name", "child.id", "child.name"));
+        assertEquals("1", result.getId());
+        assertEquals("new", result.getName());
+        assertEquals("c", result.getChild().getId());
+        assertEquals("sibling", result.getChild().getName());
+    }
+
+    @Test
+    public void testNestedIgnoredPropertiesAreSkipped() {
+        PatchableEntity existing = new PatchableEntity("1", "old");
+        existing.setChild(new PatchableEntity("c", "child"));
+        PatchableEntity patch = new PatchableEntity(null, null);
+        patch.setChild(new PatchableEntity("d", "sibling"));
+
+        merger.mergeEntities(existing, patch, Arrays.asList("child.id", "child.name"));
+        assertEquals("c", existing.getChild().getId());
+        assertEquals("sibling", existing.getChild().getName());
+
+        patch.getChild().setName("other");
+        merger.mergeEntities(existing, patch, DirtyFieldTree.of(Arrays.asList("child.id", "child.name")));
+        assertEquals("c", existing.getChild().getId());
+        assertEquals("other", existing.getChild().getName());
+    }
+
+    @Test
+    public void testIgnoredPropertiesAreSkippedWithoutGeneratedMerger() {
+        var accounts = new EntityMerger<Account>();
+        var paths = Arrays.asList("name", "secret", "child.secret");
+        Account existing = new Account("old", "s1", new Account("child", "s2", null));
+        Account patch = new Account("new", "x1", new Account(null, "x2", null));
+
+        accounts.mergeEntities(existing, patch, paths);
+        assertEquals("new", existing.getName());
+        assertEquals("s1", existing.getSecret());
+        assertEquals("s2", existing.getChild().getSecret());
+
+        patch.setName("tree");
+        accounts.mergeEntities(existing, patch, DirtyFieldTree.of(paths));
+        assertEquals("tree", existing.getName());
+        assertEquals("s1", existing.getSecret());
+        assertEquals("s2", existing.getChild().getSecret());
+
+        patch.setName("changed");
+        assertEquals(Collections.singletonList("name"), accounts.mergeChanges(existing, patch, paths).getChangedPaths());
+        assertEquals("s1", existing.getSecret());
+
+        patch.setName("copy");
+        Account copy = accounts.mergeCopy(existing, patch, paths);
+        assertEquals("copy", copy.getName());
+        assertEquals("s1", copy.getSecret());
+        assertEquals("s2", copy.getChild().getSecret());
+    }
+
+    @Test
+    public void testIgnoredPropertiesFollowDeclaredTypes() {
+        // The child is declared as an Account, so the ignore list of its subclass applies on no merge path.
+        var accounts = new EntityMerger<Account>();
+        var paths = Arrays.asList("child.name", "child.secret");
+        Account existing = new Account("old", "s1", new LockedAccount("child", "s2"));
+        Account patch = new Account(null, null, new LockedAccount("flat", "x2"));
+
+        accounts.mergeEntities(existing, patch, paths);
+        assertEquals("flat", existing.getChild().getName());
+        assertEquals("s2", existing.getChild().getSecret());
+
+        patch.getChild().setName("tree");
+        accounts.mergeEntities(existing, patch, DirtyFieldTree.of(paths));
+        assertEquals("tree", existing.getChild().getName());
+        assertEquals("s2", existing.getChild().getSecret());
+
+        patch.getChild().setName("copy");
+        Account copy = accounts.mergeCopy(existing, patch, paths);
+        assertEquals("copy", copy.getChild().getName());
+        assertEquals("s2", copy.getChild().getSecret());
+
+        // As the entity itself, the subclass has its own ignore list.
+        var locked = new LockedAccount("old", "s1");
+        new EntityMerger<LockedAccount>().mergeEntities(locked, new LockedAccount("new", "x1"), Arrays.asList("name", "secret"));
+        assertEquals("old", locked.getName());
+        assertEquals("x1", locked.getSecret());
+    }
+
+    @Test
+    public void testFailingGeneratedMergeIsReportedAsInvalidParameter() {
+        PatchableEntity existing = new PatchableEntity("1", "old");
+        try {
+            merger.mergeEntities(existing, new PatchableEntity("2", PatchableEntity.INVALID_NAME), Collections.singletonList("name"));
+            fail("Expected the merge to fail.");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("The parameter 'name' does not apply to this resource.", ex.getMessage());
+        }
+        try {
+            merger.mergeEntities(existing, new PatchableEntity("2", PatchableEntity.INVALID_NAME),
+                    DirtyFieldTree.of(Collections.singletonList("name")));
+            fail("Expected the merge to fail.");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("The parameter 'name' does not apply to this resource.", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnannotatedTypeHasNoGeneratedMerger() {
+        assertNull(GeneratedMergers.get(DummyEntity.class));
+        assertNotNull(GeneratedMergers.get(PatchableEntity.class));
+    }
+
+    @Patchable(ignore = "secret")
+    public static class Account {
+        private String name;
+        private String secret;
+        private Account child;
+
+        public Account() { }
+
+        public Account(String name, String secret, Account child) {
+            this.name = name;
+            this.secret = secret;
+            this.child = child;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        public Account getChild() {
+            return child;
+        }
+
+        public void setChild(Account child) {
+            this.child = child;
+        }
+    }
+
+    @Patchable(ignore = "name")
+    public static class LockedAccount extends Account {
+
+        public LockedAccount() { }
+
+        public LockedAccount(String name, String secret) {
+            super(name, secret, null);
+        }
+    }
+}
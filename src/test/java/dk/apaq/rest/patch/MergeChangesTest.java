@@ -0,0 +1,86 @@
+package dk.apaq.rest.patch;
+
+import dk.apaq.rest.patch.property.DirtyFieldTree;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class MergeChangesTest {
+
+    private EntityMerger<DummyEntity> merger = new EntityMerger<>();
+
+    @Test
+    public void testUnchangedValuesAreSkipped() {
+        DummyEntity existing = new DummyEntity("same", 1, new String[]{"a"}, Arrays.asList("x"));
+        DummyEntity patch = new DummyEntity("same", 1, new String[]{"a"}, Arrays.asList("x"));
+
+        MergeResult<DummyEntity> result = merger.mergeChanges(existing, patch, Arrays.asList("text", "number", "array", "list"));
+        assertFalse(result.hasChanges());
+        assertSame(existing, result.getEntity());
+        assertNotSame(patch.getList(), existing.getList());
+    }
+
+    @Test
+    public void testChangedValuesAreReported() {
+        DummyEntity existing = new DummyEntity("old", 1, null, null);
+        existing.setChild(new DummyEntity("child", 0, null, null));
+        DummyEntity patch = new DummyEntity("old", 2, null, null);
+        patch.setChild(new DummyEntity("new child", 0, null, null));
+
+        MergeResult<DummyEntity> result = merger.mergeChanges(existing, patch, Arrays.asList("text", "number", "child.text"));
+        assertTrue(result.hasChanges());
+        assertEquals(Arrays.asList("number", "child.text"), result.getChangedPaths());
+        assertEquals(new MergeResult.Change("number", 1, 2), result.getChanges().get(0));
+        assertEquals("child", result.getChanges().get(1).oldValue());
+        assertEquals(2, existing.getNumber());
+        assertEquals("new child", existing.getChild().getText());
+    }
+
+    @Test
+    public void testDefaultFilterIsApplied() {
+        EntityMerger<DummyEntity> filtered = new EntityMerger<>(Collections.singletonList("text"));
+        DummyEntity existing = new DummyEntity("old", 0, null, null);
+
+        MergeResult<DummyEntity> result = filtered.mergeChanges(existing, new DummyEntity("new", 0, null, null),
+                Collections.singletonList("text"));
+        assertFalse(result.hasChanges());
+        assertEquals("old", existing.getText());
+    }
+
+    @Test
+    public void testCustomEquality() {
+        ValueEquality ignoreCase = ValueEquality.DEFAULT.withType(String.class, String::equalsIgnoreCase);
+        DummyEntity existing = new DummyEntity("Value", 0, null, null);
+
+        MergeResult<DummyEntity> result = merger.mergeChanges(existing, new DummyEntity("VALUE", 0, null, null),
+                Collections.singletonList("text"), ignoreCase);
+        assertFalse(result.hasChanges());
+        assertEquals("Value", existing.getText());
+    }
+
+    @Test
+    public void testTreeComparesDirtyPrefixAsWhole() {
+        DummyEntity existing = new DummyEntity("old", 0, null, null);
+        existing.setChild(new DummyEntity("child", 0, null, null));
+        DummyEntity patch = new DummyEntity("old", 0, null, null);
+        patch.setChild(new DummyEntity("new child", 0, null, null));
+
+        MergeResult<DummyEntity> result = merger.mergeChanges(existing, patch,
+                DirtyFieldTree.of(Arrays.asList("text", "child.text")), ValueEquality.DEFAULT);
+        assertEquals(Collections.singletonList("child.text"), result.getChangedPaths());
+        assertEquals("new child", existing.getChild().getText());
+    }
+
+    @Test
+    public void testDefaultEquality() {
+        assertTrue(ValueEquality.DEFAULT.isEqual(new BigDecimal("1.0"), new BigDecimal("1.00")));
+        assertTrue(ValueEquality.DEFAULT.isEqual(new int[]{1, 2}, new int[]{1, 2}));
+        assertTrue(ValueEquality.DEFAULT.isEqual(null, null));
+        assertFalse(ValueEquality.DEFAULT.isEqual(null, "a"));
+        assertFalse(ValueEquality.DEFAULT.isEqual(new String[]{"a"}, new String[]{"b"}));
+    }
+}
@@ -0,0 +1,343 @@
+package dk.apaq.rest.patch;
+
+import dk.apaq.rest.patch.property.DirtyFieldTree;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MergeCopyTest {
+
+    private EntityMerger<DummyEntity> merger = new EntityMerger<>();
+    private EntityMerger<Customer> customers = new EntityMerger<>();
+
+    @Test
+    public void testExistingBeanIsLeftUntouched() {
+        DummyEntity existing = new DummyEntity("old", 1, new String[]{"a"}, Arrays.asList("x"));
+        existing.setChild(new DummyEntity("child", 2, null, null));
+        DummyEntity patch = new DummyEntity("new", 5, null, null);
+
+        DummyEntity result = merger.mergeCopy(existing, patch, Arrays.asList("text", "number"));
+        assertNotSame(existing, result);
+        assertEquals("new", result.getText());
+        assertEquals(5, result.getNumber());
+        assertEquals("old", existing.getText());
+        assertEquals(1, existing.getNumber());
+
+        // Untouched properties are shared rather than copied.
+        assertSame(existing.getChild(), result.getChild());
+        assertSame(existing.getArray(), result.getArray());
+        assertSame(existing.getList(), result.getList());
+    }
+
+    @Test
+    public void testOnlyObjectsAlongDirtyPathsAreCopied() {
+        DummyEntity existing = new DummyEntity("root", 0, null, null);
+        existing.setChild(new DummyEntity("child", 0, null, null));
+        existing.getChild().setChild(new DummyEntity("grandchild", 0, null, null));
+        DummyEntity patch = new DummyEntity();
+        patch.setChild(new DummyEntity("new child", 0, null, null));
+
+        DummyEntity result = merger.mergeCopy(existing, patch, DirtyFieldTree.of(List.of("child.text")));
+        assertNotSame(existing.getChild(), result.getChild());
+        assertEquals("new child", result.getChild().getText());
+        assertEquals("child", existing.getChild().getText());
+        assertSame(existing.getChild().getChild(), result.getChild().getChild());
+        assertEquals("root", result.getText());
+    }
+
+    @Test
+    public void testUnchangedPatchReturnsExisting() {
+        DummyEntity existing = new DummyEntity("same", 1000, null, null);
+        existing.setChild(new DummyEntity("child", 0, null, null));
+        DummyEntity patch = new DummyEntity("same", 1000, null, null);
+        patch.setChild(new DummyEntity("child", 0, null, null));
+
+        assertSame(existing, merger.mergeCopy(existing, patch, Arrays.asList("text", "number", "child.text")));
+    }
+
+    @Test
+    public void testMappedAndIndexedValuesCopyTheirContainer() {
+        DummyEntity existing = new DummyEntity(null, 0, new String[]{"a", "b"}, Arrays.asList("x", "y"));
+        existing.getMeta().put("color", "red");
+        existing.getMeta().put("size", "large");
+        DummyEntity patch = new DummyEntity(null, 0, new String[]{"c", "d"}, Arrays.asList("z", "w"));
+        patch.getMeta().put("color", "blue");
+        patch.getMeta().put("shape", "round");
+
+        DummyEntity result = merger.mergeCopy(existing, patch, Arrays.asList("meta(color)", "meta(shape)", "array[1]", "list[0]"));
+        assertEquals(Map.of("color", "blue", "size", "large", "shape", "round"), result.getMeta());
+        assertEquals(Map.of("color", "red", "size", "large"), existing.getMeta());
+        assertArrayEquals(new String[]{"a", "d"}, result.getArray());
+        assertArrayEquals(new String[]{"a", "b"}, existing.getArray());
+        assertEquals(Arrays.asList("z", "y"), result.getList());
+        assertEquals(Arrays.asList("x", "y"), existing.getList());
+    }
+
+    @Test
+    public void testRecordsAreRebuilt() {
+        var meta = Map.of("tier", "gold");
+        Customer existing = new Customer("Ann", new Address("Aarhus", "Main Street"), meta, List.of());
+        Customer patch = new Customer(null, new Address("Odense", null), null, null);
+
+        Customer result = customers.mergeCopy(existing, patch, List.of("address.city"));
+        assertEquals(new Customer("Ann", new Address("Odense", "Main Street"), meta, List.of()), result);
+        assertEquals("Aarhus", existing.address().city());
+        assertSame(existing.meta(), result.meta());
+        assertSame(existing.lines(), result.lines());
+    }
+
+    @Test
+    public void testKeyedElementsAreReplacedByCopies() {
+        var first = new Line("1", 1, new Money(100, "DKK"));
+        var second = new Line("2", 1, new Money(200, "DKK"));
+        Customer existing = new Customer("Ann", null, Map.of(), List.of(first, second));
+        Customer patch = new Customer(null, null, null, List.of(new Line("2", 3, new Money(250, "EUR")),
+                new Line("3", 1, null)));
+
+        Customer result = customers.mergeCopy(existing, patch, List.of("lines[id=2].quantity", "lines[id=2].price.amount",
+                "lines[id=3].quantity"));
+        assertEquals(3, result.lines().size());
+        assertSame(first, result.lines().get(0));
+        assertEquals(new Line("2", 3, new Money(250, "DKK")), result.lines().get(1));
+        assertEquals("3", result.lines().get(2).id());
+        assertEquals(List.of(first, second), existing.lines());
+    }
+
+    @Test
+    public void testBuildersAreUsedForImmutableClasses() {
+        var existing = new Money(100, "DKK");
+        var result = new EntityMerger<Money>().mergeCopy(existing, new Money(5, "EUR"), List.of("currency"));
+        assertEquals(100, result.getAmount());
+        assertEquals("EUR", result.getCurrency());
+        assertEquals("DKK", existing.getCurrency());
+    }
+
+    @Test
+    public void testInvalidFieldsAreReported() {
+        Customer existing = new Customer("Ann", new Address("Aarhus", "Main Street"), Map.of(), List.of());
+        Customer patch = new Customer("Bob", new Address("Odense", null), null, null);
+        try {
+            customers.mergeCopy(existing, patch, List.of("name", "address.zip", "unknown"));
+            fail("Expected an InvalidFieldsException");
+        } catch (InvalidFieldsException ex) {
+            assertEquals(List.of("address.zip", "unknown"), ex.getInvalidPaths());
+        }
+    }
+
+    @Test
+    public void testFiltersAreApplied() {
+        DummyEntity existing = new DummyEntity("old", 1, null, null);
+        DummyEntity patch = new DummyEntity("new", 2, null, null);
+        var filtered = new EntityMerger<DummyEntity>(FieldFilter.deny(List.of("number")));
+
+        DummyEntity result = filtered.mergeCopy(existing, patch, List.of("text", "number"));
+        assertEquals("new", result.getText());
+        assertEquals(1, result.getNumber());
+        assertSame(existing, filtered.mergeCopy(existing, patch, List.of("text"), FieldFilter.deny(List.of("text"))));
+    }
+
+    @Test
+    public void testReadOnlyNestedBeansAreReported() {
+        var existing = new Person(new Street("Aarhus"));
+        var patch = new Person(new Street("Odense"));
+        try {
+            new EntityMerger<Person>().mergeCopy(existing, patch, List.of("address.city"));
+            fail("Expected an InvalidFieldsException");
+        } catch (InvalidFieldsException ex) {
+            assertEquals(List.of("address.city"), ex.getInvalidPaths());
+        }
+        assertEquals("Aarhus", existing.getAddress().getCity());
+    }
+
+    @Test
+    public void testUncopyableNestedValuesAreReported() {
+        var existing = new Holder(new Sealed("old"));
+        var patch = new Holder(new Sealed("new"));
+        try {
+            new EntityMerger<Holder>().mergeCopy(existing, patch, List.of("value.text"));
+            fail("Expected an InvalidFieldsException");
+        } catch (InvalidFieldsException ex) {
+            assertEquals(List.of("value.text"), ex.getInvalidPaths());
+        }
+    }
+
+    @Test
+    public void testStateWithoutSettersIsKept() {
+        var existing = new Ticket("T-1", "old");
+        existing.getTags().add("urgent");
+        var patch = new Ticket(null, "new");
+
+        var result = new EntityMerger<Ticket>().mergeCopy(existing, patch, List.of("name"));
+        assertNotSame(existing, result);
+        assertEquals("T-1", result.getId());
+        assertEquals(List.of("urgent"), result.getTags());
+        assertEquals("new", result.getName());
+        assertEquals("old", existing.getName());
+    }
+
+    /**
+     * A bean with a read-only id and a collection that can only be read.
+     */
+    public static class Ticket {
+
+        private String id;
+        private String name;
+        private final List<String> tags = new ArrayList<>();
+
+        public Ticket() {
+        }
+
+        public Ticket(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+    }
+
+    public record Address(String city, String street) {
+    }
+
+    public record Line(String id, int quantity, Money price) {
+    }
+
+    public record Customer(String name, Address address, Map<String, String> meta, List<Line> lines) {
+    }
+
+    /**
+     * A bean whose address can only be read.
+     */
+    public static class Person {
+
+        private Street address;
+
+        public Person() {
+        }
+
+        public Person(Street address) {
+            this.address = address;
+        }
+
+        public Street getAddress() {
+            return address;
+        }
+    }
+
+    public static class Street {
+
+        private String city;
+
+        public Street() {
+        }
+
+        public Street(String city) {
+            this.city = city;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public void setCity(String city) {
+            this.city = city;
+        }
+    }
+
+    public record Holder(Sealed value) {
+    }
+
+    /**
+     * A class that has neither a no-argument constructor nor a builder.
+     */
+    public static final class Sealed {
+
+        private String text;
+
+        public Sealed(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * An immutable class that is copied through its builder.
+     */
+    public static final class Money {
+
+        private final long amount;
+        private final String currency;
+
+        public Money(long amount, String currency) {
+            this.amount = amount;
+            this.currency = currency;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+
+        public Builder toBuilder() {
+            return new Builder().amount(amount).currency(currency);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Money money && money.amount == amount && currency.equals(money.currency);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(amount) * 31 + currency.hashCode();
+        }
+
+        public static final class Builder {
+
+            private final Map<String, Object> values = new LinkedHashMap<>();
+
+            public Builder amount(long amount) {
+                values.put("amount", amount);
+                return this;
+            }
+
+            public Builder currency(String currency) {
+                values.put("currency", currency);
+                return this;
+            }
+
+            public Money build() {
+                return new Money((Long) values.get("amount"), (String) values.get("currency"));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dk.apaq.rest.patch;
+
+import dk.apaq.rest.patch.property.PropertyAccessorCache;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+public class MergePlanRegistryTest {
+
+    private PropertyAccessorCache accessors = new PropertyAccessorCache(64);
+    private MergePlanRegistry registry = new MergePlanRegistry(accessors);
+
+    @Test
+    public void testPlanDescribesPatchablePaths() {
+        MergePlan plan = registry.getPlan(DummyEntity.class);
+        assertEquals(Arrays.asList("array", "child", "list", "meta", "number", "text"), plan.getPaths());
+        assertEquals(DummyEntity.class, plan.getNestedTypes().get("child"));
+        assertFalse(plan.isGenerated());
+        assertSame(plan, registry.getPlan(DummyEntity.class));
+        assertEquals(6, accessors.size());
+        assertTrue(registry.getPlan(PatchableEntity.class).isGenerated());
+    }
+
+    @Test
+    public void testNestedBeanPathsAreCompiled() {
+        registry.getPlan(Contact.class);
+        assertEquals(2, accessors.size());
+        accessors.get(Contact.class, "address.city");
+        assertEquals(2, accessors.size());
+    }
+
+    @Test
+    public void testWarmUpFollowsNestedTypes() {
+        var plans = registry.warmUp(Order.class);
+        assertEquals(Arrays.asList(Order.class, Order.Line.class),
+                plans.stream().map(MergePlan::getEntityType).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("extras", "lines", "reference"), plans.get(0).getPaths());
+    }
+
+    @Test
+    public void testWarmUpPackage() throws IOException {
+        var plans = registry.warmUpPackage("dk.apaq.rest.patch", type -> type == Order.class);
+        assertTrue(plans.stream().anyMatch(plan -> plan.getEntityType() == Order.Line.class));
+        assertFalse(plans.stream().anyMatch(plan -> plan.getEntityType() == DummyEntity.class));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        registry.warmUp(Order.class);
+        var file = new StringWriter();
+        registry.write(file);
+        assertTrue(file.toString().contains("dk.apaq.rest.patch.Order=extras,lines,reference\n"));
+
+        var cache = new PropertyAccessorCache(64);
+        var restored = new MergePlanRegistry(cache);
+        var plans = restored.read(new StringReader(file + "com.example.Missing=name\n"
+                + "dk.apaq.rest.patch.DummyEntity=child.text\n"));
+        assertEquals(3, restored.getPlans().size());
+        assertEquals(4, plans.size());
+        // The nested path is compiled in addition to the plan of the class.
+        int size = cache.size();
+        cache.get(DummyEntity.class, "child.text");
+        assertEquals(size, cache.size());
+    }
+
+    public static class Contact {
+
+        private MergeCopyTest.Street address;
+
+        public MergeCopyTest.Street getAddress() {
+            return address;
+        }
+
+        public void setAddress(MergeCopyTest.Street address) {
+            this.address = address;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package dk.apaq.rest.patch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+public class Order {
+    private String reference;
+    private List<Line> lines = new ArrayList<>();
+    private Set<Line> extras = new LinkedHashSet<>();
+
+    public String getReference() {
+        return reference;
+    }
+
+    public void setReference(String reference) {
+        this.reference = reference;
+    }
+
+    public List<Line> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<Line> lines) {
+        this.lines = lines;
+    }
+
+    public Set<Line> getExtras() {
+        return extras;
+    }
+
+    public void setExtras(Set<Line> extras) {
+        this.extras = extras;
+    }
+
+    public static class Line {
+        private Long id;
+        private String product;
+        private int quantity;
+
+        public Line() { }
+
+        public Line(Long id, String product, int quantity) {
+            this.id = id;
+            this.product = product;
+            this.quantity = quantity;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getProduct() {
+            return product;
+        }
+
+        public void setProduct(String product) {
+            this.product = product;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Line other && Objects.equals(id, other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(id);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dk.apaq.rest.patch;
+
+@Patchable(ignore = "id")
+public class PatchableEntity {
+
+    // A name rejected by the setter.
+    static final String INVALID_NAME = "!";
+
+    private String id;
+    private String name;
+    private PatchableEntity child;
+
+    public PatchableEntity() { }
+
+    public PatchableEntity(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        if (INVALID_NAME.equals(name)) {
+            throw new IllegalStateException("Invalid name.");
+        }
+        this.name = name;
+    }
+
+    public PatchableEntity getChild() {
+        return child;
+    }
+
+    public void setChild(PatchableEntity child) {
+        this.child = child;
+    }
+}
@@ -0,0 +1,29 @@
+package dk.apaq.rest.patch;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Written as the annotation processor would generate it, counting the paths it handles.
+ */
+public final class PatchableEntity_PatchMerger implements GeneratedMerger<PatchableEntity> {
+
+    static final AtomicInteger HANDLED = new AtomicInteger();
+
+    @Override
+    public boolean merge(PatchableEntity existingEntity, PatchableEntity newEntity, String path) {
+        switch (path) {
+            case "name":
+                existingEntity.setName(newEntity.getName());
+                break;
+            case "child":
+                existingEntity.setChild(newEntity.getChild());
+                break;
+            case "id":
+                break;
+            default:
+                return false;
+        }
+        HANDLED.incrementAndGet();
+        return true;
+    }
+}
@@ -0,0 +1,105 @@
+package dk.apaq.rest.patch.form;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class FormPropertyReferenceConverterTest {
+
+    private FormPropertyReferenceConverter converter = new FormPropertyReferenceConverter();
+
+    @Test
+    public void testPlainKeysAreKept() {
+        var key = "child.text";
+        assertSame(key, converter.translateKey(key));
+        assertEquals("text", converter.translateKey("text"));
+    }
+
+    @Test
+    public void testMappedKey() {
+        assertEquals("meta(color)", converter.translateKey("meta[color]"));
+        assertEquals("child.meta(color)", converter.translateKey("child.meta[color]"));
+        assertEquals("meta(color).child.meta(size)", converter.translateKey("meta[color].child.meta[size]"));
+    }
+
+    @Test
+    public void testNestedKey() {
+        assertEquals("a(b).c", converter.translateKey("a[b][c]"));
+        assertEquals("a(b).c.d", converter.translateKey("a[b][c][d]"));
+    }
+
+    @Test
+    public void testIndexedKey() {
+        assertEquals("items[0]", converter.translateKey("items[0]"));
+        assertEquals("items[0].name", converter.translateKey("items[0][name]"));
+    }
+
+    @Test
+    public void testUnsupportedBracketsAreKept() {
+        assertEquals("meta[]", converter.translateKey("meta[]"));
+        assertEquals("meta[a-b]", converter.translateKey("meta[a-b]"));
+        assertEquals("meta[color", converter.translateKey("meta[color"));
+        assertEquals("meta[_x]", converter.translateKey("meta[_x]"));
+    }
+
+    @Test
+    public void testUncachedConverterTranslatesTheSame() {
+        var uncached = new FormPropertyReferenceConverter(0);
+        for (var key : Arrays.asList("text", "meta[color]", "a[b][c]", "items[0][name]", "meta[]")) {
+            assertEquals(converter.translateKey(key), uncached.translateKey(key));
+        }
+    }
+
+    @Test
+    public void testFullCacheKeepsTranslating() {
+        var small = new FormPropertyReferenceConverter(2);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals("meta(key" + i + ").name", small.translateKey("meta[key" + i + "][name]"));
+            }
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        var small = new FormPropertyReferenceConverter(2);
+        var a = small.translateKey("meta[a]");
+        var b = small.translateKey("meta[b]");
+        assertSame(a, small.translateKey("meta[a]"));
+
+        small.translateKey("meta[c]");
+        assertSame(a, small.translateKey("meta[a]"));
+        assertNotSame(b, small.translateKey("meta[b]"));
+    }
+
+    @Test
+    public void testTextAfterBracketIsRejected() {
+        for (var key : Arrays.asList("a[b]c[d]", "meta[color]x", "items[0]name", "meta[a-b]c")) {
+            try {
+                converter.translateKey(key);
+                fail("Expected '" + key + "' to be rejected.");
+            } catch (IllegalArgumentException ex) {
+                assertEquals("The parameter '" + key + "' does not apply to this resource.", ex.getMessage());
+            }
+        }
+        assertEquals("a(b).c(d)", converter.translateKey("a[b].c[d]"));
+    }
+
+    @Test
+    public void testTranslate() {
+        Map<String, String[]> form = new LinkedHashMap<>();
+        form.put("text", new String[]{"value"});
+        form.put("meta[color]", new String[]{"red"});
+        form.put("child.list[1]", new String[]{"Karl"});
+        assertEquals(Arrays.asList("text", "meta(color)", "child.list[1]"), converter.translate(form));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCacheSize() {
+        new FormPropertyReferenceConverter(-1);
+    }
+}
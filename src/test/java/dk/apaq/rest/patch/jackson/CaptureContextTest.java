@@ -0,0 +1,103 @@
+package dk.apaq.rest.patch.jackson;
+
+import dk.apaq.rest.patch.DummyEntity;
+import org.junit.After;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+public class CaptureContextTest {
+
+    private TreeNodePropertyReferenceConverter converter = new TreeNodePropertyReferenceConverter();
+
+    @After
+    public void tearDown() {
+        TreeNodeHolder.clear();
+        DirtyPathHolder.clear();
+    }
+
+    @Test
+    public void testScopeCapturesAndReleasesOnClose() throws IOException {
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule());
+
+        CaptureContext capture;
+        try (var context = CaptureContext.open()) {
+            capture = context;
+            mapper.readValue("{\"text\": \"qwerty\"}", DummyEntity.class);
+            assertEquals(Collections.singletonList("text"), converter.translate(context.getTreeNode()));
+            assertSame(context.getTreeNode(), TreeNodeHolder.get());
+        }
+
+        assertNull(capture.getTreeNode());
+        assertNull(CaptureContext.current());
+        assertNull(TreeNodeHolder.get());
+    }
+
+    @Test
+    public void testNestedScopesRestoreEnclosingScope() throws IOException {
+        var mapper = new JacksonTreeNodeMapper();
+
+        try (var outer = CaptureContext.open()) {
+            mapper.readValue("{\"text\": \"qwerty\"}", DummyEntity.class);
+            try (var inner = CaptureContext.open()) {
+                assertSame(inner, CaptureContext.current());
+                mapper.readValue("{\"child\": {\"text\":\"qwerty\"}}", DummyEntity.class);
+                assertEquals(Collections.singletonList("child.text"), converter.translate(inner.getTreeNode()));
+            }
+            assertSame(outer, CaptureContext.current());
+            assertEquals(Collections.singletonList("text"), converter.translate(outer.getTreeNode()));
+        }
+        assertNull(CaptureContext.current());
+    }
+
+    @Test
+    public void testBoundContextWorksAcrossThreads() throws Exception {
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule());
+        var context = new CaptureContext();
+        var reader = context.bind(mapper.readerFor(DummyEntity.class));
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                reader.readValue("{\"text\": \"value\", \"child\": {\"text\":\"qwerty\"}}");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }).get();
+
+        assertEquals(Arrays.asList("text", "child.text"), converter.translate(context.getTreeNode()));
+        assertNull(TreeNodeHolder.get());
+    }
+
+    @Test
+    public void testPathsModeCapturesIntoScope() throws IOException {
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule(CaptureMode.PATHS));
+
+        try (var context = CaptureContext.open()) {
+            mapper.readValue("{\"text\": \"value\", \"child\": {\"text\":\"qwerty\"}}", DummyEntity.class);
+            assertEquals(Arrays.asList("text", "child.text"), context.getPaths());
+            assertNull(context.getTreeNode());
+            assertEquals(context.getPaths(), DirtyPathHolder.get());
+        }
+        assertNull(DirtyPathHolder.get());
+    }
+
+    @Test
+    public void testFallsBackToHolderWithoutContext() throws IOException {
+        var mapper = new JacksonTreeNodeMapper();
+        mapper.readValue("{\"text\": \"qwerty\"}", DummyEntity.class);
+        assertEquals(Collections.singletonList("text"), converter.translate(TreeNodeHolder.get()));
+
+        TreeNodeHolder.clear();
+        assertNull(TreeNodeHolder.get());
+    }
+}
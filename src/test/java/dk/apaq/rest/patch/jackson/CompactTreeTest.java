@@ -0,0 +1,193 @@
+package dk.apaq.rest.patch.jackson;
+
+import dk.apaq.rest.patch.DummyEntity;
+import org.junit.After;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class CompactTreeTest {
+
+    private static final String JSON = "{\"text\": \"value\", \"number\": 42, \"array\": [\"a\", \"b\"], "
+            + "\"meta\": {\"k\": \"v\"}, \"child\": {\"text\": \"qwerty\", \"list\": [\"Karl\"], \"child\": {\"text\": null}}}";
+
+    private ObjectMapper plainMapper = new ObjectMapper();
+    private TreeNodePropertyReferenceConverter converter = new TreeNodePropertyReferenceConverter();
+
+    @After
+    public void tearDown() {
+        TreeNodeHolder.clear();
+    }
+
+    @Test
+    public void testModuleDeserializesFromCompactTree() throws IOException {
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule(CaptureMode.COMPACT));
+        DummyEntity entity = mapper.readValue(JSON, DummyEntity.class);
+
+        assertEquals("value", entity.getText());
+        assertEquals(42, entity.getNumber());
+        assertArrayEquals(new String[]{"a", "b"}, entity.getArray());
+        assertEquals(Map.of("k", "v"), entity.getMeta());
+        assertEquals("qwerty", entity.getChild().getText());
+        assertEquals(Collections.singletonList("Karl"), entity.getChild().getList());
+        assertNull(entity.getChild().getChild().getText());
+        assertTrue(TreeNodeHolder.get() instanceof CompactTree);
+    }
+
+    @Test
+    public void testPathsMatchTreeConverter() throws IOException {
+        var mapper = new JacksonTreeNodeMapper(CaptureMode.COMPACT);
+        String[] documents = {
+                JSON,
+                "{\"text\": \"qwerty\"}",
+                "{\"meta\": {}, \"number\": 1}",
+                "{\"child\": {\"child\": {\"child\": {\"number\": 1}}, \"text\": \"a\"}, \"array\": []}"
+        };
+        for (String json : documents) {
+            mapper.readValue(json, DummyEntity.class);
+            var compactTree = (CompactTree) TreeNodeHolder.get();
+            var expected = converter.translate(plainMapper.readTree(json));
+            assertEquals(json, expected, compactTree.getPaths());
+            assertEquals(json, expected, converter.translate(compactTree));
+            assertEquals(json, converter.translateToTree(plainMapper.readTree(json)).toPaths(),
+                    converter.translateToTree(compactTree).toPaths());
+        }
+    }
+
+    @Test
+    public void testTreeIsBuiltWhenNavigated() throws IOException {
+        var mapper = new JacksonTreeNodeMapper(CaptureMode.COMPACT);
+        mapper.readValue(JSON, DummyEntity.class);
+        var compactTree = (CompactTree) TreeNodeHolder.get();
+
+        assertTrue(compactTree.isObject());
+        assertEquals("qwerty", compactTree.get("child").get("text").toString().replace("\"", ""));
+        assertEquals(plainMapper.readTree(JSON), compactTree.toTree());
+        assertSame(compactTree.toTree(), compactTree.toTree());
+    }
+
+    @Test
+    public void testNumbersKeepTheirPrecision() throws IOException {
+        var json = "{\"decimal\": 0.10000000000000000001, \"big\": 123456789012345678901234567890, \"long\": 12345678901}";
+        var compactTree = CompactTree.read(plainMapper.createParser(json));
+        var value = plainMapper.readerFor(Numbers.class).readValue(compactTree.traverse(plainMapper), Numbers.class);
+        assertEquals(new BigDecimal("0.10000000000000000001"), ((Numbers) value).decimal);
+        assertEquals("123456789012345678901234567890", ((Numbers) value).big.toString());
+        assertEquals(12345678901L, ((Numbers) value).longValue);
+        compactTree.release();
+    }
+
+    @Test
+    public void testFloatsAreNotWidened() throws IOException {
+        var smileMapper = new SmileMapper();
+        var bytes = smileMapper.writeValueAsBytes(Map.of("decimal", 0.1f, "floatValue", 0.1f, "doubleValue", 0.1f));
+        var compactTree = CompactTree.read(smileMapper.createParser(bytes));
+        try (var parser = compactTree.traverse(smileMapper)) {
+            Numbers value = smileMapper.readValue(parser, Numbers.class);
+            assertEquals(new BigDecimal("0.1"), value.decimal);
+            assertEquals(0.1f, value.floatValue, 0f);
+            assertEquals(0.1, value.doubleValue, 0);
+        }
+        compactTree.release();
+    }
+
+    @Test
+    public void testReleasedTreeCannotBeRead() throws IOException {
+        var mapper = new JacksonTreeNodeMapper(CaptureMode.COMPACT);
+        mapper.readValue("{\"text\": \"a\"}", DummyEntity.class);
+        var first = (CompactTree) TreeNodeHolder.get();
+        var kept = first.toTree();
+
+        mapper.readValue("{\"number\": 1}", DummyEntity.class);
+        var second = (CompactTree) TreeNodeHolder.get();
+        assertTrue(first.isReleased());
+        assertFalse(second.isReleased());
+        assertEquals(Collections.singletonList("number"), converter.translate(second));
+
+        // The built tree outlives the buffer, which has been reused for the second capture.
+        assertSame(kept, first.toTree());
+        assertEquals(Collections.singletonList("text"), first.getPaths());
+
+        TreeNodeHolder.clear();
+        assertTrue(second.isReleased());
+        try {
+            second.getPaths();
+            fail();
+        } catch (IllegalStateException ex) {
+            assertEquals("The captured tree has been released.", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testBufferIsReusedAfterRelease() throws IOException {
+        var first = CompactTree.read(plainMapper.createParser("{\"text\": \"a\"}"));
+        first.release();
+        var second = CompactTree.read(plainMapper.createParser("{\"number\": 1, \"child\": {\"text\": \"b\"}}"));
+        assertTrue(first.isReleased());
+        assertEquals(Arrays.asList("number", "child.text"), second.getPaths());
+        second.release();
+    }
+
+    @Test
+    public void testOpenParserKeepsBufferFromReuse() throws IOException {
+        var first = CompactTree.read(plainMapper.createParser("{\"text\": \"a\"}"));
+        try (var parser = first.traverse()) {
+            first.release();
+            var second = CompactTree.read(plainMapper.createParser("{\"number\": 1}"));
+            parser.nextToken();
+            parser.nextToken();
+            assertEquals("text", parser.currentName());
+            parser.nextToken();
+            assertEquals("a", parser.getText());
+            second.release();
+        }
+    }
+
+    @Test
+    public void testContextReleasesOnClose() throws IOException {
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule(CaptureMode.COMPACT));
+        CompactTree compactTree;
+        try (var context = CaptureContext.open()) {
+            mapper.readValue("{\"text\": \"qwerty\"}", DummyEntity.class);
+            compactTree = (CompactTree) context.getTreeNode();
+            assertEquals(Collections.singletonList("text"), converter.translate(TreeNodeHolder.get()));
+        }
+        assertTrue(compactTree.isReleased());
+    }
+
+    @Test
+    public void testLimitsAreEnforced() throws IOException {
+        var mapper = new JacksonTreeNodeMapper(CaptureMode.COMPACT, CaptureLimits.builder().maxNodes(3).build());
+        mapper.readValue("{\"text\": \"qwerty\", \"number\": 1}", DummyEntity.class);
+        try {
+            mapper.readValue("{\"text\": \"qwerty\", \"array\": [\"a\", \"b\"]}", DummyEntity.class);
+            fail();
+        } catch (CaptureLimitExceededException ex) {
+            assertEquals(CaptureLimits.Limit.NODES, ex.getLimit());
+        }
+    }
+
+    public static class Numbers {
+
+        public BigDecimal decimal;
+        public java.math.BigInteger big;
+        public long longValue;
+        public float floatValue;
+        public double doubleValue;
+
+        public void setLong(long value) {
+            this.longValue = value;
+        }
+    }
+}
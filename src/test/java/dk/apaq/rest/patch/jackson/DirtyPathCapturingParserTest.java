@@ -0,0 +1,67 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.apaq.rest.patch.DummyEntity;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class DirtyPathCapturingParserTest {
+
+    private ObjectMapper plainMapper = new ObjectMapper();
+    private TreeNodePropertyReferenceConverter converter = new TreeNodePropertyReferenceConverter();
+
+    @Test
+    public void testPathsMatchTreeConverter() throws IOException {
+        String[] documents = {
+                "{\"text\": \"qwerty\"}",
+                "{\"child\": {\"text\":\"qwerty\"}}",
+                "{\"text\": \"value\", \"child\": {\"text\":\"qwerty\", \"list\":[\"Karl\", {\"a\": 1}],\"child\": {\"text\":null}}}",
+                "{\"empty\": {}, \"number\": 1.5, \"flag\": true}",
+                "[{\"text\": \"value\"}]"
+        };
+
+        for (String json : documents) {
+            try (var parser = new DirtyPathCapturingParser(plainMapper.createParser(json))) {
+                while (parser.nextToken() != null) {
+                    // Consume all tokens
+                }
+                assertEquals(json, converter.translate(plainMapper.readTree(json)), parser.getPaths());
+            }
+        }
+    }
+
+    @Test
+    public void testSkippedChildrenAreRecorded() throws IOException {
+        try (var parser = new DirtyPathCapturingParser(plainMapper.createParser("{\"child\": {\"text\": \"a\", \"number\": 2}}"))) {
+            parser.nextToken();
+            parser.nextToken();
+            parser.nextToken();
+            parser.skipChildren();
+            assertEquals(Arrays.asList("child.text", "child.number"), parser.getPaths());
+        }
+    }
+
+    @Test
+    public void testMapperInPathsMode() throws IOException {
+        var mapper = new JacksonTreeNodeMapper(CaptureMode.PATHS);
+        DummyEntity de = mapper.readValue("{\"child\": {\"text\":\"qwerty\"}}", DummyEntity.class);
+        assertEquals("qwerty", de.getChild().getText());
+        assertEquals(Collections.singletonList("child.text"), DirtyPathHolder.get());
+        assertNull(TreeNodeHolder.get());
+    }
+
+    @Test
+    public void testModuleInPathsMode() throws IOException {
+        var json = "{\"text\": \"value\", \"child\": {\"text\":\"qwerty\", \"list\":[\"Karl\"],\"child\": {\"text\":\"value\"}}}";
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule(CaptureMode.PATHS));
+        DummyEntity de = mapper.readerFor(DummyEntity.class).readValue(json, DummyEntity.class);
+        assertEquals("value", de.getChild().getChild().getText());
+        assertEquals(Arrays.asList("text", "child.text", "child.list", "child.child.text"), DirtyPathHolder.get());
+    }
+}
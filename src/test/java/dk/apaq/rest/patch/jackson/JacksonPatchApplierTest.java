@@ -0,0 +1,169 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import dk.apaq.rest.patch.DummyEntity;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class JacksonPatchApplierTest {
+
+    private JacksonPatchApplier<DummyEntity> applier = new JacksonPatchApplier<>(new ObjectMapper());
+
+    @Test
+    public void testApplyOnlyPresentFields() throws IOException {
+        DummyEntity persistence = new DummyEntity("qwerty", 1, new String[]{"A", "B", "C"}, Collections.singletonList("test"));
+
+        var applied = applier.apply(persistence, "{\"text\": \"ytrewq\", \"list\": [\"a\", \"b\"]}");
+        assertEquals(Arrays.asList("text", "list"), applied);
+        assertEquals("ytrewq", persistence.getText());
+        assertEquals(1, persistence.getNumber());
+        assertArrayEquals(new String[]{"A", "B", "C"}, persistence.getArray());
+        assertEquals(Arrays.asList("a", "b"), persistence.getList());
+    }
+
+    @Test
+    public void testApplyNested() throws IOException {
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+        DummyEntity child = new DummyEntity("child", 1, null, null);
+        persistence.setChild(child);
+        persistence.getMeta().put("size", "large");
+
+        var applied = applier.apply(persistence, "{\"child\": {\"text\": \"sibling\"}, \"meta\": {\"color\": \"red\"}}");
+        assertEquals(Arrays.asList("child.text", "meta.color"), applied);
+        assertSame(child, persistence.getChild());
+        assertEquals("sibling", child.getText());
+        assertEquals(1, child.getNumber());
+        assertEquals("red", persistence.getMeta().get("color"));
+        assertEquals("large", persistence.getMeta().get("size"));
+    }
+
+    @Test
+    public void testApplyNestedOnNull() throws IOException {
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+
+        var applied = applier.apply(persistence, "{\"child\": {\"text\": \"sibling\"}}");
+        assertEquals(Collections.singletonList("child"), applied);
+        assertEquals("sibling", persistence.getChild().getText());
+    }
+
+    @Test
+    public void testIgnoredFields() throws IOException {
+        var ignoring = new JacksonPatchApplier<DummyEntity>(new ObjectMapper(), Collections.singletonList("text"));
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+
+        var mapper = new ObjectMapper();
+        try (var parser = mapper.createParser("{\"text\": \"ytrewq\", \"number\": 5, \"child\": {\"text\": \"a\"}}")) {
+            var applied = ignoring.apply(persistence, parser, Collections.singletonList("child"));
+            assertEquals(Collections.singletonList("number"), applied);
+        }
+        assertEquals("qwerty", persistence.getText());
+        assertEquals(5, persistence.getNumber());
+        assertNull(persistence.getChild());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownField() throws IOException {
+        applier.apply(new DummyEntity(), "{\"unknown\": 1}");
+    }
+
+    @Test
+    public void testFailingBodyLeavesEntityUntouched() throws IOException {
+        DummyEntity persistence = new DummyEntity("qwerty", 1, null, null);
+        persistence.setChild(new DummyEntity("child", 1, null, null));
+
+        try {
+            applier.apply(persistence, "{\"text\": \"ytrewq\", \"child\": {\"text\": \"a\"}, \"unknown\": 1}");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("unknown"));
+        }
+        try {
+            applier.apply(persistence, "{\"text\": \"ytrewq\", \"number\": \"five\"}");
+            fail("Expected an IOException");
+        } catch (IOException ex) {
+            // The value of number cannot be deserialized.
+        }
+        assertEquals("qwerty", persistence.getText());
+        assertEquals(1, persistence.getNumber());
+        assertEquals("child", persistence.getChild().getText());
+    }
+
+    @Test
+    public void testRenamedProperty() throws IOException {
+        var contact = new Contact();
+        var applied = new JacksonPatchApplier<Contact>(new ObjectMapper()).apply(contact, "{\"full_name\": \"Ann Smith\"}");
+        assertEquals(Collections.singletonList("fullName"), applied);
+        assertEquals("Ann Smith", contact.getFullName());
+    }
+
+    @Test
+    public void testPropertyDeserializersAreUsed() throws IOException {
+        var contact = new Contact();
+        contact.setNickname("Annie");
+        var applied = new JacksonPatchApplier<Contact>(new ObjectMapper())
+                .apply(contact, "{\"code\": \"dk\", \"nickname\": null}");
+        assertEquals(Collections.singletonList("code"), applied);
+        assertEquals("DK", contact.getCode());
+        assertEquals("Annie", contact.getNickname());
+    }
+
+    public static class Contact {
+
+        @JsonProperty("full_name")
+        private String fullName;
+
+        @JsonDeserialize(using = UpperCaseDeserializer.class)
+        private String code;
+
+        @JsonSetter(nulls = Nulls.SKIP)
+        private String nickname;
+
+        public String getFullName() {
+            return fullName;
+        }
+
+        public void setFullName(String fullName) {
+            this.fullName = fullName;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(String code) {
+            this.code = code;
+        }
+
+        public String getNickname() {
+            return nickname;
+        }
+
+        public void setNickname(String nickname) {
+            this.nickname = nickname;
+        }
+    }
+
+    public static class UpperCaseDeserializer extends StdDeserializer<String> {
+
+        public UpperCaseDeserializer() {
+            super(String.class);
+        }
+
+        @Override
+        public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return parser.getValueAsString().toUpperCase();
+        }
+    }
+}
@@ -25,4 +25,41 @@ public class JacksonTreeNodeMapperTest {
         Iterable<String> fields = converter.translate(TreeNodeHolder.get());
         assertEquals(Collections.singletonList("child.text"), fields);
     }
+
+    @Test
+    public void testTreeCaptureStopsAtDepthLimit() {
+        var limited = new JacksonTreeNodeMapper(CaptureMode.TREE, CaptureLimits.builder().maxDepth(2).build());
+        try {
+            limited.readValue("{\"child\": {\"child\": {\"text\": \"qwerty\"}}}", DummyEntity.class);
+            fail();
+        } catch (IOException ex) {
+            assertTrue(ex instanceof CaptureLimitExceededException);
+            assertEquals(CaptureLimits.Limit.DEPTH, ((CaptureLimitExceededException) ex).getLimit());
+        }
+    }
+
+    @Test
+    public void testTreeCaptureStopsAtLengthLimit() {
+        var limited = new JacksonTreeNodeMapper(CaptureMode.TREE, CaptureLimits.builder().maxDocumentLength(20).build());
+        try {
+            limited.readValue("{\"text\": \"qwerty\", \"number\": 1, \"array\": [\"a\"]}", DummyEntity.class);
+            fail();
+        } catch (IOException ex) {
+            assertEquals(CaptureLimits.Limit.DOCUMENT_LENGTH, ((CaptureLimitExceededException) ex).getLimit());
+        }
+    }
+
+    @Test
+    public void testPathCaptureStopsAtPathLimit() throws IOException {
+        var limited = new JacksonTreeNodeMapper(CaptureMode.PATHS, CaptureLimits.builder().maxPaths(2).build());
+        limited.readValue("{\"text\": \"qwerty\", \"child\": {\"text\": \"ytrewq\"}}", DummyEntity.class);
+        assertEquals(2, DirtyPathHolder.get().size());
+        try {
+            limited.readValue("{\"text\": \"qwerty\", \"number\": 1, \"child\": {\"text\": \"ytrewq\"}}", DummyEntity.class);
+            fail();
+        } catch (IOException ex) {
+            // The exception is not wrapped by the bean deserializer.
+            assertEquals(CaptureLimits.Limit.PATHS, ((CaptureLimitExceededException) ex).getLimit());
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.apaq.rest.patch.DummyEntity;
+import dk.apaq.rest.patch.FieldFilter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class JsonMergePatchTest {
+
+    private JsonPatchCompiler compiler = new JsonPatchCompiler(new ObjectMapper());
+
+    @Test
+    public void testMergeNested() throws IOException {
+        DummyEntity entity = new DummyEntity("qwerty", 1, null, null);
+        DummyEntity child = new DummyEntity("child", 2, null, null);
+        entity.setChild(child);
+        entity.getMeta().put("color", "red");
+        entity.getMeta().put("size", "large");
+
+        var patch = compiler.compileMergePatch(DummyEntity.class,
+                "{\"text\": \"ytrewq\", \"child\": {\"text\": \"sibling\"}, \"meta\": {\"color\": null, \"shape\": \"round\"}}");
+        var applied = patch.apply(entity);
+
+        assertEquals(Arrays.asList("text", "child.text", "meta(color)", "meta(shape)"), applied);
+        assertEquals("ytrewq", entity.getText());
+        assertSame(child, entity.getChild());
+        assertEquals("sibling", child.getText());
+        assertEquals(2, child.getNumber());
+        assertFalse(entity.getMeta().containsKey("color"));
+        assertEquals("large", entity.getMeta().get("size"));
+        assertEquals("round", entity.getMeta().get("shape"));
+    }
+
+    @Test
+    public void testNullRemovesValues() throws IOException {
+        DummyEntity entity = new DummyEntity("qwerty", 1, new String[]{"A"}, null);
+        entity.setChild(new DummyEntity("child", 2, null, null));
+
+        compiler.compileMergePatch(DummyEntity.class, "{\"text\": null, \"number\": null, \"child\": null, \"array\": [\"B\"]}")
+                .apply(entity);
+        assertNull(entity.getText());
+        assertEquals(0, entity.getNumber());
+        assertNull(entity.getChild());
+        assertArrayEquals(new String[]{"B"}, entity.getArray());
+    }
+
+    @Test
+    public void testNestedObjectOnNullIsSetAsWhole() throws IOException {
+        DummyEntity entity = new DummyEntity("qwerty", 1, null, null);
+
+        var applied = compiler.compileMergePatch(DummyEntity.class, "{\"child\": {\"text\": \"child\"}}").apply(entity);
+        assertEquals(Collections.singletonList("child"), applied);
+        assertEquals("child", entity.getChild().getText());
+    }
+
+    @Test
+    public void testFieldFilter() throws IOException {
+        var filtered = new JsonPatchCompiler(new ObjectMapper(), FieldFilter.deny(Arrays.asList("text", "child")));
+        DummyEntity entity = new DummyEntity("qwerty", 1, null, null);
+        entity.setChild(new DummyEntity("child", 2, null, null));
+
+        var applied = filtered.compileMergePatch(DummyEntity.class, "{\"text\": \"x\", \"number\": 3, \"child\": {\"text\": \"y\"}}")
+                .apply(entity);
+        assertEquals(Arrays.asList("number", "child.text"), applied);
+        assertEquals("qwerty", entity.getText());
+        assertEquals("y", entity.getChild().getText());
+    }
+
+    @Test
+    public void testRenamedPropertyAndItsDeserializer() throws IOException {
+        var contact = new JacksonPatchApplierTest.Contact();
+        contact.setNickname("Annie");
+
+        var applied = compiler.compileMergePatch(JacksonPatchApplierTest.Contact.class,
+                "{\"full_name\": \"Anne\", \"code\": \"dk\", \"nickname\": null}").apply(contact);
+        assertEquals(Arrays.asList("fullName", "code"), applied);
+        assertEquals("Anne", contact.getFullName());
+        assertEquals("DK", contact.getCode());
+        assertEquals("Annie", contact.getNickname());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownPropertyFailsOnCompile() throws IOException {
+        compiler.compileMergePatch(DummyEntity.class, "{\"unknown\": 1}");
+    }
+}
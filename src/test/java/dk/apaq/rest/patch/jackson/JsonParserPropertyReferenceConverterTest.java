@@ -0,0 +1,130 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import dk.apaq.rest.patch.DummyEntity;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class JsonParserPropertyReferenceConverterTest {
+
+    private static final String[] DOCUMENTS = {
+            "{\"text\": \"qwerty\"}",
+            "{\"child\": {\"text\":\"qwerty\"}}",
+            "{\"text\": \"value\", \"child\": {\"text\":\"qwerty\", \"list\":[\"Karl\", {\"a\": 1}],\"child\": {\"text\":null}}}",
+            "{\"empty\": {}, \"number\": 1.5, \"flag\": true}",
+            "[{\"text\": \"value\"}]"
+    };
+
+    private ObjectMapper jsonMapper = new ObjectMapper();
+    private ObjectMapper cborMapper = new CBORMapper();
+    private ObjectMapper smileMapper = new SmileMapper();
+    private JsonParserPropertyReferenceConverter converter = new JsonParserPropertyReferenceConverter();
+    private TreeNodePropertyReferenceConverter treeConverter = new TreeNodePropertyReferenceConverter();
+
+    @Test
+    public void testPathsMatchTreeConverter() throws IOException {
+        for (String json : DOCUMENTS) {
+            var expected = treeConverter.translate(jsonMapper.readTree(json));
+            try (var parser = jsonMapper.createParser(json)) {
+                assertEquals(json, expected, converter.translate(parser));
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryFormats() throws IOException {
+        for (String json : DOCUMENTS) {
+            var tree = jsonMapper.readTree(json);
+            var expected = treeConverter.translate(tree);
+            for (var mapper : Arrays.asList(cborMapper, smileMapper)) {
+                try (var parser = mapper.createParser(mapper.writeValueAsBytes(tree))) {
+                    assertEquals(json, expected, converter.translate(parser));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryValuesAreScalars() throws IOException {
+        var body = cborMapper.createObjectNode().put("data", new byte[]{1, 2, 3}).put("text", "qwerty");
+        try (var parser = cborMapper.createParser(cborMapper.writeValueAsBytes(body))) {
+            assertEquals(Arrays.asList("data", "text"), converter.translate(parser));
+        }
+    }
+
+    @Test
+    public void testReadsOneRootValue() throws IOException {
+        try (var parser = jsonMapper.createParser("{\"text\": \"a\"} {\"number\": 1}")) {
+            assertEquals(Collections.singletonList("text"), converter.translate(parser));
+            assertEquals(JsonToken.END_OBJECT, parser.currentToken());
+            assertEquals(Collections.singletonList("number"), converter.translate(parser));
+        }
+    }
+
+    @Test
+    public void testParserWithinRootObject() throws IOException {
+        try (var parser = jsonMapper.createParser("{\"text\": \"a\", \"child\": {\"number\": 1}} {\"meta\": 1}")) {
+            parser.nextToken();
+            parser.nextToken();
+            assertEquals(Arrays.asList("text", "child.number"), converter.translate(parser));
+            assertEquals(JsonToken.END_OBJECT, parser.currentToken());
+        }
+    }
+
+    @Test
+    public void testLimitsAreEnforced() throws IOException {
+        var limited = new JsonParserPropertyReferenceConverter(CaptureLimits.builder().maxDepth(2).maxPaths(2).build());
+        var bytes = smileMapper.writeValueAsBytes(jsonMapper.readTree("{\"child\": {\"child\": {\"text\": \"a\"}}}"));
+        try (var parser = smileMapper.createParser(bytes)) {
+            limited.translate(parser);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertEquals(CaptureLimits.Limit.DEPTH, ((CaptureLimitExceededException) ex.getCause()).getLimit());
+        }
+
+        try (var parser = jsonMapper.createParser("{\"text\": \"a\", \"number\": 1, \"meta\": {\"a\": \"b\"}}")) {
+            limited.translate(parser);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertEquals("The patch document exceeds the maximum of 2 fields.", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testMapperCapturesBinaryFormats() throws IOException {
+        var body = jsonMapper.readTree("{\"text\": \"qwerty\", \"child\": {\"number\": 5}}");
+        var expected = Arrays.asList("text", "child.number");
+
+        var cborTree = new JacksonTreeNodeMapper(new CBORFactory(), CaptureMode.TREE, CaptureLimits.none());
+        DummyEntity entity = cborTree.readValue(cborMapper.writeValueAsBytes(body), DummyEntity.class);
+        assertEquals(5, entity.getChild().getNumber());
+        assertEquals(expected, treeConverter.translate(TreeNodeHolder.get()));
+
+        var smilePaths = new JacksonTreeNodeMapper(new SmileFactory(), CaptureMode.PATHS, CaptureLimits.none());
+        entity = smilePaths.readValue(smileMapper.writeValueAsBytes(body), DummyEntity.class);
+        assertEquals("qwerty", entity.getText());
+        assertEquals(expected, DirtyPathHolder.get());
+    }
+
+    @Test
+    public void testModuleCapturesBinaryFormats() throws IOException {
+        var body = jsonMapper.readTree("{\"text\": \"qwerty\", \"list\": [\"a\", \"b\"]}");
+        var expected = Arrays.asList("text", "list");
+        for (var mapper : Arrays.asList(new CBORMapper(), new SmileMapper())) {
+            mapper.registerModule(new TreeNodeExtractorModule(CaptureMode.PATHS));
+            DummyEntity entity = mapper.readValue(mapper.writeValueAsBytes(body), DummyEntity.class);
+            assertEquals(Arrays.asList("a", "b"), entity.getList());
+            assertEquals(expected, DirtyPathHolder.get());
+        }
+    }
+}
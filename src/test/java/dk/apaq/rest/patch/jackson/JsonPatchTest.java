@@ -0,0 +1,210 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.apaq.rest.patch.DummyEntity;
+import dk.apaq.rest.patch.FieldFilter;
+import dk.apaq.rest.patch.InvalidFieldsException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class JsonPatchTest {
+
+    private JsonPatchCompiler compiler = new JsonPatchCompiler(new ObjectMapper());
+
+    private DummyEntity entity() {
+        DummyEntity entity = new DummyEntity("qwerty", 1, new String[]{"A", "B"}, new ArrayList<>(Arrays.asList("a", "b")));
+        entity.setChild(new DummyEntity("child", 2, null, null));
+        entity.getMeta().put("color", "red");
+        return entity;
+    }
+
+    @Test
+    public void testReplaceAndAdd() throws IOException {
+        var patch = compiler.compile(DummyEntity.class, "["
+                + "{\"op\": \"replace\", \"path\": \"/text\", \"value\": \"ytrewq\"},"
+                + "{\"op\": \"replace\", \"path\": \"/child/number\", \"value\": 5},"
+                + "{\"op\": \"add\", \"path\": \"/meta/size\", \"value\": \"large\"},"
+                + "{\"op\": \"add\", \"path\": \"/list/1\", \"value\": \"c\"},"
+                + "{\"op\": \"add\", \"path\": \"/list/-\", \"value\": \"d\"},"
+                + "{\"op\": \"replace\", \"path\": \"/array/0\", \"value\": \"Z\"}"
+                + "]");
+        DummyEntity entity = entity();
+        assertSame(entity, patch.apply(entity));
+
+        assertEquals("ytrewq", entity.getText());
+        assertEquals(5, entity.getChild().getNumber());
+        assertEquals("large", entity.getMeta().get("size"));
+        assertEquals(Arrays.asList("a", "c", "b", "d"), entity.getList());
+        assertArrayEquals(new String[]{"Z", "B"}, entity.getArray());
+    }
+
+    @Test
+    public void testRemove() throws IOException {
+        var patch = compiler.compile(DummyEntity.class, "["
+                + "{\"op\": \"remove\", \"path\": \"/meta/color\"},"
+                + "{\"op\": \"remove\", \"path\": \"/list/0\"},"
+                + "{\"op\": \"remove\", \"path\": \"/number\"},"
+                + "{\"op\": \"remove\", \"path\": \"/child\"}"
+                + "]");
+        DummyEntity entity = patch.apply(entity());
+
+        assertTrue(entity.getMeta().isEmpty());
+        assertEquals(Collections.singletonList("b"), entity.getList());
+        assertEquals(0, entity.getNumber());
+        assertNull(entity.getChild());
+    }
+
+    @Test
+    public void testMoveAndCopy() throws IOException {
+        var patch = compiler.compile(DummyEntity.class, "["
+                + "{\"op\": \"move\", \"from\": \"/child/text\", \"path\": \"/text\"},"
+                + "{\"op\": \"copy\", \"from\": \"/meta/color\", \"path\": \"/list/-\"},"
+                + "{\"op\": \"copy\", \"from\": \"/child\", \"path\": \"/child/child\"}"
+                + "]");
+        DummyEntity entity = patch.apply(entity());
+
+        assertEquals("child", entity.getText());
+        assertNull(entity.getChild().getText());
+        assertEquals(Arrays.asList("a", "b", "red"), entity.getList());
+        assertNotSame(entity.getChild(), entity.getChild().getChild());
+        assertEquals(2, entity.getChild().getChild().getNumber());
+    }
+
+    @Test
+    public void testTest() throws IOException {
+        var passing = compiler.compile(DummyEntity.class, "["
+                + "{\"op\": \"test\", \"path\": \"/text\", \"value\": \"qwerty\"},"
+                + "{\"op\": \"test\", \"path\": \"/list\", \"value\": [\"a\", \"b\"]},"
+                + "{\"op\": \"test\", \"path\": \"/child/number\", \"value\": 2},"
+                + "{\"op\": \"replace\", \"path\": \"/text\", \"value\": \"ytrewq\"}"
+                + "]");
+        assertEquals("ytrewq", passing.apply(entity()).getText());
+
+        var failing = compiler.compile(DummyEntity.class, "[{\"op\": \"test\", \"path\": \"/text\", \"value\": \"other\"}]");
+        try {
+            failing.apply(entity());
+            fail("Expected the test to fail.");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("The value of 'text' does not match the test.", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testPatchIsReusable() throws IOException {
+        var patch = compiler.compile(DummyEntity.class, "[{\"op\": \"add\", \"path\": \"/list/-\", \"value\": \"x\"}]");
+        List<DummyEntity> entities = Arrays.asList(entity(), entity(), entity());
+        for (var entity : entities) {
+            patch.apply(entity);
+            assertEquals(Arrays.asList("a", "b", "x"), entity.getList());
+        }
+    }
+
+    @Test
+    public void testFieldFilterLeavesOutOperations() throws IOException {
+        var filtered = new JsonPatchCompiler(new ObjectMapper(), FieldFilter.deny(Arrays.asList("text", "meta(*)")));
+        var patch = filtered.compile(DummyEntity.class, "["
+                + "{\"op\": \"replace\", \"path\": \"/text\", \"value\": \"ytrewq\"},"
+                + "{\"op\": \"remove\", \"path\": \"/meta/color\"},"
+                + "{\"op\": \"replace\", \"path\": \"/number\", \"value\": 3}"
+                + "]");
+        assertEquals(1, patch.size());
+
+        DummyEntity entity = patch.apply(entity());
+        assertEquals("qwerty", entity.getText());
+        assertEquals("red", entity.getMeta().get("color"));
+        assertEquals(3, entity.getNumber());
+    }
+
+    @Test
+    public void testFieldFilterLeavesOutTests() throws IOException {
+        var filtered = new JsonPatchCompiler(new ObjectMapper(), FieldFilter.deny(Collections.singletonList("text")));
+        var patch = filtered.compile(DummyEntity.class, "["
+                + "{\"op\": \"test\", \"path\": \"/text\", \"value\": \"guess\"},"
+                + "{\"op\": \"replace\", \"path\": \"/number\", \"value\": 3}"
+                + "]");
+        assertEquals(1, patch.size());
+        assertEquals(3, patch.apply(entity()).getNumber());
+    }
+
+    @Test
+    public void testRenamedPropertyAndItsDeserializer() throws IOException {
+        var filtered = new JsonPatchCompiler(new ObjectMapper(), FieldFilter.deny(Collections.singletonList("nickname")));
+        var patch = filtered.compile(JacksonPatchApplierTest.Contact.class, "["
+                + "{\"op\": \"replace\", \"path\": \"/full_name\", \"value\": \"Anne\"},"
+                + "{\"op\": \"replace\", \"path\": \"/code\", \"value\": \"dk\"},"
+                + "{\"op\": \"test\", \"path\": \"/code\", \"value\": \"dk\"},"
+                + "{\"op\": \"replace\", \"path\": \"/nickname\", \"value\": \"Annie\"}"
+                + "]");
+        assertEquals(3, patch.size());
+
+        var contact = patch.apply(new JacksonPatchApplierTest.Contact());
+        assertEquals("Anne", contact.getFullName());
+        assertEquals("DK", contact.getCode());
+        assertNull(contact.getNickname());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownPropertyFailsOnCompile() throws IOException {
+        compiler.compile(DummyEntity.class, "[{\"op\": \"replace\", \"path\": \"/unknown\", \"value\": 1}]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOperationFailsOnCompile() throws IOException {
+        compiler.compile(DummyEntity.class, "[{\"op\": \"merge\", \"path\": \"/text\", \"value\": 1}]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingValueFailsOnCompile() throws IOException {
+        compiler.compile(DummyEntity.class, "[{\"op\": \"add\", \"path\": \"/text\"}]");
+    }
+
+    @Test
+    public void testReplaceMissingEntryFails() throws IOException {
+        var patch = compiler.compile(DummyEntity.class, "[{\"op\": \"replace\", \"path\": \"/meta/size\", \"value\": \"x\"}]");
+        try {
+            patch.apply(entity());
+            fail("Expected the operation to fail.");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("The parameter 'meta(size)' does not apply to this resource.", ex.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullIntermediateFails() throws IOException {
+        var patch = compiler.compile(DummyEntity.class, "[{\"op\": \"replace\", \"path\": \"/child/child/text\", \"value\": \"x\"}]");
+        patch.apply(entity());
+    }
+
+    @Test
+    public void testMoveOntoItself() throws IOException {
+        var patch = compiler.compile(DummyEntity.class, "[{\"op\": \"move\", \"from\": \"/child\", \"path\": \"/child\"}]");
+        DummyEntity entity = entity();
+        var child = entity.getChild();
+        assertSame(child, patch.apply(entity).getChild());
+
+        try {
+            compiler.compile(DummyEntity.class, "[{\"op\": \"move\", \"from\": \"/child\", \"path\": \"/child/child\"}]");
+            fail("Expected the operation to be rejected.");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("The operation at index 0 moves a value into itself.", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testFailingOperationIsReportedAsInvalidField() throws IOException {
+        var patch = compiler.compile(DummyEntity.class, "[{\"op\": \"remove\", \"path\": \"/array/0\"}]");
+        try {
+            patch.apply(entity());
+            fail("Expected the operation to fail.");
+        } catch (InvalidFieldsException ex) {
+            assertEquals(Collections.singletonList("array[0]"), ex.getInvalidPaths());
+        }
+    }
+}
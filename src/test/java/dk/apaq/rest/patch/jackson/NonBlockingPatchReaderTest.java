@@ -0,0 +1,139 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import dk.apaq.rest.patch.DummyEntity;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+public class NonBlockingPatchReaderTest {
+
+    private static final String JSON = "{\"text\": \"value\", \"number\": 42, \"child\": {\"text\":\"qwerty\", \"list\":[\"Karl\"]}}";
+
+    private ObjectMapper mapper = new ObjectMapper();
+    private NonBlockingPatchReader<DummyEntity> reader = new NonBlockingPatchReader<>(mapper, DummyEntity.class);
+
+    @Test
+    public void testReadsBodyFedByteByByte() throws Exception {
+        var feed = reader.start();
+        var bytes = JSON.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            assertTrue(feed.feed(bytes, i, 1));
+            assertFalse(feed.result().isDone());
+        }
+
+        var body = feed.end().get();
+        assertEquals(Arrays.asList("text", "number", "child.text", "child.list"), body.getPaths());
+        assertEquals("value", body.getValue().getText());
+        assertEquals(42, body.getValue().getNumber());
+        assertEquals(Arrays.asList("Karl"), body.getValue().getChild().getList());
+        assertTrue(body.getDirtyFields().contains("child.list"));
+    }
+
+    @Test
+    public void testReadsDirectBuffers() throws Exception {
+        var feed = reader.start();
+        var bytes = JSON.getBytes(StandardCharsets.UTF_8);
+        var buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        feed.feed(buffer.slice().limit(10));
+        feed.feed(buffer.position(10));
+        assertFalse(buffer.hasRemaining());
+        assertEquals("qwerty", feed.end().get().getValue().getChild().getText());
+    }
+
+    @Test
+    public void testReadsSmile() throws Exception {
+        var smileMapper = new SmileMapper();
+        var bytes = smileMapper.writeValueAsBytes(mapper.readTree(JSON));
+        var feed = new NonBlockingPatchReader<>(smileMapper, DummyEntity.class).start();
+        feed.feed(ByteBuffer.allocateDirect(bytes.length).put(bytes, 0, 7).flip());
+        feed.feed(ByteBuffer.wrap(bytes, 7, bytes.length - 7));
+
+        var body = feed.end().get();
+        assertEquals(Arrays.asList("text", "number", "child.text", "child.list"), body.getPaths());
+        assertEquals(42, body.getValue().getNumber());
+    }
+
+    @Test
+    public void testRejectsFormatsThatBlock() {
+        try {
+            new NonBlockingPatchReader<>(new CBORMapper(), DummyEntity.class);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("without blocking"));
+        }
+    }
+
+    @Test
+    public void testMalformedBodyFailsAsSoonAsItIsFed() throws IOException {
+        var feed = reader.start();
+        assertFalse(feed.feed(ByteBuffer.wrap("{\"text\": ]".getBytes(StandardCharsets.UTF_8))));
+        assertTrue(feed.result().isCompletedExceptionally());
+        assertFalse(feed.feed(ByteBuffer.wrap("}".getBytes(StandardCharsets.UTF_8))));
+        assertCause(JsonParseException.class, feed);
+    }
+
+    @Test
+    public void testIncompleteBodyFails() throws IOException {
+        var feed = reader.start();
+        feed.feed(ByteBuffer.wrap("{\"text\": \"value\"".getBytes(StandardCharsets.UTF_8)));
+        feed.end();
+        assertCause(JsonParseException.class, feed);
+    }
+
+    @Test
+    public void testTrailingContentFails() throws IOException {
+        var feed = reader.start();
+        feed.feed(ByteBuffer.wrap("{\"text\": \"value\"} {}".getBytes(StandardCharsets.UTF_8)));
+        assertCause(JsonParseException.class, feed);
+    }
+
+    @Test
+    public void testLimitsAreCheckedWhileFeeding() throws IOException {
+        var limits = CaptureLimits.builder().maxPaths(2).build();
+        var feed = new NonBlockingPatchReader<>(mapper, DummyEntity.class, limits).start();
+        assertFalse(feed.feed(ByteBuffer.wrap(JSON.getBytes(StandardCharsets.UTF_8))));
+        assertCause(CaptureLimitExceededException.class, feed);
+
+        limits = CaptureLimits.builder().maxDocumentLength(16).build();
+        feed = new NonBlockingPatchReader<>(mapper, DummyEntity.class, limits).start();
+        assertTrue(feed.feed(ByteBuffer.wrap("{\"text\":".getBytes(StandardCharsets.UTF_8))));
+        assertFalse(feed.feed(ByteBuffer.wrap(" \"a long value\"}".getBytes(StandardCharsets.UTF_8))));
+        assertCause(CaptureLimitExceededException.class, feed);
+    }
+
+    @Test
+    public void testBufferedTokensAreBoundedByLimits() throws IOException {
+        var limits = CaptureLimits.builder().maxNodes(3).build();
+        var feed = new NonBlockingPatchReader<>(mapper, DummyEntity.class, limits).start();
+        assertTrue(feed.feed(ByteBuffer.wrap("{\"text\": \"a\", \"number\": 1".getBytes(StandardCharsets.UTF_8))));
+        assertFalse(feed.feed(ByteBuffer.wrap(", \"list\": [\"b\"]}".getBytes(StandardCharsets.UTF_8))));
+        assertCause(CaptureLimitExceededException.class, feed);
+
+        limits = CaptureLimits.builder().maxDepth(2).build();
+        feed = new NonBlockingPatchReader<>(mapper, DummyEntity.class, limits).start();
+        assertFalse(feed.feed(ByteBuffer.wrap("{\"child\": {\"child\": {".getBytes(StandardCharsets.UTF_8))));
+        assertCause(CaptureLimitExceededException.class, feed);
+    }
+
+    private static void assertCause(Class<? extends Throwable> expected, NonBlockingPatchReader.Feed<?> feed) {
+        try {
+            feed.result().get();
+            fail("Expected the result to fail");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause().toString(), expected.isInstance(ex.getCause()));
+        } catch (InterruptedException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+}
@@ -43,4 +43,69 @@ public class TreeNodeExtractorModuleTest {
         Iterable<String> fields = converter.translate(TreeNodeHolder.get());
         assertEquals(Arrays.asList("text", "child.text", "child.list", "child.child.text"), fields);
     }
+
+    @Test
+    public void testOnlyAnnotatedTypesAreCaptured() throws IOException {
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule(CaptureMode.TREE, TreeNodeExtractorModule.PATCH_CAPTURE_TYPES));
+
+        TreeNodeHolder.clear();
+        mapper.readValue("{\"text\": \"qwerty\"}", DummyEntity.class);
+        assertNull(TreeNodeHolder.get());
+
+        PatchEntity pe = mapper.readValue("{\"name\": \"Bessie\", \"child\": {\"text\":\"qwerty\"}}", PatchEntity.class);
+        assertEquals("qwerty", pe.getChild().getText());
+        Iterable<String> fields = converter.translate(TreeNodeHolder.get());
+        assertEquals(Arrays.asList("name", "child.text"), fields);
+    }
+
+    @Test
+    public void testTypePredicateSelectsPaths() throws IOException {
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule(CaptureMode.PATHS, type -> type == PatchEntity.class));
+
+        DirtyPathHolder.clear();
+        mapper.readValue("{\"text\": \"qwerty\"}", DummyEntity.class);
+        assertNull(DirtyPathHolder.get());
+
+        mapper.readValue("{\"name\": \"Bessie\"}", PatchEntity.class);
+        assertEquals(Collections.singletonList("name"), DirtyPathHolder.get());
+    }
+
+    @Test
+    public void testNodeLimitIsEnforced() throws IOException {
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule(CaptureMode.TREE, type -> true,
+                CaptureLimits.builder().maxNodes(3).build()));
+        mapper.readValue("{\"text\": \"qwerty\", \"number\": 1}", DummyEntity.class);
+        try {
+            mapper.readValue("{\"text\": \"qwerty\", \"array\": [\"a\", \"b\"]}", DummyEntity.class);
+            fail();
+        } catch (CaptureLimitExceededException ex) {
+            assertEquals(CaptureLimits.Limit.NODES, ex.getLimit());
+        }
+    }
+
+    @PatchCapture
+    public static class PatchEntity {
+
+        private String name;
+        private DummyEntity child;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public DummyEntity getChild() {
+            return child;
+        }
+
+        public void setChild(DummyEntity child) {
+            this.child = child;
+        }
+    }
 }
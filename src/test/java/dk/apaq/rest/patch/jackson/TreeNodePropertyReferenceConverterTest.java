@@ -0,0 +1,127 @@
+package dk.apaq.rest.patch.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class TreeNodePropertyReferenceConverterTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+    private TreeNodePropertyReferenceConverter converter = new TreeNodePropertyReferenceConverter();
+
+    @Test
+    public void testTranslateNested() throws IOException {
+        var tree = mapper.readTree("{\"a\": 1, \"b\": {\"c\": [1, 2], \"d\": {\"e\": null}, \"f\": {}}, \"g\": \"h\"}");
+        assertEquals(Arrays.asList("a", "b.c", "b.d.e", "g"), converter.translate(tree));
+    }
+
+    @Test
+    public void testTranslateWithLimits() throws IOException {
+        var tree = mapper.readTree("{\"a\": 1, \"b\": {\"c\": [1, 2], \"d\": {\"e\": null}}}");
+        var deep = new TreeNodePropertyReferenceConverter(CaptureLimits.builder().maxDepth(2).build());
+        var wide = new TreeNodePropertyReferenceConverter(CaptureLimits.builder().maxPaths(2).build());
+        try {
+            deep.translate(tree);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertEquals("The patch document exceeds the maximum nesting depth of 2.", ex.getMessage());
+        }
+        try {
+            wide.translateToTree(tree);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertEquals("The patch document exceeds the maximum of 2 fields.", ex.getMessage());
+        }
+        assertEquals(Arrays.asList("a", "b.c", "b.d.e"),
+                new TreeNodePropertyReferenceConverter(CaptureLimits.builder().maxDepth(3).maxPaths(3).build()).translate(tree));
+    }
+
+    @Test
+    public void testTranslateElements() throws IOException {
+        var tree = mapper.readTree("{\"lines\": [{\"id\": 42, \"quantity\": 3}, {\"quantity\": 1}],"
+                + " \"tags\": [\"a\"], \"empty\": []}");
+        var elements = new TreeNodePropertyReferenceConverter(CaptureLimits.none(), "id");
+        var expected = Arrays.asList("lines[id=42].id", "lines[id=42].quantity", "lines[1].quantity", "tags", "empty");
+        assertEquals(expected, elements.translate(tree));
+        assertEquals(expected, elements.translateToTree(tree).toPaths());
+        assertEquals(Arrays.asList("lines", "tags", "empty"), converter.translate(tree));
+    }
+
+    @Test
+    public void testTranslateNonObject() throws IOException {
+        assertEquals(Collections.emptyList(), converter.translate(mapper.readTree("[{\"a\": 1}]")));
+    }
+
+    @Test
+    public void testTranslateIntoCollection() throws IOException {
+        Set<String> paths = new LinkedHashSet<>();
+        converter.translate(mapper.readTree("{\"a\": 1, \"b\": {\"c\": 2}}"), paths::add);
+        assertEquals(new LinkedHashSet<>(Arrays.asList("a", "b.c")), paths);
+    }
+
+    @Test
+    public void testTranslateDeepDocument() {
+        ObjectNode root = JsonNodeFactory.instance.objectNode();
+        ObjectNode current = root;
+        for (int i = 0; i < 10000; i++) {
+            current = current.putObject("n");
+        }
+        current.put("leaf", true);
+
+        var paths = converter.translate(root);
+        assertEquals(1, paths.size());
+        assertTrue(paths.iterator().next().endsWith("n.n.leaf"));
+    }
+
+    @Test
+    public void testViewAnswersQueries() throws IOException {
+        var tree = mapper.readTree("{\"text\": \"a\", \"list\": [1, 2], \"empty\": {}, "
+                + "\"child\": {\"text\": \"b\", \"child\": {\"number\": 1}}}");
+        var view = converter.translateToView(tree);
+
+        assertTrue(view.contains("text"));
+        assertTrue(view.contains("list"));
+        assertTrue(view.contains("child.child.number"));
+        assertFalse(view.contains("child"));
+        assertFalse(view.contains("empty"));
+        assertFalse(view.contains("child.number"));
+        assertFalse(view.contains("text.length"));
+        assertFalse(view.contains("meta(a"));
+
+        assertTrue(view.containsPrefix("child.child"));
+        assertTrue(view.containsPrefix("text"));
+        assertFalse(view.containsPrefix("empty"));
+        assertFalse(view.containsPrefix("missing"));
+
+        var below = new ArrayList<String>();
+        view.forEach("child", below::add);
+        assertEquals(Arrays.asList("child.text", "child.child.number"), below);
+        assertEquals(converter.translate(tree), view.toPaths());
+    }
+
+    @Test
+    public void testViewFindsElements() throws IOException {
+        var tree = mapper.readTree("{\"lines\": [{\"id\": 42, \"quantity\": 3}, {\"quantity\": 1}]}");
+        var view = new TreeNodePropertyReferenceConverter(CaptureLimits.none(), "id").translateToView(tree);
+
+        assertTrue(view.contains("lines[id=42].quantity"));
+        assertTrue(view.contains("lines[1].quantity"));
+        assertFalse(view.contains("lines[0].quantity"));
+        assertFalse(view.contains("lines"));
+        assertTrue(view.containsPrefix("lines"));
+
+        var below = new ArrayList<String>();
+        view.forEach("lines", below::add);
+        assertEquals(Arrays.asList("lines[id=42].id", "lines[id=42].quantity", "lines[1].quantity"), below);
+    }
+}
@@ -0,0 +1,106 @@
+package dk.apaq.rest.patch.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.apaq.rest.patch.DummyEntity;
+import dk.apaq.rest.patch.EntityMerger;
+import dk.apaq.rest.patch.form.FormPropertyReferenceConverter;
+import dk.apaq.rest.patch.jackson.CaptureMode;
+import dk.apaq.rest.patch.jackson.TreeNodeExtractorModule;
+import dk.apaq.rest.patch.jackson.TreeNodeHolder;
+import dk.apaq.rest.patch.jackson.TreeNodePropertyReferenceConverter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class PatchInstrumentationTest {
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        PatchInstrumentation.install(new PatchInstrumentation() {
+            @Override
+            public void mergeCompleted(Class<?> entityType, int dirtyFieldCount, long nanos) {
+                events.add("merge " + entityType.getSimpleName() + " " + dirtyFieldCount);
+            }
+
+            @Override
+            public void mergeFailed(Class<?> entityType, String path, Throwable error) {
+                events.add("failed " + entityType.getSimpleName() + " " + path);
+            }
+
+            @Override
+            public void captureCompleted(CaptureMode mode, int size, long nanos) {
+                events.add("capture " + mode + " " + size);
+            }
+
+            @Override
+            public void converted(Class<?> converterType, int pathCount, long nanos) {
+                events.add("convert " + converterType.getSimpleName() + " " + pathCount);
+            }
+
+            @Override
+            public void cacheAccessed(String cache, boolean hit) {
+                if (cache.equals("form-keys")) {
+                    events.add("cache " + cache + " " + hit);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        PatchInstrumentation.install(null);
+        TreeNodeHolder.clear();
+    }
+
+    @Test
+    public void testMergeIsReported() {
+        var merger = new EntityMerger<DummyEntity>();
+        merger.mergeEntities(new DummyEntity(), new DummyEntity("text", 1, null, null), Arrays.asList("text", "number"));
+        assertEquals(Collections.singletonList("merge DummyEntity 2"), events);
+
+        try {
+            merger.mergeEntities(new DummyEntity(), new DummyEntity(), Collections.singletonList("unknown"));
+            fail("Expected the merge to fail.");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("failed DummyEntity unknown", events.get(1));
+        }
+    }
+
+    @Test
+    public void testCaptureAndConversionAreReported() throws IOException {
+        var mapper = new ObjectMapper();
+        mapper.registerModule(new TreeNodeExtractorModule());
+        mapper.readValue("{\"text\": \"value\", \"list\": [\"a\", \"b\"]}", DummyEntity.class);
+        new TreeNodePropertyReferenceConverter().translate(TreeNodeHolder.get());
+
+        assertEquals(Arrays.asList("capture TREE 5", "convert TreeNodePropertyReferenceConverter 2"), events);
+    }
+
+    @Test
+    public void testFormCacheIsReported() {
+        var converter = new FormPropertyReferenceConverter();
+        converter.translate(Map.of("meta[color]", new String[]{"red"}));
+        converter.translate(Map.of("meta[color]", new String[]{"red"}));
+
+        assertEquals(Arrays.asList("cache form-keys false", "convert FormPropertyReferenceConverter 1",
+                "cache form-keys true", "convert FormPropertyReferenceConverter 1"), events);
+    }
+
+    @Test
+    public void testNoopIsDisabled() {
+        assertFalse(PatchInstrumentation.NOOP.isEnabled());
+        PatchInstrumentation.install(null);
+        assertSame(PatchInstrumentation.NOOP, PatchInstrumentation.get());
+    }
+}
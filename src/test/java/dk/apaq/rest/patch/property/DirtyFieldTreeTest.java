@@ -0,0 +1,78 @@
+package dk.apaq.rest.patch.property;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.apaq.rest.patch.jackson.TreeNodePropertyReferenceConverter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DirtyFieldTreeTest {
+
+    @Test
+    public void testSharedPrefixes() {
+        DirtyFieldTree tree = DirtyFieldTree.of(Arrays.asList("child.text", "child.number", "text", "child.meta(a.b)"));
+        assertEquals(4, tree.size());
+        assertEquals(2, tree.getRoot().getChildren().size());
+
+        DirtyFieldTree.Node child = tree.getRoot().getChild("child");
+        assertFalse(child.isDirty());
+        assertEquals(3, child.getChildren().size());
+        assertEquals("child.meta(a.b)", child.getChild("meta(a.b)").getPath());
+        assertEquals(Arrays.asList("child.text", "child.number", "child.meta(a.b)", "text"), tree.toPaths());
+    }
+
+    @Test
+    public void testSegmentsAreInterned() {
+        DirtyFieldTree tree = DirtyFieldTree.of(Arrays.asList("a.text", "b.text"));
+        assertSame(tree.getRoot().getChild("a").getChild("text").getSegment(),
+                tree.getRoot().getChild("b").getChild("text").getSegment());
+    }
+
+    @Test
+    public void testDirtyPrefix() {
+        DirtyFieldTree tree = DirtyFieldTree.of(Arrays.asList("child", "child.text", "child"));
+        assertEquals(2, tree.size());
+        assertTrue(tree.getRoot().getChild("child").isDirty());
+    }
+
+    @Test
+    public void testTreeConverterMatchesPaths() throws IOException {
+        var converter = new TreeNodePropertyReferenceConverter();
+        var node = new ObjectMapper().readTree("{\"a\": 1, \"b\": {\"c\": [1], \"d\": {\"e\": null}, \"f\": {}}, \"g.h\": 2}");
+        assertEquals(converter.translate(node), converter.translateToTree(node).toPaths());
+    }
+
+    @Test
+    public void testQueries() {
+        DirtyFieldTree tree = DirtyFieldTree.of(Arrays.asList("text", "child.text", "child.child.number", "lines[id=4].quantity"));
+        assertTrue(tree.contains("text"));
+        assertTrue(tree.contains("child.child.number"));
+        assertTrue(tree.contains("lines[id=4].quantity"));
+        assertFalse(tree.contains("child"));
+        assertFalse(tree.contains("child.number"));
+        assertFalse(tree.contains("lines[id=4"));
+
+        assertTrue(tree.containsPrefix("child"));
+        assertTrue(tree.containsPrefix("child.child.number"));
+        assertTrue(tree.containsPrefix(""));
+        assertFalse(tree.containsPrefix("chi"));
+
+        var below = new ArrayList<String>();
+        tree.forEach("child", below::add);
+        assertEquals(Arrays.asList("child.text", "child.child.number"), below);
+        assertEquals(tree.toPaths(), iterate(tree));
+    }
+
+    private static List<String> iterate(Iterable<String> paths) {
+        var result = new ArrayList<String>();
+        for (var path : paths) {
+            result.add(path);
+        }
+        return result;
+    }
+}
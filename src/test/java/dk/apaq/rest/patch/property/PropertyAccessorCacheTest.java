@@ -0,0 +1,101 @@
+package dk.apaq.rest.patch.property;
+
+import dk.apaq.rest.patch.DummyEntity;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class PropertyAccessorCacheTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void testEvictsOldestFirst() {
+        PropertyAccessorCache cache = new PropertyAccessorCache(2);
+        var text = cache.get(DummyEntity.class, "text");
+        var number = cache.get(DummyEntity.class, "number");
+        assertSame(text, cache.get(DummyEntity.class, "text"));
+
+        cache.get(DummyEntity.class, "child");
+        assertEquals(2, cache.size());
+        assertSame(number, cache.get(DummyEntity.class, "number"));
+        assertNotSame(text, cache.get(DummyEntity.class, "text"));
+    }
+
+    @Test
+    public void testInvalidPathsDoNotEvictValidAccessors() {
+        PropertyAccessorCache cache = new PropertyAccessorCache(2);
+        var text = cache.get(DummyEntity.class, "text");
+        var number = cache.get(DummyEntity.class, "number");
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(cache.get(DummyEntity.class, "unknown" + i).validate());
+        }
+        cache.get(String.class, "bytes");
+        assertEquals(2, cache.size());
+        assertSame(text, cache.get(DummyEntity.class, "text"));
+        assertSame(number, cache.get(DummyEntity.class, "number"));
+
+        var unknown = cache.get(DummyEntity.class, "unknown");
+        assertSame(unknown, cache.get(DummyEntity.class, "unknown"));
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneAccessor() throws Exception {
+        PropertyAccessorCache cache = new PropertyAccessorCache(64);
+        var seen = ConcurrentHashMap.<PropertyAccessor>newKeySet();
+        run(() -> {
+            for (int i = 0; i < 1000; i++) {
+                seen.add(cache.get(DummyEntity.class, "child.text"));
+            }
+        });
+        assertEquals(1, seen.size());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testStaysBoundedUnderContention() throws Exception {
+        PropertyAccessorCache cache = new PropertyAccessorCache(16);
+        run(() -> {
+            for (int i = 0; i < 2000; i++) {
+                var expression = "meta(key" + (i % 40) + ")";
+                var accessor = cache.get(i % 2 == 0 ? DummyEntity.class : Special.class, expression);
+                assertNull(accessor.validate());
+                assertTrue(cache.size() <= 16);
+            }
+        });
+        assertEquals(16, cache.size());
+    }
+
+    private static void run(Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            var start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static class Special extends DummyEntity {
+    }
+}
@@ -0,0 +1,152 @@
+package dk.apaq.rest.patch.property;
+
+import dk.apaq.rest.patch.DummyEntity;
+import dk.apaq.rest.patch.Order;
+import org.apache.commons.beanutils.NestedNullException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class PropertyAccessorTest {
+
+    private PropertyAccessorCache cache = new PropertyAccessorCache(16);
+
+    @Test
+    public void testParsePath() {
+        PropertyPath path = PropertyPath.parse("child.array[2].meta(a.b)");
+        assertEquals(3, path.size());
+        assertEquals(PropertyPath.Kind.SIMPLE, path.getSegments().get(0).kind());
+        assertEquals(2, path.getSegments().get(1).index());
+        assertEquals("a.b", path.getSegments().get(2).key());
+    }
+
+    @Test
+    public void testParseKeyedPath() {
+        PropertyPath path = PropertyPath.parse("lines[id=4.2].quantity");
+        assertEquals(2, path.size());
+        assertEquals(PropertyPath.Kind.KEYED, path.getSegments().get(0).kind());
+        assertEquals("id", path.getSegments().get(0).keyProperty());
+        assertEquals("4.2", path.getSegments().get(0).key());
+    }
+
+    @Test
+    public void testGetAndSetKeyed() throws Exception {
+        Order order = new Order();
+        Order.Line line = new Order.Line(42L, "Coffee", 1);
+        order.getLines().add(line);
+        order.getExtras().add(new Order.Line(7L, "Milk", 1));
+
+        cache.get(Order.class, "lines[id=42].quantity").set(order, 3);
+        assertSame(line, order.getLines().get(0));
+        assertEquals(3, line.getQuantity());
+        assertNull(cache.get(Order.class, "lines[id=43]").get(order));
+        assertEquals("Milk", cache.get(Order.class, "extras[id=7].product").get(order));
+
+        Order.Line added = new Order.Line(43L, "Tea", 2);
+        cache.get(Order.class, "lines[id=43]").set(order, added);
+        assertEquals(Arrays.asList(line, added), order.getLines());
+        assertNull(cache.get(Order.class, "lines[id=43].quantity").validate());
+        assertNotNull(cache.get(Order.class, "lines[id=43].unknown").validate());
+        assertNotNull(cache.get(Order.class, "reference[id=43]").validate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalidIndex() {
+        PropertyPath.parse("array[x]");
+    }
+
+    @Test
+    public void testGetAndSetNested() throws Exception {
+        DummyEntity entity = new DummyEntity();
+        entity.setChild(new DummyEntity("child", 1, new String[]{"A", "B"}, new ArrayList<>(Arrays.asList("x", "y"))));
+
+        PropertyAccessor accessor = cache.get(DummyEntity.class, "child.text");
+        assertEquals("child", accessor.get(entity));
+        accessor.set(entity, "changed");
+        assertEquals("changed", entity.getChild().getText());
+
+        cache.get(DummyEntity.class, "child.array[1]").set(entity, "C");
+        assertArrayEquals(new String[]{"A", "C"}, entity.getChild().getArray());
+
+        cache.get(DummyEntity.class, "child.list[0]").set(entity, "z");
+        assertEquals(Arrays.asList("z", "y"), entity.getChild().getList());
+    }
+
+    @Test
+    public void testGetAndSetMapped() throws Exception {
+        DummyEntity entity = new DummyEntity();
+        PropertyAccessor accessor = cache.get(DummyEntity.class, "meta(color)");
+        accessor.set(entity, "red");
+        assertEquals("red", entity.getMeta().get("color"));
+        assertEquals("red", accessor.get(entity));
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void testUnknownProperty() throws Exception {
+        cache.get(DummyEntity.class, "unknown").get(new DummyEntity());
+    }
+
+    @Test(expected = NestedNullException.class)
+    public void testNullIntermediate() throws Exception {
+        cache.get(DummyEntity.class, "child.text").set(new DummyEntity(), "value");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullOnPrimitive() throws Exception {
+        cache.get(DummyEntity.class, "number").set(new DummyEntity(), null);
+    }
+
+    @Test
+    public void testErrorsAreNotWrapped() throws Exception {
+        var accessor = cache.get(Failing.class, "value");
+        try {
+            accessor.get(new Failing());
+            fail("Expected the getter to fail.");
+        } catch (InvocationTargetException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        try {
+            accessor.set(new Failing(), "x");
+            fail("Expected the setter to fail.");
+        } catch (OutOfMemoryError ex) {
+            assertEquals("x", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testValidate() {
+        assertNull(cache.get(DummyEntity.class, "child.array[1]").validate());
+        assertNull(cache.get(DummyEntity.class, "meta(color)").validate());
+        assertNull(cache.get(DummyEntity.class, "list[0]").validate());
+        assertTrue(cache.get(DummyEntity.class, "unknown").validate().contains("Unknown property 'unknown'"));
+        assertTrue(cache.get(DummyEntity.class, "child.unknown").validate().contains("Unknown property 'unknown'"));
+        assertNotNull(cache.get(DummyEntity.class, "text.length").validate());
+        assertTrue(cache.get(Order.class, "extras[0]").validate().contains("is not indexed"));
+        assertTrue(cache.get(DummyEntity.class, "text[0]").validate().contains("is not indexed"));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        PropertyAccessorCache small = new PropertyAccessorCache(2);
+        small.get(DummyEntity.class, "text");
+        small.get(DummyEntity.class, "number");
+        small.get(DummyEntity.class, "child.text");
+        assertEquals(2, small.size());
+        assertSame(small.get(DummyEntity.class, "child.text"), small.get(DummyEntity.class, "child.text"));
+    }
+
+    public static class Failing {
+
+        public String getValue() {
+            throw new IllegalStateException("Not readable.");
+        }
+
+        public void setValue(String value) {
+            throw new OutOfMemoryError(value);
+        }
+    }
+}